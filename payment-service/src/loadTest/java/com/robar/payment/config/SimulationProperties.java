@@ -0,0 +1,20 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+// Simulated terminals of the loadtest profile - only on the load test classpath
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.simulation")
+public class SimulationProperties {
+    // Time from starting a transaction to its result: card read, PIN, host round trip
+    private long paymentMillis = 1500;
+    private long jitterMillis = 500;
+
+    // Share of payments the simulated card holder or host declines
+    private double declinePercent = 2.0;
+
+    private int schedulerThreads = 4;
+}
@@ -0,0 +1,76 @@
+package com.robar.payment.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latencies and error count of one kind of request. Every sample is kept, so
+ * the percentiles are exact - a few hundred thousand longs for a long run.
+ */
+public class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+
+    public synchronized void record(long latencyNanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = latencyNanos;
+    }
+
+    // Errors have no latency that means anything, they are only counted
+    public synchronized void recordError() {
+        errors++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Requests, errors, error rate, throughput over the given time and latency
+     * percentiles in milliseconds.
+     */
+    public synchronized Map<String, Object> summarize(double seconds) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        long total = count + errors;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", total);
+        summary.put("errors", errors);
+        summary.put("errorRate", total > 0 ? round((double) errors / total) : 0.0);
+        summary.put("throughputPerSecond", seconds > 0 ? round(count / seconds) : 0.0);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", millis(percentile(sorted, 0.50)));
+        latency.put("p99", millis(percentile(sorted, 0.99)));
+        latency.put("p999", millis(percentile(sorted, 0.999)));
+        latency.put("max", millis(sorted.length > 0 ? sorted[sorted.length - 1] : 0));
+        latency.put("mean", millis(sorted.length > 0 ? (long) Arrays.stream(sorted).average().orElse(0) : 0));
+        summary.put("latencyMs", latency);
+        return summary;
+    }
+
+    // Nearest rank
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1_000_000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
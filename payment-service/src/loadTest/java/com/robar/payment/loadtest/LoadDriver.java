@@ -0,0 +1,206 @@
+package com.robar.payment.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Sends requests at the profile's arrival rate, open loop: the next request
+ * goes out at its scheduled time whether or not earlier ones have been
+ * answered. Latency is taken from the scheduled time, so a stalled service
+ * shows up in the numbers instead of slowing the arrivals down.
+ */
+public class LoadDriver {
+    private static final String JSON = "application/json";
+
+    /**
+     * Recorders of one stage: sales, status lookups and both together.
+     */
+    static class StageRecorders {
+        final LatencyRecorder sales = new LatencyRecorder();
+        final LatencyRecorder statuses = new LatencyRecorder();
+        final LatencyRecorder all = new LatencyRecorder();
+        final AtomicLong arrivals = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+    }
+
+    private final URI baseUri;
+    private final List<String> terminalIds;
+    private final LoadProfile profile;
+    private final PaymentTracker tracker;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService httpExecutor;
+    private final HttpClient httpClient;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public LoadDriver(URI baseUri, List<String> terminalIds, LoadProfile profile, PaymentTracker tracker) {
+        this.baseUri = baseUri;
+        this.terminalIds = terminalIds;
+        this.profile = profile;
+        this.tracker = tracker;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.httpExecutor = Executors.newFixedThreadPool(profile.getHttpThreads(), r -> {
+            Thread thread = new Thread(r, "Load-Http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .executor(httpExecutor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Runs all stages one after the other and waits for the last answers.
+     * Returns the result of each stage.
+     */
+    public List<Map<String, Object>> run() throws InterruptedException {
+        List<StageRecorders> recorders = new ArrayList<>();
+        List<LoadProfile.Stage> stages = profile.getStages();
+        for (LoadProfile.Stage stage : stages) {
+            StageRecorders stageRecorders = new StageRecorders();
+            recorders.add(stageRecorders);
+            runStage(stage, stageRecorders);
+        }
+
+        // Answers still on their way count for the stage they arrived in
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(profile.getRequestTimeoutMs() + 1000L);
+        while (inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(50);
+        }
+        httpExecutor.shutdownNow();
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            LoadProfile.Stage stage = stages.get(i);
+            StageRecorders stageRecorders = recorders.get(i);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("seconds", stage.seconds());
+            result.put("offeredRatePerSecond", stage.ratePerSecond());
+            result.put("arrivals", stageRecorders.arrivals.get());
+            result.put("dropped", stageRecorders.dropped.get());
+            result.put("all", stageRecorders.all.summarize(stage.seconds()));
+            result.put("sales", stageRecorders.sales.summarize(stage.seconds()));
+            result.put("statuses", stageRecorders.statuses.summarize(stage.seconds()));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private void runStage(LoadProfile.Stage stage, StageRecorders recorders) {
+        if (stage.ratePerSecond() <= 0) {
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(stage.seconds()));
+            return;
+        }
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / stage.ratePerSecond();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(stage.seconds());
+        long next = start;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (next - end < 0) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            // Behind schedule: send right away, the latency still counts from the scheduled time
+            arrive(next, recorders, random);
+            double interval = profile.isPoissonArrivals()
+                    ? -Math.log(1.0 - random.nextDouble()) * meanIntervalNanos
+                    : meanIntervalNanos;
+            next += (long) interval;
+        }
+    }
+
+    private void arrive(long scheduledNanos, StageRecorders recorders, ThreadLocalRandom random) {
+        recorders.arrivals.incrementAndGet();
+        if (inFlight.get() >= profile.getMaxInFlight()) {
+            recorders.dropped.incrementAndGet();
+            recorders.all.recordError();
+            return;
+        }
+        if (random.nextDouble() < profile.getStatusShare()) {
+            List<String> ids = tracker.recentPaymentIds(profile.getStatusBatchSize());
+            if (!ids.isEmpty()) {
+                sendStatusLookup(ids, scheduledNanos, recorders);
+                return;
+            }
+        }
+        sendSale(terminalIds.get(random.nextInt(terminalIds.size())), random, scheduledNanos, recorders);
+    }
+
+    private void sendSale(String terminalId, ThreadLocalRandom random, long scheduledNanos, StageRecorders recorders) {
+        // 25.00 to 500.00, the range of a bar or kiosk order
+        BigDecimal amount = BigDecimal.valueOf(random.nextLong(2500, 50001), 2);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("amount", amount);
+        body.put("terminalId", terminalId);
+
+        PaymentTracker.Pending pending = tracker.expect(terminalId, scheduledNanos);
+        // FAILED means the sale was refused, not queued
+        send("/payments/process", body, scheduledNanos, recorders, recorders.sales,
+                response -> "PROCESSING".equals(response.path("status").asText()), () -> tracker.rejected(pending));
+    }
+
+    private void sendStatusLookup(List<String> ids, long scheduledNanos, StageRecorders recorders) {
+        send("/payments/statuses", Map.of("transactionIds", ids), scheduledNanos, recorders, recorders.statuses,
+                response -> response.isObject() || response.isArray(), () -> { });
+    }
+
+    private void send(String path, Object body, long scheduledNanos, StageRecorders recorders, LatencyRecorder recorder,
+                      Predicate<JsonNode> check, Runnable onFailure) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(baseUri.resolve(path))
+                    .timeout(Duration.ofMillis(profile.getRequestTimeoutMs()))
+                    .header("Content-Type", JSON)
+                    .header("Accept", JSON)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not build request for " + path, e);
+        }
+
+        inFlight.incrementAndGet();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            long latency = System.nanoTime() - scheduledNanos;
+            try {
+                boolean ok = error == null && response.statusCode() == 200
+                        && check.test(objectMapper.readTree(response.body()));
+                if (ok) {
+                    recorder.record(latency);
+                    recorders.all.record(latency);
+                } else {
+                    recorder.recordError();
+                    recorders.all.recordError();
+                    onFailure.run();
+                }
+            } catch (Exception e) {
+                recorder.recordError();
+                recorders.all.recordError();
+                onFailure.run();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+}
@@ -0,0 +1,158 @@
+package com.robar.payment.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * What a load test run does: fleet size, arrival rate over time, request mix
+ * and the limits the run has to stay within.
+ *
+ * Read from a properties file - a name like "peak-hour" resolves to
+ * profiles/peak-hour.properties on the classpath - and every key can be
+ * overridden with a "loadTest." system property, e.g. -DloadTest.terminals=80.
+ * Keys starting with "app." are passed to the service without the prefix.
+ */
+public class LoadProfile {
+    static final String OVERRIDE_PREFIX = "loadTest.";
+    private static final String APP_PREFIX = "app.";
+    private static final String THRESHOLD_PREFIX = "threshold.";
+
+    /**
+     * Constant arrival rate for a number of seconds.
+     */
+    public record Stage(int seconds, double ratePerSecond) {
+    }
+
+    private final String name;
+    private final Properties properties;
+
+    private LoadProfile(String name, Properties properties) {
+        this.name = name;
+        this.properties = properties;
+    }
+
+    public static LoadProfile load(String nameOrFile) throws IOException {
+        Properties properties = new Properties();
+        Path file = Path.of(nameOrFile);
+        if (Files.isRegularFile(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        } else {
+            String resource = "profiles/" + nameOrFile + ".properties";
+            try (InputStream in = LoadProfile.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalArgumentException("No load profile file or classpath resource " + resource);
+                }
+                properties.load(in);
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(OVERRIDE_PREFIX)) {
+                properties.setProperty(key.substring(OVERRIDE_PREFIX.length()), System.getProperty(key));
+            }
+        }
+        return new LoadProfile(nameOrFile, properties);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getTerminals() {
+        return Integer.parseInt(get("terminals", "20"));
+    }
+
+    /**
+     * Stages as "seconds@rate" separated by commas, e.g. "60s@5,300s@20".
+     */
+    public List<Stage> getStages() {
+        List<Stage> stages = new ArrayList<>();
+        for (String part : get("stages", "60s@10").split(",")) {
+            String[] fields = part.trim().split("@");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Stage must look like 60s@10, got: " + part);
+            }
+            String seconds = fields[0].trim();
+            if (seconds.endsWith("s")) {
+                seconds = seconds.substring(0, seconds.length() - 1);
+            }
+            stages.add(new Stage(Integer.parseInt(seconds), Double.parseDouble(fields[1].trim())));
+        }
+        return stages;
+    }
+
+    // Poisson arrivals model independent customers; constant is easier to compare between runs
+    public boolean isPoissonArrivals() {
+        return !"constant".equalsIgnoreCase(get("arrivals", "poisson"));
+    }
+
+    // Share of arrivals that are batch status lookups instead of sales
+    public double getStatusShare() {
+        return Double.parseDouble(get("status-share", "0.2"));
+    }
+
+    public int getStatusBatchSize() {
+        return Integer.parseInt(get("status-batch-size", "20"));
+    }
+
+    public int getHttpThreads() {
+        return Integer.parseInt(get("http-threads", "16"));
+    }
+
+    public int getRequestTimeoutMs() {
+        return Integer.parseInt(get("request-timeout-ms", "10000"));
+    }
+
+    // Above this many outstanding requests new arrivals count as errors instead of piling up
+    public int getMaxInFlight() {
+        return Integer.parseInt(get("max-in-flight", "10000"));
+    }
+
+    // How long queued payments may take to finish after the last arrival
+    public int getDrainSeconds() {
+        return Integer.parseInt(get("drain-seconds", "60"));
+    }
+
+    public Double getThreshold(String key) {
+        String value = properties.getProperty(THRESHOLD_PREFIX + key);
+        return value != null && !value.isBlank() ? Double.valueOf(value.trim()) : null;
+    }
+
+    public Map<String, Double> getThresholds() {
+        Map<String, Double> thresholds = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(THRESHOLD_PREFIX)) {
+                String name = key.substring(THRESHOLD_PREFIX.length());
+                thresholds.put(name, getThreshold(name));
+            }
+        }
+        return thresholds;
+    }
+
+    /**
+     * Settings for the service itself, as command line arguments.
+     */
+    public List<String> getApplicationArguments() {
+        List<String> arguments = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(APP_PREFIX)) {
+                arguments.add("--" + key.substring(APP_PREFIX.length()) + "=" + properties.getProperty(key));
+            }
+        }
+        return arguments;
+    }
+
+    private String get(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null && !value.isBlank() ? value.trim() : defaultValue;
+    }
+}
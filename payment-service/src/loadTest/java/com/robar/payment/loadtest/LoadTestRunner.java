@@ -0,0 +1,156 @@
+package com.robar.payment.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.robar.payment.RobarPaymentServiceApplication;
+import com.robar.payment.service.TerminalConnection;
+import com.robar.payment.service.TerminalRegistry;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the service with a fleet of simulated terminals, runs a load profile
+ * against its HTTP endpoints and writes a JSON report. Exits with 1 when a
+ * threshold of the profile is exceeded, so a build can gate on it.
+ *
+ * Run through Gradle: ./gradlew loadTest -PloadTest.profile=peak-hour
+ */
+public class LoadTestRunner {
+    private static final long TERMINAL_READY_TIMEOUT_MS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.load(System.getProperty("loadTest.profile", "peak-hour"));
+        Path reportDirectory = Path.of(System.getProperty("loadTest.reportDirectory", "build/reports/load-test"));
+
+        List<String> terminalIds = new ArrayList<>();
+        List<String> applicationArgs = new ArrayList<>();
+        applicationArgs.add("--spring.profiles.active=loadtest");
+        applicationArgs.add("--server.port=0");
+        applicationArgs.add("--verifone.terminal.venues[0].id=load-test");
+        for (int i = 0; i < profile.getTerminals(); i++) {
+            String terminalId = "sim-" + (i + 1);
+            terminalIds.add(terminalId);
+            applicationArgs.add("--verifone.terminal.venues[0].terminals[" + i + "].id=" + terminalId);
+        }
+        applicationArgs.addAll(profile.getApplicationArguments());
+
+        boolean passed;
+        try (ConfigurableApplicationContext context = SpringApplication.run(RobarPaymentServiceApplication.class,
+                applicationArgs.toArray(new String[0]))) {
+            PaymentTracker tracker = new PaymentTracker();
+            context.addApplicationListener(tracker);
+            awaitTerminalsReady(context.getBean(TerminalRegistry.class), terminalIds.size());
+
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            LoadDriver driver = new LoadDriver(URI.create("http://localhost:" + port), terminalIds, profile, tracker);
+
+            Instant startedAt = Instant.now();
+            long start = System.nanoTime();
+            List<Map<String, Object>> stages = driver.run();
+            boolean drained = tracker.awaitDrained(System.nanoTime() + TimeUnit.SECONDS.toNanos(profile.getDrainSeconds()));
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            Map<String, Object> payments = new LinkedHashMap<>();
+            payments.put("accepted", tracker.getCompleted() + tracker.getOutstanding());
+            payments.put("completed", tracker.getCompleted());
+            payments.put("declined", tracker.getDeclined());
+            payments.put("notFinished", tracker.getOutstanding());
+            payments.put("unmatchedResults", tracker.getUnmatched());
+            payments.put("drained", drained);
+            payments.put("endToEnd", tracker.getLatencies().summarize(elapsedSeconds));
+
+            List<String> violations = checkThresholds(profile, stages, tracker);
+            passed = violations.isEmpty();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("profile", profile.getName());
+            report.put("startedAt", startedAt.toString());
+            report.put("elapsedSeconds", Math.round(elapsedSeconds * 10) / 10.0);
+            report.put("terminals", terminalIds.size());
+            report.put("arrivals", profile.isPoissonArrivals() ? "poisson" : "constant");
+            report.put("statusShare", profile.getStatusShare());
+            report.put("applicationArguments", profile.getApplicationArguments());
+            report.put("stages", stages);
+            report.put("payments", payments);
+            report.put("thresholds", profile.getThresholds());
+            report.put("violations", violations);
+            report.put("passed", passed);
+
+            Files.createDirectories(reportDirectory);
+            Path file = reportDirectory.resolve(profile.getName().replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+            System.out.println("Load test report written to " + file.toAbsolutePath());
+            for (String violation : violations) {
+                System.out.println("Threshold exceeded: " + violation);
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static void awaitTerminalsReady(TerminalRegistry registry, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TERMINAL_READY_TIMEOUT_MS);
+        while (true) {
+            int ready = 0;
+            for (TerminalConnection terminal : registry.getAll()) {
+                if (terminal.isTerminalInitialized()) {
+                    ready++;
+                }
+            }
+            if (ready >= expected) {
+                return;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new IllegalStateException("Only " + ready + " of " + expected + " simulated terminals came up");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * HTTP limits apply to every stage, payment limits to the whole run.
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> checkThresholds(LoadProfile profile, List<Map<String, Object>> stages, PaymentTracker tracker) {
+        List<String> violations = new ArrayList<>();
+        Double maxP99 = profile.getThreshold("http-p99-ms");
+        Double maxP999 = profile.getThreshold("http-p999-ms");
+        Double maxErrorRate = profile.getThreshold("error-rate");
+        for (int i = 0; i < stages.size(); i++) {
+            Map<String, Object> all = (Map<String, Object>) stages.get(i).get("all");
+            Map<String, Object> latency = (Map<String, Object>) all.get("latencyMs");
+            exceeds(violations, "stage " + (i + 1) + " http p99 ms", (Double) latency.get("p99"), maxP99);
+            exceeds(violations, "stage " + (i + 1) + " http p999 ms", (Double) latency.get("p999"), maxP999);
+            exceeds(violations, "stage " + (i + 1) + " error rate", (Double) all.get("errorRate"), maxErrorRate);
+        }
+
+        Map<String, Object> endToEnd = tracker.getLatencies().summarize(1);
+        Map<String, Object> paymentLatency = (Map<String, Object>) endToEnd.get("latencyMs");
+        exceeds(violations, "payment p99 ms", (Double) paymentLatency.get("p99"), profile.getThreshold("payment-p99-ms"));
+
+        Double minCompletion = profile.getThreshold("payment-completion");
+        long accepted = tracker.getCompleted() + tracker.getOutstanding();
+        if (minCompletion != null && accepted > 0) {
+            double completion = (double) tracker.getCompleted() / accepted;
+            if (completion < minCompletion) {
+                violations.add("payment completion " + completion + " < " + minCompletion);
+            }
+        }
+        return violations;
+    }
+
+    private static void exceeds(List<String> violations, String what, double actual, Double limit) {
+        if (limit != null && actual > limit) {
+            violations.add(what + " " + actual + " > " + limit);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.robar.payment.loadtest;
+
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.service.PaymentStatusEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows sales from arrival to the terminal's result.
+ *
+ * /payments/process only queues a sale, the result comes later as a
+ * {@link PaymentStatusEvent}. Each terminal works through its sales in order,
+ * so the n-th result of a terminal belongs to its n-th accepted sale. Sales to
+ * the same terminal that are in flight at the same moment may be matched the
+ * wrong way round, which only swaps latencies between neighbours.
+ */
+public class PaymentTracker implements ApplicationListener<ApplicationEvent> {
+    private static final int RECENT_IDS = 1024;
+
+    /**
+     * A sale that has been sent. Settled once, either by its result or by the
+     * service answering that it was not queued.
+     */
+    static class Pending {
+        final long arrivalNanos;
+        final AtomicBoolean settled = new AtomicBoolean();
+
+        Pending(long arrivalNanos) {
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    private final Map<String, Queue<Pending>> pendingByTerminal = new ConcurrentHashMap<>();
+    private final LatencyRecorder latencies = new LatencyRecorder();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong declined = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final String[] recentIds = new String[RECENT_IDS];
+    private long recentCount;
+
+    public Pending expect(String terminalId, long arrivalNanos) {
+        Pending pending = new Pending(arrivalNanos);
+        pendingByTerminal.computeIfAbsent(terminalId, id -> new ConcurrentLinkedQueue<>()).add(pending);
+        outstanding.incrementAndGet();
+        return pending;
+    }
+
+    public void rejected(Pending pending) {
+        if (pending.settled.compareAndSet(false, true)) {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof PayloadApplicationEvent<?> payload
+                && payload.getPayload() instanceof PaymentStatusEvent status
+                && status.getTerminalId() != null) {
+            onPaymentStatus(status);
+        }
+    }
+
+    private void onPaymentStatus(PaymentStatusEvent event) {
+        long now = System.nanoTime();
+        Queue<Pending> queue = pendingByTerminal.get(event.getTerminalId());
+        Pending pending = null;
+        if (queue != null) {
+            do {
+                pending = queue.poll();
+            } while (pending != null && !pending.settled.compareAndSet(false, true));
+        }
+        if (pending == null) {
+            unmatched.incrementAndGet();
+            return;
+        }
+        outstanding.decrementAndGet();
+        completed.incrementAndGet();
+        if (event.getStatus() == PaymentStatus.COMPLETED) {
+            latencies.record(now - pending.arrivalNanos);
+        } else {
+            declined.incrementAndGet();
+            latencies.recordError();
+        }
+        if (event.getPaymentId() != null) {
+            synchronized (recentIds) {
+                recentIds[(int) (recentCount++ % RECENT_IDS)] = event.getPaymentId();
+            }
+        }
+    }
+
+    /**
+     * Payment ids of the most recent results, for status lookups.
+     */
+    public List<String> recentPaymentIds(int max) {
+        List<String> ids = new ArrayList<>(max);
+        synchronized (recentIds) {
+            long from = Math.max(0, recentCount - Math.min(max, RECENT_IDS));
+            for (long i = from; i < recentCount; i++) {
+                ids.add(recentIds[(int) (i % RECENT_IDS)]);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Waits until every accepted sale has its result or the deadline
+     * (System.nanoTime) has passed.
+     */
+    public boolean awaitDrained(long deadlineNanos) throws InterruptedException {
+        while (outstanding.get() > 0) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            Thread.sleep(100);
+        }
+        return true;
+    }
+
+    public LatencyRecorder getLatencies() {
+        return latencies;
+    }
+
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getDeclined() {
+        return declined.get();
+    }
+
+    public long getUnmatched() {
+        return unmatched.get();
+    }
+}
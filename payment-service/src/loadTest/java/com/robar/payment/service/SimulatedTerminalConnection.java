@@ -0,0 +1,200 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.SimulationProperties;
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TransactionKind;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Terminal without hardware for load tests. Transactions complete after the
+ * configured time and their results go through the same listener methods as
+ * real SDK callbacks, so everything behind the listener runs as in production.
+ * Authorizations ask for host authorization like a real terminal, so the host,
+ * store-and-forward and the card checks are part of every simulated payment.
+ */
+@Slf4j
+public class SimulatedTerminalConnection extends TerminalConnection {
+    private static final int CARD_POOL = 5000;
+    private static final int REMEMBERED_PAYMENTS = 10000;
+
+    private final SimulationProperties properties;
+    private final ScheduledExecutorService scheduler;
+
+    // Recent results for transaction queries: payment id -> auth result, amount
+    private final Map<String, String[]> completed = new LinkedHashMap<>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > REMEMBERED_PAYMENTS;
+        }
+    };
+
+    public SimulatedTerminalConnection(TerminalDefinition definition, PaymentEventListener eventListener,
+                                       SimulationProperties properties, ScheduledExecutorService scheduler) {
+        super(definition, eventListener);
+        this.properties = properties;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void connect() {
+        getEventListener().startRecording();
+        // Same path as a successful SDK status, which marks the connection ready
+        getEventListener().onStatus(0, "Simulated terminal ready", "SIMULATED");
+        log.debug("[{}] Simulated terminal connected", getTerminalId());
+    }
+
+    @Override
+    public void initializeTerminal() {
+        connect();
+    }
+
+    @Override
+    public void initializeTerminalServerMode() {
+        connect();
+    }
+
+    @Override
+    public void initializeDirectly() {
+        connect();
+    }
+
+    @Override
+    public void login() {
+    }
+
+    @Override
+    public void startSession() {
+    }
+
+    @Override
+    public void endSession() {
+    }
+
+    @Override
+    public void processPayment(BigDecimal amount, String currency) {
+        complete(TransactionKind.SALE, null, amount, currency, true);
+    }
+
+    @Override
+    public void preAuthorize(BigDecimal amount, String currency) {
+        complete(TransactionKind.PREAUTHORIZATION, null, amount, currency, true);
+    }
+
+    @Override
+    public void incrementAuthorization(String originalPaymentId, BigDecimal increment, String currency) {
+        complete(TransactionKind.INCREMENT, originalPaymentId, increment, currency, false);
+    }
+
+    @Override
+    public void capturePreAuthorization(String originalPaymentId, BigDecimal amount, BigDecimal gratuity, String currency) {
+        complete(TransactionKind.CAPTURE, originalPaymentId, gratuity != null ? amount.add(gratuity) : amount, currency, false);
+    }
+
+    @Override
+    public void refund(String originalPaymentId, BigDecimal amount, String currency) {
+        complete(TransactionKind.REFUND, originalPaymentId, amount, currency, false);
+    }
+
+    @Override
+    public void voidPayment(String originalPaymentId, BigDecimal amount, String currency) {
+        complete(TransactionKind.VOID, originalPaymentId, amount, currency, false);
+    }
+
+    @Override
+    public void reverse(String originalPaymentId, BigDecimal amount, String currency) {
+        complete(TransactionKind.REVERSAL, originalPaymentId, amount, currency, false);
+    }
+
+    @Override
+    public void abortTransaction() {
+        // Simulated transactions always complete on their own
+    }
+
+    @Override
+    public void queryTransactions(Collection<String> paymentIds) {
+        List<String> fields = new ArrayList<>();
+        synchronized (completed) {
+            for (String paymentId : paymentIds) {
+                String[] result = completed.get(paymentId);
+                if (result != null) {
+                    fields.add(paymentId);
+                    fields.add(result[0]);
+                    fields.add(result[1]);
+                }
+            }
+        }
+        scheduler.execute(() -> getEventListener().onTransactionQuery(0, fields.toArray(new String[0])));
+    }
+
+    @Override
+    public void applyBasketDeltas(List<BasketDelta> deltas) {
+    }
+
+    @Override
+    public void finalizeTerminalBasket() {
+    }
+
+    private void complete(TransactionKind kind, String originalPaymentId, BigDecimal amount, String currency,
+                          boolean cardPresent) {
+        if (!isTerminalInitialized()) {
+            throw new RuntimeException("Terminal not initialized. Please initialize first.");
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long spread = properties.getJitterMillis();
+        long jitter = spread > 0 ? random.nextLong(-spread, spread + 1) : 0;
+        long delay = Math.max(0, properties.getPaymentMillis() + jitter);
+        boolean declined = random.nextDouble() * 100 < properties.getDeclinePercent();
+        int card = random.nextInt(CARD_POOL);
+        String resultCurrency = currency != null ? currency : getCurrency();
+
+        if (cardPresent) {
+            getEventListener().onCustomerSession(CustomerSessionEvent.Type.SALE_STARTING);
+            // The card is read about halfway through, as on a real terminal
+            scheduler.schedule(() -> getEventListener().onCardInformation("ct_sim" + card), delay / 2, TimeUnit.MILLISECONDS);
+        }
+        if (!asksHost(kind) || amount == null) {
+            scheduler.schedule(() -> finish(kind, originalPaymentId, amount, resultCurrency,
+                    declined ? "Declined (simulated)" : null), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        // The host is asked after the card read, on a callback thread like the SDK's; the rest is PIN and printing
+        long hostDelay = delay * 3 / 4;
+        scheduler.schedule(() -> {
+            HostAuthorizationDecision decision = getEventListener().onHostAuthorization(0, amount.toPlainString());
+            String declineMessage = decision == null ? "No host decision"
+                    : !decision.isApproved() ? decision.getMessage()
+                    : declined ? "Declined (simulated)" : null;
+            scheduler.schedule(() -> finish(kind, originalPaymentId, amount, resultCurrency, declineMessage),
+                    delay - hostDelay, TimeUnit.MILLISECONDS);
+        }, hostDelay, TimeUnit.MILLISECONDS);
+    }
+
+    // Authorizations go through the host; the other kinds settle or undo an earlier one
+    private static boolean asksHost(TransactionKind kind) {
+        return kind == TransactionKind.SALE || kind == TransactionKind.PREAUTHORIZATION || kind == TransactionKind.INCREMENT;
+    }
+
+    private void finish(TransactionKind kind, String originalPaymentId, BigDecimal amount, String currency,
+                        String declineMessage) {
+        boolean declined = declineMessage != null;
+        String paymentId = UUID.randomUUID().toString();
+        synchronized (completed) {
+            completed.put(paymentId, new String[] {declined ? "DECLINED" : "AUTHORIZED",
+                    amount != null ? amount.toPlainString() : null});
+        }
+        getEventListener().onPaymentCompleted(declined ? -1 : 0, declined ? declineMessage : "Approved",
+                paymentId, kind, originalPaymentId, amount, currency);
+    }
+}
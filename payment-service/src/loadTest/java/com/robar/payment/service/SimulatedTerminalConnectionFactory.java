@@ -0,0 +1,66 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.SimulationProperties;
+import com.robar.payment.model.TerminalDefinition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection factory of the loadtest profile: every terminal is an in-process
+ * simulator. Listeners are set up exactly as for real terminals.
+ */
+@Slf4j
+@Component
+@Profile("loadtest")
+public class SimulatedTerminalConnectionFactory extends TerminalConnectionFactory {
+    private final SimulationProperties simulationProperties;
+    private ScheduledExecutorService simulationScheduler;
+
+    public SimulatedTerminalConnectionFactory(ApplicationEventPublisher eventPublisher,
+                                              HostAuthorizationService hostAuthorizationService,
+                                              RecordingProperties recordingProperties,
+                                              LoggingProperties loggingProperties,
+                                              CardTokenizer cardTokenizer,
+                                              SimulationProperties simulationProperties) {
+        super(eventPublisher, hostAuthorizationService, recordingProperties, loggingProperties, cardTokenizer);
+        this.simulationProperties = simulationProperties;
+        log.warn("Terminal simulation enabled - no real terminal will be contacted");
+    }
+
+    @Override
+    protected TerminalConnection newConnection(TerminalDefinition definition, PaymentEventListener listener) {
+        return new SimulatedTerminalConnection(definition, listener, simulationProperties, simulationScheduler());
+    }
+
+    // One scheduler for all simulated terminals, created with the first of them
+    private synchronized ScheduledExecutorService simulationScheduler() {
+        if (simulationScheduler == null) {
+            int threads = Math.max(1, simulationProperties.getSchedulerThreads());
+            AtomicInteger threadCount = new AtomicInteger();
+            simulationScheduler = Executors.newScheduledThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Terminal-Simulator-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return simulationScheduler;
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        synchronized (this) {
+            if (simulationScheduler != null) {
+                simulationScheduler.shutdownNow();
+            }
+        }
+    }
+}
@@ -13,7 +13,8 @@ import org.springframework.context.annotation.ComponentScan;
     "com.robar.payment.controller",
     "com.robar.payment.service",
     "com.robar.payment.config",
-    "com.robar.payment.model"
+    "com.robar.payment.model",
+    "com.robar.payment.repository"
 })
 public class RobarPaymentServiceApplication {
     
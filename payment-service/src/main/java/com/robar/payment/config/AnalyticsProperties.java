@@ -0,0 +1,13 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.analytics")
+public class AnalyticsProperties {
+    // Minutes of per-minute sales kept in memory, per terminal
+    private int windowMinutes = 120;
+}
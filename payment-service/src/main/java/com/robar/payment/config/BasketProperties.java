@@ -0,0 +1,16 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.basket")
+public class BasketProperties {
+    // How long changes are collected before being pushed to the terminal
+    private long flushDelayMs = 150;
+
+    // Baskets without a change for this long are dropped, e.g. an order left open on the till
+    private long abandonedAfterMs = 7200000;
+}
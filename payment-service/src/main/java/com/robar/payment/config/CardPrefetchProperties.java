@@ -0,0 +1,33 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.card-prefetch")
+public class CardPrefetchProperties {
+    // Start loyalty, discount and blocked-card lookups as soon as the terminal reads the card
+    private boolean enabled = true;
+
+    // Card profiles kept, least recently used dropped first, and for how long a profile is reused
+    private int cacheSize = 10000;
+    private long cacheTtlMs = 600000;
+
+    private int lookupThreads = 8;
+    private long lookupTimeoutMs = 2000;
+
+    // How long host authorization waits for lookups still running - without a result it goes ahead
+    private long authorizationWaitMs = 200;
+
+    // HMAC key (base64) for card tokens; a random key per start when empty, which is only
+    // allowed on a single node without blocked tokens
+    private String tokenKey;
+
+    // Card tokens refused by the local backend - tokens made with the token key above
+    private List<String> blockedTokens = new ArrayList<>();
+}
@@ -0,0 +1,21 @@
+package com.robar.payment.config;
+
+import com.robar.payment.service.FileLeaseStore;
+import com.robar.payment.service.LeaseStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Configuration
+public class ClusterConfig {
+
+    // Declare another LeaseStore bean (database, coordination service) to replace the file store
+    @Bean
+    @ConditionalOnMissingBean(LeaseStore.class)
+    public LeaseStore leaseStore(ClusterProperties properties) throws IOException {
+        return new FileLeaseStore(Paths.get(properties.getLeaseDirectory()));
+    }
+}
@@ -0,0 +1,40 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.cluster")
+public class ClusterProperties {
+    // Share the terminals with other nodes through leases - off means this node owns every terminal
+    private boolean enabled = false;
+
+    // Unique per node - generated from the host name when empty
+    private String nodeId;
+
+    // Base URL peers use to forward requests to this node, e.g. http://10.0.0.5:8080
+    private String advertisedUrl;
+
+    // Lease store shared by all nodes (file based store)
+    private String leaseDirectory = "data/leases";
+
+    // A lease not renewed within this time is up for grabs
+    private long leaseTtlMs = 15000;
+    private long renewIntervalMs = 5000;
+    // When renewing fails, work for the terminals stops this long before their leases could expire
+    private long leaseSafetyMarginMs = 3000;
+
+    // Shared by all nodes and sent along with forwarded requests; a request that claims
+    // to come from a peer without it is handled like any client request
+    private String peerSecret;
+
+    // Timeout for requests forwarded to the owning node
+    private long forwardTimeoutMs = 30000;
+
+    // Handover after a (re)start: for this long the node looks for released leases at
+    // the faster poll interval, so it picks up each terminal as soon as the old node lets go
+    private long handoverWindowMs = 120000;
+    private long handoverPollMs = 500;
+}
@@ -0,0 +1,19 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.export")
+public class ExportProperties {
+    // Rows fetched from the database per round trip while streaming
+    private int fetchSize = 1000;
+
+    // Rows buffered per row group in the columnar format
+    private int rowGroupSize = 4096;
+
+    // Zone that day= and month= export ranges are interpreted in
+    private String zone = "Europe/Copenhagen";
+}
@@ -0,0 +1,22 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.history")
+public class HistoryProperties {
+    // Write payment results, status changes and host decisions to the history tables
+    private boolean enabled = true;
+
+    // Pending rows held in memory - beyond this new rows are dropped rather than slowing payments
+    private int queueCapacity = 20000;
+
+    // Rows per flush transaction - keep in line with hibernate.jdbc.batch_size
+    private int batchSize = 200;
+
+    // Longest a row waits before it is flushed when traffic is low
+    private long flushIntervalMs = 500;
+}
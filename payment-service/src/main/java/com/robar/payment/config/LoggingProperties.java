@@ -0,0 +1,15 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.logging")
+public class LoggingProperties {
+    // High-frequency terminal events logged per terminal and event type in each window,
+    // the rest are counted and reported as suppressed when the window closes
+    private int sampleBurst = 5;
+    private long sampleWindowMs = 1000;
+}
@@ -0,0 +1,36 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.offline")
+public class OfflineProperties {
+    // Approve locally when the host is unreachable
+    private boolean enabled = true;
+
+    // Highest amount that may be approved without the host
+    private BigDecimal floorLimit = new BigDecimal("500.00");
+
+    // How long to wait for the host before falling back to offline approval
+    private long hostTimeoutMs = 5000;
+
+    // Host requests in flight at most, timed out ones included - with all of them busy
+    // a request is authorized offline right away
+    private int hostThreads = 16;
+
+    // Failed or timed out host requests in a row before the host is treated as down
+    private int hostFailureThreshold = 3;
+
+    // Durable store-and-forward journal
+    private String queueDirectory = "data/offline-queue";
+
+    // Forwarding to the host once it is back
+    private int batchSize = 25;
+    private int maxPerSecond = 10;
+    private long drainIntervalMs = 5000;
+}
@@ -4,11 +4,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+// Scans every environment variable on startup - switched off in the faststart profile
 @Configuration
+@ConditionalOnProperty(name = "robar.debug.log-properties", havingValue = "true", matchIfMissing = true)
 public class PropertyDebugConfig {
     private static final Logger log = LoggerFactory.getLogger(PropertyDebugConfig.class);
     
@@ -0,0 +1,28 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.receipts")
+public class ReceiptProperties {
+    // Directory for the content-addressed receipt store
+    private String storeDirectory = "data/receipts";
+
+    // Public path the receipt endpoint is served under, used to build receiptUrl
+    private String baseUrl = "/receipts";
+
+    // Threads rendering receipts - kept small, rendering is cheap and never on the payment path
+    private int renderThreads = 2;
+
+    // Maximum number of captured receipts waiting to be rendered
+    private int queueCapacity = 1000;
+
+    // Number of reusable render buffers kept in the pool
+    private int bufferPoolSize = 8;
+
+    // Width of the printed receipt in characters (ESC/POS and text)
+    private int lineWidth = 42;
+}
@@ -0,0 +1,15 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.recording")
+public class RecordingProperties {
+    // Record every SDK callback of every terminal, one file per terminal connection
+    private boolean enabled = false;
+
+    private String directory = "data/recordings";
+}
@@ -0,0 +1,20 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.shutdown")
+public class ShutdownProperties {
+    // How long a stopping node waits for running payments before tearing the terminals down
+    private long drainTimeoutMs = 90000;
+
+    // Terminals drained in parallel
+    private int drainThreads = 16;
+
+    // After the terminals are down: how long forwarding offline authorizations and
+    // writing queued history rows may take before the node stops anyway
+    private long flushTimeoutMs = 10000;
+}
@@ -0,0 +1,24 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.tabs")
+public class TabProperties {
+    // Amount pre-authorized when a tab is opened without an explicit amount
+    private BigDecimal defaultPreAuthAmount = new BigDecimal("300.00");
+
+    // Minimum increment requested when a round exceeds the authorized amount
+    private BigDecimal incrementStep = new BigDecimal("200.00");
+
+    // How long a tab whose pre-authorization failed stays visible before it is dropped
+    private long failedTabRetentionMs = 600000;
+
+    // Terminals captured concurrently during the closing run
+    private int maxParallelTerminals = 16;
+}
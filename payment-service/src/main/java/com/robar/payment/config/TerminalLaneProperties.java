@@ -0,0 +1,17 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.lanes")
+public class TerminalLaneProperties {
+    // How long a lane waits for the terminal to report the result of an operation
+    private long resultTimeoutMs = 120000;
+    // How long a lane waits for the late result of an aborted operation before starting the next one
+    private long lateResultWaitMs = 10000;
+    // How long a batch status lookup waits for a terminal to answer a transaction query
+    private long queryTimeoutMs = 3000;
+}
@@ -3,11 +3,16 @@ package com.robar.payment.config;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Configuration;
 
+import com.robar.payment.model.InitStrategy;
+import com.robar.payment.model.TerminalDefinition;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @Getter
 public class VerifoneConfig {
@@ -28,10 +33,52 @@ public class VerifoneConfig {
         return verifoneProperties.getConnectionType();
     }
 
+    public List<TerminalDefinition> getTerminalDefinitions() {
+        return toTerminalDefinitions(verifoneProperties);
+    }
+
+    /**
+     * Flattens the venue list into terminal definitions. Without venues the single
+     * terminal ip/connection-type pair is used as terminal "default"; a missing
+     * ip leaves the address unset, which connects to the "null" placeholder.
+     */
+    public static List<TerminalDefinition> toTerminalDefinitions(VerifoneProperties properties) {
+        List<TerminalDefinition> definitions = new ArrayList<>();
+        
+        for (VerifoneProperties.Venue venue : properties.getVenues()) {
+            for (VerifoneProperties.Terminal terminal : venue.getTerminals()) {
+                if (terminal.getId() == null || terminal.getId().isEmpty()) {
+                    throw new IllegalArgumentException("Terminal in venue " + venue.getId() + " has no id");
+                }
+                definitions.add(TerminalDefinition.builder()
+                        .venueId(venue.getId())
+                        .terminalId(terminal.getId())
+                        .address(terminal.getAddress())
+                        .connectionType(terminal.getConnectionType())
+                        .currency(terminal.getCurrency())
+                        .initStrategy(terminal.getInitStrategy())
+                        .build());
+            }
+        }
+        
+        // As before venues existed, the default terminal is there even without an ip
+        if (definitions.isEmpty()) {
+            definitions.add(TerminalDefinition.builder()
+                    .venueId("default")
+                    .terminalId("default")
+                    .address(properties.getIp())
+                    .connectionType(properties.getConnectionType() != null ? properties.getConnectionType() : "tcpip")
+                    .currency("DKK")
+                    .initStrategy(InitStrategy.ENHANCED)
+                    .build());
+        }
+        return definitions;
+    }
+
     @PostConstruct
     public void init() {
-        log.info("VERIFONE CONFIG LOADED WITH: IP={}, ConnectionType={}", 
-             verifoneProperties.getIp(), verifoneProperties.getConnectionType());
+        log.info("VERIFONE CONFIG LOADED WITH: IP={}, ConnectionType={}, venues={}", 
+             verifoneProperties.getIp(), verifoneProperties.getConnectionType(), verifoneProperties.getVenues().size());
     }
 
 
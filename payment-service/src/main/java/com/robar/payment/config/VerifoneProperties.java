@@ -1,21 +1,52 @@
 package com.robar.payment.config;
 
+import com.robar.payment.model.InitStrategy;
 import lombok.Data;
 import lombok.ToString;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "verifone.terminal")
 @ToString
 public class VerifoneProperties {
+    // Single terminal setup - used when no venues are configured
     private String ip;
     private String connectionType;
     
+    // Multi-venue setup
+    private List<Venue> venues = new ArrayList<>();
+    
+    // Optional external file (.properties or .yml) with the venues, watched for changes
+    private String configFile;
+    private long reloadIntervalMs = 10000;
+    
+    // Connect all configured terminals in the background once the application is up
+    private boolean autoConnect = false;
+    
     // Default constructor required for property binding
     public VerifoneProperties() {
     }
     
+    @Data
+    public static class Venue {
+        private String id;
+        private String name;
+        private List<Terminal> terminals = new ArrayList<>();
+    }
+    
+    @Data
+    public static class Terminal {
+        private String id;
+        private String address;
+        private String connectionType = "tcpip";
+        private String currency = "DKK";
+        private InitStrategy initStrategy = InitStrategy.ENHANCED;
+    }
+    
     // Getters and setters are provided by Lombok @Data
-}
\ No newline at end of file
+}
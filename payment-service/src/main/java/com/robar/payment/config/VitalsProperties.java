@@ -0,0 +1,21 @@
+package com.robar.payment.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "robar.vitals")
+public class VitalsProperties {
+    // History kept per terminal - fixed at startup, memory does not grow with uptime
+    private int rawSamples = 512;
+    private int minuteSlots = 360;
+    private int hourSlots = 168;
+
+    // Alert thresholds; an alert clears once the value is back past the threshold by the hysteresis
+    private float batteryLowPercent = 20;
+    private float temperatureHighCelsius = 60;
+    private float signalLowDbm = -80;
+    private float hysteresis = 5;
+}
@@ -0,0 +1,44 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.model.SalesStats;
+import com.robar.payment.service.SalesAnalyticsService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+    // Figures move every second - let dashboards and proxies reuse a response for that long
+    private static final CacheControl ONE_SECOND = CacheControl.maxAge(1, TimeUnit.SECONDS).cachePrivate();
+
+    private final SalesAnalyticsService analyticsService;
+
+    public AnalyticsController(SalesAnalyticsService analyticsService) {
+        this.analyticsService = analyticsService;
+    }
+
+    @GetMapping("/sales")
+    public ResponseEntity<Map<String, Object>> sales(@RequestParam(defaultValue = "60") int minutes) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        // One total per currency - amounts in different currencies are never added up
+        response.put("totals", analyticsService.getTotals(minutes));
+        response.put("terminals", analyticsService.getTerminalTotals(minutes));
+        return ResponseEntity.ok().cacheControl(ONE_SECOND).body(response);
+    }
+
+    @GetMapping("/sales/minutes")
+    public ResponseEntity<List<SalesStats>> salesPerMinute(@RequestParam(required = false) String terminalId,
+                                                           @RequestParam(required = false) String currency,
+                                                           @RequestParam(defaultValue = "60") int minutes) {
+        return ResponseEntity.ok().cacheControl(ONE_SECOND).body(analyticsService.getPerMinute(terminalId, currency, minutes));
+    }
+}
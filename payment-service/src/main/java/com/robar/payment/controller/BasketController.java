@@ -0,0 +1,54 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.model.Basket;
+import com.robar.payment.model.BasketLineItem;
+import com.robar.payment.service.BasketSyncService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/baskets")
+public class BasketController {
+    private static final Logger log = LoggerFactory.getLogger(BasketController.class);
+
+    private final BasketSyncService basketSyncService;
+
+    public BasketController(BasketSyncService basketSyncService) {
+        this.basketSyncService = basketSyncService;
+    }
+
+    @GetMapping("/{basketId}")
+    public ResponseEntity<Basket> getBasket(@PathVariable String basketId) {
+        Basket basket = basketSyncService.getBasket(basketId);
+        return basket != null ? ResponseEntity.ok(basket) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/{basketId}/items")
+    public ResponseEntity<Basket> addItem(@PathVariable String basketId,
+                                          @RequestParam(required = false) String terminalId,
+                                          @RequestBody BasketLineItem item) {
+        try {
+            return ResponseEntity.ok(basketSyncService.addItem(basketId, terminalId, item));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected basket item for basket {}: {}", basketId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @DeleteMapping("/{basketId}/items/{lineId}")
+    public ResponseEntity<Basket> removeItem(@PathVariable String basketId, @PathVariable String lineId) {
+        try {
+            return ResponseEntity.ok(basketSyncService.removeItem(basketId, lineId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @DeleteMapping("/{basketId}")
+    public ResponseEntity<Void> closeBasket(@PathVariable String basketId) {
+        basketSyncService.closeBasket(basketId);
+        return ResponseEntity.noContent().build();
+    }
+}
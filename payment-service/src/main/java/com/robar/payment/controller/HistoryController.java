@@ -0,0 +1,187 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.config.ExportProperties;
+import com.robar.payment.model.ExportFormat;
+import com.robar.payment.model.HostAuthorizationLog;
+import com.robar.payment.model.PaymentHistory;
+import com.robar.payment.repository.HostAuthorizationLogRepository;
+import com.robar.payment.repository.PaymentHistoryRepository;
+import com.robar.payment.repository.StatusTransitionRepository;
+import com.robar.payment.service.HistoryExportService;
+import com.robar.payment.service.HistoryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Transaction history. Rows show up here shortly after the payment, once the
+ * history writer has flushed them.
+ */
+@RestController
+@RequestMapping("/history")
+public class HistoryController {
+    private static final Logger log = LoggerFactory.getLogger(HistoryController.class);
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final PaymentHistoryRepository paymentRepository;
+    private final StatusTransitionRepository transitionRepository;
+    private final HostAuthorizationLogRepository hostAuthorizationRepository;
+    private final HistoryWriter historyWriter;
+    private final HistoryExportService exportService;
+    private final ExportProperties exportProperties;
+
+    public HistoryController(PaymentHistoryRepository paymentRepository, StatusTransitionRepository transitionRepository,
+                             HostAuthorizationLogRepository hostAuthorizationRepository, HistoryWriter historyWriter,
+                             HistoryExportService exportService, ExportProperties exportProperties) {
+        this.paymentRepository = paymentRepository;
+        this.transitionRepository = transitionRepository;
+        this.hostAuthorizationRepository = hostAuthorizationRepository;
+        this.historyWriter = historyWriter;
+        this.exportService = exportService;
+        this.exportProperties = exportProperties;
+    }
+
+    // Defaults to the last 24 hours, newest first
+    @GetMapping("/payments")
+    public ResponseEntity<Page<PaymentHistory>> payments(
+            @RequestParam(required = false) String terminalId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(1, ChronoUnit.DAYS);
+        PageRequest pageRequest = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE), Sort.by(Sort.Direction.DESC, "completedAt"));
+        Page<PaymentHistory> result = terminalId != null
+                ? paymentRepository.findByTerminalIdAndCompletedAtBetween(terminalId, start, end, pageRequest)
+                : paymentRepository.findByCompletedAtBetween(start, end, pageRequest);
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/payments/{transactionId}")
+    public ResponseEntity<Map<String, Object>> payment(@PathVariable String transactionId) {
+        List<PaymentHistory> results = paymentRepository.findByTransactionIdOrderByCompletedAtAsc(transactionId);
+        if (results.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("results", results);
+        response.put("transitions", transitionRepository.findByTransactionIdOrderByOccurredAtAsc(transactionId));
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/host-authorizations")
+    public ResponseEntity<Page<HostAuthorizationLog>> hostAuthorizations(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(1, ChronoUnit.DAYS);
+        PageRequest pageRequest = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE), Sort.by(Sort.Direction.DESC, "decidedAt"));
+        return ResponseEntity.ok(hostAuthorizationRepository.findByDecidedAtBetween(start, end, pageRequest));
+    }
+
+    /**
+     * Streams a dataset as CSV or columnar, gzipped by default. The range is
+     * month=2025-01, day=2025-01-31 or from/to; terminalId and venueId filter.
+     * Rows go from a database cursor to the response without being collected,
+     * on the MVC async executor rather than a request or payment thread.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "payments") String dataset,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate day,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String terminalId,
+            @RequestParam(required = false) String venueId,
+            @RequestParam(defaultValue = "true") boolean gzip) {
+        HistoryExportService.Dataset exportDataset;
+        ExportFormat exportFormat;
+        try {
+            exportDataset = HistoryExportService.Dataset.fromString(dataset);
+            exportFormat = ExportFormat.fromString(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ZoneId zone = ZoneId.of(exportProperties.getZone());
+        Instant start;
+        Instant end;
+        String rangeName;
+        if (month != null) {
+            start = month.atDay(1).atStartOfDay(zone).toInstant();
+            end = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant();
+            rangeName = month.toString();
+        } else if (day != null) {
+            start = day.atStartOfDay(zone).toInstant();
+            end = day.plusDays(1).atStartOfDay(zone).toInstant();
+            rangeName = day.toString();
+        } else {
+            end = to != null ? to : Instant.now();
+            start = from != null ? from : end.minus(1, ChronoUnit.DAYS);
+            rangeName = start.getEpochSecond() + "-" + end.getEpochSecond();
+        }
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<String> terminalIds = terminalId != null ? List.of(terminalId) : List.of();
+        // The venue stored with each row, not the current terminal config - terminals move between venues
+        String exportVenueId = terminalId == null ? venueId : null;
+
+        String fileName = exportDataset.name().toLowerCase().replace('_', '-') + "-" + rangeName
+                + (terminalId != null ? "-" + terminalId : venueId != null ? "-" + venueId : "")
+                + "." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                exportService.export(exportDataset, exportFormat, start, end, terminalIds, exportVenueId, compressed);
+                compressed.finish();
+            } else {
+                exportService.export(exportDataset, exportFormat, start, end, terminalIds, exportVenueId, out);
+            }
+        };
+        log.info("Exporting {} {} to {}", exportDataset, rangeName, fileName);
+
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/writer")
+    public ResponseEntity<Map<String, Object>> writer() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("queued", historyWriter.getQueueSize());
+        response.put("written", historyWriter.getWrittenCount());
+        response.put("dropped", historyWriter.getDroppedCount());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -1,9 +1,13 @@
 package com.robar.payment.controller;
 
+import com.robar.payment.model.BatchStatusRequest;
+import com.robar.payment.model.CardProfile;
 import com.robar.payment.model.PaymentRequest;
 import com.robar.payment.model.PaymentResponse;
 import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.service.CardPrefetchService;
 import com.robar.payment.service.PaymentEventListener;
+import com.robar.payment.service.TerminalConnection;
 import com.robar.payment.service.VerifonePaymentService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -13,25 +17,28 @@ import org.springframework.web.bind.annotation.*;
 
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/payments")
 public class PaymentController {
     private static final Logger log = LoggerFactory.getLogger(PaymentController.class);
+    private static final int MAX_BATCH_STATUS_IDS = 500;
     
     // Remove @RequiredArgsConstructor and use explicit constructor injection
     private final VerifonePaymentService paymentService;
-    private final PaymentEventListener eventListener;
+    private final CardPrefetchService cardPrefetchService;
     
     // Explicit constructor instead of Lombok's @RequiredArgsConstructor
-    public PaymentController(VerifonePaymentService paymentService, PaymentEventListener eventListener) {
+    public PaymentController(VerifonePaymentService paymentService, CardPrefetchService cardPrefetchService) {
         this.paymentService = paymentService;
-        this.eventListener = eventListener;
+        this.cardPrefetchService = cardPrefetchService;
         log.info("PaymentController constructed with dependencies");
     }
 
@@ -47,18 +54,20 @@ public class PaymentController {
     }
 
     @PostMapping("/initialize")
-    public ResponseEntity<Map<String, String>> initializeTerminal() {
-        log.info("Initialize terminal endpoint called");
+    public ResponseEntity<Map<String, String>> initializeTerminal(@RequestParam(required = false) String terminalId) {
+        log.info("Initialize terminal endpoint called for terminal {}", terminalId);
         Map<String, String> response = new HashMap<>();
         
         try {
             // Request initialization using the "Connecting to a New Device" implementation
-            paymentService.initializeTerminal();
+            TerminalConnection terminal = paymentService.getTerminal(terminalId);
+            terminal.initializeTerminal();
             
             response.put("status", "requested");
             response.put("message", "Terminal initialization requested - check logs for status");
-            response.put("ip", paymentService.getTerminalIpAddress());
-            response.put("connectionType", paymentService.getConnectionType());
+            response.put("terminalId", terminal.getTerminalId());
+            response.put("ip", terminal.getAddress());
+            response.put("connectionType", terminal.getConnectionType());
             
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -72,13 +81,13 @@ public class PaymentController {
     }
     
     @PostMapping("/initialize-server-mode")
-    public ResponseEntity<Map<String, String>> initializeTerminalServerMode() {
-        log.info("Initialize terminal in server mode endpoint called");
+    public ResponseEntity<Map<String, String>> initializeTerminalServerMode(@RequestParam(required = false) String terminalId) {
+        log.info("Initialize terminal in server mode endpoint called for terminal {}", terminalId);
         Map<String, String> response = new HashMap<>();
         
         try {
             // Try server mode initialization as an alternative
-            paymentService.initializeTerminalServerMode();
+            paymentService.initializeTerminalServerMode(terminalId);
             
             response.put("status", "requested");
             response.put("message", "Terminal server mode initialization requested - check logs for status");
@@ -95,19 +104,23 @@ public class PaymentController {
     }
     
     @GetMapping("/terminal-status")
-    public ResponseEntity<Map<String, Object>> getTerminalStatus() {
+    public ResponseEntity<Map<String, Object>> getTerminalStatus(@RequestParam(required = false) String terminalId) {
         Map<String, Object> status = new HashMap<>();
         
-        boolean isInitialized = paymentService.isTerminalInitialized();
-        String ipAddress = paymentService.getTerminalIpAddress();
-        String connectionType = paymentService.getConnectionType();
-        String lastError = paymentService.getLastErrorMessage();
+        TerminalConnection terminal = paymentService.getTerminal(terminalId);
+        boolean isInitialized = terminal.isTerminalInitialized();
+        String ipAddress = terminal.getAddress();
+        String connectionType = terminal.getConnectionType();
+        String lastError = terminal.getLastErrorMessage();
         
-        // Get additional status from the event listener
+        // Get additional status from the terminal's event listener
+        PaymentEventListener eventListener = terminal.getEventListener();
         int lastStatusCode = eventListener.getLastStatusCode();
         String lastStatusMessage = eventListener.getLastStatusMessage();
         int errorCount = eventListener.getErrorCount();
         
+        status.put("terminalId", terminal.getTerminalId());
+        status.put("state", terminal.getState());
         status.put("initialized", isInitialized);
         status.put("ipAddress", ipAddress);
         status.put("connectionType", connectionType);
@@ -120,8 +133,8 @@ public class PaymentController {
     }
     
     @GetMapping("/network-test")
-    public ResponseEntity<Map<String, String>> testTerminalNetwork() {
-        String terminalIp = paymentService.getTerminalIpAddress();
+    public ResponseEntity<Map<String, String>> testTerminalNetwork(@RequestParam(required = false) String terminalId) {
+        String terminalIp = paymentService.getTerminal(terminalId).getAddress();
         log.info("Testing network connectivity to terminal at {}", terminalIp);
         
         Map<String, String> results = new HashMap<>();
@@ -173,6 +186,13 @@ public class PaymentController {
     @PostMapping("/process")
     public ResponseEntity<PaymentResponse> processPayment(@RequestBody PaymentRequest request) {
         log.info("Process payment endpoint called with amount: {}", request.getAmount());
+        // A basket brings its own total
+        if (request.getBasketId() == null && (request.getAmount() == null || request.getAmount().signum() <= 0)) {
+            return ResponseEntity.badRequest().body(PaymentResponse.builder()
+                    .status(PaymentStatus.FAILED)
+                    .message("Amount must be positive")
+                    .build());
+        }
         try {
             PaymentResponse response = paymentService.initiatePayment(request);
             return ResponseEntity.ok(response);
@@ -187,11 +207,74 @@ public class PaymentController {
         }
     }
     
+    @PostMapping("/statuses")
+    public ResponseEntity<?> getPaymentStatuses(@RequestBody BatchStatusRequest request) {
+        List<String> ids = request.getTransactionIds();
+        if (ids == null || ids.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "transactionIds is required"));
+        }
+        if (ids.size() > MAX_BATCH_STATUS_IDS) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                    "At most " + MAX_BATCH_STATUS_IDS + " transactions per request"));
+        }
+        return ResponseEntity.ok(paymentService.getPaymentStatuses(ids, request.getTerminalId()));
+    }
+    
+    // Loyalty and discount of the card read on the terminal, for the POS to apply before the amount is final
+    @GetMapping("/card-profile")
+    public ResponseEntity<CardProfile> getCardProfile(@RequestParam(required = false) String terminalId,
+                                                      @RequestParam(defaultValue = "0") long waitMs) {
+        String resolvedId = paymentService.getTerminal(terminalId).getTerminalId();
+        CardProfile profile = cardPrefetchService.getProfile(resolvedId, Math.min(Math.max(waitMs, 0), 5000));
+        return profile != null ? ResponseEntity.ok(profile) : ResponseEntity.noContent().build();
+    }
+    
+    @GetMapping("/{transactionId}")
+    public ResponseEntity<PaymentResponse> getPaymentStatus(@PathVariable String transactionId) {
+        return ResponseEntity.ok(paymentService.getPaymentStatus(transactionId));
+    }
+    
+    @PostMapping("/{transactionId}/refund")
+    public ResponseEntity<PaymentResponse> refund(@PathVariable String transactionId,
+                                                  @RequestBody(required = false) PaymentRequest request) {
+        log.info("Refund endpoint called for transaction {}", transactionId);
+        return followUpResponse(paymentService.refundPayment(transactionId, amountOf(request), terminalOf(request)));
+    }
+    
+    @PostMapping("/{transactionId}/void")
+    public ResponseEntity<PaymentResponse> voidPayment(@PathVariable String transactionId,
+                                                       @RequestBody(required = false) PaymentRequest request) {
+        log.info("Void endpoint called for transaction {}", transactionId);
+        return followUpResponse(paymentService.voidPayment(transactionId, amountOf(request), terminalOf(request)));
+    }
+    
+    @PostMapping("/{transactionId}/reversal")
+    public ResponseEntity<PaymentResponse> reversal(@PathVariable String transactionId,
+                                                    @RequestBody(required = false) PaymentRequest request) {
+        log.info("Reversal endpoint called for transaction {}", transactionId);
+        return followUpResponse(paymentService.reversePayment(transactionId, amountOf(request), terminalOf(request)));
+    }
+    
+    private static BigDecimal amountOf(PaymentRequest request) {
+        return request != null ? request.getAmount() : null;
+    }
+    
+    private static String terminalOf(PaymentRequest request) {
+        return request != null ? request.getTerminalId() : null;
+    }
+    
+    private ResponseEntity<PaymentResponse> followUpResponse(PaymentResponse response) {
+        if (response.getStatus() == PaymentStatus.FAILED) {
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.accepted().body(response);
+    }
+    
     @PostMapping("/login")
-    public ResponseEntity<String> login() {
+    public ResponseEntity<String> login(@RequestParam(required = false) String terminalId) {
         log.info("Login endpoint called");
         try {
-            paymentService.login();
+            paymentService.login(terminalId);
             return ResponseEntity.ok("Login successful");
         } catch (Exception e) {
             log.error("Login failed", e);
@@ -200,10 +283,10 @@ public class PaymentController {
     }
     
     @PostMapping("/start-session")
-    public ResponseEntity<String> startSession() {
+    public ResponseEntity<String> startSession(@RequestParam(required = false) String terminalId) {
         log.info("Start session endpoint called");
         try {
-            paymentService.startSession();
+            paymentService.startSession(terminalId);
             return ResponseEntity.ok("Session started successfully");
         } catch (Exception e) {
             log.error("Session start failed", e);
@@ -212,10 +295,10 @@ public class PaymentController {
     }
     
     @PostMapping("/end-session")
-    public ResponseEntity<String> endSession() {
+    public ResponseEntity<String> endSession(@RequestParam(required = false) String terminalId) {
         log.info("End session endpoint called");
         try {
-            paymentService.endSession();
+            paymentService.endSession(terminalId);
             return ResponseEntity.ok("Session ended successfully");
         } catch (Exception e) {
             log.error("Session end failed", e);
@@ -224,10 +307,10 @@ public class PaymentController {
     }
     
     @PostMapping("/teardown")
-    public ResponseEntity<String> tearDown() {
+    public ResponseEntity<String> tearDown(@RequestParam(required = false) String terminalId) {
         log.info("Teardown endpoint called");
         try {
-            paymentService.tearDown();
+            paymentService.tearDown(terminalId);
             return ResponseEntity.ok("Terminal connection torn down successfully");
         } catch (Exception e) {
             log.error("Teardown failed", e);
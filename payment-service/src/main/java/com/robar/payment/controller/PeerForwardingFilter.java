@@ -0,0 +1,204 @@
+package com.robar.payment.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.model.TerminalLease;
+import com.robar.payment.service.PeerForwarder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Sends requests for a terminal held by another node to that node.
+ *
+ * The terminal is taken from the terminalId query parameter or, for JSON
+ * bodies, the terminalId field. Without one, a request for a basket goes to
+ * the basket's terminal and any other request to the default terminal.
+ * Requests for a terminal this node holds, and requests a peer has already
+ * forwarded, are handled locally. A request only counts as forwarded if it
+ * carries the peer secret.
+ */
+@Component
+public class PeerForwardingFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(PeerForwardingFilter.class);
+    private static final String BASKETS_PATH = "/baskets/";
+    // Describe the connection to the peer, not the response
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding",
+            "te", "trailer", "upgrade", "proxy-authenticate", "content-length");
+
+    private final ClusterProperties clusterProperties;
+    private final PeerForwarder peerForwarder;
+    private final ObjectMapper objectMapper;
+
+    public PeerForwardingFilter(ClusterProperties clusterProperties, PeerForwarder peerForwarder, ObjectMapper objectMapper) {
+        this.clusterProperties = clusterProperties;
+        this.peerForwarder = peerForwarder;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !clusterProperties.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String forwardedBy = request.getHeader(PeerForwarder.FORWARDED_HEADER);
+        if (peerForwarder.isFromPeer(forwardedBy, request.getHeader(PeerForwarder.SECRET_HEADER))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (forwardedBy != null) {
+            log.warn("Request {} claims to be forwarded by {} without the peer secret, handling it like any other",
+                    request.getRequestURI(), forwardedBy);
+        }
+
+        String terminalId = request.getParameter("terminalId");
+        String basketId = basketIdFromPath(request);
+        byte[] body = null;
+        String contentType = request.getContentType();
+        if (terminalId == null && contentType != null && contentType.startsWith("application/json")) {
+            body = request.getInputStream().readAllBytes();
+            request = new CachedBodyRequest(request, body);
+            JsonNode json = parse(body);
+            terminalId = text(json, "terminalId");
+            if (basketId == null) {
+                basketId = text(json, "basketId");
+            }
+        }
+        if (terminalId == null && basketId != null) {
+            terminalId = peerForwarder.findBasketTerminal(basketId);
+        }
+        terminalId = peerForwarder.resolveTerminalId(terminalId);
+
+        if (peerForwarder.isFenced(terminalId)) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Lease on terminal " + terminalId + " could not be renewed, retry shortly");
+            return;
+        }
+        TerminalLease owner = peerForwarder.findRemoteOwner(terminalId);
+        if (owner == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (body == null) {
+            body = request.getInputStream().readAllBytes();
+        }
+        String pathAndQuery = request.getRequestURI() + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+        try {
+            ResponseEntity<byte[]> forwarded = peerForwarder.forward(owner, request.getMethod(), pathAndQuery, contentType, body);
+            response.setStatus(forwarded.getStatusCode().value());
+            forwarded.getHeaders().forEach((name, values) -> {
+                if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                    values.forEach(value -> response.addHeader(name, value));
+                }
+            });
+            if (forwarded.getBody() != null) {
+                response.getOutputStream().write(forwarded.getBody());
+            }
+        } catch (Exception e) {
+            log.error("Forwarding {} to node {} failed", pathAndQuery, owner.getOwnerNodeId(), e);
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY,
+                    "Terminal " + terminalId + " is held by node " + owner.getOwnerNodeId() + " which did not answer");
+        }
+    }
+
+    private JsonNode parse(byte[] body) {
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return null; // Not ours to reject - the controller reports the bad body
+        }
+    }
+
+    private static String text(JsonNode json, String field) {
+        JsonNode node = json != null ? json.get(field) : null;
+        return node != null && node.isTextual() ? node.asText() : null;
+    }
+
+    // The basket of a /baskets/{basketId}/... request
+    private static String basketIdFromPath(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(BASKETS_PATH) || path.length() == BASKETS_PATH.length()) {
+            return null;
+        }
+        int end = path.indexOf('/', BASKETS_PATH.length());
+        return path.substring(BASKETS_PATH.length(), end < 0 ? path.length() : end);
+    }
+
+    // Lets the body read here be read again by the controller
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    // The whole body is already in memory, so it is available right away
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.model.ReceiptFormat;
+import com.robar.payment.service.ReceiptService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/receipts")
+public class ReceiptController {
+    private static final Logger log = LoggerFactory.getLogger(ReceiptController.class);
+
+    private final ReceiptService receiptService;
+
+    public ReceiptController(ReceiptService receiptService) {
+        this.receiptService = receiptService;
+    }
+
+    @GetMapping("/{transactionId}")
+    public ResponseEntity<byte[]> getReceipt(
+            @PathVariable String transactionId,
+            @RequestParam(defaultValue = "text") String format,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        ReceiptFormat receiptFormat;
+        try {
+            receiptFormat = ReceiptFormat.fromString(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String hash = receiptService.getReceiptHash(transactionId, receiptFormat);
+        if (hash == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // Receipts are immutable once rendered, so the content hash is a strong validator
+        String etag = "\"" + hash + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+
+        try {
+            byte[] content = receiptService.readReceipt(hash);
+            if (content == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .contentType(MediaType.parseMediaType(receiptFormat.getContentType()))
+                    .body(content);
+        } catch (IOException e) {
+            log.error("Error reading receipt for transaction {}", transactionId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
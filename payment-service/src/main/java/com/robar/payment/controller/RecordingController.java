@@ -0,0 +1,106 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.model.ReplayReport;
+import com.robar.payment.service.RecordingReplayService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@RestController
+@RequestMapping("/recordings")
+public class RecordingController {
+    private static final Logger log = LoggerFactory.getLogger(RecordingController.class);
+    private static final Pattern RECORDING_NAME = Pattern.compile("[A-Za-z0-9._-]+\\.sdklog");
+
+    private final RecordingProperties properties;
+    private final RecordingReplayService replayService;
+
+    public RecordingController(RecordingProperties properties, RecordingReplayService replayService) {
+        this.properties = properties;
+        this.replayService = replayService;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> listRecordings() throws IOException {
+        List<Map<String, Object>> recordings = new ArrayList<>();
+        Path directory = Paths.get(properties.getDirectory());
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+                    if (RECORDING_NAME.matcher(file.getFileName().toString()).matches()) {
+                        Map<String, Object> entry = new LinkedHashMap<>();
+                        entry.put("name", file.getFileName().toString());
+                        entry.put("bytes", Files.size(file));
+                        recordings.add(entry);
+                    }
+                }
+            }
+        }
+        return ResponseEntity.ok(recordings);
+    }
+
+    /**
+     * Starts replaying a recording into a fresh listener with no terminal or host
+     * behind it. Published events are only counted unless live=true, which sends
+     * them into the running application marked as replayed. Answers 202 with the
+     * replay id; the report is fetched from /recordings/replays/{replayId}.
+     */
+    @PostMapping("/{name}/replay")
+    public ResponseEntity<Map<String, String>> replay(@PathVariable String name,
+                                                      @RequestParam(defaultValue = "fast") String speed,
+                                                      @RequestParam(defaultValue = "false") boolean live) {
+        if (!RECORDING_NAME.matcher(name).matches()) {
+            return ResponseEntity.badRequest().build();
+        }
+        Path file = Paths.get(properties.getDirectory()).resolve(name);
+        if (!Files.isRegularFile(file)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String replayId = replayService.start(file, "original".equalsIgnoreCase(speed), live);
+        log.info("Replay {} of {} queued", replayId, name);
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/recordings/replays/" + replayId)
+                .body(Map.of("replayId", replayId));
+    }
+
+    /**
+     * The report of a finished replay, 202 while it is still running.
+     */
+    @GetMapping("/replays/{replayId}")
+    public ResponseEntity<ReplayReport> getReplay(@PathVariable String replayId) {
+        CompletableFuture<ReplayReport> replay = replayService.get(replayId);
+        if (replay == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!replay.isDone()) {
+            return ResponseEntity.accepted().build();
+        }
+        try {
+            return ResponseEntity.ok(replay.join());
+        } catch (CompletionException e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
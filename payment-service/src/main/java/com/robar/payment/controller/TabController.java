@@ -0,0 +1,98 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.model.OpenTabRequest;
+import com.robar.payment.model.TabCloseReport;
+import com.robar.payment.model.TabSummary;
+import com.robar.payment.service.TabService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+@RestController
+@RequestMapping("/tabs")
+public class TabController {
+    private static final Logger log = LoggerFactory.getLogger(TabController.class);
+
+    private final TabService tabService;
+
+    public TabController(TabService tabService) {
+        this.tabService = tabService;
+    }
+
+    @PostMapping
+    public ResponseEntity<TabSummary> openTab(@RequestBody OpenTabRequest request) {
+        log.info("Open tab endpoint called for terminal {}", request.getTerminalId());
+        try {
+            return ResponseEntity.ok(tabService.openTab(request));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.warn("Could not open tab: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<List<TabSummary>> getTabs(@RequestParam(required = false) String venueId) {
+        return ResponseEntity.ok(tabService.getTabs(venueId));
+    }
+
+    @GetMapping("/{tabId}")
+    public ResponseEntity<TabSummary> getTab(@PathVariable String tabId) {
+        try {
+            return ResponseEntity.ok(tabService.getTab(tabId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/{tabId}/rounds")
+    public ResponseEntity<TabSummary> addRound(@PathVariable String tabId, @RequestBody Map<String, BigDecimal> body) {
+        BigDecimal amount = body.get("amount");
+        if (!isPositive(amount)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return update(() -> tabService.addRound(tabId, amount));
+    }
+
+    @PostMapping("/{tabId}/tip")
+    public ResponseEntity<TabSummary> setTip(@PathVariable String tabId, @RequestBody Map<String, BigDecimal> body) {
+        BigDecimal amount = body.get("amount");
+        if (!isPositive(amount)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return update(() -> tabService.setTip(tabId, amount));
+    }
+
+    @PostMapping("/{tabId}/close")
+    public ResponseEntity<TabSummary> closeTab(@PathVariable String tabId) {
+        return update(() -> tabService.closeTab(tabId));
+    }
+
+    // Closing time - captures all open tabs of the venue in one run
+    @PostMapping("/close-all")
+    public ResponseEntity<TabCloseReport> closeAll(@RequestParam(required = false) String venueId) {
+        log.info("Close all tabs endpoint called for venue {}", venueId);
+        return ResponseEntity.ok(tabService.closeAll(venueId));
+    }
+
+    private static boolean isPositive(BigDecimal amount) {
+        return amount != null && amount.signum() > 0;
+    }
+
+    private ResponseEntity<TabSummary> update(Supplier<TabSummary> action) {
+        try {
+            return ResponseEntity.ok(action.get());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            log.warn("Tab update rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+}
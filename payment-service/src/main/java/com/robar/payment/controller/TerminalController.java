@@ -0,0 +1,126 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TerminalLease;
+import com.robar.payment.model.TerminalState;
+import com.robar.payment.service.TerminalConfigReloader;
+import com.robar.payment.service.TerminalConnection;
+import com.robar.payment.service.TerminalOwnershipManager;
+import com.robar.payment.service.TerminalRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/terminals")
+public class TerminalController {
+    private static final Logger log = LoggerFactory.getLogger(TerminalController.class);
+
+    private final TerminalRegistry terminalRegistry;
+    private final TerminalConfigReloader configReloader;
+    private final TerminalOwnershipManager ownershipManager;
+
+    public TerminalController(TerminalRegistry terminalRegistry, TerminalConfigReloader configReloader,
+                              TerminalOwnershipManager ownershipManager) {
+        this.terminalRegistry = terminalRegistry;
+        this.configReloader = configReloader;
+        this.ownershipManager = ownershipManager;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> listTerminals() {
+        List<Map<String, Object>> terminals = new ArrayList<>();
+        for (TerminalConnection terminal : terminalRegistry.getAll()) {
+            TerminalDefinition definition = terminal.getDefinition();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("terminalId", definition.getTerminalId());
+            entry.put("venueId", definition.getVenueId());
+            entry.put("address", definition.getAddress());
+            entry.put("connectionType", definition.getConnectionType());
+            entry.put("currency", definition.getCurrency());
+            entry.put("initStrategy", definition.getInitStrategy());
+            entry.put("state", terminal.getState());
+            terminals.add(entry);
+        }
+        return ResponseEntity.ok(terminals);
+    }
+
+    @GetMapping("/readiness")
+    public ResponseEntity<Map<String, Object>> readiness() {
+        Map<String, Object> states = new LinkedHashMap<>();
+        int ready = 0;
+        for (TerminalConnection terminal : terminalRegistry.getAll()) {
+            states.put(terminal.getTerminalId(), terminal.getState());
+            if (terminal.getState() == TerminalState.READY) {
+                ready++;
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("ready", ready);
+        response.put("total", states.size());
+        response.put("terminals", states);
+        return ResponseEntity.ok(response);
+    }
+
+    // Per-terminal probe: 200 once the terminal is usable, 503 until then
+    @GetMapping("/{terminalId}/readiness")
+    public ResponseEntity<Map<String, Object>> terminalReadiness(@PathVariable String terminalId) {
+        TerminalConnection terminal = terminalRegistry.get(terminalId);
+        if (terminal == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("terminalId", terminalId);
+        response.put("state", terminal.getState());
+        HttpStatus status = terminal.getState() == TerminalState.READY ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(response);
+    }
+
+    // Which node holds which terminal, as last seen by this node
+    @GetMapping("/ownership")
+    public ResponseEntity<Map<String, Object>> ownership() {
+        Map<String, Object> owners = new LinkedHashMap<>();
+        for (TerminalConnection terminal : terminalRegistry.getAll()) {
+            TerminalLease lease = ownershipManager.getLeases().get(terminal.getTerminalId());
+            owners.put(terminal.getTerminalId(), ownershipManager.isLocal(terminal.getTerminalId())
+                    ? ownershipManager.getSelf().getNodeId()
+                    : lease != null ? lease.getOwnerNodeId() : null);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("node", ownershipManager.getSelf().getNodeId());
+        response.put("terminals", owners);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reload() {
+        log.info("Terminal config reload endpoint called");
+        Map<String, Object> response = new HashMap<>();
+        try {
+            List<TerminalDefinition> definitions = configReloader.reload();
+            response.put("status", "reloaded");
+            response.put("terminals", definitions.size());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Terminal config reload failed", e);
+            response.put("status", "error");
+            response.put("message", "Terminal config reload failed: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+}
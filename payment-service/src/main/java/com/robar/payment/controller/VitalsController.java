@@ -0,0 +1,54 @@
+package com.robar.payment.controller;
+
+import com.robar.payment.model.VitalsAlert;
+import com.robar.payment.model.VitalsPoint;
+import com.robar.payment.model.VitalsResolution;
+import com.robar.payment.service.DeviceVitalsService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/vitals")
+public class VitalsController {
+    private final DeviceVitalsService vitalsService;
+
+    public VitalsController(DeviceVitalsService vitalsService) {
+        this.vitalsService = vitalsService;
+    }
+
+    // Latest values of every terminal plus the alerts currently raised
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> overview() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("terminals", vitalsService.getLatest());
+        response.put("alerts", vitalsService.getAlerts(null));
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/alerts")
+    public ResponseEntity<List<VitalsAlert>> alerts(@RequestParam(required = false) String terminalId) {
+        return ResponseEntity.ok(vitalsService.getAlerts(terminalId));
+    }
+
+    // points: raw samples, or minutes / hours to look back
+    @GetMapping("/{terminalId}")
+    public ResponseEntity<List<VitalsPoint>> history(@PathVariable String terminalId,
+                                                     @RequestParam(defaultValue = "MINUTE") String resolution,
+                                                     @RequestParam(defaultValue = "60") int points) {
+        VitalsResolution parsed;
+        try {
+            parsed = VitalsResolution.valueOf(resolution.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(vitalsService.getHistory(terminalId, parsed, points));
+    }
+}
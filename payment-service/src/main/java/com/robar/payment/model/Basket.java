@@ -0,0 +1,17 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+public class Basket {
+    private String basketId;
+    private String terminalId;
+    private List<BasketLineItem> items;
+    private BigDecimal total;
+    private int pendingChanges;
+}
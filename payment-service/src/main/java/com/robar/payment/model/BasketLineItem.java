@@ -0,0 +1,22 @@
+package com.robar.payment.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BasketLineItem {
+    private String lineId;
+    private String sku;
+    private String description;
+    private int quantity = 1;
+    private BigDecimal unitPrice;
+
+    public BigDecimal getLineTotal() {
+        return unitPrice == null ? BigDecimal.ZERO : unitPrice.multiply(BigDecimal.valueOf(quantity));
+    }
+}
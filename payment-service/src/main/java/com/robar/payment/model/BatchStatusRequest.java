@@ -0,0 +1,12 @@
+package com.robar.payment.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchStatusRequest {
+    private List<String> transactionIds;
+    // Terminal to ask about ids this service has no record of, default terminal when absent
+    private String terminalId;
+}
@@ -0,0 +1,21 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * What the back office knows about a card, looked up by its token. Never holds
+ * the card number itself.
+ */
+@Data
+@Builder(toBuilder = true)
+public class CardProfile {
+    private String cardToken;
+    private String loyaltyMemberId; // null when the card is not linked to a member
+    private BigDecimal discountPercent;
+    private boolean blocked;
+    private Instant lookedUpAt;
+}
@@ -0,0 +1,14 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class ClusterNode {
+    private String nodeId;
+    private String url;
+    private Instant expiresAt;
+}
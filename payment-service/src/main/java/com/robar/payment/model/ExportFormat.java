@@ -0,0 +1,30 @@
+package com.robar.payment.model;
+
+public enum ExportFormat {
+    CSV("text/csv;charset=UTF-8", "csv"),
+    // Row groups with one block per column, see ColumnarExportWriter
+    COLUMNAR("application/octet-stream", "rcol");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ExportFormat fromString(String value) {
+        if (value == null || value.isEmpty()) {
+            return CSV;
+        }
+        return ExportFormat.valueOf(value.trim().toUpperCase());
+    }
+}
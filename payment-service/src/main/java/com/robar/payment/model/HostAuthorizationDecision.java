@@ -0,0 +1,14 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class HostAuthorizationDecision {
+    private String reference;
+    private boolean approved;
+    private String authCode;
+    private boolean offline; // Approved locally under the floor limit, still to be forwarded
+    private String message;
+}
@@ -0,0 +1,65 @@
+package com.robar.payment.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Host authorization decision, online or offline.
+ */
+@Entity
+@Table(name = "host_authorization_log", indexes = {
+        @Index(name = "ix_host_authorization_decided", columnList = "decided_at"),
+        @Index(name = "ix_host_authorization_reference", columnList = "reference"),
+        @Index(name = "ix_host_authorization_venue_decided", columnList = "venue_id, decided_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class HostAuthorizationLog {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "host_authorization_log_seq")
+    @SequenceGenerator(name = "host_authorization_log_seq", sequenceName = "host_authorization_log_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String reference;
+
+    @Column(name = "terminal_id", length = 64)
+    private String terminalId;
+
+    // Venue the terminal belonged to when the row was written
+    @Column(name = "venue_id", length = 64)
+    private String venueId;
+
+    // At the scale of the currency (MinorUnits.scaled), the column fits every ISO currency
+    @Column(precision = 18, scale = 4)
+    private BigDecimal amount;
+
+    @Column(length = 3)
+    private String currency;
+
+    private boolean approved;
+
+    private boolean offline;
+
+    @Column(name = "auth_code", length = 16)
+    private String authCode;
+
+    @Column(length = 512)
+    private String message;
+
+    @Column(name = "decided_at", nullable = false)
+    private Instant decidedAt;
+}
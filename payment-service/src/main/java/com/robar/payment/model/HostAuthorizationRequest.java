@@ -0,0 +1,21 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Builder
+public class HostAuthorizationRequest {
+    private String reference;
+    private String terminalId;
+    private BigDecimal amount;
+    private String currency;
+    private Instant timestamp;
+    // From the card prefetch, when the card was read in time
+    private String cardToken;
+    private String loyaltyMemberId;
+    private BigDecimal discountPercent;
+}
@@ -0,0 +1,8 @@
+package com.robar.payment.model;
+
+public enum InitStrategy {
+    ENHANCED, // First-time connection parameters, falls back to BASIC
+    BASIC,    // Address and connection type only
+    SERVER,   // Terminal connects to us
+    DIRECT    // Minimal configuration, no fallback
+}
@@ -0,0 +1,24 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A locally approved authorization waiting to be forwarded to the host.
+ */
+@Data
+@Builder(toBuilder = true)
+public class OfflineAuthorization {
+    private String reference;
+    private String terminalId;
+    private BigDecimal amount;
+    private String currency;
+    private String authCode;
+    private Instant createdAt;
+    private boolean finalized;
+    // The online request timed out, so the host may already hold this authorization
+    private boolean pendingOnline;
+}
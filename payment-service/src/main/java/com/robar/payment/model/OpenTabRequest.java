@@ -0,0 +1,13 @@
+package com.robar.payment.model;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class OpenTabRequest {
+    private String terminalId;
+    private String venueId;
+    private String name; // Name shown to bar staff, e.g. the customer's first name
+    private BigDecimal preAuthAmount; // Optional - defaults to robar.tabs.default-pre-auth-amount
+}
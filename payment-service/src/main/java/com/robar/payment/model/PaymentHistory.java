@@ -0,0 +1,73 @@
+package com.robar.payment.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Result of a payment as reported by the terminal, one row per result.
+ */
+@Entity
+@Table(name = "payment_history", indexes = {
+        @Index(name = "ix_payment_history_completed", columnList = "completed_at"),
+        @Index(name = "ix_payment_history_terminal", columnList = "terminal_id, completed_at"),
+        @Index(name = "ix_payment_history_transaction", columnList = "transaction_id"),
+        @Index(name = "ix_payment_history_venue_completed", columnList = "venue_id, completed_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class PaymentHistory {
+    // Sequence ids with a block size, so Hibernate can batch the inserts
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_history_seq")
+    @SequenceGenerator(name = "payment_history_seq", sequenceName = "payment_history_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "transaction_id", nullable = false, length = 64)
+    private String transactionId;
+
+    @Column(name = "terminal_id", length = 64)
+    private String terminalId;
+
+    // Venue the terminal belonged to when the row was written
+    @Column(name = "venue_id", length = 64)
+    private String venueId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private TransactionKind kind;
+
+    @Column(name = "original_transaction_id", length = 64)
+    private String originalTransactionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private PaymentStatus status;
+
+    // At the scale of the currency (MinorUnits.scaled), the column fits every ISO currency
+    @Column(precision = 18, scale = 4)
+    private BigDecimal amount;
+
+    @Column(length = 3)
+    private String currency;
+
+    @Column(length = 512)
+    private String message;
+
+    @Column(name = "completed_at", nullable = false)
+    private Instant completedAt;
+}
@@ -6,6 +6,8 @@ import java.math.BigDecimal;
 @Data
 public class PaymentRequest {
     private BigDecimal amount;
-    private String currency = "DKK";
+    private String currency; // Optional - defaults to the terminal currency (DKK)
     private PaymentType paymentType = PaymentType.CARD; // Default to card payment
+    private String terminalId; // Optional - defaults to the first configured terminal
+    private String basketId; // Optional - basket built up front via /baskets, total used if amount is empty
 }   
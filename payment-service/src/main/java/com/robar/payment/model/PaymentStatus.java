@@ -5,5 +5,9 @@ public enum PaymentStatus {
     PROCESSING,
     COMPLETED,
     FAILED,
-    CANCELLED
+    CANCELLED,
+    PARTLY_REFUNDED,
+    REFUNDED,
+    VOIDED,
+    REVERSED
 }
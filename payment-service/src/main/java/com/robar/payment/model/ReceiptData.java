@@ -0,0 +1,23 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Receipt content captured from the terminal events for a single transaction.
+ * Immutable once captured - rendering happens later on the receipt executor.
+ */
+@Data
+@Builder
+public class ReceiptData {
+    private String transactionId;
+    private PaymentStatus status;
+    private String amount;
+    private String currency;
+    private String deliveryMethod;
+    private Instant timestamp;
+    private List<String> lines;
+}
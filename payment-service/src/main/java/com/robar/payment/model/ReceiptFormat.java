@@ -0,0 +1,30 @@
+package com.robar.payment.model;
+
+public enum ReceiptFormat {
+    TEXT("text/plain;charset=UTF-8", "txt"),
+    HTML("text/html;charset=UTF-8", "html"),
+    ESCPOS("application/octet-stream", "bin");
+
+    private final String contentType;
+    private final String extension;
+
+    ReceiptFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ReceiptFormat fromString(String value) {
+        if (value == null || value.isEmpty()) {
+            return TEXT;
+        }
+        return ReceiptFormat.valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,21 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class ReplayReport {
+    private String recording;
+    private String terminalId;
+    private boolean originalSpeed;
+    private long events;
+    private long recordedDurationMicros;
+    private long replayDurationMicros;
+    // Slowest single callback while replaying
+    private long maxCallbackMicros;
+    // Application events published by the listener, by type
+    private Map<String, Integer> publishedEvents;
+}
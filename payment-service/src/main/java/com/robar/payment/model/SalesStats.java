@@ -0,0 +1,25 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Builder
+public class SalesStats {
+    private String terminalId; // null for all terminals
+    private String currency;
+    private Instant from;
+    private Instant to;
+    private long transactions;
+    private long approved;
+    private long declined;
+    private double approvalRate;
+    private BigDecimal revenue;
+    private BigDecimal averageTicket;
+    private long refunds;
+    private BigDecimal refunded;
+    private BigDecimal netRevenue;
+}
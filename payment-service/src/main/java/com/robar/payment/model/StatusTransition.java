@@ -0,0 +1,63 @@
+package com.robar.payment.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Every status a transaction went through, including refunds, voids and reversals.
+ */
+@Entity
+@Table(name = "status_transition", indexes = {
+        @Index(name = "ix_status_transition_transaction", columnList = "transaction_id, occurred_at"),
+        @Index(name = "ix_status_transition_venue_occurred", columnList = "venue_id, occurred_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class StatusTransition {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "status_transition_seq")
+    @SequenceGenerator(name = "status_transition_seq", sequenceName = "status_transition_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "transaction_id", nullable = false, length = 64)
+    private String transactionId;
+
+    @Column(name = "terminal_id", length = 64)
+    private String terminalId;
+
+    // Venue the terminal belonged to when the row was written
+    @Column(name = "venue_id", length = 64)
+    private String venueId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private PaymentStatus status;
+
+    // At the scale of the currency (MinorUnits.scaled), the column fits every ISO currency
+    @Column(precision = 18, scale = 4)
+    private BigDecimal amount;
+
+    @Column(length = 3)
+    private String currency;
+
+    @Column(length = 512)
+    private String message;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+}
@@ -0,0 +1,17 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+public class TabCloseReport {
+    private int captured;
+    private int failed;
+    private BigDecimal capturedTotal;
+    private long durationMs;
+    private List<TabSummary> failures;
+}
@@ -0,0 +1,10 @@
+package com.robar.payment.model;
+
+public enum TabState {
+    AUTHORIZING, // Waiting for the card pre-authorization
+    OPEN,
+    CAPTURING,
+    CAPTURED,
+    FAILED,
+    CANCELLED
+}
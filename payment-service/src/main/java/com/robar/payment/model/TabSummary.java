@@ -0,0 +1,24 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Builder
+public class TabSummary {
+    private String tabId;
+    private String name;
+    private String venueId;
+    private String terminalId;
+    private String transactionId;
+    private TabState state;
+    private BigDecimal authorized;
+    private BigDecimal consumed;
+    private BigDecimal tip;
+    private int rounds;
+    private Instant openedAt;
+    private String message;
+}
@@ -0,0 +1,19 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Resolved configuration of one terminal. Two definitions are equal exactly
+ * when a running connection can be kept as it is on config reload.
+ */
+@Data
+@Builder
+public class TerminalDefinition {
+    private String venueId;
+    private String terminalId;
+    private String address;
+    private String connectionType;
+    private String currency;
+    private InitStrategy initStrategy;
+}
@@ -0,0 +1,19 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class TerminalLease {
+    private String terminalId;
+    private String ownerNodeId;
+    private String ownerUrl;
+    private Instant expiresAt;
+
+    public boolean isExpired(Instant now) {
+        return expiresAt == null || !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,9 @@
+package com.robar.payment.model;
+
+public enum TerminalState {
+    DISCONNECTED,
+    CONNECTING,
+    READY,
+    DRAINING,
+    FAILED
+}
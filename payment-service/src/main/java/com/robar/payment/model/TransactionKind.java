@@ -0,0 +1,14 @@
+package com.robar.payment.model;
+
+/**
+ * What a terminal transaction did, as reported with its result.
+ */
+public enum TransactionKind {
+    SALE,
+    PREAUTHORIZATION,
+    INCREMENT,
+    CAPTURE,
+    REFUND,
+    VOID,
+    REVERSAL
+}
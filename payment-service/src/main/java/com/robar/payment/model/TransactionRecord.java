@@ -0,0 +1,24 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Builder(toBuilder = true)
+public class TransactionRecord {
+    private String transactionId;
+    private String terminalId;
+    private TransactionKind kind;
+    private PaymentStatus status;
+    private String message;
+    private BigDecimal amount;
+    private String currency;
+    // Confirmed by the terminal
+    private BigDecimal refundedAmount;
+    // Queued or running on the terminal, not confirmed yet
+    private BigDecimal pendingRefundAmount;
+    private Instant updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class VitalsAlert {
+    private String terminalId;
+    private VitalsMetric metric;
+    private String condition; // "below" or "above" the threshold
+    private float threshold;
+    private float value;
+    private Instant since;
+}
@@ -0,0 +1,12 @@
+package com.robar.payment.model;
+
+/**
+ * Device vitals kept per terminal. Flags (network, scanner) are stored as 1 or 0.
+ */
+public enum VitalsMetric {
+    BATTERY_PERCENT,
+    TEMPERATURE_CELSIUS,
+    SIGNAL_DBM,
+    NETWORK_UP,
+    SCANNER_READY
+}
@@ -0,0 +1,22 @@
+package com.robar.payment.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A vitals sample, or the aggregate of the samples in a minute or hour. Metrics
+ * the terminal did not report in that period are left out.
+ */
+@Data
+@Builder
+public class VitalsPoint {
+    private Instant from;
+    private Instant to; // same as from for a raw sample
+    private int samples;
+    private Map<VitalsMetric, Float> average;
+    private Map<VitalsMetric, Float> min; // null for a raw sample
+    private Map<VitalsMetric, Float> max;
+}
@@ -0,0 +1,7 @@
+package com.robar.payment.model;
+
+public enum VitalsResolution {
+    RAW,
+    MINUTE,
+    HOUR
+}
@@ -0,0 +1,12 @@
+package com.robar.payment.repository;
+
+import com.robar.payment.model.HostAuthorizationLog;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+
+public interface HostAuthorizationLogRepository extends JpaRepository<HostAuthorizationLog, Long> {
+    Page<HostAuthorizationLog> findByDecidedAtBetween(Instant from, Instant to, Pageable pageable);
+}
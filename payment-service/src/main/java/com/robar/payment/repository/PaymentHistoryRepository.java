@@ -0,0 +1,23 @@
+package com.robar.payment.repository;
+
+import com.robar.payment.model.PaymentHistory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface PaymentHistoryRepository extends JpaRepository<PaymentHistory, Long> {
+    Page<PaymentHistory> findByCompletedAtBetween(Instant from, Instant to, Pageable pageable);
+
+    Page<PaymentHistory> findByTerminalIdAndCompletedAtBetween(String terminalId, Instant from, Instant to, Pageable pageable);
+
+    List<PaymentHistory> findByTransactionIdOrderByCompletedAtAsc(String transactionId);
+
+    List<PaymentHistory> findByTransactionIdIn(Collection<String> transactionIds);
+
+    // Refunds, voids and reversals run against the transaction
+    List<PaymentHistory> findByOriginalTransactionId(String originalTransactionId);
+}
@@ -0,0 +1,13 @@
+package com.robar.payment.repository;
+
+import com.robar.payment.model.StatusTransition;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface StatusTransitionRepository extends JpaRepository<StatusTransition, Long> {
+    List<StatusTransition> findByTransactionIdOrderByOccurredAtAsc(String transactionId);
+
+    List<StatusTransition> findByTransactionIdIn(Collection<String> transactionIds);
+}
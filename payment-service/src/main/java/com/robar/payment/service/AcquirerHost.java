@@ -0,0 +1,28 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationRequest;
+import com.robar.payment.model.OfflineAuthorization;
+
+import java.util.List;
+
+/**
+ * Upstream authorization host.
+ */
+public interface AcquirerHost {
+    HostAuthorizationDecision authorize(HostAuthorizationRequest request) throws Exception;
+
+    boolean isAvailable();
+
+    /**
+     * Whether the host holds an authorization for the reference. Used before
+     * forwarding an offline approval whose online request timed out, since the
+     * host may have approved it after all.
+     */
+    boolean hasAuthorization(String reference) throws Exception;
+
+    /**
+     * Forwards a batch of offline approvals and returns the references the host accepted.
+     */
+    List<String> submitOffline(List<OfflineAuthorization> batch) throws Exception;
+}
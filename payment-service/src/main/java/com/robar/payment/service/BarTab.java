@@ -0,0 +1,181 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.TabState;
+import com.robar.payment.model.TabSummary;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+
+/**
+ * State of one open bar tab. Amounts are kept as minor units (1/100 DKK) in plain
+ * longs to keep hundreds of open tabs per venue cheap; all changes go through
+ * the tab's monitor.
+ */
+public class BarTab {
+    private final String tabId;
+    private final String name;
+    private final String venueId;
+    private final String terminalId;
+    private final long openedAtMillis;
+
+    private String transactionId;
+    private TabState state = TabState.AUTHORIZING;
+    private long authorizedMinor;
+    private long consumedMinor;
+    private long tipMinor;
+    private int rounds;
+    private String message;
+    // Authorization increase sent to the terminal and not answered yet
+    private long pendingIncrementMinor;
+    // Consumption, tip and rounds the confirmed authorization covered last
+    private long coveredConsumedMinor;
+    private long coveredTipMinor;
+    private int coveredRounds;
+
+    public BarTab(String tabId, String name, String venueId, String terminalId) {
+        this.tabId = tabId;
+        this.name = name;
+        this.venueId = venueId;
+        this.terminalId = terminalId;
+        this.openedAtMillis = System.currentTimeMillis();
+    }
+
+    public String getTabId() {
+        return tabId;
+    }
+
+    public String getVenueId() {
+        return venueId;
+    }
+
+    public String getTerminalId() {
+        return terminalId;
+    }
+
+    public synchronized String getTransactionId() {
+        return transactionId;
+    }
+
+    public synchronized TabState getState() {
+        return state;
+    }
+
+    public synchronized void authorized(String transactionId, long amountMinor) {
+        this.transactionId = transactionId;
+        this.authorizedMinor = amountMinor;
+        this.state = TabState.OPEN;
+        this.message = null;
+        markCoveredIfWithinAuthorization();
+    }
+
+    public synchronized void fail(String message) {
+        this.state = TabState.FAILED;
+        this.message = message;
+    }
+
+    public synchronized void transition(TabState state, String message) {
+        this.state = state;
+        this.message = message;
+    }
+
+    public synchronized void addRound(long amountMinor) {
+        consumedMinor += amountMinor;
+        rounds++;
+    }
+
+    /**
+     * Reserves an authorization increase if consumption and tip exceed the
+     * authorization and no increase is pending yet.
+     *
+     * @return the increase to request from the terminal, 0 if none is needed now
+     */
+    public synchronized long requestIncrement(long minimumMinor) {
+        if (markCoveredIfWithinAuthorization() || state != TabState.OPEN || pendingIncrementMinor > 0) {
+            return 0;
+        }
+        pendingIncrementMinor = Math.max(getShortfallMinor(), minimumMinor);
+        message = "Authorization increase of " + fromMinor(pendingIncrementMinor) + " requested";
+        return pendingIncrementMinor;
+    }
+
+    public synchronized void incrementConfirmed() {
+        authorizedMinor += pendingIncrementMinor;
+        pendingIncrementMinor = 0;
+        message = null;
+        markCoveredIfWithinAuthorization();
+    }
+
+    /**
+     * Rolls back every round and tip change the authorization does not cover,
+     * so the tab stays within what the card is authorized for.
+     */
+    public synchronized void incrementDeclined(String reason) {
+        pendingIncrementMinor = 0;
+        long removedMinor = consumedMinor - coveredConsumedMinor;
+        int removedRounds = rounds - coveredRounds;
+        consumedMinor = coveredConsumedMinor;
+        tipMinor = coveredTipMinor;
+        rounds = coveredRounds;
+        message = reason + " - " + removedRounds + " rounds (" + fromMinor(removedMinor)
+                + ") and tip changes since then were taken off the tab, settle them separately";
+    }
+
+    public synchronized long getPendingIncrementMinor() {
+        return pendingIncrementMinor;
+    }
+
+    private boolean markCoveredIfWithinAuthorization() {
+        if (getShortfallMinor() > 0) {
+            return false;
+        }
+        coveredConsumedMinor = consumedMinor;
+        coveredTipMinor = tipMinor;
+        coveredRounds = rounds;
+        return true;
+    }
+
+    public synchronized void setTipMinor(long tipMinor) {
+        this.tipMinor = tipMinor;
+    }
+
+    public synchronized long getTipMinor() {
+        return tipMinor;
+    }
+
+    public synchronized long getConsumedMinor() {
+        return consumedMinor;
+    }
+
+    /**
+     * Amount missing from the authorization to cover consumption and tip.
+     */
+    public synchronized long getShortfallMinor() {
+        return consumedMinor + tipMinor - authorizedMinor;
+    }
+
+    public synchronized TabSummary toSummary() {
+        return TabSummary.builder()
+                .tabId(tabId)
+                .name(name)
+                .venueId(venueId)
+                .terminalId(terminalId)
+                .transactionId(transactionId)
+                .state(state)
+                .authorized(fromMinor(authorizedMinor))
+                .consumed(fromMinor(consumedMinor))
+                .tip(fromMinor(tipMinor))
+                .rounds(rounds)
+                .openedAt(Instant.ofEpochMilli(openedAtMillis))
+                .message(message)
+                .build();
+    }
+
+    public static long toMinor(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromMinor(long minor) {
+        return BigDecimal.valueOf(minor, 2);
+    }
+}
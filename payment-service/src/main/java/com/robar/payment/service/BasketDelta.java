@@ -0,0 +1,29 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.BasketLineItem;
+import lombok.Getter;
+
+/**
+ * A single coalesced change to be applied to the basket shown on a terminal.
+ */
+@Getter
+public class BasketDelta {
+    public enum Type {
+        ADD,
+        REMOVE,
+        UPDATE
+    }
+
+    private final Type type;
+    private final BasketLineItem item;
+
+    public BasketDelta(Type type, BasketLineItem item) {
+        this.type = type;
+        this.item = item;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + item.getLineId();
+    }
+}
@@ -0,0 +1,16 @@
+package com.robar.payment.service;
+
+import lombok.Getter;
+
+@Getter
+public class BasketStatusEvent {
+    private final String terminalId;
+    private final int status;
+    private final String message;
+
+    public BasketStatusEvent(String terminalId, int status, String message) {
+        this.terminalId = terminalId;
+        this.status = status;
+        this.message = message;
+    }
+}
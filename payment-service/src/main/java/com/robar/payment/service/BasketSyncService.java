@@ -0,0 +1,255 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.BasketProperties;
+import com.robar.payment.model.Basket;
+import com.robar.payment.model.BasketLineItem;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the basket shown on the terminal in sync with the order being built on the till.
+ *
+ * Line item changes are collected per basket and pushed after a short delay as
+ * coalesced deltas, so by the time the customer pays the terminal already holds
+ * the full basket and checkout only has to finalize it.
+ *
+ * Changes are queued on the terminal's lane like its transactions, so they
+ * reach the terminal in order with the sale that finalizes the basket.
+ */
+@Slf4j
+@Service
+public class BasketSyncService {
+    // Key used for baskets that are not bound to a specific terminal
+    private static final String DEFAULT_TERMINAL = "default";
+    // Resyncs in a row without an accepted change before giving up on a terminal
+    private static final int MAX_CONSECUTIVE_RESYNCS = 3;
+
+    // Interface for pushing basket changes to a terminal; the future completes once the terminal took them
+    public interface BasketSink {
+        CompletableFuture<Void> apply(String terminalId, List<BasketDelta> deltas);
+    }
+
+    private final BasketProperties properties;
+    private final Map<String, TerminalBasket> baskets = new ConcurrentHashMap<>();
+    private final Map<String, String> activeBasketByTerminal = new ConcurrentHashMap<>();
+    private final Set<String> scheduledFlushes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Object> terminalLocks = new ConcurrentHashMap<>();
+    private final Map<String, Integer> resyncsByTerminal = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile BasketSink basketSink;
+
+    public BasketSyncService(BasketProperties properties) {
+        this.properties = properties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Basket-Sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMs = Math.max(10, Math.min(properties.getAbandonedAfterMs(), 60000));
+        scheduler.scheduleWithFixedDelay(this::expireAbandonedSafely, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void setBasketSink(BasketSink basketSink) {
+        this.basketSink = basketSink;
+        log.info("Basket sink set in basket sync service");
+    }
+
+    public Basket addItem(String basketId, String terminalId, BasketLineItem item) {
+        if (item.getUnitPrice() == null || item.getQuantity() <= 0) {
+            throw new IllegalArgumentException("Line item needs a unit price and a positive quantity");
+        }
+        if (item.getLineId() == null || item.getLineId().isEmpty()) {
+            item.setLineId(UUID.randomUUID().toString());
+        }
+
+        TerminalBasket basket = baskets.computeIfAbsent(basketId,
+                id -> new TerminalBasket(id, terminalId != null ? terminalId : DEFAULT_TERMINAL));
+        basket.put(item);
+        scheduleFlush(basket);
+        return toModel(basket);
+    }
+
+    public Basket removeItem(String basketId, String lineId) {
+        TerminalBasket basket = requireBasket(basketId);
+        if (basket.remove(lineId)) {
+            scheduleFlush(basket);
+        }
+        return toModel(basket);
+    }
+
+    public Basket getBasket(String basketId) {
+        TerminalBasket basket = baskets.get(basketId);
+        return basket != null ? toModel(basket) : null;
+    }
+
+    /**
+     * Pushes any changes still pending ahead of the sale, which finalizes the
+     * basket on the terminal. Normally the basket is already in sync.
+     */
+    public Basket prepareCheckout(String basketId) {
+        TerminalBasket basket = requireBasket(basketId);
+        flush(basket);
+        return toModel(basket);
+    }
+
+    /**
+     * Drops the basket once its payment has been started or the order is abandoned.
+     */
+    public void closeBasket(String basketId) {
+        TerminalBasket basket = baskets.remove(basketId);
+        if (basket != null) {
+            activeBasketByTerminal.remove(basket.getTerminalId(), basketId);
+        }
+    }
+
+    /**
+     * Drops baskets the till has not changed within the configured time and
+     * clears them from the terminal if it still shows them. Returns the number dropped.
+     */
+    int expireAbandoned() {
+        long cutoff = System.currentTimeMillis() - properties.getAbandonedAfterMs();
+        int expired = 0;
+        for (TerminalBasket basket : baskets.values()) {
+            if (basket.getLastChanged() >= cutoff || !baskets.remove(basket.getBasketId(), basket)) {
+                continue;
+            }
+            expired++;
+            log.info("Dropping basket {} of terminal {}, unchanged for {} ms",
+                    basket.getBasketId(), basket.getTerminalId(), properties.getAbandonedAfterMs());
+            BasketSink sink = basketSink;
+            synchronized (terminalLock(basket.getTerminalId())) {
+                if (activeBasketByTerminal.remove(basket.getTerminalId(), basket.getBasketId()) && sink != null) {
+                    List<BasketDelta> deltas = basket.clearTerminal();
+                    if (!deltas.isEmpty()) {
+                        sink.apply(basket.getTerminalId(), deltas);
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void expireAbandonedSafely() {
+        try {
+            expireAbandoned();
+        } catch (Exception e) {
+            log.warn("Clearing abandoned baskets failed: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onBasketStatus(BasketStatusEvent event) {
+        String terminalId = event.getTerminalId();
+        if (terminalId == null) {
+            return;
+        }
+        if (event.getStatus() >= 0) {
+            resyncsByTerminal.remove(terminalId);
+            return;
+        }
+
+        int resyncs = resyncsByTerminal.merge(terminalId, 1, Integer::sum);
+        if (resyncs > MAX_CONSECUTIVE_RESYNCS) {
+            log.error("Terminal {} keeps rejecting basket changes ({}: {}), not resyncing again",
+                    terminalId, event.getStatus(), event.getMessage());
+            return;
+        }
+        // The terminal rejected a basket change - clear what it shows and resend its active basket
+        log.warn("Terminal {} reported basket error {}: {}, scheduling full resync",
+                terminalId, event.getStatus(), event.getMessage());
+        String basketId = activeBasketByTerminal.get(terminalId);
+        TerminalBasket basket = basketId != null ? baskets.get(basketId) : null;
+        if (basket != null) {
+            basket.markUnsynced();
+            scheduleFlush(basket);
+        }
+    }
+
+    private void scheduleFlush(TerminalBasket basket) {
+        if (scheduledFlushes.add(basket.getBasketId())) {
+            scheduler.schedule(() -> {
+                scheduledFlushes.remove(basket.getBasketId());
+                try {
+                    flush(basket);
+                } catch (Exception e) {
+                    log.warn("Basket sync failed for basket {}: {}", basket.getBasketId(), e.getMessage());
+                }
+            }, properties.getFlushDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(TerminalBasket basket) {
+        BasketSink sink = basketSink;
+        if (sink == null || !baskets.containsKey(basket.getBasketId())) {
+            return;
+        }
+
+        // The terminal shows one basket at a time - serialize flushes per terminal
+        synchronized (terminalLock(basket.getTerminalId())) {
+            String active = activeBasketByTerminal.put(basket.getTerminalId(), basket.getBasketId());
+            if (active != null && !active.equals(basket.getBasketId())) {
+                TerminalBasket previous = baskets.get(active);
+                if (previous != null) {
+                    sink.apply(basket.getTerminalId(), previous.clearTerminal());
+                }
+            }
+
+            List<BasketDelta> deltas = basket.drainDeltas();
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                sink.apply(basket.getTerminalId(), deltas).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        // Resent in full with the next change
+                        basket.markUnsynced();
+                        log.warn("Basket sync failed for basket {}: {}", basket.getBasketId(), error.getMessage());
+                    }
+                });
+                log.debug("Queued {} basket changes for basket {}", deltas.size(), basket.getBasketId());
+            } catch (RuntimeException e) {
+                basket.markUnsynced();
+                throw e;
+            }
+        }
+    }
+
+    private Object terminalLock(String terminalId) {
+        return terminalLocks.computeIfAbsent(terminalId, id -> new Object());
+    }
+
+    private TerminalBasket requireBasket(String basketId) {
+        TerminalBasket basket = baskets.get(basketId);
+        if (basket == null) {
+            throw new IllegalArgumentException("Unknown basket: " + basketId);
+        }
+        return basket;
+    }
+
+    private static Basket toModel(TerminalBasket basket) {
+        return Basket.builder()
+                .basketId(basket.getBasketId())
+                .terminalId(basket.getTerminalId())
+                .items(basket.items())
+                .total(basket.total())
+                .pendingChanges(basket.pendingChanges())
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,211 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.CardPrefetchProperties;
+import com.robar.payment.model.CardProfile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Looks up loyalty membership, discount and blocked status of a card while the
+ * customer is still at the terminal.
+ *
+ * The lookups start when the terminal reports the card, well before the amount
+ * is final and the host authorization comes in, and run in parallel. Results
+ * are cached by card token (bounded, least recently used dropped first), so a
+ * returning card needs no lookups at all. Host authorization and the POS then
+ * read the finished profile for the terminal instead of looking it up serially.
+ */
+@Slf4j
+@Service
+public class CardPrefetchService {
+    private final CardProfileBackend backend;
+    private final CardPrefetchProperties properties;
+    private final ExecutorService executor;
+    private final Map<String, CardProfile> cache;
+    private final Map<String, CompletableFuture<CardProfile>> inFlight = new ConcurrentHashMap<>();
+
+    // Card read on each terminal for the transaction in progress
+    private final Map<String, CompletableFuture<CardProfile>> paymentCards = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CardProfile>> loyaltyCards = new ConcurrentHashMap<>();
+
+    public CardPrefetchService(CardProfileBackend backend, CardPrefetchProperties properties) {
+        this.backend = backend;
+        this.properties = properties;
+        this.executor = Executors.newFixedThreadPool(Math.max(3, properties.getLookupThreads()), r -> {
+            Thread thread = new Thread(r, "Card-Lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int cacheSize = properties.getCacheSize();
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CardProfile> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @EventListener
+    public void onCardPresented(CardPresentedEvent event) {
+        if (!properties.isEnabled() || event.getCardToken() == null) {
+            return;
+        }
+        CompletableFuture<CardProfile> profile = prefetch(event.getCardToken());
+        (event.isLoyaltyCard() ? loyaltyCards : paymentCards).put(event.getTerminalId(), profile);
+    }
+
+    @EventListener
+    public void onPaymentStatus(PaymentStatusEvent event) {
+        // The terminal's transaction is over - the next one starts with a new card
+        if (event.getTerminalId() != null) {
+            paymentCards.remove(event.getTerminalId());
+            loyaltyCards.remove(event.getTerminalId());
+        }
+    }
+
+    @EventListener
+    public void onCustomerSession(CustomerSessionEvent event) {
+        // A new sale drops a card left over from before; a loyalty card scanned for it stays
+        paymentCards.remove(event.getTerminalId());
+        if (event.getType() != CustomerSessionEvent.Type.SALE_STARTING) {
+            loyaltyCards.remove(event.getTerminalId());
+        }
+    }
+
+    /**
+     * Profile from the cache, or lookups started for it. Concurrent calls for
+     * the same card share one set of lookups.
+     */
+    public CompletableFuture<CardProfile> prefetch(String cardToken) {
+        CardProfile cached = cached(cardToken);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<CardProfile> created = new CompletableFuture<>();
+        CompletableFuture<CardProfile> running = inFlight.putIfAbsent(cardToken, created);
+        if (running != null) {
+            return running;
+        }
+
+        AtomicBoolean complete = new AtomicBoolean(true);
+        CompletableFuture<String> member = lookup(() -> backend.findLoyaltyMember(cardToken), null, complete);
+        CompletableFuture<BigDecimal> discount = lookup(() -> backend.findDiscountPercent(cardToken), null, complete);
+        CompletableFuture<Boolean> blocked = lookup(() -> backend.isBlocked(cardToken), false, complete);
+        CompletableFuture.allOf(member, discount, blocked).whenComplete((ignored, error) -> {
+            CardProfile profile = CardProfile.builder()
+                    .cardToken(cardToken)
+                    .loyaltyMemberId(member.join())
+                    .discountPercent(discount.join())
+                    .blocked(blocked.join())
+                    .lookedUpAt(Instant.now())
+                    .build();
+            // Incomplete profiles are used for this transaction but looked up again next time
+            if (complete.get()) {
+                synchronized (cache) {
+                    cache.put(cardToken, profile);
+                }
+            }
+            inFlight.remove(cardToken, created);
+            created.complete(profile);
+        });
+        return created;
+    }
+
+    /**
+     * Profile of the card(s) read on the terminal for the current transaction,
+     * waiting up to {@code waitMs} for lookups still running. Null if no card
+     * was read or the lookups are not done in time.
+     */
+    public CardProfile getProfile(String terminalId, long waitMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        CardProfile card = await(paymentCards.get(terminalId), deadline);
+        CardProfile loyalty = await(loyaltyCards.get(terminalId), deadline);
+        if (card == null || loyalty == null) {
+            return card != null ? card : loyalty;
+        }
+        // Blocked status comes from the paying card, membership preferably from the loyalty card
+        return card.toBuilder()
+                .loyaltyMemberId(loyalty.getLoyaltyMemberId() != null ? loyalty.getLoyaltyMemberId() : card.getLoyaltyMemberId())
+                .discountPercent(loyalty.getDiscountPercent() != null ? loyalty.getDiscountPercent() : card.getDiscountPercent())
+                .build();
+    }
+
+    /**
+     * Profile for a host authorization - waits only as long as configured, so
+     * a slow backend never holds up the authorization.
+     */
+    public CardProfile getProfileForAuthorization(String terminalId) {
+        if (!properties.isEnabled() || terminalId == null) {
+            return null;
+        }
+        return getProfile(terminalId, properties.getAuthorizationWaitMs());
+    }
+
+    private <T> CompletableFuture<T> lookup(Callable<T> call, T fallback, AtomicBoolean complete) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return call.call();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, executor)
+                .orTimeout(properties.getLookupTimeoutMs(), TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    log.warn("Card lookup failed: {}", error.getMessage());
+                    complete.set(false);
+                    return fallback;
+                });
+    }
+
+    private CardProfile cached(String cardToken) {
+        synchronized (cache) {
+            CardProfile profile = cache.get(cardToken);
+            if (profile != null && profile.getLookedUpAt().plusMillis(properties.getCacheTtlMs()).isBefore(Instant.now())) {
+                cache.remove(cardToken);
+                return null;
+            }
+            return profile;
+        }
+    }
+
+    private static CardProfile await(CompletableFuture<CardProfile> profile, long deadline) {
+        if (profile == null) {
+            return null;
+        }
+        try {
+            return profile.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
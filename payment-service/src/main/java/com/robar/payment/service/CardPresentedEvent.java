@@ -0,0 +1,20 @@
+package com.robar.payment.service;
+
+import lombok.Getter;
+
+/**
+ * A card was read on a terminal, before authorization. Carries the card token
+ * only, never the card number.
+ */
+@Getter
+public class CardPresentedEvent {
+    private final String terminalId;
+    private final String cardToken;
+    private final boolean loyaltyCard; // scanned for loyalty only, not used to pay
+
+    public CardPresentedEvent(String terminalId, String cardToken, boolean loyaltyCard) {
+        this.terminalId = terminalId;
+        this.cardToken = cardToken;
+        this.loyaltyCard = loyaltyCard;
+    }
+}
@@ -0,0 +1,21 @@
+package com.robar.payment.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Back-office lookups for a card, by card token. Each lookup is called on its
+ * own thread so they run in parallel.
+ */
+public interface CardProfileBackend {
+    /**
+     * Loyalty member the card is linked to, or null.
+     */
+    String findLoyaltyMember(String cardToken) throws Exception;
+
+    /**
+     * Discount in percent for purchases with the card, or null for none.
+     */
+    BigDecimal findDiscountPercent(String cardToken) throws Exception;
+
+    boolean isBlocked(String cardToken) throws Exception;
+}
@@ -0,0 +1,67 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.CardPrefetchProperties;
+import com.robar.payment.config.ClusterProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Turns a card number (or payment account reference) into a stable token with
+ * a keyed hash. The card number is hashed on the callback thread and dropped;
+ * only the token is recorded, cached or published.
+ */
+@Slf4j
+@Component
+public class CardTokenizer {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public CardTokenizer(CardPrefetchProperties properties, ClusterProperties clusterProperties) {
+        byte[] secret;
+        if (properties.getTokenKey() != null && !properties.getTokenKey().isEmpty()) {
+            secret = Base64.getDecoder().decode(properties.getTokenKey());
+        } else if (!properties.getBlockedTokens().isEmpty()) {
+            // A random key would give every card a token that matches no blocked entry
+            throw new IllegalStateException("robar.card-prefetch.blocked-tokens needs robar.card-prefetch.token-key");
+        } else if (clusterProperties != null && clusterProperties.isEnabled()) {
+            // Each node would tokenize the same card differently
+            throw new IllegalStateException("robar.cluster.enabled needs robar.card-prefetch.token-key");
+        } else {
+            // A single node's cache does not survive a restart, so per-run tokens are enough there
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            log.info("No card token key configured, using a random key for this run");
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String tokenize(String cardNumber) {
+        if (cardNumber == null || cardNumber.isEmpty()) {
+            return null;
+        }
+        byte[] digest = macs.get().doFinal(cardNumber.trim().getBytes(StandardCharsets.US_ASCII));
+        // 128 bits are plenty to tell cards apart
+        return "ct_" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC not available", e);
+        }
+    }
+}
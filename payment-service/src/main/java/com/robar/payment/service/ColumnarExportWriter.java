@@ -0,0 +1,136 @@
+package com.robar.payment.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Simple columnar export format, written row group by row group so only one
+ * group is ever held in memory.
+ *
+ * <pre>
+ * header:    magic "RCOL" | version (1 byte) | column count (varint)
+ *            | per column: name (varint length + UTF-8) | type (1 byte)
+ * row group: row count (varint, &gt; 0) | per column: presence bitmap (1 bit per row)
+ *            | values of the present rows:
+ *              STRING    length (varint) + UTF-8
+ *              AMOUNT    minor units, zigzag varint
+ *              TIMESTAMP epoch millis, zigzag varint delta to the previous value in the group
+ *              SCALE     decimal places of the amounts in the row, varint
+ * trailer:   0 (varint) | total rows (8 bytes)
+ * </pre>
+ *
+ * Each column of a group is contiguous, so a reader interested in a few
+ * columns can skip the rest, and similar values next to each other compress
+ * well under gzip.
+ */
+public class ColumnarExportWriter implements ExportWriter {
+    private static final int MAGIC = 0x52434F4C; // "RCOL"
+    private static final int VERSION = 1;
+
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private ColumnType[] types;
+    private Object[][] group;
+    private int groupRows;
+    private long totalRows;
+
+    public ColumnarExportWriter(OutputStream stream, int rowGroupSize) {
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    @Override
+    public void begin(String[] columns, ColumnType[] types) throws IOException {
+        this.types = types;
+        this.group = new Object[columns.length][rowGroupSize];
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarLong(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            writeBytes(columns[i].getBytes(StandardCharsets.UTF_8));
+            out.writeByte(types[i].getCode());
+        }
+    }
+
+    @Override
+    public void row(Object[] values) throws IOException {
+        for (int column = 0; column < values.length; column++) {
+            group[column][groupRows] = values[column];
+        }
+        if (++groupRows == rowGroupSize) {
+            flushGroup();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flushGroup();
+        writeVarLong(0);
+        out.writeLong(totalRows);
+        out.flush();
+    }
+
+    private void flushGroup() throws IOException {
+        if (groupRows == 0) {
+            return;
+        }
+        writeVarLong(groupRows);
+        for (int column = 0; column < types.length; column++) {
+            Object[] values = group[column];
+            byte[] presence = new byte[(groupRows + 7) / 8];
+            for (int row = 0; row < groupRows; row++) {
+                if (values[row] != null) {
+                    presence[row >> 3] |= (byte) (1 << (row & 7));
+                }
+            }
+            out.write(presence);
+
+            long previous = 0;
+            for (int row = 0; row < groupRows; row++) {
+                Object value = values[row];
+                if (value == null) {
+                    continue;
+                }
+                switch (types[column]) {
+                    case AMOUNT:
+                        writeVarLong(zigzag((Long) value));
+                        break;
+                    case SCALE:
+                        writeVarLong((Long) value);
+                        break;
+                    case TIMESTAMP:
+                        long millis = (Long) value;
+                        writeVarLong(zigzag(millis - previous));
+                        previous = millis;
+                        break;
+                    default:
+                        writeBytes(value.toString().getBytes(StandardCharsets.UTF_8));
+                        break;
+                }
+                values[row] = null;
+            }
+        }
+        totalRows += groupRows;
+        groupRows = 0;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
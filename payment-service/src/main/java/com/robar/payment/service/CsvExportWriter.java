@@ -0,0 +1,102 @@
+package com.robar.payment.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * RFC 4180 CSV with a header line. Amounts are written with the decimals of
+ * the row's scale column (two without one), timestamps as ISO-8601 UTC. Text starting with =, +, -, @, tab or CR is
+ * prefixed with a quote so a spreadsheet shows it instead of evaluating it.
+ */
+public class CsvExportWriter implements ExportWriter {
+    private final Writer out;
+    private ColumnType[] types;
+    private int scaleColumn = -1;
+
+    public CsvExportWriter(OutputStream stream) {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    @Override
+    public void begin(String[] columns, ColumnType[] types) throws IOException {
+        this.types = types;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == ColumnType.SCALE) {
+                scaleColumn = i;
+            }
+        }
+        writeLine(columns);
+    }
+
+    @Override
+    public void row(Object[] values) throws IOException {
+        String[] fields = new String[values.length];
+        Object scale = scaleColumn >= 0 ? values[scaleColumn] : null;
+        for (int i = 0; i < values.length; i++) {
+            fields[i] = format(values[i], types[i], scale != null ? ((Long) scale).intValue() : 2);
+        }
+        writeLine(fields);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.flush();
+    }
+
+    private void writeLine(String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeField(fields[i]);
+        }
+        out.write("\r\n");
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static String format(Object value, ColumnType type, int scale) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case AMOUNT:
+                return BigDecimal.valueOf((Long) value, scale).toPlainString();
+            case TIMESTAMP:
+                return Instant.ofEpochMilli((Long) value).toString();
+            default:
+                return neutralize(value.toString());
+        }
+    }
+
+    // Messages and references come from terminals and hosts, so they are not trusted not to be formulas
+    private static String neutralize(String text) {
+        if (text.isEmpty()) {
+            return text;
+        }
+        char first = text.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r') {
+            return "'" + text;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,24 @@
+package com.robar.payment.service;
+
+import lombok.Getter;
+
+/**
+ * Marks where one customer's interaction with a terminal ends or the next one
+ * begins, so nothing read for one customer is applied to the next.
+ */
+@Getter
+public class CustomerSessionEvent {
+    public enum Type {
+        SALE_STARTING, // a card-present transaction is about to start
+        CANCELLED,     // the running transaction was aborted
+        SESSION_ENDED  // the terminal closed its session
+    }
+
+    private final String terminalId;
+    private final Type type;
+
+    public CustomerSessionEvent(String terminalId, Type type) {
+        this.terminalId = terminalId;
+        this.type = type;
+    }
+}
@@ -0,0 +1,20 @@
+package com.robar.payment.service;
+
+import lombok.Getter;
+
+/**
+ * Vitals reported by a terminal. Values are indexed by
+ * {@link com.robar.payment.model.VitalsMetric} ordinal, NaN where not reported.
+ */
+@Getter
+public class DeviceVitalsEvent {
+    private final String terminalId;
+    private final long epochMillis;
+    private final float[] values;
+
+    public DeviceVitalsEvent(String terminalId, long epochMillis, float[] values) {
+        this.terminalId = terminalId;
+        this.epochMillis = epochMillis;
+        this.values = values;
+    }
+}
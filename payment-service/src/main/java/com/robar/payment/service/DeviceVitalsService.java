@@ -0,0 +1,178 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.VitalsProperties;
+import com.robar.payment.model.VitalsAlert;
+import com.robar.payment.model.VitalsMetric;
+import com.robar.payment.model.VitalsPoint;
+import com.robar.payment.model.VitalsResolution;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Device vitals history and threshold alerts per terminal.
+ *
+ * Every sample goes into the terminal's {@link VitalsRing} and is checked
+ * against the thresholds. An alert is raised once when a value crosses its
+ * threshold and cleared once it is back past the threshold by the hysteresis,
+ * so a value hovering around the limit does not flap.
+ */
+@Slf4j
+@Service
+public class DeviceVitalsService {
+    private final VitalsProperties properties;
+    private final List<Threshold> thresholds = new ArrayList<>();
+    private final Map<String, VitalsRing> rings = new ConcurrentHashMap<>();
+    private final Map<String, Map<VitalsMetric, VitalsAlert>> alerts = new ConcurrentHashMap<>();
+
+    public DeviceVitalsService(VitalsProperties properties) {
+        this.properties = properties;
+        float hysteresis = properties.getHysteresis();
+        thresholds.add(new Threshold(VitalsMetric.BATTERY_PERCENT, true, properties.getBatteryLowPercent(), hysteresis));
+        thresholds.add(new Threshold(VitalsMetric.TEMPERATURE_CELSIUS, false, properties.getTemperatureHighCelsius(), hysteresis));
+        thresholds.add(new Threshold(VitalsMetric.SIGNAL_DBM, true, properties.getSignalLowDbm(), hysteresis));
+        // Flags: down below 1, back up at 1
+        thresholds.add(new Threshold(VitalsMetric.NETWORK_UP, true, 1, 0));
+        thresholds.add(new Threshold(VitalsMetric.SCANNER_READY, true, 1, 0));
+    }
+
+    @EventListener
+    public void onVitals(DeviceVitalsEvent event) {
+        ring(event.getTerminalId()).record(event.getEpochMillis(), event.getValues());
+        for (Threshold threshold : thresholds) {
+            float value = event.getValues()[threshold.metric.ordinal()];
+            if (!Float.isNaN(value)) {
+                check(event.getTerminalId(), threshold, value, event.getEpochMillis());
+            }
+        }
+    }
+
+    /**
+     * A removed terminal's history and alerts go with it. A reconfigured one
+     * keeps its history; its alerts are raised again by the next sample if
+     * they still apply.
+     */
+    @EventListener
+    public void onTerminalRemoved(TerminalRemovedEvent event) {
+        alerts.remove(event.getTerminalId());
+        if (!event.isReplaced()) {
+            rings.remove(event.getTerminalId());
+        }
+    }
+
+    private void check(String terminalId, Threshold threshold, float value, long epochMillis) {
+        Map<VitalsMetric, VitalsAlert> active = alerts.computeIfAbsent(terminalId, id -> new ConcurrentHashMap<>());
+        VitalsAlert alert = active.get(threshold.metric);
+        if (alert == null) {
+            if (threshold.breached(value)) {
+                active.put(threshold.metric, VitalsAlert.builder()
+                        .terminalId(terminalId)
+                        .metric(threshold.metric)
+                        .condition(threshold.below ? "below" : "above")
+                        .threshold(threshold.limit)
+                        .value(value)
+                        .since(Instant.ofEpochMilli(epochMillis))
+                        .build());
+                log.warn("[{}] {} is {} ({} threshold {})", terminalId, threshold.metric, value,
+                        threshold.below ? "below" : "above", threshold.limit);
+            }
+        } else if (threshold.cleared(value)) {
+            active.remove(threshold.metric);
+            log.info("[{}] {} back to {}, alert cleared", terminalId, threshold.metric, value);
+        } else {
+            alert.setValue(value);
+        }
+    }
+
+    /**
+     * History of one terminal, oldest first. {@code points} is the number of raw
+     * samples, or of minutes / hours to look back.
+     */
+    public List<VitalsPoint> getHistory(String terminalId, VitalsResolution resolution, int points) {
+        VitalsRing ring = rings.get(terminalId);
+        if (ring == null) {
+            return Collections.emptyList();
+        }
+        long now = System.currentTimeMillis();
+        switch (resolution) {
+            case MINUTE:
+                return ring.readMinutes(now, points);
+            case HOUR:
+                return ring.readHours(now, points);
+            case RAW:
+            default:
+                return ring.readRaw(points);
+        }
+    }
+
+    /**
+     * Latest reported value of each metric per terminal.
+     */
+    public Map<String, Map<VitalsMetric, Float>> getLatest() {
+        Map<String, Map<VitalsMetric, Float>> result = new TreeMap<>();
+        for (Map.Entry<String, VitalsRing> entry : rings.entrySet()) {
+            float[] latest = entry.getValue().latest();
+            Map<VitalsMetric, Float> values = new EnumMap<>(VitalsMetric.class);
+            for (VitalsMetric metric : VitalsMetric.values()) {
+                if (!Float.isNaN(latest[metric.ordinal()])) {
+                    values.put(metric, latest[metric.ordinal()]);
+                }
+            }
+            result.put(entry.getKey(), values);
+        }
+        return result;
+    }
+
+    /**
+     * Alerts currently raised, for one terminal or all of them.
+     */
+    public List<VitalsAlert> getAlerts(String terminalId) {
+        List<VitalsAlert> result = new ArrayList<>();
+        for (Map.Entry<String, Map<VitalsMetric, VitalsAlert>> entry : new TreeMap<>(alerts).entrySet()) {
+            if (terminalId == null || terminalId.equals(entry.getKey())) {
+                result.addAll(entry.getValue().values());
+            }
+        }
+        return result;
+    }
+
+    private VitalsRing ring(String terminalId) {
+        VitalsRing ring = rings.get(terminalId);
+        if (ring == null) {
+            ring = rings.computeIfAbsent(terminalId, id -> new VitalsRing(properties.getRawSamples(),
+                    properties.getMinuteSlots(), properties.getHourSlots()));
+        }
+        return ring;
+    }
+
+    private static final class Threshold {
+        final VitalsMetric metric;
+        final boolean below;
+        final float limit;
+        final float hysteresis;
+
+        Threshold(VitalsMetric metric, boolean below, float limit, float hysteresis) {
+            this.metric = metric;
+            this.below = below;
+            this.limit = limit;
+            this.hysteresis = hysteresis;
+        }
+
+        boolean breached(float value) {
+            return below ? value < limit : value > limit;
+        }
+
+        boolean cleared(float value) {
+            return below ? value >= limit + hysteresis : value <= limit - hysteresis;
+        }
+    }
+}
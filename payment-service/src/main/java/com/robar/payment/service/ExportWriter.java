@@ -0,0 +1,40 @@
+package com.robar.payment.service;
+
+import java.io.IOException;
+
+/**
+ * Receives exported rows one at a time and writes them to a stream.
+ *
+ * Values are String, Long (amounts in minor units for {@link ColumnType#AMOUNT},
+ * decimal places of the row's amounts for {@link ColumnType#SCALE}, epoch millis
+ * for {@link ColumnType#TIMESTAMP}) or null. The scale follows the currency of
+ * the row, so 1500 is 15.00 DKK but 1500 JPY.
+ */
+public interface ExportWriter {
+
+    enum ColumnType {
+        STRING(1),
+        AMOUNT(2),
+        TIMESTAMP(3),
+        SCALE(4);
+
+        private final int code;
+
+        ColumnType(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    void begin(String[] columns, ColumnType[] types) throws IOException;
+
+    void row(Object[] values) throws IOException;
+
+    /**
+     * Writes anything still buffered. Does not close the underlying stream.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,209 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ClusterNode;
+import com.robar.payment.model.TerminalLease;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * Lease store kept in a single properties file, for a single host or a shared
+ * volume in tests.
+ *
+ * Every read-modify-write runs under an exclusive lock on a separate lock file,
+ * so nodes in different JVMs see a consistent view. The state file is replaced
+ * atomically, a crash mid-write leaves the previous state.
+ */
+@Slf4j
+public class FileLeaseStore implements LeaseStore {
+    private static final String STATE_FILE = "leases.properties";
+    private static final String LOCK_FILE = "leases.lock";
+    private static final String LEASE_PREFIX = "lease.";
+    private static final String NODE_PREFIX = "node.";
+
+    private final Path directory;
+    private final Clock clock;
+
+    public FileLeaseStore(Path directory) throws IOException {
+        this(directory, Clock.systemUTC());
+    }
+
+    public FileLeaseStore(Path directory, Clock clock) throws IOException {
+        this.directory = directory;
+        this.clock = clock;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public boolean tryAcquire(String terminalId, ClusterNode node, long ttlMs) {
+        return update(state -> {
+            Instant now = clock.instant();
+            TerminalLease current = parseLease(terminalId, state.getProperty(LEASE_PREFIX + terminalId));
+            if (current != null && !current.isExpired(now) && !current.getOwnerNodeId().equals(node.getNodeId())) {
+                return false;
+            }
+            state.setProperty(LEASE_PREFIX + terminalId,
+                    node.getNodeId() + '|' + nullToEmpty(node.getUrl()) + '|' + now.plusMillis(ttlMs).toEpochMilli());
+            return true;
+        });
+    }
+
+    @Override
+    public void release(String terminalId, String nodeId) {
+        update(state -> {
+            TerminalLease current = parseLease(terminalId, state.getProperty(LEASE_PREFIX + terminalId));
+            if (current != null && current.getOwnerNodeId().equals(nodeId)) {
+                state.remove(LEASE_PREFIX + terminalId);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public Map<String, TerminalLease> getLeases() {
+        return read(state -> {
+            Map<String, TerminalLease> leases = new LinkedHashMap<>();
+            for (String key : state.stringPropertyNames()) {
+                if (key.startsWith(LEASE_PREFIX)) {
+                    String terminalId = key.substring(LEASE_PREFIX.length());
+                    leases.put(terminalId, parseLease(terminalId, state.getProperty(key)));
+                }
+            }
+            return leases;
+        });
+    }
+
+    @Override
+    public void heartbeat(ClusterNode node, long ttlMs) {
+        update(state -> {
+            Instant now = clock.instant();
+            state.setProperty(NODE_PREFIX + node.getNodeId(),
+                    nullToEmpty(node.getUrl()) + '|' + now.plusMillis(ttlMs).toEpochMilli());
+            // Drop nodes that have been gone for a while so the file does not grow forever
+            for (String key : state.stringPropertyNames()) {
+                if (key.startsWith(NODE_PREFIX)) {
+                    ClusterNode other = parseNode(key.substring(NODE_PREFIX.length()), state.getProperty(key));
+                    if (other.getExpiresAt().plusMillis(ttlMs * 10).isBefore(now)) {
+                        state.remove(key);
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public List<ClusterNode> getLiveNodes() {
+        return read(state -> {
+            Instant now = clock.instant();
+            List<ClusterNode> nodes = new ArrayList<>();
+            for (String key : state.stringPropertyNames()) {
+                if (key.startsWith(NODE_PREFIX)) {
+                    ClusterNode node = parseNode(key.substring(NODE_PREFIX.length()), state.getProperty(key));
+                    if (node.getExpiresAt().isAfter(now)) {
+                        nodes.add(node);
+                    }
+                }
+            }
+            return nodes;
+        });
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        update(state -> state.remove(NODE_PREFIX + nodeId) != null);
+    }
+
+    private <T> T read(Function<Properties, T> reader) {
+        return locked(() -> reader.apply(load()));
+    }
+
+    private boolean update(Function<Properties, Boolean> updater) {
+        return locked(() -> {
+            Properties state = load();
+            boolean changed = updater.apply(state);
+            if (changed) {
+                store(state);
+            }
+            return changed;
+        });
+    }
+
+    // The file lock keeps other JVMs out, the monitor keeps other threads of this one out
+    private synchronized <T> T locked(IoSupplier<T> action) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            return action.get();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lease store " + directory + " not accessible", e);
+        }
+    }
+
+    private Properties load() throws IOException {
+        Properties state = new Properties();
+        Path file = directory.resolve(STATE_FILE);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                state.load(in);
+            }
+        }
+        return state;
+    }
+
+    private void store(Properties state) throws IOException {
+        Path temp = directory.resolve(STATE_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, null);
+        }
+        Files.move(temp, directory.resolve(STATE_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static TerminalLease parseLease(String terminalId, String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split("\\|", -1);
+        return TerminalLease.builder()
+                .terminalId(terminalId)
+                .ownerNodeId(parts[0])
+                .ownerUrl(parts[1].isEmpty() ? null : parts[1])
+                .expiresAt(Instant.ofEpochMilli(Long.parseLong(parts[2])))
+                .build();
+    }
+
+    private static ClusterNode parseNode(String nodeId, String value) {
+        String[] parts = value.split("\\|", -1);
+        return ClusterNode.builder()
+                .nodeId(nodeId)
+                .url(parts[0].isEmpty() ? null : parts[0])
+                .expiresAt(Instant.ofEpochMilli(Long.parseLong(parts[1])))
+                .build();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+}
@@ -0,0 +1,169 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ExportProperties;
+import com.robar.payment.model.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams history rows straight from a database cursor into an export writer.
+ *
+ * Rows are fetched in chunks of the configured fetch size inside a read-only
+ * transaction (needed for cursors on most databases) and written as they
+ * arrive, so memory use does not depend on the size of the range.
+ */
+@Slf4j
+@Service
+public class HistoryExportService {
+
+    public enum Dataset {
+        PAYMENTS("payment_history", "completed_at",
+                "transaction_id, terminal_id, venue_id, kind, original_transaction_id, status, amount, currency, message, completed_at",
+                new String[]{"transaction_id", "terminal_id", "venue_id", "kind", "original_transaction_id", "status",
+                        "amount", "currency", "scale", "message", "completed_at"},
+                new ExportWriter.ColumnType[]{ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.AMOUNT, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.SCALE, ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.TIMESTAMP}),
+        TRANSITIONS("status_transition", "occurred_at",
+                "transaction_id, terminal_id, venue_id, status, amount, currency, message, occurred_at",
+                new String[]{"transaction_id", "terminal_id", "venue_id", "status", "amount", "currency", "scale",
+                        "message", "occurred_at"},
+                new ExportWriter.ColumnType[]{ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.AMOUNT,
+                        ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.SCALE, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.TIMESTAMP}),
+        HOST_AUTHORIZATIONS("host_authorization_log", "decided_at",
+                "reference, terminal_id, venue_id, amount, currency, approved, offline, auth_code, message, decided_at",
+                new String[]{"reference", "terminal_id", "venue_id", "amount", "currency", "scale", "approved", "offline",
+                        "auth_code", "message", "decided_at"},
+                new ExportWriter.ColumnType[]{ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.AMOUNT, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.SCALE, ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING,
+                        ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.STRING, ExportWriter.ColumnType.TIMESTAMP});
+
+        private final String table;
+        private final String timeColumn;
+        private final String select;
+        private final String[] columns;
+        private final ExportWriter.ColumnType[] types;
+
+        Dataset(String table, String timeColumn, String select, String[] columns, ExportWriter.ColumnType[] types) {
+            this.table = table;
+            this.timeColumn = timeColumn;
+            this.select = select;
+            this.columns = columns;
+            this.types = types;
+        }
+
+        public static Dataset fromString(String value) {
+            if (value == null || value.isEmpty()) {
+                return PAYMENTS;
+            }
+            return Dataset.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExportProperties properties;
+
+    public HistoryExportService(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                ExportProperties properties) {
+        this.properties = properties;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(properties.getFetchSize());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Writes the rows of the dataset in [from, to), oldest first. An empty or null
+     * terminal list means all terminals, a null venue all venues; the venue is the
+     * one recorded with each row. Returns the number of rows written.
+     */
+    public long export(Dataset dataset, ExportFormat format, Instant from, Instant to,
+                       Collection<String> terminalIds, String venueId, OutputStream out) throws IOException {
+        ExportWriter writer = format == ExportFormat.COLUMNAR
+                ? new ColumnarExportWriter(out, properties.getRowGroupSize())
+                : new CsvExportWriter(out);
+        writer.begin(dataset.columns, dataset.types);
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(dataset.select)
+                .append(" FROM ").append(dataset.table)
+                .append(" WHERE ").append(dataset.timeColumn).append(" >= ? AND ").append(dataset.timeColumn).append(" < ?");
+        List<Object> args = new ArrayList<>();
+        args.add(OffsetDateTime.ofInstant(from, ZoneOffset.UTC));
+        args.add(OffsetDateTime.ofInstant(to, ZoneOffset.UTC));
+        if (terminalIds != null && !terminalIds.isEmpty()) {
+            sql.append(" AND terminal_id IN (").append(String.join(",", Collections.nCopies(terminalIds.size(), "?"))).append(')');
+            args.addAll(terminalIds);
+        }
+        if (venueId != null) {
+            sql.append(" AND venue_id = ?");
+            args.add(venueId);
+        }
+        sql.append(" ORDER BY ").append(dataset.timeColumn).append(", id");
+
+        long[] rows = new long[1];
+        Object[] values = new Object[dataset.columns.length];
+        try {
+            readOnlyTransaction.executeWithoutResult(status ->
+                    jdbcTemplate.query(sql.toString(), (RowCallbackHandler) rs -> {
+                        // Every dataset has a currency, it decides the scale of the row's amounts
+                        String currency = rs.getString("currency");
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = readValue(rs, dataset.columns[i], dataset.types[i], currency);
+                        }
+                        try {
+                            writer.row(values);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        rows[0]++;
+                    }, args.toArray()));
+        } catch (UncheckedIOException e) {
+            // Usually the client went away - stop reading, nothing to clean up
+            throw e.getCause();
+        }
+        writer.finish();
+        log.info("Exported {} {} rows as {} ({} to {})", rows[0], dataset, format, from, to);
+        return rows[0];
+    }
+
+    private static Object readValue(ResultSet rs, String column, ExportWriter.ColumnType type, String currency)
+            throws SQLException {
+        switch (type) {
+            case AMOUNT:
+                BigDecimal amount = rs.getBigDecimal(column);
+                return amount != null ? MinorUnits.toMinor(amount, currency) : null;
+            case SCALE:
+                // Not stored, it follows from the currency
+                return (long) MinorUnits.digits(currency);
+            case TIMESTAMP:
+                OffsetDateTime timestamp = rs.getObject(column, OffsetDateTime.class);
+                return timestamp != null ? timestamp.toInstant().toEpochMilli() : null;
+            default:
+                return rs.getString(column);
+        }
+    }
+}
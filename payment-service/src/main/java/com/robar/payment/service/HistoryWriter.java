@@ -0,0 +1,254 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.HistoryProperties;
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationLog;
+import com.robar.payment.model.HostAuthorizationRequest;
+import com.robar.payment.model.PaymentHistory;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.StatusTransition;
+import com.robar.payment.repository.HostAuthorizationLogRepository;
+import com.robar.payment.repository.PaymentHistoryRepository;
+import com.robar.payment.repository.StatusTransitionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind for the history tables.
+ *
+ * Events only turn into entities on a bounded queue; a single writer thread
+ * drains the queue and saves each batch in one transaction, which Hibernate
+ * sends as JDBC batch inserts. A payment never waits on the database, and a
+ * database that is down or slow costs history rows, not payments.
+ */
+@Slf4j
+@Service
+public class HistoryWriter {
+    private static final int MESSAGE_LENGTH = 512;
+
+    private final HistoryProperties properties;
+    private final PaymentHistoryRepository paymentRepository;
+    private final StatusTransitionRepository transitionRepository;
+    private final HostAuthorizationLogRepository hostAuthorizationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TerminalRegistry terminalRegistry;
+    private final BlockingQueue<Object> queue;
+    private Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    // Rows taken into the queue, and rows the writer is done with either way
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private volatile boolean running = true;
+
+    public HistoryWriter(HistoryProperties properties, PaymentHistoryRepository paymentRepository,
+                         StatusTransitionRepository transitionRepository,
+                         HostAuthorizationLogRepository hostAuthorizationRepository,
+                         TransactionTemplate transactionTemplate, TerminalRegistry terminalRegistry) {
+        this.properties = properties;
+        this.paymentRepository = paymentRepository;
+        this.transitionRepository = transitionRepository;
+        this.hostAuthorizationRepository = hostAuthorizationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.terminalRegistry = terminalRegistry;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+    }
+
+    // Once the bean is fully set up - rows queued before then wait for the first flush
+    @PostConstruct
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(this::run, "History-Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @EventListener
+    public void onPaymentStatus(PaymentStatusEvent event) {
+        if (!properties.isEnabled() || event.getPaymentId() == null || event.isReplayed()) {
+            return;
+        }
+        Instant now = Instant.now();
+        String venueId = venueOf(event.getTerminalId());
+
+        // Terminal results (with a terminal id) are payments, everything is a transition
+        if (event.getTerminalId() != null
+                && (event.getStatus() == PaymentStatus.COMPLETED || event.getStatus() == PaymentStatus.FAILED)) {
+            PaymentHistory payment = new PaymentHistory();
+            payment.setTransactionId(event.getPaymentId());
+            payment.setTerminalId(event.getTerminalId());
+            payment.setVenueId(venueId);
+            payment.setKind(event.getKind());
+            payment.setOriginalTransactionId(event.getOriginalPaymentId());
+            payment.setStatus(event.getStatus());
+            payment.setAmount(MinorUnits.scaled(event.getAmount(), event.getCurrency()));
+            payment.setCurrency(event.getCurrency());
+            payment.setMessage(truncate(event.getMessage()));
+            payment.setCompletedAt(now);
+            enqueue(payment);
+        }
+
+        StatusTransition transition = new StatusTransition();
+        transition.setTransactionId(event.getPaymentId());
+        transition.setTerminalId(event.getTerminalId());
+        transition.setVenueId(venueId);
+        transition.setStatus(event.getStatus());
+        transition.setAmount(MinorUnits.scaled(event.getAmount(), event.getCurrency()));
+        transition.setCurrency(event.getCurrency());
+        transition.setMessage(truncate(event.getMessage()));
+        transition.setOccurredAt(now);
+        enqueue(transition);
+    }
+
+    @EventListener
+    public void onHostAuthorizationDecided(HostAuthorizationDecidedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        HostAuthorizationRequest request = event.getRequest();
+        HostAuthorizationDecision decision = event.getDecision();
+        HostAuthorizationLog entry = new HostAuthorizationLog();
+        entry.setReference(request.getReference());
+        entry.setTerminalId(request.getTerminalId());
+        entry.setVenueId(venueOf(request.getTerminalId()));
+        entry.setAmount(MinorUnits.scaled(request.getAmount(), request.getCurrency()));
+        entry.setCurrency(request.getCurrency());
+        entry.setApproved(decision.isApproved());
+        entry.setOffline(decision.isOffline());
+        entry.setAuthCode(decision.getAuthCode());
+        entry.setMessage(truncate(decision.getMessage()));
+        entry.setDecidedAt(Instant.now());
+        enqueue(entry);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until every row queued so far has been written (or failed to be),
+     * or the deadline (System.nanoTime) has passed. Returns true if it has.
+     */
+    public boolean awaitFlushed(long deadlineNanos) throws InterruptedException {
+        long target = enqueued.get();
+        while (processed.get() < target) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    private void enqueue(Object entity) {
+        if (queue.offer(entity)) {
+            enqueued.incrementAndGet();
+        } else {
+            // Log the first drop and then every thousandth, not every one
+            if (dropped.incrementAndGet() % 1000 == 1) {
+                log.warn("History queue full ({} rows), {} rows dropped so far", properties.getQueueCapacity(), dropped.get());
+            }
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                Object first = queue.poll(properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // Shutting down - write what is left without waiting
+                running = false;
+            }
+            queue.drainTo(batch, properties.getBatchSize() - batch.size());
+            if (!batch.isEmpty()) {
+                write(batch);
+                processed.addAndGet(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Object> batch) {
+        List<PaymentHistory> payments = new ArrayList<>();
+        List<StatusTransition> transitions = new ArrayList<>();
+        List<HostAuthorizationLog> hostAuthorizations = new ArrayList<>();
+        for (Object entity : batch) {
+            if (entity instanceof PaymentHistory payment) {
+                payments.add(payment);
+            } else if (entity instanceof StatusTransition transition) {
+                transitions.add(transition);
+            } else if (entity instanceof HostAuthorizationLog hostAuthorization) {
+                hostAuthorizations.add(hostAuthorization);
+            }
+        }
+
+        try {
+            // Grouped by table so every table gets one batched insert statement
+            transactionTemplate.executeWithoutResult(status -> {
+                paymentRepository.saveAll(payments);
+                transitionRepository.saveAll(transitions);
+                hostAuthorizationRepository.saveAll(hostAuthorizations);
+            });
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            dropped.addAndGet(batch.size());
+            log.error("Could not write {} history rows", batch.size(), e);
+        }
+    }
+
+    // Taken when the row is written, so a terminal moved to another venue later does not move its history
+    private String venueOf(String terminalId) {
+        if (terminalId == null || terminalRegistry == null) {
+            return null;
+        }
+        TerminalConnection terminal = terminalRegistry.get(terminalId);
+        return terminal != null ? terminal.getDefinition().getVenueId() : null;
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > MESSAGE_LENGTH ? message.substring(0, MESSAGE_LENGTH) : message;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // No interrupt - an interrupted thread in the middle of a JDBC call can close the database file
+        running = false;
+        Thread current;
+        synchronized (this) {
+            current = writer;
+        }
+        if (current != null) {
+            current.join(properties.getFlushIntervalMs() + 10000);
+        }
+        if (!queue.isEmpty()) {
+            log.warn("{} history rows not written at shutdown", queue.size());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationRequest;
+import lombok.Getter;
+
+@Getter
+public class HostAuthorizationDecidedEvent {
+    private final HostAuthorizationRequest request;
+    private final HostAuthorizationDecision decision;
+
+    public HostAuthorizationDecidedEvent(HostAuthorizationRequest request, HostAuthorizationDecision decision) {
+        this.request = request;
+        this.decision = decision;
+    }
+}
@@ -0,0 +1,300 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.OfflineProperties;
+import com.robar.payment.model.CardProfile;
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationRequest;
+import com.robar.payment.model.OfflineAuthorization;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides host authorization requests from the terminal.
+ *
+ * Requests go to the acquirer host while it is reachable. When the host fails or
+ * times out, amounts up to the floor limit are approved locally and journaled in
+ * the store-and-forward queue; larger amounts are declined. After several
+ * failures in a row the host is treated as down and skipped until it answers a
+ * health probe again. A background task drains the queue to the host in
+ * rate-limited batches once it is back.
+ */
+@Slf4j
+@Service
+@Lazy(false)
+public class HostAuthorizationService {
+    // Unfinalized offline approvals are forwarded anyway after this long
+    private static final Duration FINALIZE_GRACE = Duration.ofMinutes(10);
+
+    private final AcquirerHost host;
+    private final CardPrefetchService cardPrefetchService;
+    private final OfflineProperties properties;
+    private final StoreAndForwardQueue queue;
+    private final ExecutorService hostExecutor;
+    private final ScheduledExecutorService drainScheduler;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile boolean hostDown = false;
+
+    public HostAuthorizationService(AcquirerHost host, OfflineProperties properties,
+                                    CardPrefetchService cardPrefetchService) throws IOException {
+        this.host = host;
+        this.cardPrefetchService = cardPrefetchService;
+        this.properties = properties;
+        this.queue = new StoreAndForwardQueue(Paths.get(properties.getQueueDirectory()));
+        // Bounded, without a queue: a request finding every thread busy is rejected and goes offline
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, properties.getHostThreads());
+        this.hostExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "Host-Authorization-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        ((ThreadPoolExecutor) hostExecutor).allowCoreThreadTimeOut(true);
+        this.drainScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Store-And-Forward-Drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainScheduler.scheduleWithFixedDelay(this::drain,
+                properties.getDrainIntervalMs(), properties.getDrainIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    public HostAuthorizationDecision authorize(HostAuthorizationRequest request) {
+        // Looked up since the card was read - normally done by now, never waited on for long
+        CardProfile card = cardPrefetchService.getProfileForAuthorization(request.getTerminalId());
+        if (card != null) {
+            request.setCardToken(card.getCardToken());
+            request.setLoyaltyMemberId(card.getLoyaltyMemberId());
+            request.setDiscountPercent(card.getDiscountPercent());
+            if (card.isBlocked()) {
+                log.info("Card {} is blocked, declining {}", card.getCardToken(), request.getReference());
+                return decline(request, "Card blocked");
+            }
+        }
+        boolean pendingOnline = false;
+        if (!hostDown) {
+            Future<HostAuthorizationDecision> future;
+            try {
+                future = hostExecutor.submit(() -> host.authorize(request));
+            } catch (RejectedExecutionException e) {
+                log.warn("All {} host threads busy, authorizing {} offline", properties.getHostThreads(), request.getReference());
+                return authorizeOffline(request, false);
+            }
+            try {
+                HostAuthorizationDecision decision = future.get(properties.getHostTimeoutMs(), TimeUnit.MILLISECONDS);
+                consecutiveFailures.set(0);
+                return decision;
+            } catch (TimeoutException e) {
+                // Left to finish rather than interrupted mid-request, which would leave its outcome
+                // unknown anyway. The host may still approve it, so it is reconciled before forwarding
+                pendingOnline = true;
+                log.warn("Host authorization timed out after {} ms for {}", properties.getHostTimeoutMs(), request.getReference());
+                recordHostFailure();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return decline(request, "Interrupted while waiting for host");
+            } catch (Exception e) {
+                log.warn("Host authorization failed for {}: {}", request.getReference(), e.getMessage());
+                recordHostFailure();
+            }
+        }
+        return authorizeOffline(request, pendingOnline);
+    }
+
+    private void recordHostFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures >= properties.getHostFailureThreshold() && !hostDown) {
+            log.warn("Host failed {} requests in a row, authorizing offline until it is available again", failures);
+            hostDown = true;
+        }
+    }
+
+    private HostAuthorizationDecision authorizeOffline(HostAuthorizationRequest request, boolean pendingOnline) {
+        if (!properties.isEnabled()) {
+            return decline(request, "Host unavailable");
+        }
+        if (request.getAmount() == null || request.getAmount().compareTo(properties.getFloorLimit()) > 0) {
+            log.info("Host unavailable and amount {} above floor limit {}, declining {}",
+                    request.getAmount(), properties.getFloorLimit(), request.getReference());
+            return decline(request, "Host unavailable, amount above floor limit");
+        }
+
+        String authCode = offlineAuthCode();
+        try {
+            queue.enqueue(OfflineAuthorization.builder()
+                    .reference(request.getReference())
+                    .terminalId(request.getTerminalId())
+                    .amount(request.getAmount())
+                    .currency(request.getCurrency())
+                    .authCode(authCode)
+                    .createdAt(request.getTimestamp() != null ? request.getTimestamp() : Instant.now())
+                    .pendingOnline(pendingOnline)
+                    .build());
+        } catch (IOException e) {
+            // Without a durable record we cannot forward it later - do not approve
+            log.error("Could not journal offline authorization {}", request.getReference(), e);
+            return decline(request, "Offline journal unavailable");
+        }
+
+        log.info("Approved {} offline for {} (queue size {})", request.getReference(), request.getAmount(), queue.size());
+        return HostAuthorizationDecision.builder()
+                .reference(request.getReference())
+                .approved(true)
+                .offline(true)
+                .authCode(authCode)
+                .message("Approved offline")
+                .build();
+    }
+
+    /**
+     * Called when the terminal finalizes a transaction. Offline approvals the
+     * terminal did not complete are dropped instead of being forwarded.
+     */
+    public void finalizeTransaction(String reference, boolean completed) {
+        try {
+            if (completed) {
+                queue.markFinalized(reference);
+            } else if (queue.markFinalized(reference)) {
+                queue.acknowledge(List.of(reference));
+                log.info("Offline authorization {} not completed by terminal, dropped from queue", reference);
+            }
+        } catch (IOException e) {
+            log.error("Could not record finalization of {}", reference, e);
+        }
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public boolean isHostDown() {
+        return hostDown;
+    }
+
+    /**
+     * Forwards what can be forwarded before the node stops, waiting until the
+     * deadline (System.nanoTime) at most. Whatever is left stays in the journal
+     * for the next start.
+     */
+    public void flushPending(long deadlineNanos) {
+        Future<?> forwarding = drainScheduler.submit(this::drain);
+        try {
+            forwarding.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            forwarding.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Forwarding offline authorizations at shutdown failed", e.getCause());
+        }
+        try {
+            queue.sync();
+        } catch (IOException e) {
+            log.error("Could not sync the store-and-forward journal", e);
+        }
+        if (queue.size() > 0) {
+            log.info("{} offline authorizations left in the queue for the next start", queue.size());
+        }
+    }
+
+    private void drain() {
+        try {
+            if (hostDown) {
+                if (!host.isAvailable()) {
+                    return;
+                }
+                log.info("Host is available again, {} offline authorizations to forward", queue.size());
+                consecutiveFailures.set(0);
+                hostDown = false;
+            }
+
+            long minBatchNanos = TimeUnit.SECONDS.toNanos(1) * properties.getBatchSize() / Math.max(1, properties.getMaxPerSecond());
+            List<OfflineAuthorization> batch;
+            while (!hostDown && !(batch = queue.peekReady(properties.getBatchSize(), Instant.now().minus(FINALIZE_GRACE))).isEmpty()) {
+                long started = System.nanoTime();
+                List<OfflineAuthorization> toForward = reconcile(batch);
+                List<String> accepted = toForward.isEmpty() ? List.of() : host.submitOffline(toForward);
+                queue.acknowledge(accepted);
+                log.info("Forwarded {} of {} offline authorizations, {} remaining", accepted.size(), toForward.size(), queue.size());
+
+                if (accepted.size() < toForward.size()) {
+                    // Host rejected part of the batch - leave the rest for the next run
+                    break;
+                }
+
+                // Keep forwarding under maxPerSecond so the host is not flooded after an outage
+                long remaining = minBatchNanos - (System.nanoTime() - started);
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Forwarding offline authorizations failed, will retry: {}", e.getMessage());
+            hostDown = true;
+        }
+    }
+
+    /**
+     * Drops approvals the host already holds because their timed out online
+     * request went through after all, and returns the rest for forwarding.
+     */
+    private List<OfflineAuthorization> reconcile(List<OfflineAuthorization> batch) throws Exception {
+        List<OfflineAuthorization> toForward = new ArrayList<>(batch.size());
+        List<String> authorizedOnline = new ArrayList<>();
+        for (OfflineAuthorization authorization : batch) {
+            if (authorization.isPendingOnline() && host.hasAuthorization(authorization.getReference())) {
+                authorizedOnline.add(authorization.getReference());
+            } else {
+                toForward.add(authorization);
+            }
+        }
+        if (!authorizedOnline.isEmpty()) {
+            queue.acknowledge(authorizedOnline);
+            log.info("{} offline authorizations were already approved online, not forwarding them", authorizedOnline.size());
+        }
+        return toForward;
+    }
+
+    private HostAuthorizationDecision decline(HostAuthorizationRequest request, String message) {
+        return HostAuthorizationDecision.builder()
+                .reference(request.getReference())
+                .approved(false)
+                .message(message)
+                .build();
+    }
+
+    private static String offlineAuthCode() {
+        // "Y1" prefix marks an offline approval, as for EMV offline approvals
+        return "Y1" + String.format("%04d", ThreadLocalRandom.current().nextInt(10000));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainScheduler.shutdownNow();
+        hostExecutor.shutdownNow();
+        queue.close();
+    }
+}
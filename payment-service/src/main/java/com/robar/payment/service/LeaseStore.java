@@ -0,0 +1,48 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ClusterNode;
+import com.robar.payment.model.TerminalLease;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared store for terminal leases and node heartbeats.
+ *
+ * Implementations must make acquire/renew atomic across all nodes - at most one
+ * node may hold an unexpired lease on a terminal.
+ */
+public interface LeaseStore {
+
+    /**
+     * Takes the lease if it is free, expired or already held by the node, and
+     * extends it by the ttl. Returns false if another node holds it.
+     */
+    boolean tryAcquire(String terminalId, ClusterNode node, long ttlMs);
+
+    /**
+     * Gives up the lease if the node holds it.
+     */
+    void release(String terminalId, String nodeId);
+
+    /**
+     * All leases, including expired ones.
+     */
+    Map<String, TerminalLease> getLeases();
+
+    /**
+     * Marks the node as alive for the ttl.
+     */
+    void heartbeat(ClusterNode node, long ttlMs);
+
+    /**
+     * Nodes whose heartbeat has not expired.
+     */
+    List<ClusterNode> getLiveNodes();
+
+    /**
+     * Removes the node's heartbeat, so peers stop counting it when sharing out
+     * terminals. Leases the node still holds are not affected.
+     */
+    void leave(String nodeId);
+}
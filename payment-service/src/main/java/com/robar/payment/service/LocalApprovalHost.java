@@ -0,0 +1,48 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationRequest;
+import com.robar.payment.model.OfflineAuthorization;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Host used until a real acquirer connection is configured: approves every
+ * authorization, same as the previous hardcoded host response.
+ */
+@Component
+public class LocalApprovalHost implements AcquirerHost {
+    private static final String APPROVAL_CODE = "123456";
+
+    @Override
+    public HostAuthorizationDecision authorize(HostAuthorizationRequest request) {
+        return HostAuthorizationDecision.builder()
+                .reference(request.getReference())
+                .approved(true)
+                .authCode(APPROVAL_CODE)
+                .message("Approved")
+                .build();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public boolean hasAuthorization(String reference) {
+        // Nothing is recorded locally, so a timed out request never reached a host
+        return false;
+    }
+
+    @Override
+    public List<String> submitOffline(List<OfflineAuthorization> batch) {
+        List<String> accepted = new ArrayList<>(batch.size());
+        for (OfflineAuthorization authorization : batch) {
+            accepted.add(authorization.getReference());
+        }
+        return accepted;
+    }
+}
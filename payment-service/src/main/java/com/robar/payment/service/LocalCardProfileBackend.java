@@ -0,0 +1,36 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.CardPrefetchProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Backend used until a loyalty system is connected: no members or discounts,
+ * cards blocked through configuration only.
+ */
+@Component
+public class LocalCardProfileBackend implements CardProfileBackend {
+    private final Set<String> blockedTokens;
+
+    public LocalCardProfileBackend(CardPrefetchProperties properties) {
+        this.blockedTokens = new HashSet<>(properties.getBlockedTokens());
+    }
+
+    @Override
+    public String findLoyaltyMember(String cardToken) {
+        return null;
+    }
+
+    @Override
+    public BigDecimal findDiscountPercent(String cardToken) {
+        return null;
+    }
+
+    @Override
+    public boolean isBlocked(String cardToken) {
+        return blockedTokens.contains(cardToken);
+    }
+}
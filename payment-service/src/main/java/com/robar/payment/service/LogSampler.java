@@ -0,0 +1,133 @@
+package com.robar.payment.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limit for log lines of high-frequency terminal events. Per terminal and
+ * category the first {@code burst} lines of each window are let through; the
+ * rest are only counted, and the count is logged once the window is over -
+ * by the next line of that category, or by {@link #flush} if none comes.
+ *
+ * Called on the SDK callback thread, so {@link #allow} takes no lock and
+ * allocates nothing once a terminal has been seen.
+ */
+@Slf4j
+public class LogSampler {
+    /** Sampler that lets everything through. */
+    public static final LogSampler UNLIMITED = new LogSampler(Integer.MAX_VALUE, 1000);
+
+    public enum Category {
+        STATUS, COMMERCE, TRANSACTION
+    }
+
+    private final int burst;
+    private final long windowNanos;
+    private final ConcurrentMap<String, Window[]> windows = new ConcurrentHashMap<>();
+
+    public LogSampler(int burst, long windowMs) {
+        this.burst = burst;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    }
+
+    /**
+     * Whether a line of the given category may be logged for the terminal now.
+     */
+    public boolean allow(String terminalId, Category category) {
+        if (burst == Integer.MAX_VALUE) {
+            return true;
+        }
+        Window[] terminalWindows = windows.get(terminalId);
+        if (terminalWindows == null) {
+            terminalWindows = windows.computeIfAbsent(terminalId, id -> newWindows());
+        }
+        return terminalWindows[category.ordinal()].allow(terminalId, category, System.nanoTime());
+    }
+
+    /**
+     * Logs the suppressed count of every window that is over, so a burst that
+     * ended a terminal's traffic is still reported. Called periodically; returns
+     * the number of lines reported as suppressed.
+     */
+    public int flush() {
+        long now = System.nanoTime();
+        int reported = 0;
+        for (Map.Entry<String, Window[]> entry : windows.entrySet()) {
+            for (Category category : Category.values()) {
+                reported += entry.getValue()[category.ordinal()].flush(entry.getKey(), category, now, false);
+            }
+        }
+        return reported;
+    }
+
+    /**
+     * Drops the windows of a terminal that is gone, logging what they still
+     * had suppressed.
+     */
+    public void forget(String terminalId) {
+        Window[] terminalWindows = windows.remove(terminalId);
+        if (terminalWindows == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Category category : Category.values()) {
+            terminalWindows[category.ordinal()].flush(terminalId, category, now, true);
+        }
+    }
+
+    private Window[] newWindows() {
+        Window[] created = new Window[Category.values().length];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new Window();
+        }
+        return created;
+    }
+
+    private final class Window {
+        private final AtomicLong start = new AtomicLong(System.nanoTime());
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        boolean allow(String terminalId, Category category, long now) {
+            long windowStart = start.get();
+            if (now - windowStart >= windowNanos && start.compareAndSet(windowStart, now)) {
+                // Only the thread that moved the window on resets and reports it
+                count.set(0);
+                report(terminalId, category, suppressed.getAndSet(0));
+            }
+            if (count.incrementAndGet() <= burst) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        int flush(String terminalId, Category category, long now, boolean force) {
+            long windowStart = start.get();
+            if (suppressed.get() == 0 || (!force && now - windowStart < windowNanos)) {
+                // Nothing pending, or the window is still open - allow() reports it then
+                return 0;
+            }
+            if (!start.compareAndSet(windowStart, now)) {
+                // A caller of allow() moved the window on and reported it
+                return 0;
+            }
+            count.set(0);
+            int dropped = suppressed.getAndSet(0);
+            report(terminalId, category, dropped);
+            return dropped;
+        }
+
+        private void report(String terminalId, Category category, int dropped) {
+            if (dropped > 0) {
+                log.info("[{}] {} {} log lines suppressed by sampling", terminalId, dropped, category);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.robar.payment.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Amounts as whole minor units of their currency (ore, cents, yen, ...), for
+ * counters that add up longs instead of BigDecimals.
+ */
+public final class MinorUnits {
+    // Unknown codes, and the codes ISO gives no minor unit (XXX), count in hundredths
+    private static final int DEFAULT_DIGITS = 2;
+    private static final Map<String, Integer> DIGITS = new ConcurrentHashMap<>();
+
+    private MinorUnits() {
+    }
+
+    public static long toMinor(BigDecimal amount, String currency) {
+        return amount.setScale(digits(currency), RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromMinor(long minor, String currency) {
+        return BigDecimal.valueOf(minor, digits(currency));
+    }
+
+    /**
+     * The amount at the scale of its currency, as the history tables store it.
+     */
+    public static BigDecimal scaled(BigDecimal amount, String currency) {
+        return amount != null ? amount.setScale(digits(currency), RoundingMode.HALF_UP) : null;
+    }
+
+    public static int digits(String currency) {
+        if (currency == null) {
+            return DEFAULT_DIGITS;
+        }
+        return DIGITS.computeIfAbsent(currency, code -> {
+            try {
+                int digits = Currency.getInstance(code).getDefaultFractionDigits();
+                return digits >= 0 ? digits : DEFAULT_DIGITS;
+            } catch (IllegalArgumentException e) {
+                return DEFAULT_DIGITS;
+            }
+        });
+    }
+}
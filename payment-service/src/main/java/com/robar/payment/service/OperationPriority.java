@@ -0,0 +1,13 @@
+package com.robar.payment.service;
+
+/**
+ * Priority lanes for terminal operations, highest priority first.
+ */
+public enum OperationPriority {
+    REVERSAL,
+    VOID,
+    REFUND,
+    SALE,
+    // Transaction lookups for status requests, only when no transaction waits
+    QUERY
+}
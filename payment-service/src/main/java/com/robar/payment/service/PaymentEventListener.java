@@ -1,14 +1,39 @@
 package com.robar.payment.service;
 
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationRequest;
+import com.robar.payment.model.ReceiptData;
+import com.robar.payment.model.TransactionKind;
+import com.robar.payment.model.TransactionRecord;
+import com.robar.payment.model.VitalsMetric;
 import com.verifone.payment_sdk.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
+/**
+ * SDK callback listener for one terminal. Instances are created per terminal
+ * by {@link TerminalConnectionFactory}.
+ *
+ * Each SDK callback only reads the values it needs from the SDK event, records
+ * them when recording is on, and hands them to a package-private {@code on*}
+ * method that does the actual work. {@link SdkEventReplayer} drives those
+ * methods from a recording.
+ */
 @Slf4j
-@Component
 public class PaymentEventListener extends CommerceListenerAdapter {
     // Interface for initialization callback
     public interface InitializationCallback {
@@ -16,43 +41,154 @@ public class PaymentEventListener extends CommerceListenerAdapter {
     }
     
     private final ApplicationEventPublisher eventPublisher;
+    private final HostAuthorizationService hostAuthorizationService;
     private PaymentSdk paymentSdk;
+    private String terminalId = "default";
+    private String currency = "DKK";
     private InitializationCallback initializationCallback;
     
     // Add tracking for status updates
     private int lastStatusCode = 0;
     private String lastStatusMessage = "";
     private int errorCount = 0;
+    
+    // Receipt content captured from print / delivery events by payment id, attached on payment completion.
+    // Events without a payment id are kept under "" and go to the next completion without its own receipt.
+    private static final String UNASSIGNED_RECEIPT = "";
+    private static final int MAX_PENDING_RECEIPTS = 32;
+    private static final Pattern RECEIPT_CONTENT = Pattern.compile("[\\p{L}\\p{N}]");
+    private final Map<String, PendingReceipt> pendingReceipts = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PendingReceipt> eldest) {
+            return size() > MAX_PENDING_RECEIPTS;
+        }
+    };
+    
+    // Reference of the host authorization awaiting finalization (terminal handles one at a time)
+    private volatile String pendingHostReference;
+    
+    // Set when SDK callbacks are being recorded
+    private volatile SdkEventLog.Writer recorder;
+    // Opens a new recording on each connect; none when recording is off
+    private Supplier<SdkEventLog.Writer> recorderSource;
+    
+    // Keeps chatty terminals from flooding the log
+    private LogSampler logSampler = LogSampler.UNLIMITED;
+    
+    // Card numbers are reduced to tokens right in the callback; none when replaying
+    private CardTokenizer cardTokenizer;
 
-    public PaymentEventListener(ApplicationEventPublisher eventPublisher) {
+    public PaymentEventListener(ApplicationEventPublisher eventPublisher, HostAuthorizationService hostAuthorizationService) {
         this.eventPublisher = eventPublisher;
-        log.info("PaymentEventListener created");
+        this.hostAuthorizationService = hostAuthorizationService;
+        log.debug("PaymentEventListener created");
     }
 
     public void setPaymentSdk(PaymentSdk paymentSdk) {
         this.paymentSdk = paymentSdk;
-        log.info("PaymentSdk reference set in listener");
+        log.debug("PaymentSdk reference set in listener");
+    }
+    
+    public void setTerminalId(String terminalId) {
+        this.terminalId = terminalId;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
     }
     
     public void setInitializationCallback(InitializationCallback callback) {
         this.initializationCallback = callback;
-        log.info("Initialization callback set in listener");
+        log.debug("Initialization callback set in listener");
+    }
+    
+    public void setLogSampler(LogSampler logSampler) {
+        this.logSampler = logSampler;
+    }
+    
+    public void setCardTokenizer(CardTokenizer cardTokenizer) {
+        this.cardTokenizer = cardTokenizer;
+    }
+    
+    public void setRecorderSource(Supplier<SdkEventLog.Writer> recorderSource) {
+        this.recorderSource = recorderSource;
+    }
+    
+    /**
+     * Starts a new recording if recording is on and none is running.
+     */
+    public synchronized void startRecording() {
+        if (recorder == null && recorderSource != null) {
+            recorder = recorderSource.get();
+        }
+    }
+    
+    public synchronized void closeRecorder() {
+        SdkEventLog.Writer current = recorder;
+        recorder = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("[{}] Could not close event recording", terminalId, e);
+            }
+        }
+    }
+    
+    private void record(SdkEventKind kind, int status, String... fields) {
+        SdkEventLog.Writer current = recorder;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.append(kind, status, fields);
+        } catch (IOException e) {
+            // Never let recording break payments - stop recording instead
+            log.error("[{}] Event recording failed, recording stopped", terminalId, e);
+            closeRecorder();
+        }
+    }
+    
+    // Receipts carry card and customer details - recordings keep their layout only
+    private String maskForRecording(String receiptText) {
+        if (recorder == null || receiptText == null) {
+            return receiptText;
+        }
+        return RECEIPT_CONTENT.matcher(receiptText).replaceAll("*");
+    }
+    
+    private static String toText(Object value) {
+        return value != null ? value.toString() : null;
+    }
+    
+    private static String receiptText(Receipt receipt) {
+        return receipt != null ? receipt.getAsPlainText() : null;
+    }
+    
+    private static String paymentIdOf(Payment payment) {
+        return payment != null ? payment.getPaymentId() : null;
     }
 
     @Override
     public void handleStatus(Status status) {
+        record(SdkEventKind.STATUS, status.getStatus(), status.getMessage(), toText(status.getType()));
+        onStatus(status.getStatus(), status.getMessage(), toText(status.getType()));
+    }
+    
+    void onStatus(int code, String message, String type) {
         // Save status details
-        lastStatusCode = status.getStatus();
-        lastStatusMessage = status.getMessage();
+        lastStatusCode = code;
+        lastStatusMessage = message;
         
-        // Log every detail about the status
-        log.info("Terminal status update: code={}, message={}, type={}", 
-                status.getStatus(), status.getMessage(), status.getType());
+        // Primitive arguments are boxed, so only build the call when it is logged
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Terminal status update: code={}, message={}, type={}", terminalId, code, message, type);
+        }
         
         // Specific handling for various status codes
-        switch (status.getStatus()) {
+        switch (code) {
             case StatusCode.SUCCESS:
-                log.info("SUCCESS: Terminal operation completed successfully");
+                log.debug("SUCCESS: Terminal operation completed successfully");
                 if (initializationCallback != null) {
                     initializationCallback.onComplete(true, "Success");
                 }
@@ -60,8 +196,7 @@ public class PaymentEventListener extends CommerceListenerAdapter {
                 
             case -30: // Configuration required, no device remembered
                 // Critical: Treat -30 as informational for first-time setup, not an error
-                log.info("INFORMATION - Status -30: Configuration required, no device remembered");
-                log.info("This is expected for first-time connections and will be handled as part of setup");
+                log.info("[{}] Status -30: configuration required, no device remembered (expected on first-time setup)", terminalId);
                 
                 // Pass the status through to the callback WITHOUT treating it as an error
                 if (initializationCallback != null) {
@@ -72,23 +207,25 @@ public class PaymentEventListener extends CommerceListenerAdapter {
                 break;
                 
             case -1: // General error
-                log.error("GENERAL ERROR: {}", status.getMessage());
+                log.error("[{}] GENERAL ERROR: {}", terminalId, message);
                 if (initializationCallback != null) {
-                    initializationCallback.onComplete(false, status.getMessage());
+                    initializationCallback.onComplete(false, message);
                 }
                 errorCount++;
                 break;
                 
             default:
-                if (status.getStatus() < 0) {
-                    log.error("Terminal error (code: {}): {}", status.getStatus(), status.getMessage());
+                if (code < 0) {
+                    log.error("[{}] Terminal error (code: {}): {}", terminalId, code, message);
                     
                     if (initializationCallback != null) {
-                        initializationCallback.onComplete(false, status.getMessage());
+                        initializationCallback.onComplete(false, message);
                     }
                     errorCount++;
                 } else {
-                    log.info("Terminal status (code: {}): {}", status.getStatus(), status.getMessage());
+                    if (log.isInfoEnabled() && logSampler.allow(terminalId, LogSampler.Category.STATUS)) {
+                        log.info("[{}] Terminal status (code: {}): {}", terminalId, code, message);
+                    }
                 }
                 break;
         }
@@ -96,134 +233,269 @@ public class PaymentEventListener extends CommerceListenerAdapter {
 
     @Override
     public void handlePaymentCompletedEvent(PaymentCompletedEvent event) {
-        if (event.getStatus() == 0) {
-            log.info("Payment completed successfully");
-            
-            // Use your model's PaymentStatus enum
-            com.robar.payment.model.PaymentStatus status = com.robar.payment.model.PaymentStatus.COMPLETED;
-            
-            // Create and publish payment status event
-            PaymentStatusEvent statusEvent = new PaymentStatusEvent(
-                event.getPayment().getPaymentId(),
-                status,
-                "Payment successful"
-            );
-            eventPublisher.publishEvent(statusEvent);
+        Payment payment = event.getPayment();
+        AmountTotals totals = payment.getRequestedAmounts();
+        BigDecimal total = totals != null ? toBigDecimal(totals.getTotal()) : null;
+        TransactionKind kind = toKind(payment.getTransactionType());
+        record(SdkEventKind.PAYMENT_COMPLETED, event.getStatus(), event.getMessage(), payment.getPaymentId(),
+                toText(total), payment.getCurrency(), kind.name(), payment.getOriginalPaymentId());
+        onPaymentCompleted(event.getStatus(), event.getMessage(), payment.getPaymentId(), kind,
+                payment.getOriginalPaymentId(), total, payment.getCurrency());
+    }
+    
+    static TransactionKind toKind(TransactionType type) {
+        if (type == null) {
+            return TransactionKind.SALE;
+        }
+        switch (type) {
+            case PREAUTHORISATION:
+                return TransactionKind.PREAUTHORIZATION;
+            case PREAUTHORISATION_INCREMENT:
+                return TransactionKind.INCREMENT;
+            case PREAUTHORISATION_COMPLETION:
+                return TransactionKind.CAPTURE;
+            case REFUND:
+                return TransactionKind.REFUND;
+            case VOID:
+                return TransactionKind.VOID;
+            case REVERSAL:
+                return TransactionKind.REVERSAL;
+            default:
+                return TransactionKind.SALE;
+        }
+    }
+    
+    void onPaymentCompleted(int eventStatus, String eventMessage, String paymentId, TransactionKind kind,
+                            String originalPaymentId, BigDecimal total, String paymentCurrency) {
+        // Not every result names its currency - the terminal's own is the one it charged in
+        String currency = paymentCurrency != null ? paymentCurrency : this.currency;
+        com.robar.payment.model.PaymentStatus status;
+        String message;
+        
+        if (eventStatus == 0) {
+            log.info("[{}] Payment {} completed", terminalId, paymentId);
+            status = com.robar.payment.model.PaymentStatus.COMPLETED;
+            message = "Payment successful";
         } else {
-            log.error("Payment failed: {}", event.getMessage());
-            
-            // Use your model's PaymentStatus enum
-            com.robar.payment.model.PaymentStatus status = com.robar.payment.model.PaymentStatus.FAILED;
-            
-            // Create and publish payment status event
-            PaymentStatusEvent statusEvent = new PaymentStatusEvent(
-                event.getPayment().getPaymentId(),
-                status,
-                event.getMessage()
-            );
-            eventPublisher.publishEvent(statusEvent);
+            log.error("[{}] Payment {} failed: {}", terminalId, paymentId, eventMessage);
+            status = com.robar.payment.model.PaymentStatus.FAILED;
+            message = eventMessage;
+        }
+        
+        // Publish the result for the till first - receipt handling must never delay it
+        eventPublisher.publishEvent(new PaymentStatusEvent(paymentId, status, message, terminalId, total,
+                kind, originalPaymentId, currency));
+        
+        // Hand the receipt off for asynchronous rendering
+        eventPublisher.publishEvent(new ReceiptCapturedEvent(captureReceipt(paymentId, total, currency, status)));
+        
+        // A completed payment is a good point to get the recording onto disk
+        SdkEventLog.Writer current = recorder;
+        if (current != null) {
+            try {
+                current.flush();
+            } catch (IOException e) {
+                log.warn("[{}] Could not flush event recording", terminalId, e);
+            }
         }
     }
+    
+    private ReceiptData captureReceipt(String paymentId, BigDecimal total, String currency,
+                                       com.robar.payment.model.PaymentStatus status) {
+        PendingReceipt pending;
+        synchronized (pendingReceipts) {
+            pending = paymentId != null ? pendingReceipts.remove(paymentId) : null;
+            if (pending == null) {
+                pending = pendingReceipts.remove(UNASSIGNED_RECEIPT);
+            }
+        }
+        
+        return ReceiptData.builder()
+                .transactionId(paymentId)
+                .status(status)
+                .amount(total != null ? total.toPlainString() : null)
+                .currency(currency)
+                .deliveryMethod(pending != null ? pending.deliveryMethod : null)
+                .timestamp(Instant.now())
+                .lines(pending != null ? pending.lines : new ArrayList<>())
+                .build();
+    }
+    
+    private static BigDecimal toBigDecimal(Decimal value) {
+        return value != null ? new BigDecimal(value.toString()) : null;
+    }
+    
+    private void capturePendingReceipt(String paymentId, String receiptText, String deliveryMethod) {
+        String key = paymentId != null ? paymentId : UNASSIGNED_RECEIPT;
+        synchronized (pendingReceipts) {
+            PendingReceipt pending = pendingReceipts.computeIfAbsent(key, k -> new PendingReceipt());
+            if (receiptText != null) {
+                pending.lines = new ArrayList<>(List.of(receiptText.split("\\r?\\n")));
+            }
+            if (deliveryMethod != null) {
+                pending.deliveryMethod = deliveryMethod;
+            }
+        }
+    }
+    
+    private static class PendingReceipt {
+        List<String> lines = new ArrayList<>();
+        String deliveryMethod;
+    }
 
     @Override
     public void handleCommerceEvent(CommerceEvent event) {
-        log.info("Commerce event received: type={}, status={}, message={}", 
-                event.getType(), event.getStatus(), event.getMessage());
+        record(SdkEventKind.COMMERCE, event.getStatus(), event.getType(), event.getMessage());
+        onCommerceEvent(event.getType(), event.getStatus(), event.getMessage());
+    }
+    
+    void onCommerceEvent(String type, int status, String message) {
+        if (log.isInfoEnabled() && logSampler.allow(terminalId, LogSampler.Category.COMMERCE)) {
+            log.info("[{}] Commerce event: type={}, status={}, message={}", terminalId, type, status, message);
+        }
         
         // Check for initialization events by string comparison (safer with SDK version differences)
-        if (event.getType() != null && 
-            (event.getType().toLowerCase().contains("initialized") || 
-             event.getType().toLowerCase().contains("init"))) {
+        if (type != null && 
+            (type.toLowerCase().contains("initialized") || 
+             type.toLowerCase().contains("init"))) {
             
-            if (event.getStatus() == StatusCode.SUCCESS) {
-                log.info("Terminal initialization event successful!");
+            if (status == StatusCode.SUCCESS) {
+                log.info("[{}] Terminal initialization event successful", terminalId);
                 if (initializationCallback != null) {
                     initializationCallback.onComplete(true, "Initialization event success");
                 }
             } else {
                 // For initialization events with non-success status
-                log.info("Terminal initialization event status: {} - {}", event.getStatus(), event.getMessage());
+                if (log.isInfoEnabled()) {
+                    log.info("[{}] Terminal initialization event status: {} - {}", terminalId, status, message);
+                }
                 
                 // Only treat as error if not -30 (which is expected for first-time)
-                if (event.getStatus() == -30) {
-                    log.info("Received -30 in initialization event (expected for first-time setup)");
+                if (status == -30) {
                     if (initializationCallback != null) {
                         initializationCallback.onComplete(false, "FIRST_TIME_SETUP:-30");
                     }
                 } else {
                     if (initializationCallback != null) {
-                        initializationCallback.onComplete(false, event.getMessage());
+                        initializationCallback.onComplete(false, message);
                     }
                 }
             }
         }
         
         // Also handle device management events
-        if (event.getType() != null && event.getType().toLowerCase().contains("device")) {
-            log.info("Device management event: {} - {}", event.getStatus(), event.getMessage());
+        if (type != null && type.toLowerCase().contains("device") && log.isDebugEnabled()) {
+            log.debug("[{}] Device management event: {} - {}", terminalId, status, message);
         }
     }
 
     @Override
     public void handleTransactionEvent(TransactionEvent event) {
-        log.info("Transaction event: type={}, status={}, message={}", 
-                event.getType(), event.getStatus(), event.getMessage());
+        record(SdkEventKind.TRANSACTION, event.getStatus(), event.getType(), event.getMessage());
+        onTransactionEvent(event.getType(), event.getStatus(), event.getMessage());
+    }
+    
+    void onTransactionEvent(String type, int status, String message) {
+        if (log.isInfoEnabled() && logSampler.allow(terminalId, LogSampler.Category.TRANSACTION)) {
+            log.info("[{}] Transaction event: type={}, status={}, message={}", terminalId, type, status, message);
+        }
         
-        if (TransactionEvent.LOGIN_COMPLETED.equals(event.getType())) {
-            if (event.getStatus() == StatusCode.SUCCESS) {
-                log.info("Login successful");
+        if (TransactionEvent.LOGIN_COMPLETED.equals(type)) {
+            if (status == StatusCode.SUCCESS) {
+                log.info("[{}] Login successful", terminalId);
             } else {
-                log.error("Login failed: {}", event.getMessage());
+                log.error("[{}] Login failed: {}", terminalId, message);
             }
         }
         
-        if (CommerceEvent.SESSION_STARTED.equals(event.getType())) {
-            if (event.getStatus() == StatusCode.SUCCESS) {
-                log.info("Session started successfully");
+        if (CommerceEvent.SESSION_STARTED.equals(type)) {
+            if (status == StatusCode.SUCCESS) {
+                log.info("[{}] Session started", terminalId);
             } else {
-                log.error("Session start failed: {}", event.getMessage());
+                log.error("[{}] Session start failed: {}", terminalId, message);
             }
         }
         
-        if (CommerceEvent.SESSION_ENDED.equals(event.getType())) {
-            log.info("Session ended");
+        if (CommerceEvent.SESSION_ENDED.equals(type)) {
+            log.info("[{}] Session ended", terminalId);
+            onCustomerSession(CustomerSessionEvent.Type.SESSION_ENDED);
         }
     }
 
+    void onCustomerSession(CustomerSessionEvent.Type type) {
+        eventPublisher.publishEvent(new CustomerSessionEvent(terminalId, type));
+    }
+
     @Override
     public void handleHostAuthorizationEvent(HostAuthorizationEvent event) {
-        if (event.getStatus() == StatusCode.SUCCESS) {
-            log.info("Host authorization requested");
+        HostTransaction hostTransaction = event.getHostTransaction();
+        String totalAmount = hostTransaction != null ? hostTransaction.getTotalAmount() : null;
+        record(SdkEventKind.HOST_AUTHORIZATION, event.getStatus(), totalAmount);
+        onHostAuthorization(event.getStatus(), totalAmount);
+    }
+    
+    // The decision sent to the terminal, null if there was none
+    HostAuthorizationDecision onHostAuthorization(int status, String totalAmount) {
+        if (status == StatusCode.SUCCESS) {
+            log.debug("[{}] Host authorization requested", terminalId);
             
-            HostTransaction hostTransaction = event.getHostTransaction();
-            if (hostTransaction != null && hostTransaction.getTotalAmount() != null) {
+            if (hostAuthorizationService == null) {
+                log.info("No host attached (replay), authorization of {} skipped", totalAmount);
+                return null;
+            }
+            if (totalAmount != null) {
                 try {
-                    // Create EMV data for approval
-                    HashMap<String, String> emvData = new HashMap<>();
-                    emvData.put("8A", "3030"); // Approval code
+                    BigDecimal amount = new BigDecimal(totalAmount);
+                    String reference = UUID.randomUUID().toString();
+                    pendingHostReference = reference;
                     
-                    String totalAmount = hostTransaction.getTotalAmount();
-                    double amount = Double.parseDouble(totalAmount);
-                    Decimal authAmount = new Decimal(amount);
+                    // Online with the host when possible, otherwise store-and-forward under the floor limit
+                    HostAuthorizationRequest request = HostAuthorizationRequest.builder()
+                            .reference(reference)
+                            .terminalId(terminalId)
+                            .amount(amount)
+                            .currency(currency)
+                            .timestamp(Instant.now())
+                            .build();
+                    HostAuthorizationDecision decision = hostAuthorizationService.authorize(request);
+                    
+                    // Create EMV data for the response
+                    HashMap<String, String> emvData = new HashMap<>();
+                    if (!decision.isApproved()) {
+                        emvData.put("8A", "3035"); // Not approved
+                    } else if (decision.isOffline()) {
+                        emvData.put("8A", "5931"); // Y1 - offline approved
+                    } else {
+                        emvData.put("8A", "3030"); // Approval code
+                    }
                     
                     // Use the stored paymentSdk reference
                     if (paymentSdk != null) {
                         Status result = paymentSdk.getTransactionManager()
                             .respondToHostAuthorization(
-                                "123456", 
-                                HostDecisionType.HOST_AUTHORIZED, 
+                                decision.isApproved() ? decision.getAuthCode() : "", 
+                                decision.isApproved() ? HostDecisionType.HOST_AUTHORIZED : HostDecisionType.HOST_DECLINED, 
                                 emvData, 
-                                authAmount
+                                TerminalConnection.toDecimal(amount)
                             );
-                        log.info("Host authorization response status: {}", result.getStatus());
+                        if (log.isInfoEnabled()) {
+                            log.info("[{}] Host authorization response status: {}, approved={}, offline={}",
+                                    terminalId, result.getStatus(), decision.isApproved(), decision.isOffline());
+                        }
                     } else {
-                        log.error("PaymentSdk reference is null, can't respond to host authorization");
+                        // Simulated terminals take the returned decision instead
+                        log.debug("[{}] No SDK attached, host authorization decision returned only", terminalId);
                     }
+                    
+                    // Answer the terminal first, then let history and the like see the decision
+                    eventPublisher.publishEvent(new HostAuthorizationDecidedEvent(request, decision));
+                    return decision;
                 } catch (Exception e) {
-                    log.error("Error responding to host authorization", e);
+                    log.error("[{}] Error responding to host authorization", terminalId, e);
                 }
             }
         }
+        return null;
     }
     
     // Expose status information
@@ -231,6 +503,10 @@ public class PaymentEventListener extends CommerceListenerAdapter {
         return lastStatusCode;
     }
     
+    public String getTerminalId() {
+        return terminalId;
+    }
+    
     public String getLastStatusMessage() {
         return lastStatusMessage;
     }
@@ -248,101 +524,334 @@ public class PaymentEventListener extends CommerceListenerAdapter {
     
     @Override
     public void handleNotificationEvent(NotificationEvent event) {
+        record(SdkEventKind.NOTIFICATION, 0, event.getMessage());
         log.debug("Notification event received: {}", event.getMessage());
     }
     
     @Override
     public void handleAmountAdjustedEvent(AmountAdjustedEvent event) {
+        AmountTotals adjusted = event.getAdjustedAmounts();
+        BigDecimal total = adjusted != null ? toBigDecimal(adjusted.getTotal()) : null;
+        BigDecimal gratuity = adjusted != null ? toBigDecimal(adjusted.getGratuity()) : null;
+        record(SdkEventKind.AMOUNT_ADJUSTED, adjusted != null ? 1 : 0, toText(total), toText(gratuity));
+        onAmountAdjusted(adjusted != null, total, gratuity);
+    }
+    
+    void onAmountAdjusted(boolean hasAmounts, BigDecimal total, BigDecimal gratuity) {
         log.debug("Amount adjusted event received");
+        
+        // Tip entered by the customer on the terminal
+        if (hasAmounts) {
+            eventPublisher.publishEvent(new TipAdjustedEvent(terminalId, total, gratuity));
+        }
     }
 
     @Override
     public void handleBasketAdjustedEvent(BasketAdjustedEvent event) {
-        log.debug("Basket adjusted event received");
+        record(SdkEventKind.BASKET_ADJUSTED, event.getStatus(), event.getMessage());
+        onBasketEvent(event.getStatus(), event.getMessage());
     }
 
     @Override
     public void handleBasketEvent(BasketEvent event) {
-        log.debug("Basket event received");
+        record(SdkEventKind.BASKET, event.getStatus(), event.getMessage());
+        onBasketEvent(event.getStatus(), event.getMessage());
+    }
+    
+    void onBasketEvent(int status, String message) {
+        if (log.isDebugEnabled()) {
+            log.debug("Basket event received: status={}", status);
+        }
+        eventPublisher.publishEvent(new BasketStatusEvent(terminalId, status, message));
     }
 
     @Override
     public void handleDeviceManagementEvent(DeviceManagementEvent event) {
+        record(SdkEventKind.DEVICE_MANAGEMENT, 0, event.getMessage());
         log.debug("Device management event received: {}", event.getMessage());
     }
 
     @Override
     public void handleLoyaltyReceivedEvent(LoyaltyReceivedEvent event) {
+        String cardToken = tokenize(toText(event.getLoyaltyIdentifier()));
+        record(SdkEventKind.LOYALTY_RECEIVED, 0, cardToken);
+        onLoyaltyReceived(cardToken);
+    }
+    
+    void onLoyaltyReceived(String cardToken) {
         log.debug("Loyalty received event received");
+        if (cardToken != null) {
+            eventPublisher.publishEvent(new CardPresentedEvent(terminalId, cardToken, true));
+        }
     }
 
     @Override
     public void handleCardInformationReceivedEvent(CardInformationReceivedEvent event) {
+        // Only the token leaves this method - not recorded, logged or published in clear
+        String cardToken = tokenize(cardReference(event.getCardInformation()));
+        record(SdkEventKind.CARD_INFORMATION, 0, cardToken);
+        onCardInformation(cardToken);
+    }
+    
+    void onCardInformation(String cardToken) {
         log.debug("Card information received event");
+        if (cardToken != null) {
+            // Loyalty and blocked-card lookups run while the customer finishes at the terminal
+            eventPublisher.publishEvent(new CardPresentedEvent(terminalId, cardToken, false));
+        }
+    }
+    
+    // Payment account reference when the terminal provides one, the card number otherwise
+    private static String cardReference(CardInformation card) {
+        if (card == null) {
+            return null;
+        }
+        String reference = card.getPaymentAccountReference();
+        return reference != null && !reference.isEmpty() ? reference : card.getPan();
+    }
+    
+    private String tokenize(String cardNumber) {
+        return cardTokenizer != null ? cardTokenizer.tokenize(cardNumber) : null;
     }
 
     @Override
     public void handleReceiptDeliveryMethodEvent(ReceiptDeliveryMethodEvent event) {
-        log.debug("Receipt delivery method event received");
+        String receipt = receiptText(event.getReceipt());
+        String paymentId = paymentIdOf(event.getPayment());
+        record(SdkEventKind.RECEIPT_DELIVERY_METHOD, 0, event.getType(), maskForRecording(receipt), paymentId);
+        onReceiptDeliveryMethod(event.getType(), receipt, paymentId);
+    }
+    
+    void onReceiptDeliveryMethod(String type, String receiptText, String paymentId) {
+        log.debug("Receipt delivery method event received: {}", type);
+        capturePendingReceipt(paymentId, receiptText, type);
     }
 
     @Override
     public void handleStoredValueCardEvent(StoredValueCardEvent event) {
+        record(SdkEventKind.STORED_VALUE_CARD, 0);
         log.debug("Stored value card event received");
     }
 
     @Override
     public void handleUserInputEvent(UserInputEvent event) {
+        record(SdkEventKind.USER_INPUT, 0);
         log.debug("User input event received");
     }
 
     @Override
     public void handleReconciliationEvent(ReconciliationEvent event) {
+        record(SdkEventKind.RECONCILIATION, 0);
         log.debug("Reconciliation event received");
     }
 
     @Override
     public void handleReconciliationsListEvent(ReconciliationsListEvent event) {
+        record(SdkEventKind.RECONCILIATIONS_LIST, 0);
         log.debug("Reconciliations list event received");
     }
 
     @Override
     public void handleTransactionQueryEvent(TransactionQueryEvent event) {
-        log.debug("Transaction query event received");
+        // Flattened to payment id, authorization result and amount per transaction
+        List<String> values = new ArrayList<>();
+        List<Payment> payments = event.getPayments();
+        if (payments != null) {
+            for (Payment payment : payments) {
+                AmountTotals totals = payment.getRequestedAmounts();
+                values.add(payment.getPaymentId());
+                values.add(toText(payment.getAuthResult()));
+                values.add(toText(totals != null ? toBigDecimal(totals.getTotal()) : null));
+            }
+        }
+        String[] fields = values.toArray(new String[0]);
+        record(SdkEventKind.TRANSACTION_QUERY, event.getStatus(), fields);
+        onTransactionQuery(event.getStatus(), fields);
+    }
+    
+    void onTransactionQuery(int status, String... fields) {
+        List<TransactionRecord> transactions = new ArrayList<>();
+        for (int i = 0; i + 2 < fields.length; i += 3) {
+            if (fields[i] == null) {
+                continue;
+            }
+            com.robar.payment.model.PaymentStatus queriedStatus = statusOfAuthResult(fields[i + 1]);
+            if (queriedStatus == null) {
+                log.warn("[{}] Transaction {} has authorization result {}, not reported as known",
+                        terminalId, fields[i], fields[i + 1]);
+                continue;
+            }
+            transactions.add(TransactionRecord.builder()
+                    .transactionId(fields[i])
+                    .terminalId(terminalId)
+                    .status(queriedStatus)
+                    .message("Reported by terminal query")
+                    .amount(fields[i + 2] != null ? new BigDecimal(fields[i + 2]) : null)
+                    .updatedAt(Instant.now())
+                    .build());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Transaction query answered: status={}, {} transactions", terminalId, status, transactions.size());
+        }
+        eventPublisher.publishEvent(new TerminalQueryResultEvent(terminalId, status, transactions));
+    }
+    
+    // AuthorizationResult names as the SDK reports them; anything else is not guessed at
+    private static final Map<String, com.robar.payment.model.PaymentStatus> AUTH_RESULT_STATUS = Map.ofEntries(
+            Map.entry("AUTHORIZED", com.robar.payment.model.PaymentStatus.COMPLETED),
+            Map.entry("AUTHORIZED_ONLINE", com.robar.payment.model.PaymentStatus.COMPLETED),
+            Map.entry("AUTHORIZED_OFFLINE", com.robar.payment.model.PaymentStatus.COMPLETED),
+            Map.entry("DECLINED", com.robar.payment.model.PaymentStatus.FAILED),
+            Map.entry("DECLINED_ONLINE", com.robar.payment.model.PaymentStatus.FAILED),
+            Map.entry("DECLINED_OFFLINE", com.robar.payment.model.PaymentStatus.FAILED),
+            Map.entry("REJECTED", com.robar.payment.model.PaymentStatus.FAILED),
+            Map.entry("TIMEOUT", com.robar.payment.model.PaymentStatus.FAILED),
+            Map.entry("CANCELLED", com.robar.payment.model.PaymentStatus.CANCELLED),
+            Map.entry("USER_CANCELLED", com.robar.payment.model.PaymentStatus.CANCELLED));
+
+    /**
+     * Status of a queried transaction by the terminal's authorization result:
+     * PROCESSING while it has none yet, null for a result this service does not
+     * know (the transaction is then left out of the answer).
+     */
+    static com.robar.payment.model.PaymentStatus statusOfAuthResult(String authResult) {
+        if (authResult == null) {
+            return com.robar.payment.model.PaymentStatus.PROCESSING;
+        }
+        return AUTH_RESULT_STATUS.get(authResult);
     }
 
     @Override
     public void handleHostFinalizeTransactionEvent(HostFinalizeTransactionEvent event) {
-        log.debug("Host finalize transaction event received");
+        record(SdkEventKind.HOST_FINALIZE, event.getStatus());
+        onHostFinalizeTransaction(event.getStatus());
+    }
+    
+    void onHostFinalizeTransaction(int status) {
+        if (log.isDebugEnabled()) {
+            log.debug("Host finalize transaction event received: status={}", status);
+        }
+        
+        String reference = pendingHostReference;
+        pendingHostReference = null;
+        if (reference != null && hostAuthorizationService != null) {
+            hostAuthorizationService.finalizeTransaction(reference, status == StatusCode.SUCCESS);
+        }
     }
 
     @Override
     public void handlePinEvent(PinEvent event) {
+        record(SdkEventKind.PIN, 0);
         log.debug("Pin event received");
     }
 
     @Override
     public void handlePrintEvent(PrintEvent event) {
+        String receipt = receiptText(event.getReceipt());
+        String paymentId = paymentIdOf(event.getPayment());
+        record(SdkEventKind.PRINT, 0, maskForRecording(receipt), paymentId);
+        onPrint(receipt, paymentId);
+    }
+    
+    void onPrint(String receiptText, String paymentId) {
         log.debug("Print event received");
+        capturePendingReceipt(paymentId, receiptText, null);
+    }
+    
+    // Callbacks without data the listener acts on
+    void onPassiveEvent(SdkEventKind kind) {
+        log.debug("{} event received", kind);
     }
     
     @Override
     public void handleScannerDataEvent(ScannerDataEvent event) {
+        record(SdkEventKind.SCANNER_DATA, 0);
         log.debug("Scanner data event received");
     }
 
     @Override
     public void handleScannerStateEvent(ScannerStateEvent event) {
-        log.debug("Scanner state event received");
+        String state = toText(event.getScannerState());
+        record(SdkEventKind.SCANNER_STATE, 0, state);
+        onScannerState(state);
+    }
+    
+    void onScannerState(String state) {
+        float[] values = emptyVitals();
+        values[VitalsMetric.SCANNER_READY.ordinal()] = flag(state);
+        publishVitals(values);
     }
 
     @Override
     public void handleDeviceVitalsInformationEvent(DeviceVitalsInformationEvent event) {
-        log.debug("Device vitals information event received");
+        DeviceVitalsInformation vitals = event.getDeviceVitalsInformation();
+        String battery = vitals != null ? toText(vitals.getBatteryLevel()) : null;
+        String temperature = vitals != null ? toText(vitals.getTemperature()) : null;
+        String signal = vitals != null ? toText(vitals.getSignalStrength()) : null;
+        String network = vitals != null ? toText(vitals.getNetworkStatus()) : null;
+        record(SdkEventKind.DEVICE_VITALS, 0, battery, temperature, signal, network);
+        onDeviceVitals(battery, temperature, signal, network);
+    }
+    
+    void onDeviceVitals(String battery, String temperature, String signal, String network) {
+        float[] values = emptyVitals();
+        values[VitalsMetric.BATTERY_PERCENT.ordinal()] = number(battery);
+        values[VitalsMetric.TEMPERATURE_CELSIUS.ordinal()] = number(temperature);
+        values[VitalsMetric.SIGNAL_DBM.ordinal()] = number(signal);
+        values[VitalsMetric.NETWORK_UP.ordinal()] = flag(network);
+        publishVitals(values);
+    }
+    
+    private void publishVitals(float[] values) {
+        for (float value : values) {
+            if (!Float.isNaN(value)) {
+                eventPublisher.publishEvent(new DeviceVitalsEvent(terminalId, System.currentTimeMillis(), values));
+                return;
+            }
+        }
+        // Nothing usable in the event (e.g. an old recording)
+    }
+    
+    private static float[] emptyVitals() {
+        float[] values = new float[VitalsMetric.values().length];
+        Arrays.fill(values, Float.NaN);
+        return values;
+    }
+    
+    private static float number(String value) {
+        if (value == null) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+    
+    private static final Set<String> STATES_UP = Set.of(
+            "TRUE", "1", "UP", "ON", "ONLINE", "READY", "CONNECTED", "ENABLED", "AVAILABLE");
+    private static final Set<String> STATES_DOWN = Set.of(
+            "FALSE", "0", "DOWN", "OFF", "OFFLINE", "NOT_READY", "DISCONNECTED", "DISABLED", "UNAVAILABLE", "ERROR");
+
+    // State text to 1 (up / ready) or 0; NaN for anything else, e.g. UNKNOWN, so no alert is raised on a guess
+    static float flag(String state) {
+        if (state == null) {
+            return Float.NaN;
+        }
+        String value = state.trim().toUpperCase().replace(' ', '_').replace('-', '_');
+        if (STATES_UP.contains(value)) {
+            return 1;
+        }
+        if (STATES_DOWN.contains(value)) {
+            return 0;
+        }
+        return Float.NaN;
     }
 
     @Override
     public void handleTerminalConfigRequestEvent(ConfigurationRequestEvent event) {
+        record(SdkEventKind.TERMINAL_CONFIG_REQUEST, 0);
         log.debug("Terminal config request event received");
     }
 }
\ No newline at end of file
@@ -3,7 +3,17 @@ package com.robar.payment.service;
 import com.robar.payment.model.PaymentRequest;
 import com.robar.payment.model.PaymentResponse;
 
+import java.math.BigDecimal;
+import java.util.List;
+
 public interface PaymentService {
     PaymentResponse initiatePayment(PaymentRequest request);
     PaymentResponse getPaymentStatus(String transactionId);
+    // Statuses of several transactions in one call, in the order given
+    List<PaymentResponse> getPaymentStatuses(List<String> transactionIds);
+
+    // Follow-up operations on an earlier transaction, run on the terminal that holds it
+    PaymentResponse refundPayment(String transactionId, BigDecimal amount);
+    PaymentResponse voidPayment(String transactionId);
+    PaymentResponse reversePayment(String transactionId);
 }
\ No newline at end of file
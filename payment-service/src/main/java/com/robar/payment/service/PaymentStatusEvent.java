@@ -1,17 +1,63 @@
 package com.robar.payment.service;
 
 import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TransactionKind;
 import lombok.Getter;
 
+import java.math.BigDecimal;
+
 @Getter
-public class PaymentStatusEvent {
+public class PaymentStatusEvent implements ReplayableEvent {
     private final String paymentId;
     private final PaymentStatus status;
     private final String message;
+    private final String terminalId;
+    private final BigDecimal amount;
+    // Set on terminal results; null on status changes of an earlier transaction
+    private final TransactionKind kind;
+    private final String originalPaymentId;
+    // ISO 4217 code of the amount, null if not known
+    private final String currency;
+    // Published by a recording replayed into the application
+    private final boolean replayed;
 
     public PaymentStatusEvent(String paymentId, PaymentStatus status, String message) {
+        this(paymentId, status, message, null);
+    }
+
+    public PaymentStatusEvent(String paymentId, PaymentStatus status, String message, String terminalId) {
+        this(paymentId, status, message, terminalId, null);
+    }
+
+    public PaymentStatusEvent(String paymentId, PaymentStatus status, String message, String terminalId, BigDecimal amount) {
+        this(paymentId, status, message, terminalId, amount, null, null);
+    }
+
+    public PaymentStatusEvent(String paymentId, PaymentStatus status, String message, String terminalId, BigDecimal amount,
+                              TransactionKind kind, String originalPaymentId) {
+        this(paymentId, status, message, terminalId, amount, kind, originalPaymentId, null);
+    }
+
+    public PaymentStatusEvent(String paymentId, PaymentStatus status, String message, String terminalId, BigDecimal amount,
+                              TransactionKind kind, String originalPaymentId, String currency) {
+        this(paymentId, status, message, terminalId, amount, kind, originalPaymentId, currency, false);
+    }
+
+    private PaymentStatusEvent(String paymentId, PaymentStatus status, String message, String terminalId, BigDecimal amount,
+                               TransactionKind kind, String originalPaymentId, String currency, boolean replayed) {
         this.paymentId = paymentId;
         this.status = status;
         this.message = message;
+        this.terminalId = terminalId;
+        this.amount = amount;
+        this.kind = kind;
+        this.originalPaymentId = originalPaymentId;
+        this.currency = currency;
+        this.replayed = replayed;
+    }
+
+    @Override
+    public PaymentStatusEvent asReplayed() {
+        return new PaymentStatusEvent(paymentId, status, message, terminalId, amount, kind, originalPaymentId, currency, true);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.model.Basket;
+import com.robar.payment.model.ClusterNode;
+import com.robar.payment.model.TerminalLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Forwards requests for a terminal to the node holding its lease.
+ */
+@Slf4j
+@Service
+public class PeerForwarder {
+    // Set on forwarded requests so a peer never forwards them again
+    public static final String FORWARDED_HEADER = "X-Robar-Forwarded-By";
+    // Carries the peer secret, without it the header above is not trusted
+    public static final String SECRET_HEADER = "X-Robar-Peer-Secret";
+
+    private final TerminalOwnershipManager ownershipManager;
+    private final TerminalRegistry terminalRegistry;
+    private final BasketSyncService basketSyncService;
+    private final RestClient restClient;
+    private final String peerSecret;
+
+    public PeerForwarder(TerminalOwnershipManager ownershipManager, TerminalRegistry terminalRegistry,
+                         BasketSyncService basketSyncService, ClusterProperties properties,
+                         RestClient.Builder restClientBuilder) {
+        if (properties.isEnabled() && (properties.getPeerSecret() == null || properties.getPeerSecret().isEmpty())) {
+            throw new IllegalStateException("robar.cluster.enabled needs robar.cluster.peer-secret");
+        }
+        this.ownershipManager = ownershipManager;
+        this.terminalRegistry = terminalRegistry;
+        this.basketSyncService = basketSyncService;
+        this.peerSecret = properties.getPeerSecret();
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) Math.min(properties.getForwardTimeoutMs(), 5000));
+        requestFactory.setReadTimeout((int) properties.getForwardTimeoutMs());
+        this.restClient = restClientBuilder.requestFactory(requestFactory).build();
+    }
+
+    /**
+     * True if a request carrying these headers was forwarded by a peer.
+     */
+    public boolean isFromPeer(String forwardedBy, String secret) {
+        return forwardedBy != null && secret != null && peerSecret != null
+                && MessageDigest.isEqual(peerSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The terminal a request goes to: the given one, or the default terminal
+     * when none is given. Unknown ids come back as they are.
+     */
+    public String resolveTerminalId(String terminalId) {
+        try {
+            return terminalRegistry.resolve(terminalId).getTerminalId();
+        } catch (RuntimeException e) {
+            return terminalId;
+        }
+    }
+
+    /**
+     * The terminal of a basket, whichever node holds it. Null if no node knows the basket.
+     */
+    public String findBasketTerminal(String basketId) {
+        Basket local = basketSyncService.getBasket(basketId);
+        if (local != null) {
+            return local.getTerminalId();
+        }
+        for (ClusterNode peer : ownershipManager.getPeers()) {
+            try {
+                Basket basket = restClient.get()
+                        .uri(peer.getUrl() + "/baskets/{basketId}", basketId)
+                        .header(FORWARDED_HEADER, ownershipManager.getSelf().getNodeId())
+                        .header(SECRET_HEADER, peerSecret)
+                        .retrieve()
+                        .body(Basket.class);
+                if (basket != null) {
+                    return basket.getTerminalId();
+                }
+            } catch (RestClientResponseException e) {
+                // Not on that node
+            } catch (Exception e) {
+                log.warn("Could not ask node {} for basket {}: {}", peer.getNodeId(), basketId, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The peer that should handle requests for the terminal, or null to handle them here.
+     */
+    public TerminalLease findRemoteOwner(String terminalId) {
+        if (terminalId == null || terminalId.isEmpty()) {
+            return null;
+        }
+        TerminalLease owner = ownershipManager.getRemoteOwner(terminalId);
+        return owner != null && owner.getOwnerUrl() != null ? owner : null;
+    }
+
+    /**
+     * True if this node holds the terminal but cannot vouch for its lease right
+     * now; requests for it must be refused until that is settled.
+     */
+    public boolean isFenced(String terminalId) {
+        return ownershipManager.isFenced(terminalId);
+    }
+
+    /**
+     * Sends the request to the owner as is and returns its response, error statuses included.
+     */
+    public ResponseEntity<byte[]> forward(TerminalLease owner, String method, String pathAndQuery,
+                                          String contentType, byte[] body) {
+        log.debug("Forwarding {} {} for terminal {} to {}", method, pathAndQuery, owner.getTerminalId(), owner.getOwnerNodeId());
+        RestClient.RequestBodySpec request = restClient.method(HttpMethod.valueOf(method))
+                .uri(owner.getOwnerUrl() + pathAndQuery)
+                .header(FORWARDED_HEADER, ownershipManager.getSelf().getNodeId())
+                .header(SECRET_HEADER, peerSecret);
+        if (body != null && body.length > 0) {
+            request.contentType(contentType != null ? MediaType.parseMediaType(contentType) : MediaType.APPLICATION_JSON)
+                    .body(body);
+        }
+        try {
+            return request.retrieve().toEntity(byte[].class);
+        } catch (RestClientResponseException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                    .headers(e.getResponseHeaders())
+                    .body(e.getResponseBodyAsByteArray());
+        }
+    }
+
+    /**
+     * Posts a JSON body to the owner and maps the JSON response.
+     */
+    public <T> T post(TerminalLease owner, String pathAndQuery, Object body, Class<T> responseType) {
+        log.debug("Forwarding POST {} for terminal {} to {}", pathAndQuery, owner.getTerminalId(), owner.getOwnerNodeId());
+        try {
+            return restClient.post()
+                    .uri(owner.getOwnerUrl() + pathAndQuery)
+                    .header(FORWARDED_HEADER, ownershipManager.getSelf().getNodeId())
+                    .header(SECRET_HEADER, peerSecret)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body)
+                    .retrieve()
+                    .body(responseType);
+        } catch (RestClientResponseException e) {
+            // Peer answered with an error status - its body is still the response type
+            return e.getResponseBodyAs(responseType);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.robar.payment.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Small pool of reusable byte buffers for receipt rendering, so a burst of
+ * completed payments does not churn through short-lived arrays.
+ */
+public class ReceiptBufferPool {
+    // Buffers that grew past this are dropped instead of being returned to the pool
+    private static final int MAX_RETAINED_BYTES = 64 * 1024;
+    private static final int INITIAL_BYTES = 2 * 1024;
+
+    private final ArrayBlockingQueue<Buffer> pool;
+
+    public ReceiptBufferPool(int size) {
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    public Buffer acquire() {
+        Buffer buffer = pool.poll();
+        return buffer != null ? buffer : new Buffer();
+    }
+
+    public void release(Buffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED_BYTES) {
+            return;
+        }
+        buffer.reset();
+        pool.offer(buffer);
+    }
+
+    /**
+     * Growable byte buffer with direct access to its backing array.
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(INITIAL_BYTES);
+        }
+
+        public Buffer append(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        public Buffer append(byte... bytes) {
+            write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        public Buffer newLine() {
+            write('\n');
+            return this;
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public byte[] copy() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ReceiptData;
+import lombok.Getter;
+
+@Getter
+public class ReceiptCapturedEvent implements ReplayableEvent {
+    private final ReceiptData receipt;
+    // Captured from a recording replayed into the application
+    private final boolean replayed;
+
+    public ReceiptCapturedEvent(ReceiptData receipt) {
+        this(receipt, false);
+    }
+
+    private ReceiptCapturedEvent(ReceiptData receipt, boolean replayed) {
+        this.receipt = receipt;
+        this.replayed = replayed;
+    }
+
+    @Override
+    public ReceiptCapturedEvent asReplayed() {
+        return new ReceiptCapturedEvent(receipt, true);
+    }
+}
@@ -0,0 +1,138 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ReceiptData;
+import com.robar.payment.model.ReceiptFormat;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Renders captured receipt data to text, HTML or ESC/POS into a pooled buffer.
+ */
+public class ReceiptRenderer {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    // ESC/POS control sequences
+    private static final byte[] ESC_INIT = {0x1B, 0x40};
+    private static final byte[] ESC_ALIGN_CENTER = {0x1B, 0x61, 0x01};
+    private static final byte[] ESC_ALIGN_LEFT = {0x1B, 0x61, 0x00};
+    private static final byte[] ESC_BOLD_ON = {0x1B, 0x45, 0x01};
+    private static final byte[] ESC_BOLD_OFF = {0x1B, 0x45, 0x00};
+    private static final byte[] ESC_FEED_AND_CUT = {0x1B, 0x64, 0x04, 0x1D, 0x56, 0x00};
+
+    private final int lineWidth;
+
+    public ReceiptRenderer(int lineWidth) {
+        this.lineWidth = lineWidth;
+    }
+
+    public void render(ReceiptData receipt, ReceiptFormat format, ReceiptBufferPool.Buffer out) {
+        switch (format) {
+            case TEXT:
+                renderText(receipt, out);
+                break;
+            case HTML:
+                renderHtml(receipt, out);
+                break;
+            case ESCPOS:
+                renderEscPos(receipt, out);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported receipt format: " + format);
+        }
+    }
+
+    private void renderText(ReceiptData receipt, ReceiptBufferPool.Buffer out) {
+        out.append(center("RECEIPT")).newLine();
+        out.append(separator()).newLine();
+        appendBody(receipt, out);
+        out.append(separator()).newLine();
+        out.append(columns("TOTAL", total(receipt))).newLine();
+        out.append(columns("Status", String.valueOf(receipt.getStatus()))).newLine();
+    }
+
+    private void renderHtml(ReceiptData receipt, ReceiptBufferPool.Buffer out) {
+        out.append("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>Receipt ")
+           .append(escapeHtml(receipt.getTransactionId()))
+           .append("</title></head><body><pre style=\"font-family:monospace\">");
+        out.append(escapeHtml(center("RECEIPT"))).newLine();
+        out.append(separator()).newLine();
+        if (receipt.getLines() != null) {
+            for (String line : receipt.getLines()) {
+                out.append(escapeHtml(line)).newLine();
+            }
+        }
+        out.append(escapeHtml(columns("Transaction", receipt.getTransactionId()))).newLine();
+        out.append(escapeHtml(columns("Date", timestamp(receipt)))).newLine();
+        out.append(separator()).newLine();
+        out.append("<b>").append(escapeHtml(columns("TOTAL", total(receipt)))).append("</b>").newLine();
+        out.append(escapeHtml(columns("Status", String.valueOf(receipt.getStatus()))));
+        out.append("</pre></body></html>");
+    }
+
+    private void renderEscPos(ReceiptData receipt, ReceiptBufferPool.Buffer out) {
+        out.append(ESC_INIT);
+        out.append(ESC_ALIGN_CENTER).append(ESC_BOLD_ON).append("RECEIPT").newLine();
+        out.append(ESC_BOLD_OFF).append(ESC_ALIGN_LEFT);
+        out.append(separator()).newLine();
+        appendBody(receipt, out);
+        out.append(separator()).newLine();
+        out.append(ESC_BOLD_ON).append(columns("TOTAL", total(receipt))).newLine().append(ESC_BOLD_OFF);
+        out.append(columns("Status", String.valueOf(receipt.getStatus()))).newLine();
+        out.append(ESC_FEED_AND_CUT);
+    }
+
+    private void appendBody(ReceiptData receipt, ReceiptBufferPool.Buffer out) {
+        // Terminal-provided receipt lines (merchant info, card details, auth code) come first
+        if (receipt.getLines() != null) {
+            for (String line : receipt.getLines()) {
+                out.append(line).newLine();
+            }
+        }
+        out.append(columns("Transaction", receipt.getTransactionId())).newLine();
+        out.append(columns("Date", timestamp(receipt))).newLine();
+    }
+
+    private String total(ReceiptData receipt) {
+        String amount = receipt.getAmount() != null ? receipt.getAmount() : "-";
+        return receipt.getCurrency() != null ? amount + " " + receipt.getCurrency() : amount;
+    }
+
+    private String timestamp(ReceiptData receipt) {
+        return receipt.getTimestamp() != null ? TIMESTAMP_FORMAT.format(receipt.getTimestamp()) : "-";
+    }
+
+    private String separator() {
+        return "-".repeat(lineWidth);
+    }
+
+    private String center(String text) {
+        int padding = Math.max(0, (lineWidth - text.length()) / 2);
+        return " ".repeat(padding) + text;
+    }
+
+    private String columns(String left, String right) {
+        String value = right != null ? right : "-";
+        int padding = Math.max(1, lineWidth - left.length() - value.length());
+        return left + " ".repeat(padding) + value;
+    }
+
+    private static String escapeHtml(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                case '"': sb.append("&quot;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ReceiptProperties;
+import com.robar.payment.model.ReceiptData;
+import com.robar.payment.model.ReceiptFormat;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders and stores receipts captured from terminal events.
+ *
+ * Capture only enqueues work; rendering and disk writes happen on a dedicated
+ * executor so the payment result reaches the till without waiting on receipts.
+ */
+@Slf4j
+@Service
+public class ReceiptService {
+    private final ReceiptProperties properties;
+    private final ReceiptStore store;
+    private final ReceiptRenderer renderer;
+    private final ReceiptBufferPool bufferPool;
+    private final ThreadPoolExecutor executor;
+
+    public ReceiptService(ReceiptProperties properties) throws IOException {
+        this.properties = properties;
+        this.store = new ReceiptStore(Paths.get(properties.getStoreDirectory()));
+        this.renderer = new ReceiptRenderer(properties.getLineWidth());
+        this.bufferPool = new ReceiptBufferPool(properties.getBufferPoolSize());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                properties.getRenderThreads(), properties.getRenderThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "Receipt-Render-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("ReceiptService created, storing receipts in {}", properties.getStoreDirectory());
+    }
+
+    @EventListener
+    public void onReceiptCaptured(ReceiptCapturedEvent event) {
+        if (event.isReplayed()) {
+            return; // Receipts are kept for real transactions only
+        }
+        ReceiptData receipt = event.getReceipt();
+        try {
+            executor.execute(() -> renderAll(receipt));
+        } catch (RejectedExecutionException e) {
+            // Never push back onto the SDK callback thread - drop and log instead
+            log.error("Receipt queue full, dropping receipt for transaction {}", receipt.getTransactionId());
+        }
+    }
+
+    private void renderAll(ReceiptData receipt) {
+        for (ReceiptFormat format : ReceiptFormat.values()) {
+            ReceiptBufferPool.Buffer buffer = bufferPool.acquire();
+            try {
+                renderer.render(receipt, format, buffer);
+                store.put(receipt.getTransactionId(), format, buffer.array(), buffer.size());
+            } catch (Exception e) {
+                log.error("Failed to render {} receipt for transaction {}", format, receipt.getTransactionId(), e);
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+        log.debug("Receipt stored for transaction {}", receipt.getTransactionId());
+    }
+
+    /**
+     * Returns the receipt URL for a transaction, or null if no receipt has been rendered yet.
+     */
+    public String getReceiptUrl(String transactionId) {
+        if (transactionId == null || store.getHash(transactionId, ReceiptFormat.TEXT) == null) {
+            return null;
+        }
+        return properties.getBaseUrl() + "/" + transactionId;
+    }
+
+    /**
+     * Looks up the content hash of a rendered receipt, used as the HTTP ETag.
+     */
+    public String getReceiptHash(String transactionId, ReceiptFormat format) {
+        return store.getHash(transactionId, format);
+    }
+
+    public byte[] readReceipt(String hash) throws IOException {
+        return store.read(hash);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Receipt rendering did not finish within 10 seconds, {} receipts pending",
+                        executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        store.close();
+    }
+}
@@ -0,0 +1,139 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ReceiptFormat;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local content-addressed receipt store.
+ *
+ * Rendered receipts are stored gzip-compressed under their SHA-256 hash, so identical
+ * content is written once. A small append-only index maps transaction id and format
+ * to the content hash and is replayed on startup. Index fields are tab separated,
+ * so transaction ids may contain spaces.
+ */
+@Slf4j
+public class ReceiptStore {
+    private static final String INDEX_FILE = "index.log";
+
+    private final Path root;
+    private final Map<String, String> index = new ConcurrentHashMap<>();
+    private final Object indexLock = new Object();
+    private BufferedWriter indexWriter;
+
+    public ReceiptStore(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+        loadIndex();
+        this.indexWriter = Files.newBufferedWriter(root.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Stores the given content and links it to the transaction. Returns the content hash.
+     */
+    public String put(String transactionId, ReceiptFormat format, byte[] content, int length) throws IOException {
+        if (transactionId.indexOf('\t') >= 0 || transactionId.indexOf('\n') >= 0 || transactionId.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Transaction id must not contain tabs or line breaks");
+        }
+        String hash = hash(content, length);
+        Path target = contentPath(hash);
+
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), hash, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(content, 0, length);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        String key = key(transactionId, format);
+        synchronized (indexLock) {
+            if (!hash.equals(index.put(key, hash))) {
+                indexWriter.write(transactionId + '\t' + format.name() + '\t' + hash);
+                indexWriter.newLine();
+                indexWriter.flush();
+            }
+        }
+        return hash;
+    }
+
+    public String getHash(String transactionId, ReceiptFormat format) {
+        return index.get(key(transactionId, format));
+    }
+
+    public byte[] read(String hash) throws IOException {
+        Path path = contentPath(hash);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    public void close() {
+        synchronized (indexLock) {
+            try {
+                indexWriter.close();
+            } catch (IOException e) {
+                log.warn("Error closing receipt index", e);
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path indexPath = root.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] parts = line.split("\t");
+            if (parts.length == 3) {
+                index.put(parts[0] + '/' + parts[1], parts[2]);
+            }
+        }
+        log.info("Loaded {} receipt index entries from {}", index.size(), indexPath);
+    }
+
+    private Path contentPath(String hash) {
+        // Fan out over 256 subdirectories to keep directory listings small
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2) + ".gz");
+    }
+
+    private static String key(String transactionId, ReceiptFormat format) {
+        return transactionId + '/' + format.name();
+    }
+
+    private static String hash(byte[] content, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content, 0, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
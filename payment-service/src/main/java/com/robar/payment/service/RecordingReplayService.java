@@ -0,0 +1,111 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ReplayReport;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Replays recordings one at a time on a background thread, so a replay at the
+ * original speed does not hold a request thread for the length of the recording.
+ * The outcome of the last few replays is kept for the caller to pick up.
+ *
+ * A live replay publishes into the running application under terminal id
+ * "replay-&lt;recording&gt;" with every payment id prefixed "replay-". Its events
+ * are marked as replayed, so history, receipts and sales figures leave them out.
+ */
+@Slf4j
+@Service
+public class RecordingReplayService {
+    private static final int KEPT_REPLAYS = 20;
+
+    private final TerminalConnectionFactory connectionFactory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<ReplayReport>> replays = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<ReplayReport>> eldest) {
+                    return size() > KEPT_REPLAYS;
+                }
+            });
+
+    public RecordingReplayService(TerminalConnectionFactory connectionFactory, ApplicationEventPublisher eventPublisher) {
+        this.connectionFactory = connectionFactory;
+        this.eventPublisher = eventPublisher;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Recording-Replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a replay of the recording and returns its id.
+     *
+     * @param live publish the events into the running application instead of only counting them
+     */
+    public String start(Path file, boolean originalSpeed, boolean live) {
+        String replayId = UUID.randomUUID().toString();
+        CompletableFuture<ReplayReport> result = new CompletableFuture<>();
+        replays.put(replayId, result);
+        executor.execute(() -> {
+            try {
+                result.complete(replay(file, originalSpeed, live));
+            } catch (Exception e) {
+                log.error("Replay of {} failed", file.getFileName(), e);
+                result.completeExceptionally(e);
+            }
+        });
+        return replayId;
+    }
+
+    /**
+     * The replay with the given id, done or still running; null if unknown or no longer kept.
+     */
+    public CompletableFuture<ReplayReport> get(String replayId) {
+        return replays.get(replayId);
+    }
+
+    private ReplayReport replay(Path file, boolean originalSpeed, boolean live) throws Exception {
+        String name = file.getFileName().toString();
+        Map<String, Integer> published = new ConcurrentHashMap<>();
+        ApplicationEventPublisher publisher = event -> {
+            published.merge(event.getClass().getSimpleName(), 1, Integer::sum);
+            if (live) {
+                eventPublisher.publishEvent(event instanceof ReplayableEvent replayable ? replayable.asReplayed() : event);
+            }
+        };
+        String terminalId = "replay-" + name.substring(0, name.lastIndexOf('.'));
+        PaymentEventListener listener = connectionFactory.createReplayListener(terminalId, publisher);
+
+        log.info("Replaying {} ({} speed, live={})", name, originalSpeed ? "original" : "fast", live);
+        SdkEventReplayer replayer = live
+                ? new SdkEventReplayer(listener, originalSpeed, paymentId -> "replay-" + paymentId)
+                : new SdkEventReplayer(listener, originalSpeed);
+        try {
+            return replayer.replay(file, published);
+        } finally {
+            if (live) {
+                // Vitals, card profiles and the like kept for the replay terminal go with it
+                eventPublisher.publishEvent(new TerminalRemovedEvent(terminalId, false));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
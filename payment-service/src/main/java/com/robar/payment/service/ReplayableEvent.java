@@ -0,0 +1,15 @@
+package com.robar.payment.service;
+
+/**
+ * An event that a recording replayed into the running application can publish.
+ * Replayed events reach the in-memory listeners but are not persisted or
+ * counted in the sales figures.
+ */
+public interface ReplayableEvent {
+    boolean isReplayed();
+
+    /**
+     * The same event, marked as replayed.
+     */
+    Object asReplayed();
+}
@@ -0,0 +1,210 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.AnalyticsProperties;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.SalesStats;
+import com.robar.payment.model.TransactionKind;
+import com.robar.payment.model.TransactionRecord;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live sales figures per terminal and per minute, fed from payment results.
+ *
+ * Only sale results count as sales - pre-authorizations, captures, refunds and
+ * the like are told apart by the transaction kind on the result. Refunds,
+ * voids and reversals are counted against the sale they give money back on.
+ * Figures are kept per currency and never added up across currencies.
+ *
+ * Recording a result is a map lookup and a few adder increments on the
+ * publishing thread. All aggregation happens when the figures are read.
+ */
+@Service
+public class SalesAnalyticsService {
+    // ISO 4217 code for "no currency", for results that did not name theirs
+    private static final String NO_CURRENCY = "XXX";
+
+    private final AnalyticsProperties properties;
+    private final TransactionRegistry transactionRegistry;
+    // Terminal id -> currency -> ring
+    private final Map<String, Map<String, SalesRing>> rings = new ConcurrentHashMap<>();
+
+    public SalesAnalyticsService(AnalyticsProperties properties, TransactionRegistry transactionRegistry) {
+        this.properties = properties;
+        this.transactionRegistry = transactionRegistry;
+    }
+
+    @EventListener
+    public void onPaymentStatus(PaymentStatusEvent event) {
+        if (event.isReplayed()) {
+            return;
+        }
+        long minute = currentMinute();
+        PaymentStatus status = event.getStatus();
+        if (status == PaymentStatus.COMPLETED || status == PaymentStatus.FAILED) {
+            // Terminal results carry the terminal and their kind; anything but a sale is not a sale
+            if (event.getTerminalId() == null || event.getKind() != TransactionKind.SALE) {
+                return;
+            }
+            String currency = currencyOf(event.getCurrency());
+            long amountMinor = event.getAmount() != null ? MinorUnits.toMinor(event.getAmount(), currency) : 0;
+            ring(event.getTerminalId(), currency).recordSale(minute, status == PaymentStatus.COMPLETED, amountMinor);
+        } else if (status == PaymentStatus.REFUNDED || status == PaymentStatus.PARTLY_REFUNDED
+                || status == PaymentStatus.VOIDED || status == PaymentStatus.REVERSED) {
+            TransactionRecord original = transactionRegistry.get(event.getPaymentId());
+            if (original == null || original.getTerminalId() == null || original.getKind() != TransactionKind.SALE) {
+                return;
+            }
+            // Follow-up markers carry the amount given back, which may be less than the original
+            BigDecimal amount = event.getAmount() != null ? event.getAmount() : original.getAmount();
+            String currency = currencyOf(original.getCurrency() != null ? original.getCurrency() : event.getCurrency());
+            long amountMinor = amount != null ? MinorUnits.toMinor(amount, currency) : 0;
+            ring(original.getTerminalId(), currency).recordRefund(minute, amountMinor);
+        }
+    }
+
+    /**
+     * Totals per terminal and currency over the last {@code minutes} minutes.
+     */
+    public List<SalesStats> getTerminalTotals(int minutes) {
+        long now = currentMinute();
+        List<SalesStats> result = new ArrayList<>();
+        for (Map.Entry<String, Map<String, SalesRing>> terminal : new TreeMap<>(rings).entrySet()) {
+            for (Map.Entry<String, SalesRing> entry : new TreeMap<>(terminal.getValue()).entrySet()) {
+                result.add(toStats(terminal.getKey(), entry.getKey(), entry.getValue().read(now, minutes)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Totals over all terminals for the last {@code minutes} minutes, one entry
+     * per currency taken.
+     */
+    public List<SalesStats> getTotals(int minutes) {
+        long now = currentMinute();
+        Map<String, List<SalesRing.Minute>> byCurrency = new TreeMap<>();
+        for (Map<String, SalesRing> terminal : rings.values()) {
+            for (Map.Entry<String, SalesRing> entry : terminal.entrySet()) {
+                byCurrency.computeIfAbsent(entry.getKey(), c -> new ArrayList<>()).addAll(entry.getValue().read(now, minutes));
+            }
+        }
+        List<SalesStats> result = new ArrayList<>(byCurrency.size());
+        for (Map.Entry<String, List<SalesRing.Minute>> entry : byCurrency.entrySet()) {
+            result.add(toStats(null, entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * One entry per minute, oldest first, for one terminal or all of them. With
+     * no currency given there is a series for every currency taken.
+     */
+    public List<SalesStats> getPerMinute(String terminalId, String currency, int minutes) {
+        long now = currentMinute();
+        int window = Math.min(Math.max(minutes, 1), properties.getWindowMinutes());
+        Map<String, List<List<SalesRing.Minute>>> sources = new TreeMap<>();
+        for (Map.Entry<String, Map<String, SalesRing>> terminal : rings.entrySet()) {
+            if (terminalId != null && !terminalId.equals(terminal.getKey())) {
+                continue;
+            }
+            for (Map.Entry<String, SalesRing> entry : terminal.getValue().entrySet()) {
+                if (currency == null || currency.equals(entry.getKey())) {
+                    sources.computeIfAbsent(entry.getKey(), c -> new ArrayList<>()).add(entry.getValue().read(now, window));
+                }
+            }
+        }
+        if (sources.isEmpty() && currency != null) {
+            // Nothing taken in that currency yet - still a full series of empty minutes
+            sources.put(currency, List.of());
+        }
+
+        List<SalesStats> result = new ArrayList<>(window * sources.size());
+        for (Map.Entry<String, List<List<SalesRing.Minute>>> series : sources.entrySet()) {
+            for (int i = 0; i < window; i++) {
+                List<SalesRing.Minute> sameMinute = new ArrayList<>(series.getValue().size());
+                for (List<SalesRing.Minute> source : series.getValue()) {
+                    sameMinute.add(source.get(i));
+                }
+                SalesStats stats = toStats(terminalId, series.getKey(), sameMinute);
+                long minute = now - window + 1 + i;
+                stats.setFrom(minuteStart(minute));
+                stats.setTo(minuteStart(minute + 1));
+                result.add(stats);
+            }
+        }
+        return result;
+    }
+
+    private SalesRing ring(String terminalId, String currency) {
+        Map<String, SalesRing> terminal = rings.get(terminalId);
+        if (terminal == null) {
+            terminal = rings.computeIfAbsent(terminalId, id -> new ConcurrentHashMap<>());
+        }
+        SalesRing ring = terminal.get(currency);
+        if (ring == null) {
+            ring = terminal.computeIfAbsent(currency, c -> new SalesRing(properties.getWindowMinutes()));
+        }
+        return ring;
+    }
+
+    private static String currencyOf(String currency) {
+        return currency != null && !currency.isEmpty() ? currency : NO_CURRENCY;
+    }
+
+    private static SalesStats toStats(String terminalId, String currency, List<SalesRing.Minute> minutes) {
+        long approved = 0;
+        long declined = 0;
+        long revenueMinor = 0;
+        long refunds = 0;
+        long refundedMinor = 0;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (SalesRing.Minute minute : minutes) {
+            approved += minute.getApproved();
+            declined += minute.getDeclined();
+            revenueMinor += minute.getRevenueMinor();
+            refunds += minute.getRefunds();
+            refundedMinor += minute.getRefundedMinor();
+            first = Math.min(first, minute.getEpochMinute());
+            last = Math.max(last, minute.getEpochMinute());
+        }
+        long transactions = approved + declined;
+        BigDecimal revenue = MinorUnits.fromMinor(revenueMinor, currency);
+        return SalesStats.builder()
+                .terminalId(terminalId)
+                .currency(currency)
+                .from(minutes.isEmpty() ? null : minuteStart(first))
+                .to(minutes.isEmpty() ? null : minuteStart(last + 1))
+                .transactions(transactions)
+                .approved(approved)
+                .declined(declined)
+                .approvalRate(transactions > 0 ? (double) approved / transactions : 0)
+                .revenue(revenue)
+                .averageTicket(approved > 0
+                        ? revenue.divide(BigDecimal.valueOf(approved), revenue.scale(), RoundingMode.HALF_UP)
+                        : MinorUnits.fromMinor(0, currency))
+                .refunds(refunds)
+                .refunded(MinorUnits.fromMinor(refundedMinor, currency))
+                .netRevenue(MinorUnits.fromMinor(revenueMinor - refundedMinor, currency))
+                .build();
+    }
+
+    private static long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    private static Instant minuteStart(long epochMinute) {
+        return Instant.ofEpochSecond(epochMinute * 60);
+    }
+}
@@ -0,0 +1,149 @@
+package com.robar.payment.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-minute sales counters for the last N minutes, in a fixed ring of buckets.
+ *
+ * Writers only touch {@link LongAdder}s, which spread contended increments over
+ * striped cells, so concurrent payments on many terminals never wait on each
+ * other or on readers. A bucket is reset the first time it is written in a new
+ * minute; readers sum the adders and skip buckets that belong to another minute.
+ */
+public class SalesRing {
+    private final Bucket[] buckets;
+
+    public SalesRing(int minutes) {
+        if (minutes < 1) {
+            throw new IllegalArgumentException("Ring needs at least one minute");
+        }
+        buckets = new Bucket[minutes];
+        for (int i = 0; i < minutes; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    public int getMinutes() {
+        return buckets.length;
+    }
+
+    public void recordSale(long epochMinute, boolean approved, long amountMinor) {
+        Bucket bucket = bucketFor(epochMinute);
+        if (bucket == null) {
+            return;
+        }
+        if (approved) {
+            bucket.approved.increment();
+            bucket.revenueMinor.add(amountMinor);
+        } else {
+            bucket.declined.increment();
+        }
+    }
+
+    public void recordRefund(long epochMinute, long amountMinor) {
+        Bucket bucket = bucketFor(epochMinute);
+        if (bucket == null) {
+            return;
+        }
+        bucket.refunds.increment();
+        bucket.refundedMinor.add(amountMinor);
+    }
+
+    /**
+     * Counts for the given number of minutes up to and including the current
+     * one, oldest first. Minutes without sales are included with zero counts.
+     */
+    public List<Minute> read(long currentMinute, int minutes) {
+        int count = Math.min(Math.max(minutes, 1), buckets.length);
+        List<Minute> result = new ArrayList<>(count);
+        for (long minute = currentMinute - count + 1; minute <= currentMinute; minute++) {
+            Bucket bucket = buckets[(int) Math.floorMod(minute, (long) buckets.length)];
+            if (bucket.minute == minute) {
+                result.add(new Minute(minute, bucket.approved.sum(), bucket.declined.sum(),
+                        bucket.revenueMinor.sum(), bucket.refunds.sum(), bucket.refundedMinor.sum()));
+            } else {
+                result.add(new Minute(minute, 0, 0, 0, 0, 0));
+            }
+        }
+        return result;
+    }
+
+    private Bucket bucketFor(long minute) {
+        Bucket bucket = buckets[(int) Math.floorMod(minute, (long) buckets.length)];
+        if (bucket.minute != minute) {
+            synchronized (bucket) {
+                if (bucket.minute < minute) {
+                    bucket.reset();
+                    bucket.minute = minute;
+                } else if (bucket.minute > minute) {
+                    return null; // Older than the ring reaches back
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static class Bucket {
+        volatile long minute = Long.MIN_VALUE;
+        final LongAdder approved = new LongAdder();
+        final LongAdder declined = new LongAdder();
+        final LongAdder revenueMinor = new LongAdder();
+        final LongAdder refunds = new LongAdder();
+        final LongAdder refundedMinor = new LongAdder();
+
+        void reset() {
+            approved.reset();
+            declined.reset();
+            revenueMinor.reset();
+            refunds.reset();
+            refundedMinor.reset();
+        }
+    }
+
+    /**
+     * Snapshot of one minute.
+     */
+    public static final class Minute {
+        private final long epochMinute;
+        private final long approved;
+        private final long declined;
+        private final long revenueMinor;
+        private final long refunds;
+        private final long refundedMinor;
+
+        Minute(long epochMinute, long approved, long declined, long revenueMinor, long refunds, long refundedMinor) {
+            this.epochMinute = epochMinute;
+            this.approved = approved;
+            this.declined = declined;
+            this.revenueMinor = revenueMinor;
+            this.refunds = refunds;
+            this.refundedMinor = refundedMinor;
+        }
+
+        public long getEpochMinute() {
+            return epochMinute;
+        }
+
+        public long getApproved() {
+            return approved;
+        }
+
+        public long getDeclined() {
+            return declined;
+        }
+
+        public long getRevenueMinor() {
+            return revenueMinor;
+        }
+
+        public long getRefunds() {
+            return refunds;
+        }
+
+        public long getRefundedMinor() {
+            return refundedMinor;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.robar.payment.service;
+
+/**
+ * SDK callbacks captured in an event recording. Codes are part of the file
+ * format - append new kinds, never renumber.
+ */
+public enum SdkEventKind {
+    STATUS(1),
+    PAYMENT_COMPLETED(2),
+    COMMERCE(3),
+    TRANSACTION(4),
+    HOST_AUTHORIZATION(5),
+    HOST_FINALIZE(6),
+    NOTIFICATION(7),
+    AMOUNT_ADJUSTED(8),
+    BASKET_ADJUSTED(9),
+    BASKET(10),
+    DEVICE_MANAGEMENT(11),
+    LOYALTY_RECEIVED(12),
+    CARD_INFORMATION(13),
+    RECEIPT_DELIVERY_METHOD(14),
+    STORED_VALUE_CARD(15),
+    USER_INPUT(16),
+    RECONCILIATION(17),
+    RECONCILIATIONS_LIST(18),
+    TRANSACTION_QUERY(19),
+    PIN(20),
+    PRINT(21),
+    SCANNER_DATA(22),
+    SCANNER_STATE(23),
+    DEVICE_VITALS(24),
+    TERMINAL_CONFIG_REQUEST(25);
+
+    private static final SdkEventKind[] BY_CODE = new SdkEventKind[64];
+
+    static {
+        for (SdkEventKind kind : values()) {
+            BY_CODE[kind.code] = kind;
+        }
+    }
+
+    private final int code;
+
+    SdkEventKind(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static SdkEventKind fromCode(int code) {
+        SdkEventKind kind = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (kind == null) {
+            throw new IllegalArgumentException("Unknown event kind code: " + code);
+        }
+        return kind;
+    }
+}
@@ -0,0 +1,177 @@
+package com.robar.payment.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compact binary log of SDK callbacks.
+ *
+ * <pre>
+ * header:  magic "RBEV" | version (1 byte) | terminal id (UTF) | start epoch millis (8 bytes)
+ * record:  kind (1 byte) | nanos since previous record (varlong) | status (zigzag varint)
+ *          | field count (1 byte) | fields: length+1 (varint, 0 = null) then UTF-8 bytes
+ * </pre>
+ *
+ * Records are delta-encoded so a typical callback costs a handful of bytes plus
+ * its strings. A record cut short by a crash ends the log, earlier records stay
+ * readable.
+ */
+public final class SdkEventLog {
+    private static final int MAGIC = 0x52424556; // "RBEV"
+    private static final int VERSION = 1;
+
+    private SdkEventLog() {
+    }
+
+    /**
+     * Appends records to a new log. Safe to call from several SDK threads.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final long startNanos;
+        private long lastNanos;
+
+        public Writer(Path file, String terminalId, long startEpochMillis) throws IOException {
+            this(Files.newOutputStream(file), terminalId, startEpochMillis);
+        }
+
+        public Writer(OutputStream stream, String terminalId, long startEpochMillis) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            this.startNanos = System.nanoTime();
+            this.lastNanos = startNanos;
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(terminalId != null ? terminalId : "");
+            out.writeLong(startEpochMillis);
+        }
+
+        public void append(SdkEventKind kind, int status, String... fields) throws IOException {
+            append(kind, System.nanoTime(), status, fields);
+        }
+
+        synchronized void append(SdkEventKind kind, long nanoTime, int status, String... fields) throws IOException {
+            // Callbacks on different threads may be timestamped slightly out of order
+            long delta = Math.max(0, nanoTime - lastNanos);
+            lastNanos = Math.max(lastNanos, nanoTime);
+            out.writeByte(kind.getCode());
+            writeVarLong(out, delta);
+            writeVarLong(out, ((status << 1) ^ (status >> 31)) & 0xFFFFFFFFL);
+            out.writeByte(fields.length);
+            for (String field : fields) {
+                if (field == null) {
+                    writeVarLong(out, 0);
+                } else {
+                    byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, bytes.length + 1L);
+                    out.write(bytes);
+                }
+            }
+        }
+
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a log front to back.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final String terminalId;
+        private final long startEpochMillis;
+        private long nanos;
+
+        public Reader(Path file) throws IOException {
+            this(Files.newInputStream(file));
+        }
+
+        public Reader(InputStream stream) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an SDK event log");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported SDK event log version " + version);
+            }
+            this.terminalId = in.readUTF();
+            this.startEpochMillis = in.readLong();
+        }
+
+        public String getTerminalId() {
+            return terminalId;
+        }
+
+        public long getStartEpochMillis() {
+            return startEpochMillis;
+        }
+
+        /**
+         * The next record, or null at the end of the log.
+         */
+        public SdkEventRecord next() throws IOException {
+            int code = in.read();
+            if (code < 0) {
+                return null;
+            }
+            try {
+                nanos += readVarLong(in);
+                int zigzag = (int) readVarLong(in);
+                int status = (zigzag >>> 1) ^ -(zigzag & 1);
+                String[] fields = new String[in.readUnsignedByte()];
+                for (int i = 0; i < fields.length; i++) {
+                    long length = readVarLong(in);
+                    if (length > 0) {
+                        byte[] bytes = new byte[(int) (length - 1)];
+                        in.readFully(bytes);
+                        fields[i] = new String(bytes, StandardCharsets.UTF_8);
+                    }
+                }
+                return new SdkEventRecord(SdkEventKind.fromCode(code), nanos, status, fields);
+            } catch (EOFException e) {
+                return null; // Last record was cut short
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,47 @@
+package com.robar.payment.service;
+
+import java.util.Arrays;
+
+/**
+ * One recorded SDK callback: the values the listener reads from the SDK event,
+ * and when it arrived, in nanoseconds since the recording started.
+ */
+public final class SdkEventRecord {
+    private final SdkEventKind kind;
+    private final long nanos;
+    private final int status;
+    private final String[] fields;
+
+    public SdkEventRecord(SdkEventKind kind, long nanos, int status, String... fields) {
+        this.kind = kind;
+        this.nanos = nanos;
+        this.status = status;
+        this.fields = fields;
+    }
+
+    public SdkEventKind getKind() {
+        return kind;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    // Null when the event carried fewer values
+    public String field(int index) {
+        return index < fields.length ? fields[index] : null;
+    }
+
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    @Override
+    public String toString() {
+        return kind + "@" + nanos + "ns status=" + status + " " + Arrays.toString(fields);
+    }
+}
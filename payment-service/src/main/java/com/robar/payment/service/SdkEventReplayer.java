@@ -0,0 +1,159 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ReplayReport;
+import com.robar.payment.model.TransactionKind;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+
+/**
+ * Feeds a recorded SDK event log back into a listener, either with the
+ * recorded gaps between callbacks or back to back.
+ *
+ * Payment ids can be rewritten on the way in, so a replay into the running
+ * application never reuses the ids of real transactions.
+ */
+@Slf4j
+public class SdkEventReplayer {
+    private final PaymentEventListener listener;
+    private final boolean originalSpeed;
+    private final UnaryOperator<String> paymentIds;
+
+    public SdkEventReplayer(PaymentEventListener listener, boolean originalSpeed) {
+        this(listener, originalSpeed, UnaryOperator.identity());
+    }
+
+    public SdkEventReplayer(PaymentEventListener listener, boolean originalSpeed, UnaryOperator<String> paymentIds) {
+        this.listener = listener;
+        this.originalSpeed = originalSpeed;
+        this.paymentIds = paymentIds;
+    }
+
+    /**
+     * Replays the whole log. {@code publishedEvents} is included in the report as is,
+     * pass the map the listener's publisher counts into.
+     */
+    public ReplayReport replay(Path file, Map<String, Integer> publishedEvents) throws IOException {
+        long events = 0;
+        long lastRecordedNanos = 0;
+        long maxCallbackNanos = 0;
+        String terminalId;
+        long start = System.nanoTime();
+
+        try (SdkEventLog.Reader reader = new SdkEventLog.Reader(file)) {
+            terminalId = reader.getTerminalId();
+            SdkEventRecord record;
+            while ((record = reader.next()) != null) {
+                if (originalSpeed) {
+                    waitUntil(start + record.getNanos());
+                }
+                long before = System.nanoTime();
+                try {
+                    dispatch(record);
+                } catch (RuntimeException e) {
+                    // Keep going - a failing callback is exactly what a replay is meant to surface
+                    log.error("Replayed {} threw", record, e);
+                }
+                maxCallbackNanos = Math.max(maxCallbackNanos, System.nanoTime() - before);
+                lastRecordedNanos = record.getNanos();
+                events++;
+            }
+        }
+
+        return ReplayReport.builder()
+                .recording(file.getFileName().toString())
+                .terminalId(terminalId)
+                .originalSpeed(originalSpeed)
+                .events(events)
+                .recordedDurationMicros(lastRecordedNanos / 1000)
+                .replayDurationMicros((System.nanoTime() - start) / 1000)
+                .maxCallbackMicros(maxCallbackNanos / 1000)
+                .publishedEvents(publishedEvents)
+                .build();
+    }
+
+    void dispatch(SdkEventRecord record) {
+        switch (record.getKind()) {
+            case STATUS:
+                listener.onStatus(record.getStatus(), record.field(0), record.field(1));
+                break;
+            case PAYMENT_COMPLETED:
+                listener.onPaymentCompleted(record.getStatus(), record.field(0), paymentId(record.field(1)),
+                        TransactionKind.valueOf(record.field(4)), paymentId(record.field(5)),
+                        toBigDecimal(record.field(2)), record.field(3));
+                break;
+            case COMMERCE:
+                listener.onCommerceEvent(record.field(0), record.getStatus(), record.field(1));
+                break;
+            case TRANSACTION:
+                listener.onTransactionEvent(record.field(0), record.getStatus(), record.field(1));
+                break;
+            case HOST_AUTHORIZATION:
+                listener.onHostAuthorization(record.getStatus(), record.field(0));
+                break;
+            case HOST_FINALIZE:
+                listener.onHostFinalizeTransaction(record.getStatus());
+                break;
+            case AMOUNT_ADJUSTED:
+                listener.onAmountAdjusted(record.getStatus() != 0, toBigDecimal(record.field(0)), toBigDecimal(record.field(1)));
+                break;
+            case BASKET_ADJUSTED:
+            case BASKET:
+                listener.onBasketEvent(record.getStatus(), record.field(0));
+                break;
+            case RECEIPT_DELIVERY_METHOD:
+                listener.onReceiptDeliveryMethod(record.field(0), record.field(1), paymentId(record.field(2)));
+                break;
+            case PRINT:
+                listener.onPrint(record.field(0), paymentId(record.field(1)));
+                break;
+            case CARD_INFORMATION:
+                listener.onCardInformation(record.field(0));
+                break;
+            case LOYALTY_RECEIVED:
+                listener.onLoyaltyReceived(record.field(0));
+                break;
+            case DEVICE_VITALS:
+                listener.onDeviceVitals(record.field(0), record.field(1), record.field(2), record.field(3));
+                break;
+            case SCANNER_STATE:
+                listener.onScannerState(record.field(0));
+                break;
+            case TRANSACTION_QUERY:
+                listener.onTransactionQuery(record.getStatus(), fields(record));
+                break;
+            default:
+                listener.onPassiveEvent(record.getKind());
+                break;
+        }
+    }
+
+    // Payment id, authorization result and amount per transaction
+    private String[] fields(SdkEventRecord record) {
+        String[] fields = new String[record.getFieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = i % 3 == 0 ? paymentId(record.field(i)) : record.field(i);
+        }
+        return fields;
+    }
+
+    private String paymentId(String recorded) {
+        return recorded != null ? paymentIds.apply(recorded) : null;
+    }
+
+    private static BigDecimal toBigDecimal(String value) {
+        return value != null ? new BigDecimal(value) : null;
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
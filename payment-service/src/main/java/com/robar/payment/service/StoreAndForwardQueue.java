@@ -0,0 +1,235 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.OfflineAuthorization;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of offline approvals, backed by an append-only journal.
+ *
+ * Every enqueue is forced to disk before the approval is returned to the
+ * terminal, so a crash never loses an approval the customer already walked
+ * away with. Finalize and acknowledge records are appended as well; the
+ * journal is rewritten with only the pending entries once enough have been
+ * acknowledged.
+ */
+@Slf4j
+public class StoreAndForwardQueue {
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final int COMPACT_AFTER_ACKS = 1000;
+
+    private final Path directory;
+    private final int compactAfterAcks;
+    private final Map<String, OfflineAuthorization> pending = new LinkedHashMap<>();
+    private FileChannel journal;
+    private int acksSinceCompaction = 0;
+
+    public StoreAndForwardQueue(Path directory) throws IOException {
+        this(directory, COMPACT_AFTER_ACKS);
+    }
+
+    StoreAndForwardQueue(Path directory, int compactAfterAcks) throws IOException {
+        this.directory = directory;
+        this.compactAfterAcks = compactAfterAcks;
+        Files.createDirectories(directory);
+        replay();
+        this.journal = openJournal(directory.resolve(JOURNAL_FILE));
+        if (!pending.isEmpty()) {
+            log.warn("Store-and-forward queue has {} authorizations pending from a previous run", pending.size());
+        }
+    }
+
+    public synchronized void enqueue(OfflineAuthorization authorization) throws IOException {
+        StringBuilder records = new StringBuilder(128);
+        appendEntry(records, authorization);
+        journal.write(ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8)));
+        journal.force(false);
+        pending.put(authorization.getReference(), authorization);
+    }
+
+    public synchronized boolean markFinalized(String reference) throws IOException {
+        OfflineAuthorization authorization = pending.get(reference);
+        if (authorization == null) {
+            return false;
+        }
+        append("F|" + reference, false);
+        pending.put(reference, authorization.toBuilder().finalized(true).build());
+        return true;
+    }
+
+    /**
+     * Returns up to {@code max} authorizations ready to forward, oldest first.
+     * Authorizations not yet finalized by the terminal are only included once
+     * they are older than {@code unfinalizedCutoff}.
+     */
+    public synchronized List<OfflineAuthorization> peekReady(int max, Instant unfinalizedCutoff) {
+        List<OfflineAuthorization> ready = new ArrayList<>(Math.min(max, pending.size()));
+        for (OfflineAuthorization authorization : pending.values()) {
+            if (ready.size() >= max) {
+                break;
+            }
+            if (authorization.isFinalized() || authorization.getCreatedAt().isBefore(unfinalizedCutoff)) {
+                ready.add(authorization);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Removes forwarded (or voided) authorizations from the queue.
+     */
+    public synchronized void acknowledge(Collection<String> references) throws IOException {
+        if (references.isEmpty()) {
+            return;
+        }
+        StringBuilder records = new StringBuilder(references.size() * 40);
+        for (String reference : references) {
+            if (pending.remove(reference) != null) {
+                records.append("A|").append(reference).append('\n');
+                acksSinceCompaction++;
+            }
+        }
+        if (records.length() > 0) {
+            journal.write(ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8)));
+            journal.force(false);
+        }
+        if (acksSinceCompaction >= compactAfterAcks) {
+            compact();
+        }
+    }
+
+    /**
+     * Forces journal records written without a sync (finalize markers) to disk.
+     */
+    public synchronized void sync() throws IOException {
+        journal.force(false);
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public synchronized void close() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Error closing store-and-forward journal", e);
+        }
+    }
+
+    private void append(String record, boolean force) throws IOException {
+        journal.write(ByteBuffer.wrap((record + '\n').getBytes(StandardCharsets.UTF_8)));
+        if (force) {
+            journal.force(false);
+        }
+    }
+
+    private void replay() throws IOException {
+        Path path = directory.resolve(JOURNAL_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\\|");
+            switch (parts[0]) {
+                case "E":
+                    OfflineAuthorization authorization = parseEntry(parts);
+                    if (authorization != null) {
+                        pending.put(authorization.getReference(), authorization);
+                    } else {
+                        log.warn("Skipping unreadable journal record: {}", line);
+                    }
+                    break;
+                case "P":
+                    if (parts.length > 1) {
+                        pending.computeIfPresent(parts[1], (ref, auth) -> auth.toBuilder().pendingOnline(true).build());
+                    }
+                    break;
+                case "F":
+                    if (parts.length > 1) {
+                        pending.computeIfPresent(parts[1], (ref, auth) -> auth.toBuilder().finalized(true).build());
+                    }
+                    break;
+                case "A":
+                    if (parts.length > 1) {
+                        pending.remove(parts[1]);
+                    }
+                    break;
+                default:
+                    // Torn write from a crash - the entry was never confirmed to the terminal
+                    log.warn("Skipping unreadable journal record: {}", line);
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmp = directory.resolve(JOURNAL_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            StringBuilder records = new StringBuilder();
+            for (OfflineAuthorization a : pending.values()) {
+                appendEntry(records, a);
+                if (a.isFinalized()) {
+                    records.append("F|").append(a.getReference()).append('\n');
+                }
+            }
+            out.write(ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8)));
+            out.force(true);
+        }
+        journal.close();
+        Files.move(tmp, directory.resolve(JOURNAL_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        journal = openJournal(directory.resolve(JOURNAL_FILE));
+        acksSinceCompaction = 0;
+        log.info("Compacted store-and-forward journal, {} authorizations pending", pending.size());
+    }
+
+    private static void appendEntry(StringBuilder records, OfflineAuthorization a) {
+        records.append("E|").append(a.getReference())
+                .append('|').append(a.getTerminalId())
+                .append('|').append(a.getAmount().toPlainString())
+                .append('|').append(a.getCurrency())
+                .append('|').append(a.getAuthCode())
+                .append('|').append(a.getCreatedAt().toEpochMilli()).append('\n');
+        if (a.isPendingOnline()) {
+            records.append("P|").append(a.getReference()).append('\n');
+        }
+    }
+
+    private static OfflineAuthorization parseEntry(String[] parts) {
+        if (parts.length != 7) {
+            return null;
+        }
+        try {
+            return OfflineAuthorization.builder()
+                    .reference(parts[1])
+                    .terminalId(parts[2])
+                    .amount(new BigDecimal(parts[3]))
+                    .currency(parts[4])
+                    .authCode(parts[5])
+                    .createdAt(Instant.ofEpochMilli(Long.parseLong(parts[6])))
+                    .build();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static FileChannel openJournal(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,358 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.TabProperties;
+import com.robar.payment.model.OpenTabRequest;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TabCloseReport;
+import com.robar.payment.model.TabState;
+import com.robar.payment.model.TabSummary;
+import com.robar.payment.model.TransactionKind;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Bar tabs: pre-authorize the card when the tab is opened, raise the
+ * authorization as rounds are added, and capture everything at closing.
+ *
+ * The closing run captures tabs on different terminals in parallel; only tabs
+ * sharing a terminal are captured one after the other.
+ *
+ * Terminal results are awaited through the terminal's lane, which decides when
+ * an operation has timed out. A pre-authorization the lane gave up on that the
+ * terminal approves afterwards belongs to no tab and is voided.
+ */
+@Slf4j
+@Service
+public class TabService {
+    private final TabProperties properties;
+    private final TerminalRegistry terminalRegistry;
+    private final TerminalDispatcher terminalDispatcher;
+    private final Map<String, BarTab> tabs = new ConcurrentHashMap<>(512);
+    // Terminals with a pre-authorization the lane gave up on, and when
+    private final Map<String, Long> abandonedPreAuths = new ConcurrentHashMap<>();
+    private final ExecutorService captureExecutor;
+
+    public TabService(TabProperties properties, TerminalRegistry terminalRegistry, TerminalDispatcher terminalDispatcher) {
+        this.properties = properties;
+        this.terminalRegistry = terminalRegistry;
+        this.terminalDispatcher = terminalDispatcher;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.captureExecutor = Executors.newFixedThreadPool(properties.getMaxParallelTerminals(), r -> {
+            Thread thread = new Thread(r, "Tab-Capture-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a tab and starts the card pre-authorization. The tab moves to OPEN
+     * once the terminal reports the pre-authorization result.
+     */
+    public TabSummary openTab(OpenTabRequest request) {
+        TerminalConnection terminal = terminalRegistry.resolve(request.getTerminalId());
+        BigDecimal amount = request.getPreAuthAmount() != null ? request.getPreAuthAmount() : properties.getDefaultPreAuthAmount();
+        requirePositive(amount);
+        long amountMinor = BarTab.toMinor(amount);
+
+        BarTab tab = new BarTab(UUID.randomUUID().toString(), request.getName(), request.getVenueId(), terminal.getTerminalId());
+        tabs.put(tab.getTabId(), tab);
+
+        CompletableFuture<PaymentStatusEvent> result = terminalDispatcher.submit(terminal.getTerminalId(),
+                OperationPriority.SALE, TransactionKind.PREAUTHORIZATION, null, "tab pre-authorization",
+                t -> t.preAuthorize(amount, t.getCurrency()));
+
+        result.whenComplete((event, error) -> {
+            if (error == null && event.getStatus() == PaymentStatus.COMPLETED) {
+                tab.authorized(event.getPaymentId(), amountMinor);
+                log.info("Tab {} opened with {} pre-authorized", tab.getTabId(), amount);
+                return;
+            }
+            if (error != null) {
+                // The terminal may still approve it after the lane gave up
+                abandonedPreAuths.put(tab.getTerminalId(), System.currentTimeMillis());
+            }
+            tab.fail(error != null ? "Pre-authorization failed: " + error.getMessage()
+                    : "Pre-authorization declined: " + event.getMessage());
+            // Kept for a while so the till can show why, then dropped
+            CompletableFuture.runAsync(() -> tabs.remove(tab.getTabId(), tab),
+                    CompletableFuture.delayedExecutor(properties.getFailedTabRetentionMs(), TimeUnit.MILLISECONDS));
+        });
+        return tab.toSummary();
+    }
+
+    /**
+     * Adds a round to the tab. If it takes the tab over the authorized amount,
+     * an authorization increase of at least the increment step is queued on the
+     * terminal; the round stays on the tab unless the increase is declined.
+     */
+    public TabSummary addRound(String tabId, BigDecimal amount) {
+        requirePositive(amount);
+        BarTab tab = requireTab(tabId);
+        synchronized (tab) {
+            requireState(tab, TabState.OPEN);
+            tab.addRound(BarTab.toMinor(amount));
+        }
+        raiseAuthorizationIfShort(tab);
+        return tab.toSummary();
+    }
+
+    /**
+     * Sets the tip. A tip beyond what the authorization still covers raises the
+     * authorization like a round does.
+     */
+    public TabSummary setTip(String tabId, BigDecimal tip) {
+        requirePositive(tip);
+        BarTab tab = requireTab(tabId);
+        synchronized (tab) {
+            requireState(tab, TabState.OPEN);
+            tab.setTipMinor(BarTab.toMinor(tip));
+        }
+        raiseAuthorizationIfShort(tab);
+        return tab.toSummary();
+    }
+
+    /**
+     * Queues an authorization increase when the tab exceeds its authorization.
+     * Nothing holds the tab while the terminal works on it - the result is
+     * applied when it arrives, and a decline rolls back the uncovered changes.
+     */
+    private void raiseAuthorizationIfShort(BarTab tab) {
+        long increment = tab.requestIncrement(BarTab.toMinor(properties.getIncrementStep()));
+        if (increment == 0) {
+            return;
+        }
+        String transactionId = tab.getTransactionId();
+        CompletableFuture<PaymentStatusEvent> result;
+        try {
+            result = terminalDispatcher.submit(tab.getTerminalId(), OperationPriority.SALE, TransactionKind.INCREMENT,
+                    transactionId, "tab increment",
+                    t -> t.incrementAuthorization(transactionId, BarTab.fromMinor(increment), t.getCurrency()));
+        } catch (RuntimeException e) {
+            tab.incrementDeclined("Authorization increase could not be queued");
+            throw new IllegalStateException("Authorization increase for tab " + tab.getTabId() + " could not be queued: " + e.getMessage(), e);
+        }
+
+        result.whenComplete((event, error) -> {
+            if (error == null && event.getStatus() == PaymentStatus.COMPLETED) {
+                tab.incrementConfirmed();
+                log.info("Tab {} authorization raised by {}", tab.getTabId(), BarTab.fromMinor(increment));
+                // Rounds added in the meantime may need another increase
+                raiseAuthorizationIfShort(tab);
+            } else {
+                String reason = error != null ? error.getMessage() : event.getMessage();
+                tab.incrementDeclined("Authorization increase declined: " + reason);
+                log.warn("Tab {} authorization increase of {} declined: {}", tab.getTabId(), BarTab.fromMinor(increment), reason);
+            }
+        });
+    }
+
+    /**
+     * Tip entered on the terminal during capture - applies to the tab being captured there.
+     */
+    @EventListener
+    public void onTipAdjusted(TipAdjustedEvent event) {
+        if (event.getGratuity() == null) {
+            return;
+        }
+        for (BarTab tab : tabs.values()) {
+            if (tab.getTerminalId().equals(event.getTerminalId()) && tab.getState() == TabState.CAPTURING) {
+                tab.setTipMinor(BarTab.toMinor(event.getGratuity()));
+                log.info("Tip of {} recorded for tab {}", event.getGratuity(), tab.getTabId());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Voids a pre-authorization approved on a terminal after the lane gave up on
+     * it. A result that opened a tab, or that a tab is still waiting for, is left alone.
+     */
+    @EventListener
+    public void onPaymentStatus(PaymentStatusEvent event) {
+        if (event.getKind() != TransactionKind.PREAUTHORIZATION || event.getStatus() != PaymentStatus.COMPLETED
+                || event.getTerminalId() == null) {
+            return;
+        }
+        Long abandonedAt = abandonedPreAuths.get(event.getTerminalId());
+        if (abandonedAt == null) {
+            return;
+        }
+        for (BarTab tab : tabs.values()) {
+            if (tab.getTerminalId().equals(event.getTerminalId()) && (tab.getState() == TabState.AUTHORIZING
+                    || event.getPaymentId().equals(tab.getTransactionId()))) {
+                return;
+            }
+        }
+        if (!abandonedPreAuths.remove(event.getTerminalId(), abandonedAt)
+                || System.currentTimeMillis() - abandonedAt > properties.getFailedTabRetentionMs()) {
+            return;
+        }
+
+        String paymentId = event.getPaymentId();
+        BigDecimal amount = event.getAmount();
+        log.warn("Pre-authorization {} on terminal {} was approved after its tab gave up, voiding it", paymentId, event.getTerminalId());
+        try {
+            terminalDispatcher.submit(event.getTerminalId(), OperationPriority.VOID, TransactionKind.VOID, paymentId,
+                    "void of abandoned tab pre-authorization", t -> t.voidPayment(paymentId, amount, t.getCurrency()))
+                    .whenComplete((voided, error) -> {
+                        if (error != null || voided.getStatus() != PaymentStatus.COMPLETED) {
+                            log.error("Pre-authorization {} could not be voided, release it by hand: {}", paymentId,
+                                    error != null ? error.getMessage() : voided.getMessage());
+                        }
+                    });
+        } catch (RuntimeException e) {
+            log.error("Pre-authorization {} could not be voided, release it by hand: {}", paymentId, e.getMessage());
+        }
+    }
+
+    public TabSummary closeTab(String tabId) {
+        BarTab tab = requireTab(tabId);
+        capture(tab);
+        return tab.toSummary();
+    }
+
+    /**
+     * Captures every open tab (of one venue, or all) in a single batched run.
+     */
+    public TabCloseReport closeAll(String venueId) {
+        long started = System.currentTimeMillis();
+
+        Map<String, List<BarTab>> byTerminal = new LinkedHashMap<>();
+        for (BarTab tab : tabs.values()) {
+            if (tab.getState() == TabState.OPEN && (venueId == null || venueId.equals(tab.getVenueId()))) {
+                byTerminal.computeIfAbsent(tab.getTerminalId(), id -> new ArrayList<>()).add(tab);
+            }
+        }
+
+        List<CompletableFuture<Void>> runs = new ArrayList<>(byTerminal.size());
+        for (List<BarTab> terminalTabs : byTerminal.values()) {
+            runs.add(CompletableFuture.runAsync(() -> terminalTabs.forEach(this::capture), captureExecutor));
+        }
+        CompletableFuture.allOf(runs.toArray(new CompletableFuture[0])).join();
+
+        int captured = 0;
+        long capturedMinor = 0;
+        List<TabSummary> failures = new ArrayList<>();
+        for (List<BarTab> terminalTabs : byTerminal.values()) {
+            for (BarTab tab : terminalTabs) {
+                if (tab.getState() == TabState.CAPTURED) {
+                    captured++;
+                    capturedMinor += tab.getConsumedMinor() + tab.getTipMinor();
+                } else {
+                    failures.add(tab.toSummary());
+                }
+            }
+        }
+
+        long duration = System.currentTimeMillis() - started;
+        log.info("Closing run captured {} tabs on {} terminals in {} ms, {} failed",
+                captured, byTerminal.size(), duration, failures.size());
+        return TabCloseReport.builder()
+                .captured(captured)
+                .failed(failures.size())
+                .capturedTotal(BarTab.fromMinor(capturedMinor))
+                .durationMs(duration)
+                .failures(failures)
+                .build();
+    }
+
+    public TabSummary getTab(String tabId) {
+        return requireTab(tabId).toSummary();
+    }
+
+    public List<TabSummary> getTabs(String venueId) {
+        List<TabSummary> result = new ArrayList<>();
+        for (BarTab tab : tabs.values()) {
+            if (venueId == null || venueId.equals(tab.getVenueId())) {
+                result.add(tab.toSummary());
+            }
+        }
+        return result;
+    }
+
+    private void capture(BarTab tab) {
+        synchronized (tab) {
+            if (tab.getState() != TabState.OPEN) {
+                return;
+            }
+            if (tab.getPendingIncrementMinor() > 0) {
+                // The capture amount depends on whether the increase goes through
+                tab.transition(TabState.OPEN, "Authorization increase still pending, close the tab again once it is answered");
+                return;
+            }
+            tab.transition(TabState.CAPTURING, null);
+        }
+
+        long tipMinor = tab.getTipMinor();
+        long totalMinor = tab.getConsumedMinor() + tipMinor;
+        PaymentStatusEvent event = runOnTerminal(tab.getTerminalId(), TransactionKind.CAPTURE, tab.getTransactionId(),
+                "tab capture", t -> t.capturePreAuthorization(
+                tab.getTransactionId(), BarTab.fromMinor(totalMinor), BarTab.fromMinor(tipMinor), t.getCurrency()));
+
+        if (event != null && event.getStatus() == PaymentStatus.COMPLETED) {
+            tab.transition(TabState.CAPTURED, null);
+            tabs.remove(tab.getTabId());
+        } else {
+            // Back to OPEN so the tab can be retried or settled by hand
+            tab.transition(TabState.OPEN, event != null ? "Capture failed: " + event.getMessage() : "Capture timed out");
+        }
+    }
+
+    /**
+     * Runs an operation in the terminal's sale lane and waits for the lane's outcome. Returns null on failure or timeout.
+     */
+    private PaymentStatusEvent runOnTerminal(String terminalId, TransactionKind kind, String originalPaymentId,
+                                             String description, Consumer<TerminalConnection> operation) {
+        try {
+            return terminalDispatcher.submit(terminalId, OperationPriority.SALE, kind, originalPaymentId, description, operation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.warn("Tab operation on terminal {} failed: {}", terminalId, e.getMessage());
+            return null;
+        }
+    }
+
+    private BarTab requireTab(String tabId) {
+        BarTab tab = tabs.get(tabId);
+        if (tab == null) {
+            throw new IllegalArgumentException("Unknown tab: " + tabId);
+        }
+        return tab;
+    }
+
+    private static void requirePositive(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException("Amount must be positive, got " + amount);
+        }
+    }
+
+    private static void requireState(BarTab tab, TabState expected) {
+        if (tab.getState() != expected) {
+            throw new IllegalStateException("Tab " + tab.getTabId() + " is " + tab.getState() + ", expected " + expected);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        captureExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.BasketLineItem;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Basket state for one order, tracking both what the till wants and what the
+ * terminal currently shows.
+ *
+ * Changes only mark a line dirty; the deltas are computed at flush time by
+ * comparing the desired line with the synced one. An add followed by a remove
+ * before the next flush therefore never reaches the terminal at all, and
+ * repeated quantity changes collapse into a single update.
+ */
+public class TerminalBasket {
+    private final String basketId;
+    private final String terminalId;
+    private final Map<String, BasketLineItem> desired = new LinkedHashMap<>();
+    private final Map<String, BasketLineItem> synced = new HashMap<>();
+    private final Set<String> dirty = new LinkedHashSet<>();
+    // Lines the terminal may still show after a failed or rejected change
+    private final Map<String, BasketLineItem> unconfirmed = new LinkedHashMap<>();
+    private volatile long lastChanged = System.currentTimeMillis();
+
+    public TerminalBasket(String basketId, String terminalId) {
+        this.basketId = basketId;
+        this.terminalId = terminalId;
+    }
+
+    public String getBasketId() {
+        return basketId;
+    }
+
+    public String getTerminalId() {
+        return terminalId;
+    }
+
+    // When the till last changed the basket (System.currentTimeMillis)
+    public long getLastChanged() {
+        return lastChanged;
+    }
+
+    public synchronized void put(BasketLineItem item) {
+        desired.put(item.getLineId(), copy(item));
+        dirty.add(item.getLineId());
+        lastChanged = System.currentTimeMillis();
+    }
+
+    public synchronized boolean remove(String lineId) {
+        if (desired.remove(lineId) == null) {
+            return false;
+        }
+        dirty.add(lineId);
+        lastChanged = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Drains the pending changes as the minimal list of deltas. The caller must
+     * either apply them or hand them back through {@link #markUnsynced()}.
+     */
+    public synchronized List<BasketDelta> drainDeltas() {
+        List<BasketDelta> deltas = new ArrayList<>(unconfirmed.size() + dirty.size());
+        for (BasketLineItem item : unconfirmed.values()) {
+            deltas.add(new BasketDelta(BasketDelta.Type.REMOVE, item));
+        }
+        unconfirmed.clear();
+        for (String lineId : dirty) {
+            BasketLineItem want = desired.get(lineId);
+            BasketLineItem have = synced.get(lineId);
+
+            if (want != null && have == null) {
+                deltas.add(new BasketDelta(BasketDelta.Type.ADD, want));
+                synced.put(lineId, want);
+            } else if (want == null && have != null) {
+                deltas.add(new BasketDelta(BasketDelta.Type.REMOVE, have));
+                synced.remove(lineId);
+            } else if (want != null && !want.equals(have)) {
+                deltas.add(new BasketDelta(BasketDelta.Type.UPDATE, want));
+                synced.put(lineId, want);
+            }
+        }
+        dirty.clear();
+        return deltas;
+    }
+
+    /**
+     * Forgets what the terminal shows, so the next drain removes every line that
+     * was sent to it and then re-sends the full basket.
+     */
+    public synchronized void markUnsynced() {
+        unconfirmed.putAll(synced);
+        synced.clear();
+        dirty.addAll(desired.keySet());
+    }
+
+    /**
+     * Returns the deltas that remove every line currently shown on the terminal.
+     */
+    public synchronized List<BasketDelta> clearTerminal() {
+        unconfirmed.putAll(synced);
+        List<BasketDelta> deltas = new ArrayList<>(unconfirmed.size());
+        for (BasketLineItem item : unconfirmed.values()) {
+            deltas.add(new BasketDelta(BasketDelta.Type.REMOVE, item));
+        }
+        unconfirmed.clear();
+        synced.clear();
+        dirty.addAll(desired.keySet());
+        return deltas;
+    }
+
+    public synchronized int pendingChanges() {
+        int pending = dirty.size();
+        for (String lineId : unconfirmed.keySet()) {
+            if (!dirty.contains(lineId)) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    public synchronized List<BasketLineItem> items() {
+        List<BasketLineItem> items = new ArrayList<>(desired.size());
+        for (BasketLineItem item : desired.values()) {
+            items.add(copy(item));
+        }
+        return items;
+    }
+
+    public synchronized BigDecimal total() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BasketLineItem item : desired.values()) {
+            total = total.add(item.getLineTotal());
+        }
+        return total;
+    }
+
+    private static BasketLineItem copy(BasketLineItem item) {
+        return new BasketLineItem(item.getLineId(), item.getSku(), item.getDescription(),
+                item.getQuantity(), item.getUnitPrice());
+    }
+}
@@ -0,0 +1,109 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.TerminalDefinition;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.PropertiesPropertySourceLoader;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the external terminal config file and applies changes to the
+ * {@link TerminalRegistry} without restarting the service.
+ */
+@Slf4j
+@Component
+@Lazy(false)
+public class TerminalConfigReloader {
+    private final VerifoneProperties verifoneProperties;
+    private final TerminalRegistry terminalRegistry;
+    private final ScheduledExecutorService scheduler;
+    private long lastModified = -1;
+
+    public TerminalConfigReloader(VerifoneProperties verifoneProperties, TerminalRegistry terminalRegistry) {
+        this.verifoneProperties = verifoneProperties;
+        this.terminalRegistry = terminalRegistry;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Terminal-Config-Reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (verifoneProperties.getConfigFile() != null && !verifoneProperties.getConfigFile().isEmpty()) {
+            long interval = verifoneProperties.getReloadIntervalMs();
+            scheduler.scheduleWithFixedDelay(this::reloadIfChanged, 0, interval, TimeUnit.MILLISECONDS);
+            log.info("Watching terminal config file {} every {} ms", verifoneProperties.getConfigFile(), interval);
+        }
+    }
+
+    /**
+     * Reloads the config file and applies it. Returns the applied definitions.
+     */
+    public synchronized List<TerminalDefinition> reload() throws IOException {
+        Path path = configPath();
+        if (path == null || !Files.exists(path)) {
+            throw new IOException("Terminal config file not found: " + verifoneProperties.getConfigFile());
+        }
+        lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        PropertySourceLoader loader = path.toString().endsWith(".properties")
+                ? new PropertiesPropertySourceLoader()
+                : new YamlPropertySourceLoader();
+        List<PropertySource<?>> sources = loader.load("terminal-config", new FileSystemResource(path));
+
+        VerifoneProperties loaded = new Binder(ConfigurationPropertySources.from(sources))
+                .bind("verifone.terminal", VerifoneProperties.class)
+                .orElseGet(VerifoneProperties::new);
+        // An empty or half-written file would fall back to the default terminal and drop every real one
+        if (loaded.getVenues().stream().allMatch(venue -> venue.getTerminals().isEmpty())) {
+            throw new IOException("Terminal config file " + path + " defines no venues with terminals");
+        }
+        List<TerminalDefinition> definitions = VerifoneConfig.toTerminalDefinitions(loaded);
+
+        terminalRegistry.apply(definitions);
+        return definitions;
+    }
+
+    private void reloadIfChanged() {
+        try {
+            Path path = configPath();
+            if (path == null || !Files.exists(path)) {
+                return;
+            }
+            if (Files.getLastModifiedTime(path).toMillis() != lastModified) {
+                log.info("Terminal config file {} changed, reloading", path);
+                reload();
+            }
+        } catch (Exception e) {
+            // Keep running with the previous config rather than dropping terminals
+            log.error("Failed to reload terminal config, keeping current terminals: {}", e.getMessage());
+        }
+    }
+
+    private Path configPath() {
+        String file = verifoneProperties.getConfigFile();
+        return file == null || file.isEmpty() ? null : Paths.get(file);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,675 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.BasketLineItem;
+import com.robar.payment.model.InitStrategy;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TerminalState;
+import com.verifone.payment_sdk.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection to a single payment terminal: owns its PaymentSdk instance and
+ * event listener, and runs the initialization strategies and terminal operations.
+ */
+@Slf4j
+public class TerminalConnection {
+    private final TerminalDefinition definition;
+    private final PaymentEventListener eventListener;
+    private PaymentSdk paymentSdk;
+    
+    // Add a latch for initialization synchronization
+    private CountDownLatch initLatch = new CountDownLatch(1);
+    private volatile boolean isTerminalInitialized = false;
+    private volatile TerminalState state = TerminalState.DISCONNECTED;
+    // Thread running the current initialization attempt, if it runs in the background
+    private volatile Thread connectThread;
+    private String lastErrorMessage = "";
+
+    public TerminalConnection(TerminalDefinition definition, PaymentEventListener eventListener) {
+        this.definition = definition;
+        this.eventListener = eventListener;
+        
+        // Set up the callback
+        eventListener.setTerminalId(definition.getTerminalId());
+        eventListener.setCurrency(getCurrency());
+        eventListener.setInitializationCallback(this::onInitializationComplete);
+    }
+    
+    /**
+     * Connect using the init strategy from the terminal definition.
+     */
+    public void connect() {
+        eventListener.startRecording();
+        switch (definition.getInitStrategy() != null ? definition.getInitStrategy() : InitStrategy.ENHANCED) {
+            case SERVER:
+                initializeTerminalServerMode();
+                break;
+            case DIRECT:
+                initializeDirectly();
+                break;
+            case BASIC:
+            case ENHANCED:
+            default:
+                initializeTerminal();
+                break;
+        }
+    }
+    
+    /**
+     * Waits until the initialization started by {@link #connect()} has finished,
+     * successfully or not.
+     *
+     * @return false if the attempt is still running after the timeout
+     */
+    public boolean awaitConnectAttempt(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread thread = connectThread;
+        if (thread == null) {
+            return true;
+        }
+        thread.join(Math.max(1, unit.toMillis(timeout)));
+        return !thread.isAlive();
+    }
+    
+    /**
+     * Initialize the terminal using the first-time connection approach.
+     * BASIC strategy skips straight to the basic approach.
+     */
+    public void initializeTerminal() {
+        log.info("[{}] Starting terminal initialization with first-time connection handling", getTerminalId());
+        
+        // Reset initialization status
+        isTerminalInitialized = false;
+        state = TerminalState.CONNECTING;
+        lastErrorMessage = "";
+        initLatch = new CountDownLatch(1);
+        
+        Thread initThread = new Thread(() -> {
+            try {
+                // Tear down any existing instance
+                if (paymentSdk != null) {
+                    try {
+                        paymentSdk.tearDown();
+                        log.info("Previous PaymentSdk instance torn down");
+                    } catch (Exception e) {
+                        log.warn("Error tearing down previous PaymentSdk", e);
+                    }
+                }
+                
+                // Create fresh instance
+                paymentSdk = PaymentSdk.create();
+                log.info("New PaymentSdk instance created");
+                eventListener.setPaymentSdk(paymentSdk);
+                
+                // Terminal address and connection type from the terminal definition
+                String ipAddress = getAddress();
+                String connectionType = getConnectionType();
+                
+                log.info("Initializing with IP: {}, connection type: {}", ipAddress, connectionType);
+                
+                // === FIRST APPROACH: SIMPLIFIED INITIALIZATION ===
+                // BASIC strategy goes straight to the basic approach below
+                if (definition.getInitStrategy() != InitStrategy.BASIC) {
+                    try {
+                        log.info("Attempting simplified initialization approach");
+                    
+                        // Create an enhanced configuration map with parameters to force new device setup
+                        HashMap<String, String> config = new HashMap<>();
+                        config.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, connectionType);
+                        config.put(PsdkDeviceInformation.DEVICE_ADDRESS_KEY, ipAddress);
+                    
+                        // Add first-time connection parameters
+                        config.put("ForceNewDevice", "true");                // Signal this is a first-time setup
+                        config.put("ClearStoredConfiguration", "true");      // Try to clear any existing config
+                        config.put("IgnoreStoredDevice", "true");            // Don't try to use stored device
+                        config.put("ResetStoredDeviceConfiguration", "true"); // Reset any stored config
+                        config.put("DeviceRetryAttempts", "10");             // More retries
+                        config.put("DeviceConnectionTimeout", "60000");      // 60 second timeout
+                    
+                        log.debug("Using enhanced initialization parameters: {}", config);
+                    
+                        // Initialize the terminal
+                        paymentSdk.initializeFromValues(eventListener, config);
+                        log.info("Initialization request sent, waiting for callbacks...");
+                    
+                        // Wait for initialization with timeout
+                        boolean completed = initLatch.await(30, TimeUnit.SECONDS);
+                        if (!completed) {
+                            log.warn("Initialization timed out after 30 seconds");
+                        }
+                    } catch (Exception e) {
+                        log.error("Error during initialization: {}", e.getMessage());
+                        lastErrorMessage = e.getMessage();
+                    
+                        // Don't release the latch yet, try the alternative approach
+                        log.info("Trying alternative initialization approach after error");
+                    }
+                }
+                
+                // Check if previous attempt was successful
+                if (!isTerminalInitialized) {
+                    log.info("First initialization approach did not succeed, trying basic approach...");
+                    
+                    try {
+                        // Create a new instance for the second attempt
+                        if (paymentSdk != null) {
+                            paymentSdk.tearDown();
+                        }
+                        paymentSdk = PaymentSdk.create();
+                        eventListener.setPaymentSdk(paymentSdk);
+                        
+                        // Minimal configuration for a basic approach
+                        HashMap<String, String> basicConfig = new HashMap<>();
+                        basicConfig.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, connectionType);
+                        basicConfig.put(PsdkDeviceInformation.DEVICE_ADDRESS_KEY, ipAddress);
+                        
+                        log.debug("Attempting basic initialization with params: {}", basicConfig);
+                        paymentSdk.initializeFromValues(eventListener, basicConfig);
+                        
+                        // Wait again for this attempt
+                        boolean completed = initLatch.await(20, TimeUnit.SECONDS);
+                        if (!completed) {
+                            log.warn("Basic initialization timed out after 20 seconds");
+                        }
+                    } catch (Exception e) {
+                        log.error("Error during basic initialization: {}", e.getMessage());
+                        lastErrorMessage = e.getMessage();
+                        initLatch.countDown(); // Make sure to release the latch
+                    }
+                }
+                
+            } catch (Exception e) {
+                log.error("Unexpected error during terminal initialization", e);
+                lastErrorMessage = e.getMessage();
+                initLatch.countDown(); // Release any waiting threads
+            }
+            
+            if (!isTerminalInitialized) {
+                state = TerminalState.FAILED;
+            }
+        });
+        
+        initThread.setName("Terminal-Init-" + getTerminalId());
+        connectThread = initThread;
+        initThread.start();
+        
+        log.info("Terminal initialization thread started");
+    }
+    
+    /**
+     * Try server mode initialization as an alternative if client mode fails
+     */
+    public void initializeTerminalServerMode() {
+        log.info("[{}] Attempting server mode initialization", getTerminalId());
+        
+        // Reset initialization status
+        isTerminalInitialized = false;
+        state = TerminalState.CONNECTING;
+        lastErrorMessage = "";
+        initLatch = new CountDownLatch(1);
+        
+        Thread serverModeThread = new Thread(() -> {
+            try {
+                if (paymentSdk != null) {
+                    try {
+                        paymentSdk.tearDown();
+                    } catch (Exception e) {
+                        log.warn("Error tearing down previous PaymentSdk", e);
+                    }
+                }
+                
+                paymentSdk = PaymentSdk.create();
+                eventListener.setPaymentSdk(paymentSdk);
+                
+                // Server mode configuration
+                HashMap<String, String> serverConfig = new HashMap<>();
+                serverConfig.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, "server");
+                serverConfig.put("ServerPort", "8085"); // Example server port
+                serverConfig.put("DeviceOperationMode", "server");
+                
+                log.debug("Initializing with server mode parameters: {}", serverConfig);
+                
+                // Initialize in server mode
+                paymentSdk.initializeFromValues(eventListener, serverConfig);
+                log.info("Server mode initialization request sent, waiting for callback...");
+                
+                boolean completed = initLatch.await(30, TimeUnit.SECONDS);
+                if (!completed) {
+                    log.warn("Server mode initialization timed out after 30 seconds");
+                }
+                
+            } catch (Exception e) {
+                log.error("Error during server mode initialization", e);
+                lastErrorMessage = e.getMessage();
+                initLatch.countDown();
+            }
+            
+            if (!isTerminalInitialized) {
+                state = TerminalState.FAILED;
+            }
+        });
+        
+        serverModeThread.setName("Server-Mode-Init-" + getTerminalId());
+        connectThread = serverModeThread;
+        serverModeThread.start();
+    }
+    
+    /**
+     * Try alternative method of initialization by directly initializing without 
+     * attempting to forget previous device configuration
+     */
+    public void initializeDirectly() {
+        log.info("[{}] Attempting direct initialization without device management", getTerminalId());
+        
+        // Reset initialization status
+        isTerminalInitialized = false;
+        state = TerminalState.CONNECTING;
+        lastErrorMessage = "";
+        initLatch = new CountDownLatch(1);
+        
+        // Create fresh PaymentSdk instance
+        if (paymentSdk != null) {
+            try {
+                paymentSdk.tearDown();
+            } catch (Exception e) {
+                log.warn("Error tearing down PaymentSdk", e);
+            }
+        }
+        
+        try {
+            paymentSdk = PaymentSdk.create();
+            eventListener.setPaymentSdk(paymentSdk);
+            
+            String ipAddress = getAddress();
+            String connectionType = getConnectionType();
+            
+            HashMap<String, String> config = new HashMap<>();
+            config.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, connectionType);
+            config.put(PsdkDeviceInformation.DEVICE_ADDRESS_KEY, ipAddress);
+            
+            log.debug("Initializing directly with minimal configuration: {}", config);
+            paymentSdk.initializeFromValues(eventListener, config);
+            
+        } catch (Exception e) {
+            log.error("Direct initialization failed", e);
+            lastErrorMessage = e.getMessage();
+            state = TerminalState.FAILED;
+            initLatch.countDown();
+        }
+    }
+    
+    // Handler for initialization callbacks
+    private void onInitializationComplete(boolean success, String message) {
+        log.info("Initialization callback received: success={}, message={}", success, message);
+        
+        if (success) {
+            log.info("Terminal initialization successfully completed!");
+            isTerminalInitialized = true;
+            state = TerminalState.READY;
+            initLatch.countDown();
+            return;
+        }
+        
+        // Check for our special marker for -30 status code
+        if (message != null && message.startsWith("FIRST_TIME_SETUP:-30")) {
+            log.info("Handling first-time setup (-30) status");
+            
+            // For first-time setup with -30, we need to proceed with a login attempt
+            try {
+                log.info("Proceeding with first-time setup sequence...");
+                
+                // Try directly proceeding with login despite the -30 status
+                // This is counterintuitive but some terminals need this
+                try {
+                    log.info("Attempting login despite -30 status...");
+                    LoginCredentials credentials = LoginCredentials.createWith2("username", null, null, null);
+                    
+                    // The status here is important - if terminal accepts login despite -30,
+                    // then we're in a good state and can consider initialization successful
+                    Status loginStatus = paymentSdk.getTransactionManager().loginWithCredentials(credentials);
+                    
+                    log.info("Login attempt after -30 returned status: {}", loginStatus.getStatus());
+                    
+                    if (loginStatus.getStatus() == StatusCode.SUCCESS) {
+                        log.info("LOGIN SUCCESSFUL despite -30 status! Terminal is now usable.");
+                        isTerminalInitialized = true;
+                    } else {
+                        log.info("Login attempt unsuccessful: {} - {}", 
+                               loginStatus.getStatus(), loginStatus.getMessage());
+                        
+                        // Even if login fails, the terminal might still be usable
+                        // This depends on your terminal's specific behavior
+                        if (loginStatus.getStatus() > -100) { // Using a heuristic for "not catastrophic" errors
+                            log.info("Login failed but terminal may still be usable, marking as initialized");
+                            isTerminalInitialized = true;
+                        } else {
+                            lastErrorMessage = "Login failed after -30: " + loginStatus.getMessage();
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Exception during login attempt after -30: {}", e.getMessage());
+                    lastErrorMessage = "Exception during login after -30: " + e.getMessage();
+                }
+            } catch (Exception e) {
+                log.error("Exception during first-time setup handling: {}", e.getMessage());
+                lastErrorMessage = e.getMessage();
+            }
+        } else {
+            // Handle other non-success cases
+            log.error("Terminal initialization failed: {}", message);
+            lastErrorMessage = message;
+        }
+        
+        state = isTerminalInitialized ? TerminalState.READY : TerminalState.FAILED;
+        
+        // Release waiting threads
+        initLatch.countDown();
+    }
+
+    public void login() {
+        try {
+            if (!isTerminalInitialized) {
+                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+            }
+            
+            // Create login credentials - username only as per documentation
+            LoginCredentials credentials = LoginCredentials.createWith2("username", null, null, null);
+            
+            log.info("Attempting to login to terminal...");
+            Status result = paymentSdk.getTransactionManager().loginWithCredentials(credentials);
+            
+            if (result.getStatus() != StatusCode.SUCCESS) {
+                throw new RuntimeException("Login failed: " + result.getMessage());
+            }
+            log.info("Login successful");
+        } catch (Exception e) {
+            log.error("Login failed", e);
+            throw new RuntimeException("Login failed", e);
+        }
+    }
+
+    public void startSession() {
+        try {
+            if (!isTerminalInitialized) {
+                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+            }
+            
+            // Create transaction for the session
+            Transaction transaction = Transaction.create();
+            transaction.setCurrency(getCurrency());
+            
+            log.info("Attempting to start session...");
+            boolean success = paymentSdk.getTransactionManager().startSession2(transaction);
+            
+            if (!success) {
+                throw new RuntimeException("Failed to start session");
+            }
+            log.info("Session started successfully");
+        } catch (Exception e) {
+            log.error("Failed to start session", e);
+            throw new RuntimeException("Session start failed", e);
+        }
+    }
+
+    public void processPayment(BigDecimal amount, String currency) {
+        eventListener.onCustomerSession(CustomerSessionEvent.Type.SALE_STARTING);
+        startPayment(null, amount, null, currency, null);
+    }
+
+    /**
+     * Pre-authorizes an amount on the presented card, e.g. when a bar tab is opened.
+     */
+    public void preAuthorize(BigDecimal amount, String currency) {
+        eventListener.onCustomerSession(CustomerSessionEvent.Type.SALE_STARTING);
+        startPayment(TransactionType.PREAUTHORISATION, amount, null, currency, null);
+    }
+
+    /**
+     * Raises an existing pre-authorization by the given amount (card not present).
+     */
+    public void incrementAuthorization(String originalPaymentId, BigDecimal increment, String currency) {
+        startPayment(TransactionType.PREAUTHORISATION_INCREMENT, increment, null, currency, originalPaymentId);
+    }
+
+    /**
+     * Captures a pre-authorization for the final amount including tip (card not present).
+     */
+    public void capturePreAuthorization(String originalPaymentId, BigDecimal amount, BigDecimal gratuity, String currency) {
+        startPayment(TransactionType.PREAUTHORISATION_COMPLETION, amount, gratuity, currency, originalPaymentId);
+    }
+
+    /**
+     * Refunds (part of) an earlier payment. Must run on the terminal that holds the original.
+     */
+    public void refund(String originalPaymentId, BigDecimal amount, String currency) {
+        startPayment(TransactionType.REFUND, amount, null, currency, originalPaymentId);
+    }
+
+    /**
+     * Voids an earlier payment that has not been settled yet.
+     */
+    public void voidPayment(String originalPaymentId, BigDecimal amount, String currency) {
+        startPayment(TransactionType.VOID, amount, null, currency, originalPaymentId);
+    }
+
+    /**
+     * Reverses an earlier authorization, e.g. after a double charge.
+     */
+    public void reverse(String originalPaymentId, BigDecimal amount, String currency) {
+        startPayment(TransactionType.REVERSAL, amount, null, currency, originalPaymentId);
+    }
+
+    /**
+     * Aborts the transaction running on the terminal, if there is one. The
+     * terminal then reports it as failed.
+     */
+    public void abortTransaction() {
+        if (!isTerminalInitialized) {
+            return;
+        }
+        log.warn("[{}] Aborting the running transaction", getTerminalId());
+        eventListener.onCustomerSession(CustomerSessionEvent.Type.CANCELLED);
+        paymentSdk.getTransactionManager().abort();
+    }
+
+    /**
+     * Asks the terminal about several transactions in one query. The answer
+     * arrives as a {@link TerminalQueryResultEvent}.
+     */
+    public void queryTransactions(Collection<String> paymentIds) {
+        if (!isTerminalInitialized) {
+            throw new RuntimeException("Terminal not initialized. Please initialize first.");
+        }
+        TransactionQuery query = TransactionQuery.create();
+        query.setPaymentIds(new ArrayList<>(paymentIds));
+        Status result = paymentSdk.getTransactionManager().queryTransactions(query);
+        if (result.getStatus() != StatusCode.SUCCESS) {
+            throw new RuntimeException("Transaction query failed: " + result.getMessage());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Queried {} transactions", getTerminalId(), paymentIds.size());
+        }
+    }
+
+    private void startPayment(TransactionType transactionType, BigDecimal amount, BigDecimal gratuity,
+                              String currency, String originalPaymentId) {
+        try {
+            if (!isTerminalInitialized) {
+                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+            }
+            
+            Payment payment = Payment.create();
+            if (transactionType != null) {
+                payment.setTransactionType(transactionType);
+            }
+            if (originalPaymentId != null) {
+                payment.setOriginalPaymentId(originalPaymentId);
+            }
+            
+            // Set up amount totals
+            AmountTotals amountTotals = AmountTotals.create(true);
+            
+            // Convert BigDecimal to Verifone Decimal format
+            Decimal paymentAmount = toDecimal(amount);
+            
+            // Configure the payment amounts
+            amountTotals.setTotal(paymentAmount);
+            if (gratuity != null && gratuity.signum() > 0) {
+                amountTotals.setGratuity(toDecimal(gratuity));
+            }
+            payment.setRequestedAmounts(amountTotals);
+            
+            // Set currency
+            payment.setCurrency(currency != null ? currency : getCurrency());
+            
+            log.info("[{}] Starting {} for amount: {}", getTerminalId(),
+                    transactionType != null ? transactionType : "payment", amount);
+            Status result = paymentSdk.getTransactionManager().startPayment(payment);
+            
+            if (result.getStatus() != StatusCode.SUCCESS) {
+                throw new RuntimeException("Payment processing failed: " + result.getMessage());
+            }
+            
+            log.debug("[{}] Payment processing initiated for amount: {}", getTerminalId(), amount);
+        } catch (Exception e) {
+            log.error("[{}] Payment processing failed", getTerminalId(), e);
+            throw new RuntimeException("Payment processing failed", e);
+        }
+    }
+
+    /**
+     * Applies coalesced basket changes to the terminal's basket.
+     * Updates are sent as remove + add, the terminal has no in-place line edit.
+     */
+    public void applyBasketDeltas(List<BasketDelta> deltas) {
+        if (!isTerminalInitialized) {
+            throw new IllegalStateException("Terminal not initialized, basket kept pending");
+        }
+        
+        BasketManager basketManager = paymentSdk.getTransactionManager().getBasketManager();
+        for (BasketDelta delta : deltas) {
+            Merchandise merchandise = toMerchandise(delta.getItem());
+            switch (delta.getType()) {
+                case ADD:
+                    basketManager.addMerchandise(merchandise);
+                    break;
+                case REMOVE:
+                    basketManager.removeMerchandise(merchandise);
+                    break;
+                case UPDATE:
+                    basketManager.removeMerchandise(merchandise);
+                    basketManager.addMerchandise(merchandise);
+                    break;
+            }
+        }
+    }
+    
+    public void finalizeTerminalBasket() {
+        if (!isTerminalInitialized) {
+            throw new IllegalStateException("Terminal not initialized. Please initialize first.");
+        }
+        paymentSdk.getTransactionManager().getBasketManager().finalizeBasket();
+    }
+    
+    private static Merchandise toMerchandise(BasketLineItem item) {
+        Merchandise merchandise = Merchandise.create();
+        merchandise.setBasketItemId(item.getLineId());
+        merchandise.setSku(item.getSku());
+        merchandise.setDescription(item.getDescription());
+        merchandise.setQuantity(new Decimal(item.getQuantity()));
+        merchandise.setUnitPrice(toDecimal(item.getUnitPrice()));
+        merchandise.setAmount(toDecimal(item.getLineTotal()));
+        return merchandise;
+    }
+
+    /**
+     * Converts an amount from its string form, a double cannot hold most cent amounts exactly.
+     */
+    static Decimal toDecimal(BigDecimal amount) {
+        return new Decimal(amount.toPlainString());
+    }
+
+    public void endSession() {
+        try {
+            if (!isTerminalInitialized) {
+                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+            }
+            
+            log.info("Ending terminal session...");
+            boolean success = paymentSdk.getTransactionManager().endSession();
+            if (!success) {
+                throw new RuntimeException("Failed to end session");
+            }
+            log.info("Session ended successfully");
+        } catch (Exception e) {
+            log.error("Failed to end session", e);
+            throw new RuntimeException("Session end failed", e);
+        }
+    }
+
+    public void tearDown() {
+        eventListener.closeRecorder();
+        if (paymentSdk != null) {
+            paymentSdk.tearDown();
+            // Torn down once - a later shutdown step must not tear it down again
+            paymentSdk = null;
+            log.info("[{}] Payment SDK torn down successfully", getTerminalId());
+            isTerminalInitialized = false;
+        }
+        state = TerminalState.DISCONNECTED;
+    }
+    
+    /**
+     * Marks the terminal as shutting down - it finishes what it is doing but
+     * takes no new operations.
+     */
+    public void markDraining() {
+        if (state == TerminalState.READY) {
+            state = TerminalState.DRAINING;
+        }
+    }
+    
+    // Accessor methods
+    public TerminalDefinition getDefinition() {
+        return definition;
+    }
+    
+    public String getTerminalId() {
+        return definition.getTerminalId();
+    }
+    
+    public String getAddress() {
+        return definition.getAddress() != null ? definition.getAddress() : "null";
+    }
+    
+    public String getConnectionType() {
+        return definition.getConnectionType() != null ? definition.getConnectionType() : "tcpip";
+    }
+    
+    public String getCurrency() {
+        return definition.getCurrency() != null ? definition.getCurrency() : "DKK";
+    }
+    
+    public PaymentEventListener getEventListener() {
+        return eventListener;
+    }
+    
+    public boolean isTerminalInitialized() {
+        return isTerminalInitialized;
+    }
+    
+    public TerminalState getState() {
+        return state;
+    }
+    
+    public String getLastErrorMessage() {
+        return lastErrorMessage;
+    }
+}
@@ -0,0 +1,131 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.model.TerminalDefinition;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates terminal connections, each with its own event listener.
+ *
+ * With recording on, every connect of a terminal starts a new recording file,
+ * closed again when the terminal is torn down or removed.
+ */
+@Slf4j
+@Component
+// The load test source set brings its own factory with simulated terminals
+@Profile("!loadtest")
+public class TerminalConnectionFactory {
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final HostAuthorizationService hostAuthorizationService;
+    private final RecordingProperties recordingProperties;
+    private final LogSampler logSampler;
+    private final CardTokenizer cardTokenizer;
+    // Listener of the current connection of each recorded terminal
+    private final Map<String, PaymentEventListener> recordingListeners = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService samplerFlusher;
+
+    public TerminalConnectionFactory(ApplicationEventPublisher eventPublisher,
+                                     HostAuthorizationService hostAuthorizationService,
+                                     RecordingProperties recordingProperties,
+                                     LoggingProperties loggingProperties,
+                                     CardTokenizer cardTokenizer) {
+        this.eventPublisher = eventPublisher;
+        this.hostAuthorizationService = hostAuthorizationService;
+        this.recordingProperties = recordingProperties;
+        // One sampler for all terminals - it keeps its windows per terminal
+        this.logSampler = new LogSampler(loggingProperties.getSampleBurst(), loggingProperties.getSampleWindowMs());
+        // Reports suppressed counts of windows no further event closed
+        this.samplerFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Log-Sampler-Flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushMs = Math.max(100, loggingProperties.getSampleWindowMs());
+        samplerFlusher.scheduleWithFixedDelay(logSampler::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        this.cardTokenizer = cardTokenizer;
+    }
+
+    public TerminalConnection create(TerminalDefinition definition) {
+        PaymentEventListener listener = new PaymentEventListener(eventPublisher, hostAuthorizationService);
+        listener.setLogSampler(logSampler);
+        listener.setCardTokenizer(cardTokenizer);
+        if (recordingProperties.isEnabled()) {
+            String terminalId = definition.getTerminalId();
+            listener.setRecorderSource(() -> openRecording(terminalId));
+            recordingListeners.put(terminalId, listener);
+        }
+        return newConnection(definition, listener);
+    }
+
+    // The connection around a listener that is set up already
+    protected TerminalConnection newConnection(TerminalDefinition definition, PaymentEventListener listener) {
+        return new TerminalConnection(definition, listener);
+    }
+
+    /**
+     * Listener for replaying a recording - no SDK and no host behind it, events
+     * go to the given publisher.
+     */
+    public PaymentEventListener createReplayListener(String terminalId, ApplicationEventPublisher publisher) {
+        PaymentEventListener listener = new PaymentEventListener(publisher, null);
+        listener.setTerminalId(terminalId);
+        return listener;
+    }
+
+    private SdkEventLog.Writer openRecording(String terminalId) {
+        try {
+            Path directory = Paths.get(recordingProperties.getDirectory());
+            Files.createDirectories(directory);
+            Path file = directory.resolve(terminalId + "-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".sdklog");
+            SdkEventLog.Writer writer = new SdkEventLog.Writer(file, terminalId, System.currentTimeMillis());
+            log.info("[{}] Recording SDK events to {}", terminalId, file);
+            return writer;
+        } catch (IOException e) {
+            log.error("[{}] Could not start SDK event recording", terminalId, e);
+            return null;
+        }
+    }
+
+    @EventListener
+    public void onTerminalRemoved(TerminalRemovedEvent event) {
+        if (event.isReplaced()) {
+            // The new connection's listener already took the entry over
+            return;
+        }
+        logSampler.forget(event.getTerminalId());
+        PaymentEventListener listener = recordingListeners.remove(event.getTerminalId());
+        if (listener != null) {
+            listener.closeRecorder();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PaymentEventListener listener : recordingListeners.values()) {
+            listener.closeRecorder();
+        }
+        recordingListeners.clear();
+        samplerFlusher.shutdownNow();
+        logSampler.flush();
+    }
+}
@@ -0,0 +1,313 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.TerminalLaneProperties;
+import com.robar.payment.model.TransactionKind;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs transactions on each terminal one at a time, in priority order.
+ *
+ * Each terminal has its own lane: a priority queue served by a single worker
+ * that starts an operation and waits for the terminal's result before taking
+ * the next one. A reversal or void is therefore started as soon as the terminal
+ * is free, ahead of any sales still waiting in the queue.
+ *
+ * An operation without a result in time is aborted on the terminal, and the lane
+ * waits a little longer for its late result so the next operation cannot pick it up.
+ * A late result still goes to the operation's caller; only when none arrives does
+ * the operation fail with a TimeoutException.
+ */
+@Slf4j
+@Service
+public class TerminalDispatcher {
+    private final TerminalRegistry terminalRegistry;
+    private final TerminalResultTracker resultTracker;
+    private final TerminalLaneProperties properties;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean admitting = true;
+
+    public TerminalDispatcher(TerminalRegistry terminalRegistry, TerminalResultTracker resultTracker,
+                              TerminalLaneProperties properties) {
+        this.terminalRegistry = terminalRegistry;
+        this.resultTracker = resultTracker;
+        this.properties = properties;
+    }
+
+    /**
+     * Queues an operation on the terminal. The returned future completes with the
+     * terminal's result, or exceptionally if the operation could not be started,
+     * the terminal never reported it or the terminal was removed.
+     *
+     * @param kind              transaction the operation starts, its result is matched on it
+     * @param originalPaymentId payment a follow-up operation refers to, null for new transactions
+     */
+    public CompletableFuture<PaymentStatusEvent> submit(String terminalId, OperationPriority priority, TransactionKind kind,
+                                                        String originalPaymentId, String description,
+                                                        Consumer<TerminalConnection> operation) {
+        if (!admitting) {
+            throw new IllegalStateException("Shutting down, no new terminal operations are taken");
+        }
+        String resolvedId = terminalRegistry.resolve(terminalId).getTerminalId();
+        Operation queued = new Operation(priority, sequence.incrementAndGet(), kind, originalPaymentId, description, operation);
+        // A lane closed by a removal in the meantime is replaced
+        while (!lanes.computeIfAbsent(resolvedId, Lane::new).offer(queued)) {
+            Thread.onSpinWait();
+        }
+        return queued.result;
+    }
+
+    /**
+     * Queues a task that does not start a transaction, e.g. a query, on the
+     * terminal's lane so no transaction is started while it runs. The task runs
+     * on the lane worker and waits for whatever answer it needs itself; the
+     * returned future completes with its return value. Cancelling the future
+     * while the task is still queued skips it.
+     */
+    public <T> CompletableFuture<T> submitTask(String terminalId, OperationPriority priority, String description,
+                                               Function<TerminalConnection, T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<PaymentStatusEvent> queued = submit(terminalId, priority, null, null, description,
+                terminal -> result.complete(task.apply(terminal)));
+        queued.whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            }
+        });
+        result.whenComplete((value, error) -> queued.cancel(false));
+        return result;
+    }
+
+    public int getQueueDepth(String terminalId) {
+        Lane lane = lanes.get(terminalId);
+        return lane != null ? lane.queue.size() : 0;
+    }
+
+    /**
+     * True when nothing is running or queued on the terminal.
+     */
+    public boolean isIdle(String terminalId) {
+        Lane lane = lanes.get(terminalId);
+        return lane == null || (!lane.busy && lane.queue.isEmpty());
+    }
+
+    /**
+     * Refuses new operations from now on. Operations already queued still run.
+     */
+    public void stopAdmitting() {
+        admitting = false;
+    }
+
+    public boolean isAdmitting() {
+        return admitting;
+    }
+
+    /**
+     * Waits until the terminal's lane is idle or the deadline (System.nanoTime)
+     * has passed. Returns true if the lane is idle.
+     */
+    public boolean awaitIdle(String terminalId, long deadlineNanos) throws InterruptedException {
+        while (!isIdle(terminalId)) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    /**
+     * Closes the lane of a removed or replaced terminal. Its queued and running
+     * operations fail; operations submitted later get a new lane.
+     */
+    @EventListener
+    public void onTerminalRemoved(TerminalRemovedEvent event) {
+        Lane lane = lanes.remove(event.getTerminalId());
+        if (lane != null) {
+            int failed = lane.close("Terminal " + event.getTerminalId() + " was " + (event.isReplaced() ? "reconfigured" : "removed"));
+            log.info("[{}] Lane closed, {} queued operations failed", event.getTerminalId(), failed);
+        }
+        resultTracker.forget(event.getTerminalId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (String terminalId : new ArrayList<>(lanes.keySet())) {
+            Lane lane = lanes.remove(terminalId);
+            if (lane != null) {
+                lane.close("Shutting down");
+            }
+        }
+    }
+
+    private static class Operation implements Comparable<Operation> {
+        final OperationPriority priority;
+        final long sequence;
+        final TransactionKind kind;
+        final String originalPaymentId;
+        final String description;
+        final Consumer<TerminalConnection> action;
+        final CompletableFuture<PaymentStatusEvent> result = new CompletableFuture<>();
+
+        Operation(OperationPriority priority, long sequence, TransactionKind kind, String originalPaymentId,
+                  String description, Consumer<TerminalConnection> action) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.kind = kind;
+            this.originalPaymentId = originalPaymentId;
+            this.description = description;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Operation other) {
+            int byPriority = priority.compareTo(other.priority);
+            // FIFO within a lane
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private class Lane {
+        final String terminalId;
+        final PriorityBlockingQueue<Operation> queue = new PriorityBlockingQueue<>();
+        final Thread worker;
+        volatile boolean busy;
+        private boolean closed;
+
+        Lane(String terminalId) {
+            this.terminalId = terminalId;
+            this.worker = new Thread(this::run, "Terminal-Lane-" + terminalId);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        synchronized boolean offer(Operation operation) {
+            if (closed) {
+                return false;
+            }
+            queue.add(operation);
+            return true;
+        }
+
+        /**
+         * Stops the worker and fails everything still queued. Returns the number of failed operations.
+         */
+        int close(String reason) {
+            List<Operation> abandoned = new ArrayList<>();
+            synchronized (this) {
+                closed = true;
+                queue.drainTo(abandoned);
+            }
+            worker.interrupt();
+            for (Operation operation : abandoned) {
+                operation.result.completeExceptionally(new IllegalStateException(reason));
+            }
+            return abandoned.size();
+        }
+
+        private void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Operation operation;
+                try {
+                    operation = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (operation.result.isDone()) {
+                    continue; // Caller gave up while queued
+                }
+                busy = true;
+                try {
+                    execute(operation);
+                } finally {
+                    busy = false;
+                }
+            }
+        }
+
+        private void execute(Operation operation) {
+            if (operation.kind == null) {
+                runTask(operation);
+                return;
+            }
+            CompletableFuture<PaymentStatusEvent> terminalResult = resultTracker.expectResult(terminalId,
+                    operation.kind, operation.originalPaymentId);
+            TerminalConnection terminal = null;
+            try {
+                log.debug("[{}] Starting {} ({})", terminalId, operation.description, operation.priority);
+                terminal = terminalRegistry.resolve(terminalId);
+                operation.action.accept(terminal);
+                operation.result.complete(terminalResult.get(properties.getResultTimeoutMs(), TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                terminalResult.cancel(false);
+                operation.result.completeExceptionally(e);
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                // The tracker gave up on the terminal, i.e. it was removed while the operation ran
+                operation.result.completeExceptionally(new IllegalStateException("Terminal " + terminalId + " went away", e));
+            } catch (TimeoutException e) {
+                log.warn("[{}] No result for {} after {} ms", terminalId, operation.description, properties.getResultTimeoutMs());
+                PaymentStatusEvent late = awaitLateResult(terminal, operation, terminalResult);
+                if (late != null) {
+                    operation.result.complete(late);
+                } else {
+                    operation.result.completeExceptionally(e);
+                }
+            } catch (Exception e) {
+                terminalResult.cancel(false);
+                operation.result.completeExceptionally(e);
+            }
+        }
+
+        // A task waits for its own answer, there is no terminal result to match
+        private void runTask(Operation operation) {
+            try {
+                log.debug("[{}] Starting {} ({})", terminalId, operation.description, operation.priority);
+                operation.action.accept(terminalRegistry.resolve(terminalId));
+                operation.result.complete(null);
+            } catch (Exception e) {
+                operation.result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Aborts a timed out operation and waits for the terminal to report it, so
+         * its result is not taken for the result of the next operation. Returns the
+         * late result, or null if the terminal did not report one.
+         */
+        private PaymentStatusEvent awaitLateResult(TerminalConnection terminal, Operation operation,
+                                                   CompletableFuture<PaymentStatusEvent> terminalResult) {
+            try {
+                terminal.abortTransaction();
+                PaymentStatusEvent late = terminalResult.get(properties.getLateResultWaitMs(), TimeUnit.MILLISECONDS);
+                log.warn("[{}] Late {} result of timed out {}", terminalId, late.getStatus(), operation.description);
+                return late;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException e) {
+                log.warn("[{}] No late result for {}, continuing with the next operation", terminalId, operation.description);
+            } catch (Exception e) {
+                log.warn("[{}] Could not abort {}: {}", terminalId, operation.description, e.getMessage());
+            } finally {
+                terminalResult.cancel(false);
+            }
+            return null;
+        }
+    }
+}
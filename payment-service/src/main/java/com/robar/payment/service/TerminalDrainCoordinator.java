@@ -0,0 +1,185 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ShutdownProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes the terminals down in order when the application stops.
+ *
+ * New terminal operations are refused straight away. Each terminal then gets
+ * to finish what is running or queued in its lane (up to the drain timeout),
+ * after which its session is ended, its event recording flushed and the SDK
+ * torn down. In a cluster the lease is released as soon as that terminal is
+ * done, so a replacement node can take it over while the others still drain.
+ * Once all terminals are down, offline authorizations are forwarded and queued
+ * history rows written, for up to the flush timeout.
+ *
+ * Runs as the first lifecycle phase to stop, before the web server shuts down,
+ * so status lookups and forwarded follow-ups are still answered while draining.
+ */
+@Slf4j
+@Service
+public class TerminalDrainCoordinator implements SmartLifecycle {
+    private final TerminalRegistry terminalRegistry;
+    private final TerminalDispatcher terminalDispatcher;
+    private final TerminalOwnershipManager ownershipManager;
+    private final HostAuthorizationService hostAuthorizationService;
+    private final HistoryWriter historyWriter;
+    private final ShutdownProperties properties;
+    private volatile boolean running;
+
+    public TerminalDrainCoordinator(TerminalRegistry terminalRegistry, TerminalDispatcher terminalDispatcher,
+                                    TerminalOwnershipManager ownershipManager,
+                                    HostAuthorizationService hostAuthorizationService, HistoryWriter historyWriter,
+                                    ShutdownProperties properties) {
+        this.terminalRegistry = terminalRegistry;
+        this.terminalDispatcher = terminalDispatcher;
+        this.ownershipManager = ownershipManager;
+        this.hostAuthorizationService = hostAuthorizationService;
+        this.historyWriter = historyWriter;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            drain();
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        Thread drainer = new Thread(() -> {
+            try {
+                stop();
+            } finally {
+                callback.run();
+            }
+        }, "Terminal-Drain");
+        drainer.start();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stops before the web server's graceful shutdown phase
+        return DEFAULT_PHASE;
+    }
+
+    void drain() {
+        try {
+            drainTerminals();
+        } finally {
+            flushPendingState();
+        }
+    }
+
+    private void drainTerminals() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(properties.getDrainTimeoutMs());
+        terminalDispatcher.stopAdmitting();
+        ownershipManager.beginDrain();
+
+        List<TerminalConnection> terminals = new ArrayList<>();
+        for (TerminalConnection terminal : terminalRegistry.getAll()) {
+            if (ownershipManager.isLocal(terminal.getTerminalId())) {
+                terminal.markDraining();
+                terminals.add(terminal);
+            }
+        }
+        if (terminals.isEmpty()) {
+            return;
+        }
+        log.info("Draining {} terminals, waiting up to {} ms for running payments", terminals.size(), properties.getDrainTimeoutMs());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(terminals.size(), properties.getDrainThreads())), r -> {
+            Thread thread = new Thread(r, "Terminal-Drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int cutOff = 0;
+        try {
+            List<Future<Boolean>> drained = new ArrayList<>();
+            for (TerminalConnection terminal : terminals) {
+                drained.add(executor.submit(() -> drainTerminal(terminal, deadline)));
+            }
+            for (Future<Boolean> result : drained) {
+                try {
+                    if (!result.get()) {
+                        cutOff++;
+                    }
+                } catch (ExecutionException e) {
+                    log.error("Draining a terminal failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Terminal drain interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Drained {} terminals in {} ms, {} cut off at the timeout", terminals.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), cutOff);
+    }
+
+    // Terminals are down, so nothing new comes in - results and host decisions of the drain included
+    private void flushPendingState() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getFlushTimeoutMs());
+        hostAuthorizationService.flushPending(deadline);
+        try {
+            if (!historyWriter.awaitFlushed(deadline)) {
+                log.warn("{} history rows still queued at the flush timeout", historyWriter.getQueueSize());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns false if the terminal was still busy when the deadline passed.
+     */
+    private boolean drainTerminal(TerminalConnection terminal, long deadline) throws InterruptedException {
+        String terminalId = terminal.getTerminalId();
+        boolean idle = terminalDispatcher.awaitIdle(terminalId, deadline);
+        if (!idle) {
+            log.warn("[{}] Still running a payment at the drain timeout, tearing down anyway", terminalId);
+        }
+        if (terminal.isTerminalInitialized()) {
+            try {
+                terminal.endSession();
+            } catch (Exception e) {
+                // No session open is the normal case between payments
+                log.debug("[{}] No session ended: {}", terminalId, e.getMessage());
+            }
+        }
+        terminal.getEventListener().closeRecorder();
+        try {
+            terminal.tearDown();
+        } catch (Exception e) {
+            log.warn("[{}] Error tearing down terminal", terminalId, e);
+        }
+        ownershipManager.handOver(terminalId);
+        return idle;
+    }
+}
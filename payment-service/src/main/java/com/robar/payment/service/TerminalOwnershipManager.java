@@ -0,0 +1,451 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.model.ClusterNode;
+import com.robar.payment.model.TerminalLease;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which terminals this node drives when several nodes share them.
+ *
+ * Each terminal is claimed through a lease in the shared {@link LeaseStore}.
+ * Every renew round the node heartbeats, renews its leases and claims free or
+ * expired ones up to its fair share (terminals / live nodes). Terminals are
+ * claimed in rendezvous-hash order so the same node tends to get the same
+ * terminals back, and a node above its share hands idle terminals back when
+ * another node joins. A crashed node stops renewing, its leases expire and the
+ * remaining nodes pick the terminals up.
+ *
+ * A node that cannot renew stops taking work for its terminals and disconnects
+ * them a safety margin before its leases could expire, so it never drives a
+ * terminal a peer may already have claimed.
+ *
+ * With clustering disabled the node owns every terminal and nothing is leased.
+ */
+@Slf4j
+@Service
+@Lazy(false)
+public class TerminalOwnershipManager {
+    private final ClusterProperties properties;
+    private final LeaseStore leaseStore;
+    private final TerminalRegistry terminalRegistry;
+    private final TerminalDispatcher terminalDispatcher;
+    private final ClusterNode self;
+    private final Set<String> owned = ConcurrentHashMap.newKeySet();
+    // Lost or fenced terminals still being disconnected - not claimed again until that is done
+    private final Set<String> releasing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService connector;
+    private volatile Map<String, TerminalLease> leases = Collections.emptyMap();
+    private volatile boolean draining;
+    // System.nanoTime until which the leases renewed in the last successful round are safe to act on
+    private volatile long leasesSafeUntilNanos = System.nanoTime();
+    private ScheduledExecutorService scheduler;
+
+    public TerminalOwnershipManager(ClusterProperties properties, LeaseStore leaseStore,
+                                    TerminalRegistry terminalRegistry, TerminalDispatcher terminalDispatcher,
+                                    @Value("${server.port:8080}") int serverPort) {
+        this.properties = properties;
+        this.leaseStore = leaseStore;
+        this.terminalRegistry = terminalRegistry;
+        this.terminalDispatcher = terminalDispatcher;
+        this.self = ClusterNode.builder()
+                .nodeId(properties.getNodeId() != null && !properties.getNodeId().isEmpty()
+                        ? properties.getNodeId() : hostName() + "-" + UUID.randomUUID().toString().substring(0, 8))
+                .url(properties.getAdvertisedUrl() != null && !properties.getAdvertisedUrl().isEmpty()
+                        ? properties.getAdvertisedUrl() : "http://" + hostName() + ":" + serverPort)
+                .build();
+        // Threads are only started once there is something to connect
+        this.connector = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "Terminal-Claim");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // Two threads - the lease check must run while a lease round hangs on the store
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "Terminal-Lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebalanceSafely, 0, properties.getRenewIntervalMs(), TimeUnit.MILLISECONDS);
+        long checkInterval = Math.max(100, properties.getLeaseSafetyMarginMs() / 2);
+        scheduler.scheduleWithFixedDelay(this::checkLeases, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        if (properties.getHandoverWindowMs() > 0) {
+            // A node being replaced releases its terminals one by one as they drain
+            long handoverEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getHandoverWindowMs());
+            ScheduledFuture<?>[] handover = new ScheduledFuture<?>[1];
+            handover[0] = scheduler.scheduleWithFixedDelay(() -> {
+                if (System.nanoTime() - handoverEnd >= 0 || draining) {
+                    handover[0].cancel(false);
+                } else {
+                    claimReleasedSafely();
+                }
+            }, properties.getHandoverPollMs(), properties.getHandoverPollMs(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Cluster node {} ({}) started, lease ttl {} ms", self.getNodeId(), self.getUrl(), properties.getLeaseTtlMs());
+    }
+
+    private void rebalanceSafely() {
+        try {
+            rebalance();
+        } catch (Exception e) {
+            // Leases run out on their own if the store stays unreachable - peers take over
+            log.error("Lease round failed on node {}", self.getNodeId(), e);
+            checkLeases();
+        }
+    }
+
+    private void claimReleasedSafely() {
+        try {
+            claimReleased();
+        } catch (Exception e) {
+            log.debug("Handover poll failed on node {}: {}", self.getNodeId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Handover poll: claims terminals whose lease a peer has just released.
+     * Only the leases are read until one is free - heartbeat, renewals and
+     * handing back are left to the regular lease round.
+     */
+    synchronized void claimReleased() {
+        if (draining || owned.size() >= terminalRegistry.getAll().size()) {
+            return;
+        }
+        Map<String, TerminalLease> current = leaseStore.getLeases();
+        Instant now = Instant.now();
+        List<TerminalConnection> terminals = new ArrayList<>();
+        for (TerminalConnection terminal : terminalRegistry.getAll()) {
+            TerminalLease lease = current.get(terminal.getTerminalId());
+            if (lease == null || lease.isExpired(now)) {
+                terminals.add(terminal);
+            }
+        }
+        if (terminals.isEmpty()) {
+            return;
+        }
+        // A node that released a lease has usually left - count the live nodes again
+        int fairShare = fairShare(terminalRegistry.getAll().size(), leaseStore.getLiveNodes().size());
+        terminals.sort(byPreference());
+        claimFree(terminals, current, fairShare);
+        leases = leaseStore.getLeases();
+    }
+
+    /**
+     * Disconnects every owned terminal once the last successful renew is too old
+     * to be sure the leases are still ours.
+     */
+    void checkLeases() {
+        if (leasesSafe() || owned.isEmpty()) {
+            return;
+        }
+        log.error("Leases of node {} not renewed in time, disconnecting {} terminals", self.getNodeId(), owned.size());
+        for (String terminalId : new ArrayList<>(owned)) {
+            TerminalConnection terminal = terminalRegistry.get(terminalId);
+            if (terminal != null) {
+                disconnectBeforeRelease(terminal);
+            } else {
+                owned.remove(terminalId);
+            }
+        }
+    }
+
+    private boolean leasesSafe() {
+        return System.nanoTime() - leasesSafeUntilNanos < 0;
+    }
+
+    synchronized void rebalance() {
+        long ttl = properties.getLeaseTtlMs();
+        // Leases renewed in this round run at least until ttl after its start
+        long roundStart = System.nanoTime();
+        if (!draining) {
+            leaseStore.heartbeat(self, ttl);
+        }
+        List<ClusterNode> nodes = leaseStore.getLiveNodes();
+        List<TerminalConnection> terminals = new ArrayList<>(terminalRegistry.getAll());
+        int fairShare = fairShare(terminals.size(), nodes.size());
+
+        // Renew what we hold; a lease lost to another node means it was taken over
+        for (String terminalId : new ArrayList<>(owned)) {
+            TerminalConnection terminal = terminalRegistry.get(terminalId);
+            if (terminal == null) {
+                owned.remove(terminalId);
+                leaseStore.release(terminalId, self.getNodeId());
+            } else if (!leaseStore.tryAcquire(terminalId, self, ttl)) {
+                log.warn("Lease on terminal {} lost, disconnecting", terminalId);
+                disconnectBeforeRelease(terminal);
+            }
+        }
+        leasesSafeUntilNanos = roundStart + TimeUnit.MILLISECONDS.toNanos(ttl - properties.getLeaseSafetyMarginMs());
+
+        if (draining) {
+            // Only hold on to the terminals still finishing payments, they are handed over one by one
+            leases = leaseStore.getLeases();
+            return;
+        }
+
+        // Least preferred first when shedding, most preferred first when claiming
+        terminals.sort(byPreference());
+
+        for (int i = terminals.size() - 1; i >= 0 && owned.size() > fairShare; i--) {
+            String terminalId = terminals.get(i).getTerminalId();
+            if (owned.contains(terminalId) && terminalDispatcher.isIdle(terminalId)) {
+                log.info("Handing terminal {} back, {} held with a fair share of {}", terminalId, owned.size(), fairShare);
+                owned.remove(terminalId);
+                disconnect(terminals.get(i));
+                leaseStore.release(terminalId, self.getNodeId());
+            }
+        }
+
+        claimFree(terminals, leaseStore.getLeases(), fairShare);
+        leases = leaseStore.getLeases();
+    }
+
+    // Claims unleased terminals in the given order until the node holds its fair share
+    private void claimFree(List<TerminalConnection> terminals, Map<String, TerminalLease> current, int fairShare) {
+        Instant now = Instant.now();
+        for (TerminalConnection terminal : terminals) {
+            if (owned.size() >= fairShare) {
+                break;
+            }
+            String terminalId = terminal.getTerminalId();
+            TerminalLease lease = current.get(terminalId);
+            if (owned.contains(terminalId) || releasing.contains(terminalId) || (lease != null && !lease.isExpired(now))) {
+                continue;
+            }
+            if (leaseStore.tryAcquire(terminalId, self, properties.getLeaseTtlMs())) {
+                log.info("Claimed terminal {}{}", terminalId, lease != null ? " from " + lease.getOwnerNodeId() : "");
+                owned.add(terminalId);
+                connector.execute(() -> connect(terminal));
+            }
+        }
+    }
+
+    private static int fairShare(int terminals, int liveNodes) {
+        int nodes = Math.max(1, liveNodes);
+        return (terminals + nodes - 1) / nodes;
+    }
+
+    // Most preferred first
+    private Comparator<TerminalConnection> byPreference() {
+        return Comparator.comparingLong((TerminalConnection t) -> score(t.getTerminalId(), self.getNodeId())).reversed();
+    }
+
+    /**
+     * True if requests for the terminal should be handled on this node.
+     */
+    public boolean isLocal(String terminalId) {
+        return !properties.isEnabled() || (owned.contains(terminalId) && leasesSafe());
+    }
+
+    /**
+     * True if this node holds the terminal but cannot be sure of its lease right
+     * now - requests for it are refused rather than forwarded or run.
+     */
+    public boolean isFenced(String terminalId) {
+        return properties.isEnabled() && terminalId != null
+                && (releasing.contains(terminalId) || (owned.contains(terminalId) && !leasesSafe()));
+    }
+
+    /**
+     * The peer holding the terminal, or null if this node holds it or nobody does.
+     */
+    public TerminalLease getRemoteOwner(String terminalId) {
+        if (isLocal(terminalId)) {
+            return null;
+        }
+        TerminalLease lease = leases.get(terminalId);
+        if (lease == null || lease.isExpired(Instant.now()) || self.getNodeId().equals(lease.getOwnerNodeId())) {
+            return null;
+        }
+        return lease;
+    }
+
+    /**
+     * Start of a shutdown: the node leaves the cluster so peers count it out of
+     * the fair share, and only keeps renewing the leases it still holds.
+     */
+    public void beginDrain() {
+        draining = true;
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            leaseStore.leave(self.getNodeId());
+        } catch (Exception e) {
+            log.warn("Could not leave the cluster, peers will notice once the heartbeat expires", e);
+        }
+    }
+
+    /**
+     * Releases the lease on a terminal this node has disconnected, so a peer
+     * can claim it right away.
+     */
+    public synchronized void handOver(String terminalId) {
+        if (!properties.isEnabled() || !owned.remove(terminalId)) {
+            return;
+        }
+        try {
+            leaseStore.release(terminalId, self.getNodeId());
+            log.info("Terminal {} released for handover", terminalId);
+        } catch (Exception e) {
+            log.warn("Could not release lease on terminal {}, it frees up on expiry", terminalId, e);
+        }
+    }
+
+    /**
+     * Reconnects a held terminal whose config changed - the registry only
+     * registers the new connection in cluster mode - and lets go of a removed one.
+     */
+    @EventListener
+    public synchronized void onTerminalRemoved(TerminalRemovedEvent event) {
+        String terminalId = event.getTerminalId();
+        if (!properties.isEnabled() || !owned.contains(terminalId)) {
+            return;
+        }
+        TerminalConnection replacement = event.isReplaced() ? terminalRegistry.get(terminalId) : null;
+        if (replacement != null) {
+            log.info("Terminal {} reconfigured, reconnecting", terminalId);
+            connector.execute(() -> connect(replacement));
+            return;
+        }
+        owned.remove(terminalId);
+        try {
+            leaseStore.release(terminalId, self.getNodeId());
+        } catch (Exception e) {
+            log.warn("Could not release lease on removed terminal {}, it frees up on expiry", terminalId, e);
+        }
+    }
+
+    /**
+     * The other live nodes of the cluster.
+     */
+    public List<ClusterNode> getPeers() {
+        List<ClusterNode> peers = new ArrayList<>();
+        for (ClusterNode node : leaseStore.getLiveNodes()) {
+            if (!self.getNodeId().equals(node.getNodeId())) {
+                peers.add(node);
+            }
+        }
+        return peers;
+    }
+
+    public Map<String, TerminalLease> getLeases() {
+        return leases;
+    }
+
+    public ClusterNode getSelf() {
+        return self;
+    }
+
+    private void connect(TerminalConnection terminal) {
+        try {
+            terminal.connect();
+        } catch (Exception e) {
+            log.error("Connect of claimed terminal {} failed", terminal.getTerminalId(), e);
+        }
+    }
+
+    /**
+     * Stops driving a terminal whose lease is lost or in doubt. The terminal is
+     * only up for claiming again once the disconnect has finished.
+     */
+    private void disconnectBeforeRelease(TerminalConnection terminal) {
+        String terminalId = terminal.getTerminalId();
+        if (!releasing.add(terminalId)) {
+            return;
+        }
+        owned.remove(terminalId);
+        try {
+            connector.execute(() -> {
+                try {
+                    disconnect(terminal);
+                } finally {
+                    releasing.remove(terminalId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down - disconnect right here
+            disconnect(terminal);
+            releasing.remove(terminalId);
+        }
+    }
+
+    private void disconnect(TerminalConnection terminal) {
+        try {
+            terminal.tearDown();
+        } catch (Exception e) {
+            log.warn("Error disconnecting terminal {}", terminal.getTerminalId(), e);
+        }
+    }
+
+    // Rendezvous hash - every node computes the same preference order without coordinating
+    static long score(String terminalId, String nodeId) {
+        long hash = 1125899906842597L;
+        String key = terminalId + '\u0000' + nodeId;
+        for (int i = 0; i < key.length(); i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        // Finalize so similar ids spread out
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+
+    /**
+     * Releases every lease so peers can take over right away instead of waiting for expiry.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        connector.shutdownNow();
+        for (String terminalId : owned) {
+            try {
+                leaseStore.release(terminalId, self.getNodeId());
+            } catch (Exception e) {
+                log.warn("Could not release lease on terminal {}", terminalId, e);
+            }
+        }
+        owned.clear();
+    }
+}
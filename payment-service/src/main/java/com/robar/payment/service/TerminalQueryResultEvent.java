@@ -0,0 +1,22 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.TransactionRecord;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Answer of a terminal to a transaction query.
+ */
+@Getter
+public class TerminalQueryResultEvent {
+    private final String terminalId;
+    private final int status;
+    private final List<TransactionRecord> transactions;
+
+    public TerminalQueryResultEvent(String terminalId, int status, List<TransactionRecord> transactions) {
+        this.terminalId = terminalId;
+        this.status = status;
+        this.transactions = transactions;
+    }
+}
@@ -0,0 +1,169 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TerminalState;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the connection for every configured terminal.
+ *
+ * Config changes are applied as a diff: terminals whose definition is unchanged
+ * keep their running connection, only added, removed or changed terminals are
+ * connected or torn down. In cluster mode terminals are only registered here;
+ * TerminalOwnershipManager connects the ones this node holds the lease for.
+ */
+@Slf4j
+@Service
+public class TerminalRegistry {
+    private final TerminalConnectionFactory connectionFactory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ClusterProperties clusterProperties;
+    
+    // Insertion ordered so the first configured terminal stays the default
+    private final Map<String, TerminalConnection> connections = new LinkedHashMap<>();
+
+    public TerminalRegistry(TerminalConnectionFactory connectionFactory, VerifoneConfig verifoneConfig,
+                            ApplicationEventPublisher eventPublisher, ClusterProperties clusterProperties) {
+        this.connectionFactory = connectionFactory;
+        this.eventPublisher = eventPublisher;
+        this.clusterProperties = clusterProperties;
+        
+        // Register the configured terminals - connecting is left to the init endpoints
+        for (TerminalDefinition definition : verifoneConfig.getTerminalDefinitions()) {
+            connections.put(definition.getTerminalId(), connectionFactory.create(definition));
+        }
+        log.info("TerminalRegistry created with {} terminals: {}", connections.size(), connections.keySet());
+    }
+
+    /**
+     * Applies a new set of terminal definitions.
+     * New terminals are connected right away, changed terminals are reconnected
+     * if they were connected before, unchanged terminals are left alone; in
+     * cluster mode connecting is left to the lease owner. Only the
+     * swap of the connection set holds the registry lock; tearing down and
+     * connecting happen after it, so payments resolving a terminal do not wait.
+     */
+    public void apply(List<TerminalDefinition> definitions) {
+        Map<String, TerminalDefinition> wanted = new LinkedHashMap<>();
+        for (TerminalDefinition definition : definitions) {
+            if (wanted.put(definition.getTerminalId(), definition) != null) {
+                throw new IllegalArgumentException("Duplicate terminal id: " + definition.getTerminalId());
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        // Teardowns and connects in config order, run once the lock is released
+        List<Runnable> steps = new ArrayList<>();
+        int unchanged;
+        synchronized (this) {
+            for (String terminalId : new ArrayList<>(connections.keySet())) {
+                if (!wanted.containsKey(terminalId)) {
+                    TerminalConnection connection = connections.remove(terminalId);
+                    steps.add(() -> tearDownQuietly(connection));
+                    removed.add(terminalId);
+                }
+            }
+
+            Map<String, TerminalConnection> updated = new LinkedHashMap<>();
+            for (TerminalDefinition definition : wanted.values()) {
+                TerminalConnection existing = connections.get(definition.getTerminalId());
+                if (existing != null && existing.getDefinition().equals(definition)) {
+                    updated.put(definition.getTerminalId(), existing);
+                    continue;
+                }
+
+                TerminalConnection connection = connectionFactory.create(definition);
+                updated.put(definition.getTerminalId(), connection);
+                boolean connectHere = !clusterProperties.isEnabled();
+                if (existing == null) {
+                    added.add(definition.getTerminalId());
+                    if (connectHere) {
+                        steps.add(connection::connect);
+                    }
+                } else {
+                    // The old connection goes first - it is the same device as its replacement
+                    changed.add(definition.getTerminalId());
+                    boolean wasConnected = existing.getState() != TerminalState.DISCONNECTED;
+                    steps.add(() -> tearDownQuietly(existing));
+                    if (wasConnected && connectHere) {
+                        steps.add(connection::connect);
+                    }
+                }
+            }
+
+            connections.clear();
+            connections.putAll(updated);
+            unchanged = connections.size() - added.size() - changed.size();
+        }
+
+        for (Runnable step : steps) {
+            step.run();
+        }
+
+        // Lanes, waiters and per-terminal state of the old connections go with them
+        for (String terminalId : removed) {
+            eventPublisher.publishEvent(new TerminalRemovedEvent(terminalId, false));
+        }
+        for (String terminalId : changed) {
+            eventPublisher.publishEvent(new TerminalRemovedEvent(terminalId, true));
+        }
+
+        if (!added.isEmpty() || !removed.isEmpty() || !changed.isEmpty()) {
+            log.info("Terminal config applied: added={}, changed={}, removed={}, unchanged={}",
+                    added, changed, removed, unchanged);
+        }
+    }
+
+    /**
+     * Returns the terminal with the given id, or the default terminal for a null id.
+     */
+    public synchronized TerminalConnection resolve(String terminalId) {
+        if (terminalId == null || terminalId.isEmpty() || ("default".equals(terminalId) && !connections.containsKey(terminalId))) {
+            if (connections.isEmpty()) {
+                throw new IllegalStateException("No terminals configured");
+            }
+            return connections.values().iterator().next();
+        }
+        TerminalConnection connection = connections.get(terminalId);
+        if (connection == null) {
+            throw new IllegalArgumentException("Unknown terminal: " + terminalId);
+        }
+        return connection;
+    }
+
+    public synchronized TerminalConnection get(String terminalId) {
+        return connections.get(terminalId);
+    }
+
+    public synchronized Collection<TerminalConnection> getAll() {
+        return new ArrayList<>(connections.values());
+    }
+
+    private void tearDownQuietly(TerminalConnection connection) {
+        try {
+            connection.tearDown();
+        } catch (Exception e) {
+            log.warn("Error tearing down terminal {}", connection.getTerminalId(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (TerminalConnection connection : connections.values()) {
+            tearDownQuietly(connection);
+        }
+    }
+}
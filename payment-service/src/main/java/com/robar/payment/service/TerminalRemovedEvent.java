@@ -0,0 +1,18 @@
+package com.robar.payment.service;
+
+import lombok.Getter;
+
+/**
+ * Published when a terminal's connection is dropped by a config change: the
+ * terminal was removed, or replaced by a new connection with a changed definition.
+ */
+@Getter
+public class TerminalRemovedEvent {
+    private final String terminalId;
+    private final boolean replaced;
+
+    public TerminalRemovedEvent(String terminalId, boolean replaced) {
+        this.terminalId = terminalId;
+        this.replaced = replaced;
+    }
+}
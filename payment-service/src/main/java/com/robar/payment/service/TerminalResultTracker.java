@@ -0,0 +1,91 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.TransactionKind;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lets callers wait for the result of an operation they started on a terminal.
+ *
+ * A result goes to the oldest caller waiting on that terminal for the same kind
+ * of transaction and, for follow-up operations, the same original payment. A
+ * result nobody asked for is logged and dropped rather than handed to whoever
+ * happens to be waiting.
+ */
+@Slf4j
+@Component
+public class TerminalResultTracker {
+    private final Map<String, Queue<Waiter>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Registers interest in the result of an operation on the terminal. Call
+     * before starting the operation so a fast completion is not missed.
+     *
+     * @param originalPaymentId payment a follow-up operation refers to, null for new transactions
+     */
+    public CompletableFuture<PaymentStatusEvent> expectResult(String terminalId, TransactionKind kind, String originalPaymentId) {
+        Waiter waiter = new Waiter(kind, originalPaymentId);
+        pending.computeIfAbsent(terminalId, id -> new ConcurrentLinkedQueue<>()).add(waiter);
+        return waiter.future;
+    }
+
+    /**
+     * Cancels everything still waiting on the terminal, e.g. after it was removed.
+     */
+    public void forget(String terminalId) {
+        Queue<Waiter> queue = pending.remove(terminalId);
+        if (queue != null) {
+            queue.forEach(waiter -> waiter.future.cancel(false));
+        }
+    }
+
+    @EventListener
+    public void onPaymentStatus(PaymentStatusEvent event) {
+        if (event.getTerminalId() == null) {
+            return;
+        }
+        Queue<Waiter> queue = pending.get(event.getTerminalId());
+        if (queue != null) {
+            Iterator<Waiter> waiters = queue.iterator();
+            while (waiters.hasNext()) {
+                Waiter waiter = waiters.next();
+                if (waiter.future.isDone()) {
+                    // Gave up (timed out or cancelled)
+                    waiters.remove();
+                } else if (waiter.matches(event) && queue.remove(waiter)) {
+                    waiter.future.complete(event);
+                    return;
+                }
+            }
+        }
+        log.debug("[{}] No operation waiting for {} result of {}", event.getTerminalId(), event.getKind(), event.getPaymentId());
+    }
+
+    private static class Waiter {
+        final TransactionKind kind;
+        final String originalPaymentId;
+        final CompletableFuture<PaymentStatusEvent> future = new CompletableFuture<>();
+
+        Waiter(TransactionKind kind, String originalPaymentId) {
+            this.kind = kind;
+            this.originalPaymentId = originalPaymentId;
+        }
+
+        boolean matches(PaymentStatusEvent event) {
+            TransactionKind eventKind = event.getKind() != null ? event.getKind() : TransactionKind.SALE;
+            if (eventKind != kind) {
+                return false;
+            }
+            // Not every result echoes the original payment - only a different one rules it out
+            return event.getOriginalPaymentId() == null || event.getOriginalPaymentId().equals(originalPaymentId);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.VerifoneProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connects all configured terminals in parallel once the application is ready,
+ * so HTTP traffic is accepted right away and each terminal comes online on its own.
+ */
+@Slf4j
+@Component
+@Lazy(false)
+public class TerminalStartupConnector {
+    private static final int MAX_PARALLEL_CONNECTS = 8;
+    // Longest a connect may hold a pool slot; the SDK attempt itself gives up well before
+    private static final long CONNECT_ATTEMPT_TIMEOUT_SECONDS = 120;
+
+    private final VerifoneProperties verifoneProperties;
+    private final TerminalRegistry terminalRegistry;
+    private final ClusterProperties clusterProperties;
+
+    public TerminalStartupConnector(VerifoneProperties verifoneProperties, TerminalRegistry terminalRegistry,
+                                    ClusterProperties clusterProperties) {
+        this.verifoneProperties = verifoneProperties;
+        this.terminalRegistry = terminalRegistry;
+        this.clusterProperties = clusterProperties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void connectTerminals() {
+        if (!verifoneProperties.isAutoConnect()) {
+            return;
+        }
+        if (clusterProperties.isEnabled()) {
+            // Only claimed terminals are connected - TerminalOwnershipManager does that as it claims them
+            log.info("Cluster mode - terminals are connected as this node claims them");
+            return;
+        }
+
+        Collection<TerminalConnection> terminals = terminalRegistry.getAll();
+        if (terminals.isEmpty()) {
+            log.warn("Auto-connect enabled but no terminals configured");
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(terminals.size(), MAX_PARALLEL_CONNECTS), r -> {
+            Thread thread = new Thread(r, "Terminal-Connect-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (TerminalConnection terminal : terminals) {
+            executor.execute(() -> {
+                try {
+                    // connect() only starts the attempt - hold the slot until it is done
+                    terminal.connect();
+                    if (!terminal.awaitConnectAttempt(CONNECT_ATTEMPT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        log.warn("Terminal {} still connecting after {}s, releasing its connect slot",
+                                terminal.getTerminalId(), CONNECT_ATTEMPT_TIMEOUT_SECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("Background connect of terminal {} failed", terminal.getTerminalId(), e);
+                }
+            });
+        }
+        // Let queued connects finish, then release the threads
+        executor.shutdown();
+        log.info("Connecting {} terminals in the background", terminals.size());
+    }
+}
@@ -0,0 +1,18 @@
+package com.robar.payment.service;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+@Getter
+public class TipAdjustedEvent {
+    private final String terminalId;
+    private final BigDecimal total;
+    private final BigDecimal gratuity;
+
+    public TipAdjustedEvent(String terminalId, BigDecimal total, BigDecimal gratuity) {
+        this.terminalId = terminalId;
+        this.total = total;
+        this.gratuity = gratuity;
+    }
+}
@@ -0,0 +1,133 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.TerminalLaneProperties;
+import com.robar.payment.model.TransactionRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asks a terminal about transactions this service has no record of, all ids
+ * in a single query.
+ *
+ * A query runs on the terminal's lane at {@link OperationPriority#QUERY}, so no
+ * transaction is started on the terminal while it is answering, and any
+ * transaction already waiting goes first. Queries are best effort: a terminal
+ * that is busy, owned by another node or not ready is not asked, and a caller
+ * whose query has not been answered in time gets no answer for those ids.
+ */
+@Slf4j
+@Service
+public class TransactionQueryService {
+    private final TerminalRegistry terminalRegistry;
+    private final TerminalDispatcher terminalDispatcher;
+    private final TransactionRegistry transactionRegistry;
+    private final PeerForwarder peerForwarder;
+    private final TerminalLaneProperties properties;
+
+    // The query each terminal is answering - the lane runs one at a time per terminal
+    private final Map<String, CompletableFuture<TerminalQueryResultEvent>> pending = new ConcurrentHashMap<>();
+
+    public TransactionQueryService(TerminalRegistry terminalRegistry, TerminalDispatcher terminalDispatcher,
+                                   TransactionRegistry transactionRegistry, PeerForwarder peerForwarder,
+                                   TerminalLaneProperties properties) {
+        this.terminalRegistry = terminalRegistry;
+        this.terminalDispatcher = terminalDispatcher;
+        this.transactionRegistry = transactionRegistry;
+        this.peerForwarder = peerForwarder;
+        this.properties = properties;
+    }
+
+    /**
+     * Queries the terminal about the given transactions and returns the ones it
+     * knows, by transaction id. Answers are kept in the transaction registry so
+     * the next lookup is served locally, also when this caller stopped waiting.
+     */
+    public Map<String, TransactionRecord> query(String terminalId, Collection<String> transactionIds) {
+        if (transactionIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String resolvedId = terminalRegistry.resolve(terminalId).getTerminalId();
+        // Not queued behind transactions - a status lookup should not wait for a sale
+        if (!terminalDispatcher.isIdle(resolvedId) || !terminalDispatcher.isAdmitting()) {
+            log.debug("[{}] Terminal busy, not queried", resolvedId);
+            return Collections.emptyMap();
+        }
+
+        List<String> ids = List.copyOf(transactionIds);
+        CompletableFuture<Map<String, TransactionRecord>> found = terminalDispatcher.submitTask(resolvedId,
+                OperationPriority.QUERY, "query of " + ids.size() + " transactions", terminal -> ask(terminal, ids));
+        try {
+            return found.get(properties.getQueryTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Skipped if it has not started yet; a running query still fills the registry
+            found.cancel(false);
+            log.warn("[{}] No answer to transaction query within {} ms", resolvedId, properties.getQueryTimeoutMs());
+            return Collections.emptyMap();
+        } catch (InterruptedException e) {
+            found.cancel(false);
+            Thread.currentThread().interrupt();
+            return Collections.emptyMap();
+        } catch (Exception e) {
+            log.warn("[{}] Transaction query failed: {}", resolvedId, e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    // Runs on the terminal's lane
+    private Map<String, TransactionRecord> ask(TerminalConnection terminal, List<String> transactionIds) {
+        String terminalId = terminal.getTerminalId();
+        // Ownership may have moved while the query was queued
+        if (!terminal.isTerminalInitialized() || peerForwarder.findRemoteOwner(terminalId) != null
+                || peerForwarder.isFenced(terminalId)) {
+            log.debug("[{}] Terminal not available for a transaction query", terminalId);
+            return Collections.emptyMap();
+        }
+        CompletableFuture<TerminalQueryResultEvent> answer = new CompletableFuture<>();
+        pending.put(terminalId, answer);
+        try {
+            terminal.queryTransactions(transactionIds);
+            TerminalQueryResultEvent result = answer.get(properties.getQueryTimeoutMs(), TimeUnit.MILLISECONDS);
+
+            Set<String> asked = new HashSet<>(transactionIds);
+            Map<String, TransactionRecord> found = new HashMap<>();
+            for (TransactionRecord record : result.getTransactions()) {
+                if (asked.contains(record.getTransactionId())) {
+                    found.put(record.getTransactionId(), record);
+                    transactionRegistry.remember(record);
+                }
+            }
+            return found;
+        } catch (TimeoutException e) {
+            return Collections.emptyMap();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyMap();
+        } catch (Exception e) {
+            log.warn("[{}] Transaction query failed: {}", terminalId, e.getMessage());
+            return Collections.emptyMap();
+        } finally {
+            pending.remove(terminalId, answer);
+        }
+    }
+
+    @EventListener
+    public void onQueryResult(TerminalQueryResultEvent event) {
+        CompletableFuture<TerminalQueryResultEvent> answer = pending.get(event.getTerminalId());
+        if (answer != null) {
+            answer.complete(event);
+        }
+    }
+}
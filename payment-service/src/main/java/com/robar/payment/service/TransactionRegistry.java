@@ -0,0 +1,140 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TransactionRecord;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Recent transactions known to this service, with the terminal that ran them.
+ * Bounded - the oldest entries are dropped first.
+ */
+@Component
+public class TransactionRegistry {
+    private static final int MAX_ENTRIES = 50_000;
+
+    private final Map<String, TransactionRecord> records = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    @EventListener
+    public void onPaymentStatus(PaymentStatusEvent event) {
+        if (event.getPaymentId() == null) {
+            return;
+        }
+        TransactionRecord previous = records.get(event.getPaymentId());
+        TransactionRecord record;
+        if (previous == null) {
+            record = TransactionRecord.builder()
+                    .transactionId(event.getPaymentId())
+                    .terminalId(event.getTerminalId())
+                    .kind(event.getKind())
+                    .status(event.getStatus())
+                    .message(event.getMessage())
+                    .amount(event.getAmount())
+                    .currency(event.getCurrency())
+                    .updatedAt(Instant.now())
+                    .build();
+        } else {
+            // Follow-up events (refund, void, ...) keep the original terminal and amount
+            record = previous.toBuilder()
+                    .status(event.getStatus())
+                    .message(event.getMessage())
+                    .updatedAt(Instant.now())
+                    .build();
+        }
+
+        if (records.put(event.getPaymentId(), record) == null) {
+            trackInsertion(event.getPaymentId());
+        }
+    }
+
+    /**
+     * Adds a transaction learned from elsewhere (history, a terminal query).
+     * Never replaces what the terminals reported to this service.
+     */
+    public void remember(TransactionRecord record) {
+        if (records.putIfAbsent(record.getTransactionId(), record) == null) {
+            trackInsertion(record.getTransactionId());
+        }
+    }
+
+    /**
+     * Sets aside part of the transaction's amount for a refund about to be
+     * started. Fails if the refund would take the refunds past the amount.
+     *
+     * @return false if the transaction is unknown, its amount is unknown or the amount left is too small
+     */
+    public boolean reserveRefund(String transactionId, BigDecimal amount) {
+        boolean[] reserved = {false};
+        records.computeIfPresent(transactionId, (id, record) -> {
+            if (record.getAmount() == null || refundable(record).compareTo(amount) < 0) {
+                return record;
+            }
+            reserved[0] = true;
+            return record.toBuilder().pendingRefundAmount(orZero(record.getPendingRefundAmount()).add(amount)).build();
+        });
+        return reserved[0];
+    }
+
+    /**
+     * Returns a reservation after the refund failed on the terminal.
+     */
+    public void releaseRefund(String transactionId, BigDecimal amount) {
+        records.computeIfPresent(transactionId, (id, record) -> record.toBuilder()
+                .pendingRefundAmount(orZero(record.getPendingRefundAmount()).subtract(amount).max(BigDecimal.ZERO))
+                .build());
+    }
+
+    /**
+     * Books a refund the terminal confirmed. Returns the status the transaction
+     * has now: REFUNDED once the whole amount is refunded, PARTLY_REFUNDED before.
+     */
+    public PaymentStatus confirmRefund(String transactionId, BigDecimal amount) {
+        TransactionRecord updated = records.computeIfPresent(transactionId, (id, record) -> {
+            BigDecimal refunded = orZero(record.getRefundedAmount()).add(amount);
+            return record.toBuilder()
+                    .refundedAmount(refunded)
+                    .pendingRefundAmount(orZero(record.getPendingRefundAmount()).subtract(amount).max(BigDecimal.ZERO))
+                    .build();
+        });
+        if (updated == null || updated.getAmount() == null || updated.getRefundedAmount().compareTo(updated.getAmount()) >= 0) {
+            return PaymentStatus.REFUNDED;
+        }
+        return PaymentStatus.PARTLY_REFUNDED;
+    }
+
+    /**
+     * Amount that can still be refunded, counting refunds not confirmed yet.
+     */
+    public static BigDecimal refundable(TransactionRecord record) {
+        return orZero(record.getAmount())
+                .subtract(orZero(record.getRefundedAmount()))
+                .subtract(orZero(record.getPendingRefundAmount()));
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private void trackInsertion(String transactionId) {
+        insertionOrder.add(transactionId);
+        while (records.size() > MAX_ENTRIES) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            records.remove(oldest);
+        }
+    }
+
+    public TransactionRecord get(String transactionId) {
+        return records.get(transactionId);
+    }
+}
@@ -1,36 +1,70 @@
 package com.robar.payment.service;
 
-import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.model.Basket;
+import com.robar.payment.model.PaymentHistory;
 import com.robar.payment.model.PaymentRequest;
 import com.robar.payment.model.PaymentResponse;
 import com.robar.payment.model.PaymentStatus;
-import com.verifone.payment_sdk.*;
+import com.robar.payment.model.StatusTransition;
+import com.robar.payment.model.TerminalLease;
+import com.robar.payment.model.TransactionKind;
+import com.robar.payment.model.TransactionRecord;
+import com.robar.payment.repository.PaymentHistoryRepository;
+import com.robar.payment.repository.StatusTransitionRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Payment service over the configured terminals. Operations take an optional
+ * terminal id; without one they go to the default (first configured) terminal.
+ */
 @Slf4j
 @Service
 public class VerifonePaymentService implements PaymentService {
-    private PaymentSdk paymentSdk;
-    private final PaymentEventListener eventListener;
-    private final VerifoneConfig verifoneConfig;
-    
-    // Add a latch for initialization synchronization
-    private CountDownLatch initLatch = new CountDownLatch(1);
-    private boolean isTerminalInitialized = false;
-    private String lastErrorMessage = "";
+    private final TerminalRegistry terminalRegistry;
+    private final ReceiptService receiptService;
+    private final BasketSyncService basketSyncService;
+    private final TerminalDispatcher terminalDispatcher;
+    private final TransactionRegistry transactionRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PeerForwarder peerForwarder;
+    private final PaymentHistoryRepository paymentHistoryRepository;
+    private final TransactionQueryService transactionQueryService;
+    private final StatusTransitionRepository statusTransitionRepository;
 
-    public VerifonePaymentService(PaymentEventListener eventListener, VerifoneConfig verifoneConfig) {
-        this.eventListener = eventListener;
-        this.verifoneConfig = verifoneConfig;
+    public VerifonePaymentService(TerminalRegistry terminalRegistry, ReceiptService receiptService,
+                                  BasketSyncService basketSyncService, TerminalDispatcher terminalDispatcher,
+                                  TransactionRegistry transactionRegistry, ApplicationEventPublisher eventPublisher,
+                                  PeerForwarder peerForwarder, PaymentHistoryRepository paymentHistoryRepository,
+                                  TransactionQueryService transactionQueryService,
+                                  StatusTransitionRepository statusTransitionRepository) {
+        this.terminalRegistry = terminalRegistry;
+        this.receiptService = receiptService;
+        this.basketSyncService = basketSyncService;
+        this.terminalDispatcher = terminalDispatcher;
+        this.transactionRegistry = transactionRegistry;
+        this.eventPublisher = eventPublisher;
+        this.peerForwarder = peerForwarder;
+        this.paymentHistoryRepository = paymentHistoryRepository;
+        this.transactionQueryService = transactionQueryService;
+        this.statusTransitionRepository = statusTransitionRepository;
         
-        // Set up the callback
-        eventListener.setInitializationCallback(this::onInitializationComplete);
+        // Set up the basket callback, queued on the basket's terminal lane
+        basketSyncService.setBasketSink((terminalId, deltas) -> terminalDispatcher.submitTask(terminalId,
+                OperationPriority.SALE, "basket update", t -> {
+                    t.applyBasketDeltas(deltas);
+                    return null;
+                }));
         
         // Don't auto-initialize - let the controller handle this explicitly
         log.info("VerifonePaymentService created, waiting for explicit initialization request");
@@ -38,305 +72,95 @@ public class VerifonePaymentService implements PaymentService {
     
     /**
      * Initialize the terminal using the first-time connection approach.
-     * Hardcoded IP and connection type for initial testing.
      */
     public void initializeTerminal() {
-        log.info("Starting terminal initialization with first-time connection handling");
-        
-        // Reset initialization status
-        isTerminalInitialized = false;
-        lastErrorMessage = "";
-        initLatch = new CountDownLatch(1);
-        
-        Thread initThread = new Thread(() -> {
-            try {
-                // Tear down any existing instance
-                if (paymentSdk != null) {
-                    try {
-                        paymentSdk.tearDown();
-                        log.info("Previous PaymentSdk instance torn down");
-                    } catch (Exception e) {
-                        log.warn("Error tearing down previous PaymentSdk", e);
-                    }
-                }
-                
-                // Create fresh instance
-                paymentSdk = PaymentSdk.create();
-                log.info("New PaymentSdk instance created");
-                eventListener.setPaymentSdk(paymentSdk);
-                
-                // Use terminal IP from .env via verifoneConfig
-                String ipAddress = verifoneConfig.getTerminalIp(); 
-                // Fallback to hardcoded value if empty
-                if (ipAddress == null || ipAddress.isEmpty()) {
-                    ipAddress = "null";
-                    log.warn("IP address from config was empty, using fallback: {}", ipAddress);
-                }
-                
-                // Use connection type from config
-                String connectionType = verifoneConfig.getConnectionType();
-                // Fallback to hardcoded value if empty
-                if (connectionType == null || connectionType.isEmpty()) {
-                    connectionType = "tcpip";
-                    log.warn("Connection type from config was empty, using fallback: {}", connectionType);
-                }
-                
-                log.info("Initializing with IP: {}, connection type: {}", ipAddress, connectionType);
-                
-                // === FIRST APPROACH: SIMPLIFIED INITIALIZATION ===
-                try {
-                    log.info("Attempting simplified initialization approach");
-                    
-                    // Create an enhanced configuration map with parameters to force new device setup
-                    HashMap<String, String> config = new HashMap<>();
-                    config.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, connectionType);
-                    config.put(PsdkDeviceInformation.DEVICE_ADDRESS_KEY, ipAddress);
-                    
-                    // Add first-time connection parameters
-                    config.put("ForceNewDevice", "true");                // Signal this is a first-time setup
-                    config.put("ClearStoredConfiguration", "true");      // Try to clear any existing config
-                    config.put("IgnoreStoredDevice", "true");            // Don't try to use stored device
-                    config.put("ResetStoredDeviceConfiguration", "true"); // Reset any stored config
-                    config.put("DeviceRetryAttempts", "10");             // More retries
-                    config.put("DeviceConnectionTimeout", "60000");      // 60 second timeout
-                    
-                    log.info("Using enhanced initialization parameters: {}", config);
-                    
-                    // Initialize the terminal
-                    paymentSdk.initializeFromValues(eventListener, config);
-                    log.info("Initialization request sent, waiting for callbacks...");
-                    
-                    // Wait for initialization with timeout
-                    boolean completed = initLatch.await(30, TimeUnit.SECONDS);
-                    if (!completed) {
-                        log.warn("Initialization timed out after 30 seconds");
-                    }
-                } catch (Exception e) {
-                    log.error("Error during initialization: {}", e.getMessage());
-                    lastErrorMessage = e.getMessage();
-                    
-                    // Don't release the latch yet, try the alternative approach
-                    log.info("Trying alternative initialization approach after error");
-                }
-                
-                // Check if previous attempt was successful
-                if (!isTerminalInitialized) {
-                    log.info("First initialization approach did not succeed, trying basic approach...");
-                    
-                    try {
-                        // Create a new instance for the second attempt
-                        paymentSdk.tearDown();
-                        paymentSdk = PaymentSdk.create();
-                        eventListener.setPaymentSdk(paymentSdk);
-                        
-                        // Minimal configuration for a basic approach
-                        HashMap<String, String> basicConfig = new HashMap<>();
-                        basicConfig.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, connectionType);
-                        basicConfig.put(PsdkDeviceInformation.DEVICE_ADDRESS_KEY, ipAddress);
-                        
-                        log.info("Attempting basic initialization with params: {}", basicConfig);
-                        paymentSdk.initializeFromValues(eventListener, basicConfig);
-                        
-                        // Wait again for this attempt
-                        boolean completed = initLatch.await(20, TimeUnit.SECONDS);
-                        if (!completed) {
-                            log.warn("Basic initialization timed out after 20 seconds");
-                        }
-                    } catch (Exception e) {
-                        log.error("Error during basic initialization: {}", e.getMessage());
-                        lastErrorMessage = e.getMessage();
-                        initLatch.countDown(); // Make sure to release the latch
-                    }
-                }
-                
-            } catch (Exception e) {
-                log.error("Unexpected error during terminal initialization", e);
-                lastErrorMessage = e.getMessage();
-                initLatch.countDown(); // Release any waiting threads
-            }
-        });
-        
-        initThread.setName("Terminal-Init-Thread");
-        initThread.start();
-        
-        log.info("Terminal initialization thread started");
+        initializeTerminal(null);
+    }
+    
+    public void initializeTerminal(String terminalId) {
+        terminalRegistry.resolve(terminalId).initializeTerminal();
     }
     
     /**
      * Try server mode initialization as an alternative if client mode fails
      */
     public void initializeTerminalServerMode() {
-        log.info("Attempting server mode initialization");
-        
-        // Reset initialization status
-        isTerminalInitialized = false;
-        lastErrorMessage = "";
-        initLatch = new CountDownLatch(1);
-        
-        Thread serverModeThread = new Thread(() -> {
-            try {
-                if (paymentSdk != null) {
-                    try {
-                        paymentSdk.tearDown();
-                    } catch (Exception e) {
-                        log.warn("Error tearing down previous PaymentSdk", e);
-                    }
-                }
-                
-                paymentSdk = PaymentSdk.create();
-                eventListener.setPaymentSdk(paymentSdk);
-                
-                // Server mode configuration
-                HashMap<String, String> serverConfig = new HashMap<>();
-                serverConfig.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, "server");
-                serverConfig.put("ServerPort", "8085"); // Example server port
-                serverConfig.put("DeviceOperationMode", "server");
-                
-                log.info("Initializing with server mode parameters: {}", serverConfig);
-                
-                // Initialize in server mode
-                paymentSdk.initializeFromValues(eventListener, serverConfig);
-                log.info("Server mode initialization request sent, waiting for callback...");
-                
-                boolean completed = initLatch.await(30, TimeUnit.SECONDS);
-                if (!completed) {
-                    log.warn("Server mode initialization timed out after 30 seconds");
-                }
-                
-            } catch (Exception e) {
-                log.error("Error during server mode initialization", e);
-                lastErrorMessage = e.getMessage();
-                initLatch.countDown();
-            }
-        });
-        
-        serverModeThread.setName("Server-Mode-Init-Thread");
-        serverModeThread.start();
+        initializeTerminalServerMode(null);
+    }
+    
+    public void initializeTerminalServerMode(String terminalId) {
+        terminalRegistry.resolve(terminalId).initializeTerminalServerMode();
     }
     
     /**
      * Try alternative method of initialization by directly initializing without 
      * attempting to forget previous device configuration
      */
-    public void initializeDirectly() {
-        log.info("Attempting direct initialization without device management");
-        
-        // Reset initialization status
-        isTerminalInitialized = false;
-        lastErrorMessage = "";
-        initLatch = new CountDownLatch(1);
-        
-        // Create fresh PaymentSdk instance
-        if (paymentSdk != null) {
-            try {
-                paymentSdk.tearDown();
-            } catch (Exception e) {
-                log.warn("Error tearing down PaymentSdk", e);
-            }
+    public void initializeDirectly(String terminalId) {
+        terminalRegistry.resolve(terminalId).initializeDirectly();
+    }
+
+    @Override
+    public PaymentResponse initiatePayment(PaymentRequest request) {
+        if (!terminalDispatcher.isAdmitting()) {
+            return PaymentResponse.builder()
+                    .status(PaymentStatus.FAILED)
+                    .message("Payment service is shutting down, please retry")
+                    .build();
         }
-        
         try {
-            paymentSdk = PaymentSdk.create();
-            eventListener.setPaymentSdk(paymentSdk);
-            
-            // Hardcoded values
-            String ipAddress = "null"; 
-            String connectionType = "tcpip";
-            
-            HashMap<String, String> config = new HashMap<>();
-            config.put(PsdkDeviceInformation.DEVICE_CONNECTION_TYPE_KEY, connectionType);
-            config.put(PsdkDeviceInformation.DEVICE_ADDRESS_KEY, ipAddress);
+            Basket basket = request.getBasketId() != null ? basketSyncService.getBasket(request.getBasketId()) : null;
+            if (request.getBasketId() != null && basket == null) {
+                throw new IllegalArgumentException("Unknown basket: " + request.getBasketId());
+            }
+            // Without a terminal of its own the payment goes where its basket is
+            String terminalId = request.getTerminalId() != null || basket == null ? request.getTerminalId() : basket.getTerminalId();
+            TerminalConnection terminal = terminalRegistry.resolve(terminalId);
             
-            log.info("Initializing directly with minimal configuration: {}", config);
-            paymentSdk.initializeFromValues(eventListener, config);
+            // Check if terminal is initialized
+            if (!terminal.isTerminalInitialized()) {
+                throw new RuntimeException("Terminal " + terminal.getTerminalId() + " not initialized. Please initialize first.");
+            }
             
-        } catch (Exception e) {
-            log.error("Direct initialization failed", e);
-            lastErrorMessage = e.getMessage();
-            initLatch.countDown();
-        }
-    }
-    
-    // Handler for initialization callbacks
-    private void onInitializationComplete(boolean success, String message) {
-        log.info("Initialization callback received: success={}, message={}", success, message);
-        
-        if (success) {
-            log.info("Terminal initialization successfully completed!");
-            isTerminalInitialized = true;
-            initLatch.countDown();
-            return;
-        }
-        
-        // Check for our special marker for -30 status code
-        if (message != null && message.startsWith("FIRST_TIME_SETUP:-30")) {
-            log.info("Handling first-time setup (-30) status");
+            BigDecimal amount = request.getAmount();
             
-            // For first-time setup with -30, we need to proceed with a login attempt
-            try {
-                log.info("Proceeding with first-time setup sequence...");
-                
-                // Try directly proceeding with login despite the -30 status
-                // This is counterintuitive but some terminals need this
-                try {
-                    log.info("Attempting login despite -30 status...");
-                    LoginCredentials credentials = LoginCredentials.createWith2("username", null, null, null);
-                    
-                    // The status here is important - if terminal accepts login despite -30,
-                    // then we're in a good state and can consider initialization successful
-                    Status loginStatus = paymentSdk.getTransactionManager().loginWithCredentials(credentials);
-                    
-                    log.info("Login attempt after -30 returned status: {}", loginStatus.getStatus());
-                    
-                    if (loginStatus.getStatus() == StatusCode.SUCCESS) {
-                        log.info("LOGIN SUCCESSFUL despite -30 status! Terminal is now usable.");
-                        isTerminalInitialized = true;
-                    } else {
-                        log.info("Login attempt unsuccessful: {} - {}", 
-                               loginStatus.getStatus(), loginStatus.getMessage());
-                        
-                        // Even if login fails, the terminal might still be usable
-                        // This depends on your terminal's specific behavior
-                        if (loginStatus.getStatus() > -100) { // Using a heuristic for "not catastrophic" errors
-                            log.info("Login failed but terminal may still be usable, marking as initialized");
-                            isTerminalInitialized = true;
-                        } else {
-                            lastErrorMessage = "Login failed after -30: " + loginStatus.getMessage();
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Exception during login attempt after -30: {}", e.getMessage());
-                    lastErrorMessage = "Exception during login after -30: " + e.getMessage();
+            // Basket was streamed to the terminal while the order was built - just finalize it
+            if (basket != null) {
+                String basketTerminal = terminalRegistry.resolve(basket.getTerminalId()).getTerminalId();
+                if (!basketTerminal.equals(terminal.getTerminalId())) {
+                    return failed(null, "Basket " + basket.getBasketId() + " is on terminal " + basketTerminal
+                            + ", not " + terminal.getTerminalId());
+                }
+                basket = basketSyncService.prepareCheckout(request.getBasketId());
+                if (amount == null) {
+                    amount = basket.getTotal();
                 }
-            } catch (Exception e) {
-                log.error("Exception during first-time setup handling: {}", e.getMessage());
-                lastErrorMessage = e.getMessage();
             }
-        } else {
-            // Handle other non-success cases
-            log.error("Terminal initialization failed: {}", message);
-            lastErrorMessage = message;
-        }
-        
-        // Release waiting threads
-        initLatch.countDown();
-    }
-
-    @Override
-    public PaymentResponse initiatePayment(PaymentRequest request) {
-        try {
-            // Check if terminal is initialized
-            if (!isTerminalInitialized) {
-                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+            if (amount == null || amount.signum() <= 0) {
+                return failed(null, "Amount must be positive, got " + amount);
             }
             
-            // Process the payment
-            processPayment(request.getAmount());
+            // Process the payment - queued in the terminal's sale lane, behind the basket changes
+            BigDecimal saleAmount = amount;
+            boolean finalizeBasket = basket != null;
+            terminalDispatcher.submit(terminal.getTerminalId(), OperationPriority.SALE, TransactionKind.SALE, null,
+                    "sale " + saleAmount,
+                    t -> {
+                        if (finalizeBasket) {
+                            t.finalizeTerminalBasket();
+                        }
+                        t.processPayment(saleAmount, request.getCurrency());
+                    });
+            
+            if (request.getBasketId() != null) {
+                basketSyncService.closeBasket(request.getBasketId());
+            }
             
             // Return initial response
             return PaymentResponse.builder()
                     .status(PaymentStatus.PROCESSING)
-                    .message("Payment processing started")
+                    .message("Payment queued on terminal " + terminal.getTerminalId()
+                            + " (" + terminalDispatcher.getQueueDepth(terminal.getTerminalId()) + " waiting)")
                     .build();
         } catch (Exception e) {
             log.error("Payment initiation failed", e);
@@ -349,149 +173,403 @@ public class VerifonePaymentService implements PaymentService {
     
     @Override
     public PaymentResponse getPaymentStatus(String transactionId) {
-        // In a real implementation, we would query the status
-        // For now, we'll rely on the event listener to update status
-        return PaymentResponse.builder()
-                .transactionId(transactionId)
-                .status(PaymentStatus.PROCESSING)
-                .message("Payment status being processed")
-                .build();
+        TransactionRecord record = transactionRegistry.get(transactionId);
+        if (record == null) {
+            // Not reported by a terminal yet
+            return PaymentResponse.builder()
+                    .transactionId(transactionId)
+                    .status(PaymentStatus.PROCESSING)
+                    .message("Payment status being processed")
+                    .build();
+        }
+        return toResponse(record);
     }
 
-    public void login() {
-        try {
-            if (!isTerminalInitialized) {
-                throw new RuntimeException("Terminal not initialized. Please initialize first.");
-            }
-            
-            // Create login credentials - username only as per documentation
-            LoginCredentials credentials = LoginCredentials.createWith2("username", null, null, null);
-            
-            log.info("Attempting to login to terminal...");
-            Status result = paymentSdk.getTransactionManager().loginWithCredentials(credentials);
-            
-            if (result.getStatus() != StatusCode.SUCCESS) {
-                throw new RuntimeException("Login failed: " + result.getMessage());
+    @Override
+    public List<PaymentResponse> getPaymentStatuses(List<String> transactionIds) {
+        return getPaymentStatuses(transactionIds, null);
+    }
+
+    /**
+     * Statuses of several transactions, in the order asked for. Served from the
+     * transaction registry, then the payment history with the latest status
+     * transition applied (a later void or refund); whatever is still unknown goes
+     * to the terminal in one query. Transactions none of them knows come back
+     * without a status.
+     */
+    public List<PaymentResponse> getPaymentStatuses(List<String> transactionIds, String terminalId) {
+        Set<String> ids = new LinkedHashSet<>(transactionIds);
+        Map<String, TransactionRecord> found = new HashMap<>();
+        Set<String> unknown = new LinkedHashSet<>();
+        for (String id : ids) {
+            TransactionRecord record = transactionRegistry.get(id);
+            if (record != null) {
+                found.put(id, record);
+            } else {
+                unknown.add(id);
             }
-            log.info("Login successful");
-        } catch (Exception e) {
-            log.error("Login failed", e);
-            throw new RuntimeException("Login failed", e);
         }
-    }
 
-    public void startSession() {
-        try {
-            if (!isTerminalInitialized) {
-                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+        if (!unknown.isEmpty()) {
+            // One query for all of them, latest result per transaction wins
+            for (PaymentHistory row : paymentHistoryRepository.findByTransactionIdIn(unknown)) {
+                TransactionRecord known = found.get(row.getTransactionId());
+                if (known == null || known.getUpdatedAt().isBefore(row.getCompletedAt())) {
+                    found.put(row.getTransactionId(), TransactionRecord.builder()
+                            .transactionId(row.getTransactionId())
+                            .terminalId(row.getTerminalId())
+                            .kind(row.getKind())
+                            .status(row.getStatus())
+                            .message(row.getMessage())
+                            .amount(MinorUnits.scaled(row.getAmount(), row.getCurrency()))
+                            .currency(row.getCurrency())
+                            .updatedAt(row.getCompletedAt())
+                            .build());
+                }
             }
-            
-            // Create transaction for the session
-            Transaction transaction = Transaction.create();
-            transaction.setCurrency("DKK");
-            
-            log.info("Attempting to start session...");
-            boolean success = paymentSdk.getTransactionManager().startSession2(transaction);
-            
-            if (!success) {
-                throw new RuntimeException("Failed to start session");
+            Map<String, StatusTransition> latest = new HashMap<>();
+            for (StatusTransition transition : statusTransitionRepository.findByTransactionIdIn(unknown)) {
+                StatusTransition known = latest.get(transition.getTransactionId());
+                if (known == null || !transition.getOccurredAt().isBefore(known.getOccurredAt())) {
+                    latest.put(transition.getTransactionId(), transition);
+                }
             }
-            log.info("Session started successfully");
-        } catch (Exception e) {
-            log.error("Failed to start session", e);
-            throw new RuntimeException("Session start failed", e);
+            for (String id : unknown) {
+                TransactionRecord fromHistory = found.get(id);
+                StatusTransition transition = latest.get(id);
+                if (fromHistory == null || transition == null || transition.getStatus() == fromHistory.getStatus()
+                        || transition.getOccurredAt().isBefore(fromHistory.getUpdatedAt())) {
+                    continue;
+                }
+                if (transition.getStatus() == PaymentStatus.REFUNDED || transition.getStatus() == PaymentStatus.PARTLY_REFUNDED) {
+                    // The refunded amount has to come along, or the registry would allow refunding it again
+                    fromHistory = fromHistory(id);
+                } else {
+                    fromHistory = fromHistory.toBuilder()
+                            .status(transition.getStatus())
+                            .message(transition.getMessage())
+                            .updatedAt(transition.getOccurredAt())
+                            .build();
+                }
+                found.put(id, fromHistory);
+            }
+            for (String id : unknown) {
+                TransactionRecord fromHistory = found.get(id);
+                if (fromHistory != null) {
+                    // Served from memory on the next refresh
+                    transactionRegistry.remember(fromHistory);
+                }
+            }
+            unknown.removeAll(found.keySet());
+        }
+        if (!unknown.isEmpty()) {
+            found.putAll(transactionQueryService.query(terminalId, unknown));
         }
+
+        List<PaymentResponse> responses = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            TransactionRecord record = found.get(id);
+            responses.add(record != null ? toResponse(record) : PaymentResponse.builder()
+                    .transactionId(id)
+                    .message("Transaction not found")
+                    .build());
+        }
+        return responses;
     }
 
-    public void processPayment(BigDecimal amount) {
-        try {
-            if (!isTerminalInitialized) {
-                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+    private PaymentResponse toResponse(TransactionRecord record) {
+        return PaymentResponse.builder()
+                .transactionId(record.getTransactionId())
+                .status(record.getStatus())
+                .message(record.getMessage())
+                .receiptUrl(receiptService.getReceiptUrl(record.getTransactionId()))
+                .build();
+    }
+
+    @Override
+    public PaymentResponse refundPayment(String transactionId, BigDecimal amount) {
+        return refundPayment(transactionId, amount, null);
+    }
+
+    @Override
+    public PaymentResponse voidPayment(String transactionId) {
+        return voidPayment(transactionId, null, null);
+    }
+
+    @Override
+    public PaymentResponse reversePayment(String transactionId) {
+        return reversePayment(transactionId, null, null);
+    }
+
+    /**
+     * Variants taking the terminal to ask about a transaction this node has no
+     * record of (e.g. run before a failover), and a refund amount.
+     */
+    public PaymentResponse refundPayment(String transactionId, BigDecimal amount, String terminalId) {
+        return followUp(transactionId, amount, terminalId, OperationPriority.REFUND, TransactionKind.REFUND,
+                (terminal, original, value) -> terminal.refund(original, value, terminal.getCurrency()));
+    }
+
+    public PaymentResponse voidPayment(String transactionId, BigDecimal amount, String terminalId) {
+        return followUp(transactionId, amount, terminalId, OperationPriority.VOID, TransactionKind.VOID,
+                (terminal, original, value) -> terminal.voidPayment(original, value, terminal.getCurrency()));
+    }
+
+    public PaymentResponse reversePayment(String transactionId, BigDecimal amount, String terminalId) {
+        return followUp(transactionId, amount, terminalId, OperationPriority.REVERSAL, TransactionKind.REVERSAL,
+                (terminal, original, value) -> terminal.reverse(original, value, terminal.getCurrency()));
+    }
+
+    // Operation against an earlier transaction
+    private interface FollowUpOperation {
+        void start(TerminalConnection terminal, String originalTransactionId, BigDecimal amount);
+    }
+
+    /**
+     * Queues a refund, void or reversal in its priority lane on the terminal that
+     * ran the original transaction. The original is marked with the resulting
+     * status once the terminal confirms.
+     *
+     * Refunds may be partial and are booked against the original amount, so
+     * together they never exceed it. Only sales and captures are refunded; voids
+     * and reversals also take pre-authorizations, but never a refund, void or
+     * reversal itself.
+     */
+    private PaymentResponse followUp(String transactionId, BigDecimal amount, String terminalHint, OperationPriority priority,
+                                     TransactionKind kind, FollowUpOperation operation) {
+        TransactionRecord original = findOriginal(transactionId, terminalHint);
+        if (original == null || original.getTerminalId() == null) {
+            return failed(transactionId, "Unknown transaction: " + transactionId);
+        }
+        String verb = kind.name().toLowerCase();
+        if (!isFollowUpTarget(original.getKind(), kind)) {
+            return failed(transactionId, "Transaction " + transactionId + " is a " + original.getKind() + ", a " + verb + " is not possible");
+        }
+        boolean refund = kind == TransactionKind.REFUND;
+        if (original.getStatus() != PaymentStatus.COMPLETED
+                && !(refund && original.getStatus() == PaymentStatus.PARTLY_REFUNDED)) {
+            return failed(transactionId, "Transaction is " + original.getStatus() + ", a " + verb + " is not possible");
+        }
+
+        BigDecimal value;
+        if (refund) {
+            if (original.getAmount() == null) {
+                return failed(transactionId, "Amount unknown for transaction " + transactionId + ", cannot check the refund against it");
             }
-            
-            Payment payment = Payment.create();
-            
-            // Set up amount totals
-            AmountTotals amountTotals = AmountTotals.create(true);
-            
-            // Convert BigDecimal to Verifone Decimal format
-            Decimal paymentAmount = new Decimal(amount.doubleValue());
-            
-            // Configure the payment amounts
-            amountTotals.setTotal(paymentAmount);
-            payment.setRequestedAmounts(amountTotals);
-            
-            // Set currency
-            payment.setCurrency("DKK");
-            
-            log.info("Starting payment process for amount: {}", amount);
-            Status result = paymentSdk.getTransactionManager().startPayment(payment);
-            
-            if (result.getStatus() != StatusCode.SUCCESS) {
-                throw new RuntimeException("Payment processing failed: " + result.getMessage());
+            value = amount != null ? amount : TransactionRegistry.refundable(original);
+            if (value.signum() <= 0) {
+                return failed(transactionId, "Nothing left to refund on transaction " + transactionId);
             }
-            
-            log.info("Payment processing initiated for amount: {}", amount);
+        } else {
+            if (original.getAmount() == null) {
+                return failed(transactionId, "Amount unknown for transaction " + transactionId + ", cannot check the " + verb + " against it");
+            }
+            value = amount != null ? amount : original.getAmount();
+            if (value.compareTo(original.getAmount()) > 0) {
+                return failed(transactionId, "Amount " + value + " exceeds the original " + original.getAmount());
+            }
+        }
+        
+        String terminalId = original.getTerminalId();
+        if (peerForwarder.isFenced(terminalId)) {
+            return failed(transactionId, "Lease on terminal " + terminalId + " could not be renewed, retry shortly");
+        }
+        TerminalLease owner = peerForwarder.findRemoteOwner(terminalId);
+        if (owner != null) {
+            PaymentRequest forwarded = new PaymentRequest();
+            forwarded.setTerminalId(terminalId);
+            forwarded.setAmount(value);
+            return peerForwarder.post(owner, "/payments/" + transactionId + "/" + priority.name().toLowerCase(),
+                    forwarded, PaymentResponse.class);
+        }
+        if (refund && !transactionRegistry.reserveRefund(transactionId, value)) {
+            return failed(transactionId, "Refund of " + value + " exceeds the " + TransactionRegistry.refundable(original)
+                    + " left to refund on transaction " + transactionId);
+        }
+        TransactionKind originalKind = original.getKind();
+        String currency = original.getCurrency();
+        try {
+            terminalDispatcher.submit(terminalId, priority, kind, transactionId, verb + " of " + transactionId,
+                            terminal -> operation.start(terminal, transactionId, value))
+                    .whenComplete((event, error) -> {
+                        if (error == null && event.getStatus() == PaymentStatus.COMPLETED) {
+                            PaymentStatus resultStatus = refund ? transactionRegistry.confirmRefund(transactionId, value)
+                                    : kind == TransactionKind.VOID ? PaymentStatus.VOIDED : PaymentStatus.REVERSED;
+                            // No terminal id - this is not a new terminal result, and the
+                            // registry keeps the original terminal for the transaction
+                            eventPublisher.publishEvent(new PaymentStatusEvent(transactionId, resultStatus,
+                                    priority.name() + " " + event.getPaymentId(), null, value, originalKind, null,
+                                    currency != null ? currency : event.getCurrency()));
+                        } else {
+                            if (refund) {
+                                transactionRegistry.releaseRefund(transactionId, value);
+                            }
+                            log.error("{} of transaction {} failed: {}", priority, transactionId,
+                                    error != null ? error.getMessage() : event.getMessage());
+                        }
+                    });
         } catch (Exception e) {
-            log.error("Payment processing failed", e);
-            throw new RuntimeException("Payment processing failed", e);
+            if (refund) {
+                transactionRegistry.releaseRefund(transactionId, value);
+            }
+            log.error("{} of transaction {} could not be queued", priority, transactionId, e);
+            return failed(transactionId, priority.name() + " could not be queued: " + e.getMessage());
         }
+        
+        return PaymentResponse.builder()
+                .transactionId(transactionId)
+                .status(PaymentStatus.PROCESSING)
+                .message(priority.name() + " queued on terminal " + terminalId)
+                .build();
     }
 
-    public void endSession() {
-        try {
-            if (!isTerminalInitialized) {
-                throw new RuntimeException("Terminal not initialized. Please initialize first.");
+    /**
+     * The transaction a follow-up refers to, from what this service recorded,
+     * the payment history or, failing those, the given terminal. Only a
+     * transaction one of them knows is followed up, with the amount they report.
+     */
+    private TransactionRecord findOriginal(String transactionId, String terminalHint) {
+        TransactionRecord known = transactionRegistry.get(transactionId);
+        if (known != null && known.getTerminalId() != null) {
+            return known;
+        }
+        TransactionRecord fromHistory = fromHistory(transactionId);
+        if (fromHistory != null) {
+            transactionRegistry.remember(fromHistory);
+            TransactionRecord remembered = transactionRegistry.get(transactionId);
+            return remembered != null && remembered.getTerminalId() != null ? remembered : fromHistory;
+        }
+        if (terminalHint != null) {
+            // Kept in the registry by the query service when the terminal knows it
+            return transactionQueryService.query(terminalHint, List.of(transactionId)).get(transactionId);
+        }
+        return null;
+    }
+
+    /**
+     * The transaction's latest terminal result from the payment history, with
+     * the refunds, voids and reversals recorded against it applied.
+     */
+    private TransactionRecord fromHistory(String transactionId) {
+        List<PaymentHistory> rows = paymentHistoryRepository.findByTransactionIdOrderByCompletedAtAsc(transactionId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        PaymentHistory latest = rows.get(rows.size() - 1);
+        PaymentStatus status = latest.getStatus();
+        BigDecimal refunded = BigDecimal.ZERO;
+        for (PaymentHistory followUp : paymentHistoryRepository.findByOriginalTransactionId(transactionId)) {
+            if (followUp.getStatus() != PaymentStatus.COMPLETED || followUp.getKind() == null) {
+                continue;
             }
-            
-            log.info("Ending terminal session...");
-            boolean success = paymentSdk.getTransactionManager().endSession();
-            if (!success) {
-                throw new RuntimeException("Failed to end session");
+            if (followUp.getKind() == TransactionKind.VOID) {
+                status = PaymentStatus.VOIDED;
+            } else if (followUp.getKind() == TransactionKind.REVERSAL) {
+                status = PaymentStatus.REVERSED;
+            } else if (followUp.getKind() == TransactionKind.REFUND && followUp.getAmount() != null) {
+                refunded = refunded.add(followUp.getAmount());
             }
-            log.info("Session ended successfully");
-        } catch (Exception e) {
-            log.error("Failed to end session", e);
-            throw new RuntimeException("Session end failed", e);
         }
+        if (status == PaymentStatus.COMPLETED && refunded.signum() > 0) {
+            status = latest.getAmount() != null && refunded.compareTo(latest.getAmount()) >= 0
+                    ? PaymentStatus.REFUNDED : PaymentStatus.PARTLY_REFUNDED;
+        }
+        return TransactionRecord.builder()
+                .transactionId(transactionId)
+                .terminalId(latest.getTerminalId())
+                .kind(latest.getKind())
+                .status(status)
+                .message(latest.getMessage())
+                .amount(MinorUnits.scaled(latest.getAmount(), latest.getCurrency()))
+                .currency(latest.getCurrency())
+                .refundedAmount(MinorUnits.scaled(refunded, latest.getCurrency()))
+                .updatedAt(latest.getCompletedAt())
+                .build();
     }
 
-    public void tearDown() {
-        if (paymentSdk != null) {
-            paymentSdk.tearDown();
-            log.info("Payment SDK torn down successfully");
-            isTerminalInitialized = false;
+    private static boolean isFollowUpTarget(TransactionKind original, TransactionKind followUp) {
+        if (original == null) {
+            // Recorded without a kind, nothing to tell the follow-ups apart by
+            return true;
         }
+        switch (original) {
+            case SALE:
+            case CAPTURE:
+                return true;
+            case PREAUTHORIZATION:
+                return followUp != TransactionKind.REFUND;
+            default:
+                return false;
+        }
+    }
+
+    private static PaymentResponse failed(String transactionId, String message) {
+        return PaymentResponse.builder()
+                .transactionId(transactionId)
+                .status(PaymentStatus.FAILED)
+                .message(message)
+                .build();
+    }
+
+    public void login() {
+        login(null);
+    }
+    
+    public void login(String terminalId) {
+        terminalRegistry.resolve(terminalId).login();
+    }
+
+    public void startSession() {
+        startSession(null);
+    }
+    
+    public void startSession(String terminalId) {
+        terminalRegistry.resolve(terminalId).startSession();
+    }
+
+    public void processPayment(BigDecimal amount) {
+        TerminalConnection terminal = terminalRegistry.resolve(null);
+        terminal.processPayment(amount, terminal.getCurrency());
+    }
+
+    public void endSession() {
+        endSession(null);
+    }
+    
+    public void endSession(String terminalId) {
+        terminalRegistry.resolve(terminalId).endSession();
+    }
+
+    public void tearDown() {
+        tearDown(null);
+    }
+    
+    public void tearDown(String terminalId) {
+        terminalRegistry.resolve(terminalId).tearDown();
     }
     
     // Accessor methods for the controller
+    public TerminalConnection getTerminal(String terminalId) {
+        return terminalRegistry.resolve(terminalId);
+    }
+    
+    public Collection<TerminalConnection> getTerminals() {
+        return terminalRegistry.getAll();
+    }
+    
     public boolean isTerminalInitialized() {
-        return isTerminalInitialized;
+        return terminalRegistry.resolve(null).isTerminalInitialized();
     }
     
     public String getTerminalIpAddress() {
-        // For debugging, log both values
-        String configIp = verifoneConfig.getTerminalIp();
-        String hardcodedIp = "null";
-        
-        log.debug("Config IP: {}, Using hardcoded IP: {}", configIp, hardcodedIp);
-        
-        // Return hardcoded value for now
-        return hardcodedIp;
+        return terminalRegistry.resolve(null).getAddress();
     }
     
     public String getConnectionType() {
-        // For debugging, log both values
-        String configType = verifoneConfig.getConnectionType();
-        String hardcodedType = "tcpip";
-        
-        log.debug("Config connection type: {}, Using hardcoded type: {}", configType, hardcodedType);
-        
-        // Return hardcoded value for now
-        return hardcodedType;
+        return terminalRegistry.resolve(null).getConnectionType();
     }
     
     public String getLastErrorMessage() {
-        return lastErrorMessage;
+        return terminalRegistry.resolve(null).getLastErrorMessage();
     }
-}
\ No newline at end of file
+}
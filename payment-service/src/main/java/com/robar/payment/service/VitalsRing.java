@@ -0,0 +1,192 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.VitalsMetric;
+import com.robar.payment.model.VitalsPoint;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vitals history of one terminal in fixed-size primitive arrays: the last N raw
+ * samples, plus min / max / sum / count per metric for the last M minutes and
+ * H hours. Memory is allocated once in the constructor and never grows.
+ *
+ * Values are indexed {@code slot * METRICS + metric ordinal}. A metric a sample
+ * does not carry is NaN and is left out of the aggregates.
+ */
+public class VitalsRing {
+    public static final int METRICS = VitalsMetric.values().length;
+    private static final VitalsMetric[] METRIC_VALUES = VitalsMetric.values();
+
+    private final long[] rawTimes;
+    private final float[] rawValues;
+    private int rawNext;
+    private int rawCount;
+
+    private final Series minutes;
+    private final Series hours;
+
+    public VitalsRing(int rawSamples, int minuteSlots, int hourSlots) {
+        if (rawSamples < 1 || minuteSlots < 1 || hourSlots < 1) {
+            throw new IllegalArgumentException("Ring needs at least one slot per resolution");
+        }
+        rawTimes = new long[rawSamples];
+        rawValues = new float[rawSamples * METRICS];
+        minutes = new Series(60_000L, minuteSlots);
+        hours = new Series(3_600_000L, hourSlots);
+    }
+
+    /**
+     * Adds a sample; {@code values} is indexed by metric ordinal, NaN where not reported.
+     */
+    public synchronized void record(long epochMillis, float[] values) {
+        rawTimes[rawNext] = epochMillis;
+        System.arraycopy(values, 0, rawValues, rawNext * METRICS, METRICS);
+        rawNext = (rawNext + 1) % rawTimes.length;
+        if (rawCount < rawTimes.length) {
+            rawCount++;
+        }
+        minutes.add(epochMillis, values);
+        hours.add(epochMillis, values);
+    }
+
+    /**
+     * The last {@code limit} raw samples, oldest first.
+     */
+    public synchronized List<VitalsPoint> readRaw(int limit) {
+        int count = Math.min(Math.max(limit, 1), rawCount);
+        List<VitalsPoint> result = new ArrayList<>(count);
+        for (int i = count; i > 0; i--) {
+            int slot = Math.floorMod(rawNext - i, rawTimes.length);
+            Map<VitalsMetric, Float> values = new EnumMap<>(VitalsMetric.class);
+            for (int m = 0; m < METRICS; m++) {
+                float value = rawValues[slot * METRICS + m];
+                if (!Float.isNaN(value)) {
+                    values.put(METRIC_VALUES[m], value);
+                }
+            }
+            Instant time = Instant.ofEpochMilli(rawTimes[slot]);
+            result.add(VitalsPoint.builder().from(time).to(time).samples(1).average(values).build());
+        }
+        return result;
+    }
+
+    /**
+     * Latest reported value per metric, NaN for metrics never reported.
+     */
+    public synchronized float[] latest() {
+        float[] latest = new float[METRICS];
+        Arrays.fill(latest, Float.NaN);
+        int missing = METRICS;
+        for (int i = 1; i <= rawCount && missing > 0; i++) {
+            int slot = Math.floorMod(rawNext - i, rawTimes.length);
+            for (int m = 0; m < METRICS; m++) {
+                float value = rawValues[slot * METRICS + m];
+                if (Float.isNaN(latest[m]) && !Float.isNaN(value)) {
+                    latest[m] = value;
+                    missing--;
+                }
+            }
+        }
+        return latest;
+    }
+
+    public synchronized List<VitalsPoint> readMinutes(long nowMillis, int count) {
+        return minutes.read(nowMillis, count);
+    }
+
+    public synchronized List<VitalsPoint> readHours(long nowMillis, int count) {
+        return hours.read(nowMillis, count);
+    }
+
+    // Aggregates at one resolution, one slot per minute or hour
+    private static final class Series {
+        final long slotMillis;
+        final long[] slotIndex;
+        final float[] min;
+        final float[] max;
+        final double[] sum;
+        final int[] count;
+
+        Series(long slotMillis, int slots) {
+            this.slotMillis = slotMillis;
+            this.slotIndex = new long[slots];
+            Arrays.fill(slotIndex, Long.MIN_VALUE);
+            this.min = new float[slots * METRICS];
+            this.max = new float[slots * METRICS];
+            this.sum = new double[slots * METRICS];
+            this.count = new int[slots * METRICS];
+        }
+
+        void add(long epochMillis, float[] values) {
+            long index = Math.floorDiv(epochMillis, slotMillis);
+            int slot = (int) Math.floorMod(index, (long) slotIndex.length);
+            if (slotIndex[slot] != index) {
+                if (slotIndex[slot] > index) {
+                    return; // Older than the ring reaches back
+                }
+                slotIndex[slot] = index;
+                Arrays.fill(count, slot * METRICS, (slot + 1) * METRICS, 0);
+                Arrays.fill(sum, slot * METRICS, (slot + 1) * METRICS, 0);
+            }
+            for (int m = 0; m < METRICS; m++) {
+                float value = values[m];
+                if (Float.isNaN(value)) {
+                    continue;
+                }
+                int i = slot * METRICS + m;
+                if (count[i] == 0) {
+                    min[i] = value;
+                    max[i] = value;
+                } else {
+                    min[i] = Math.min(min[i], value);
+                    max[i] = Math.max(max[i], value);
+                }
+                sum[i] += value;
+                count[i]++;
+            }
+        }
+
+        // Slots up to and including the current one, oldest first; slots without samples are skipped
+        List<VitalsPoint> read(long nowMillis, int slots) {
+            long current = Math.floorDiv(nowMillis, slotMillis);
+            int span = Math.min(Math.max(slots, 1), slotIndex.length);
+            List<VitalsPoint> result = new ArrayList<>();
+            for (long index = current - span + 1; index <= current; index++) {
+                int slot = (int) Math.floorMod(index, (long) slotIndex.length);
+                if (slotIndex[slot] != index) {
+                    continue;
+                }
+                Map<VitalsMetric, Float> average = new EnumMap<>(VitalsMetric.class);
+                Map<VitalsMetric, Float> minimum = new EnumMap<>(VitalsMetric.class);
+                Map<VitalsMetric, Float> maximum = new EnumMap<>(VitalsMetric.class);
+                int samples = 0;
+                for (int m = 0; m < METRICS; m++) {
+                    int i = slot * METRICS + m;
+                    if (count[i] > 0) {
+                        average.put(METRIC_VALUES[m], (float) (sum[i] / count[i]));
+                        minimum.put(METRIC_VALUES[m], min[i]);
+                        maximum.put(METRIC_VALUES[m], max[i]);
+                        samples = Math.max(samples, count[i]);
+                    }
+                }
+                if (samples == 0) {
+                    continue;
+                }
+                result.add(VitalsPoint.builder()
+                        .from(Instant.ofEpochMilli(index * slotMillis))
+                        .to(Instant.ofEpochMilli((index + 1) * slotMillis))
+                        .samples(samples)
+                        .average(average)
+                        .min(minimum)
+                        .max(maximum)
+                        .build());
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+-- History tables of the write-behind history (PaymentHistory, StatusTransition, HostAuthorizationLog).
+-- Amounts are kept at the scale of their currency; numeric(18, 4) fits every ISO currency.
+
+create sequence payment_history_seq start with 1 increment by 50;
+create sequence status_transition_seq start with 1 increment by 50;
+create sequence host_authorization_log_seq start with 1 increment by 50;
+
+create table payment_history (
+    id bigint not null,
+    transaction_id varchar(64) not null,
+    terminal_id varchar(64),
+    venue_id varchar(64),
+    kind varchar(16),
+    original_transaction_id varchar(64),
+    status varchar(16) not null,
+    amount numeric(18, 4),
+    currency varchar(3),
+    message varchar(512),
+    completed_at timestamp(6) with time zone not null,
+    primary key (id)
+);
+create index ix_payment_history_completed on payment_history (completed_at);
+create index ix_payment_history_terminal on payment_history (terminal_id, completed_at);
+create index ix_payment_history_transaction on payment_history (transaction_id);
+create index ix_payment_history_venue_completed on payment_history (venue_id, completed_at);
+
+create table status_transition (
+    id bigint not null,
+    transaction_id varchar(64) not null,
+    terminal_id varchar(64),
+    venue_id varchar(64),
+    status varchar(16) not null,
+    amount numeric(18, 4),
+    currency varchar(3),
+    message varchar(512),
+    occurred_at timestamp(6) with time zone not null,
+    primary key (id)
+);
+create index ix_status_transition_transaction on status_transition (transaction_id, occurred_at);
+create index ix_status_transition_venue_occurred on status_transition (venue_id, occurred_at);
+
+create table host_authorization_log (
+    id bigint not null,
+    reference varchar(64) not null,
+    terminal_id varchar(64),
+    venue_id varchar(64),
+    amount numeric(18, 4),
+    currency varchar(3),
+    approved boolean not null,
+    offline boolean not null,
+    auth_code varchar(16),
+    message varchar(512),
+    decided_at timestamp(6) with time zone not null,
+    primary key (id)
+);
+create index ix_host_authorization_decided on host_authorization_log (decided_at);
+create index ix_host_authorization_reference on host_authorization_log (reference);
+create index ix_host_authorization_venue_decided on host_authorization_log (venue_id, decided_at);
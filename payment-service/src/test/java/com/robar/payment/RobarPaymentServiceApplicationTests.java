@@ -3,7 +3,12 @@ package com.robar.payment;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// In-memory history database, nothing left behind under ./data
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:robar-test;DB_CLOSE_DELAY=-1",
+		"robar.receipts.store-directory=build/test-data/receipts",
+		"robar.offline.queue-directory=build/test-data/offline-queue"
+})
 class RobarPaymentServiceApplicationTests {
 
 	@Test
@@ -0,0 +1,79 @@
+package com.robar.payment.config;
+
+import com.robar.payment.model.InitStrategy;
+import com.robar.payment.model.TerminalDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VerifoneConfigTests {
+
+    private static VerifoneProperties.Terminal terminal(String id, String address) {
+        VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+        terminal.setId(id);
+        terminal.setAddress(address);
+        return terminal;
+    }
+
+    @Test
+    void stockConfigStillHasTheDefaultTerminal() {
+        List<TerminalDefinition> definitions = VerifoneConfig.toTerminalDefinitions(new VerifoneProperties());
+
+        assertEquals(1, definitions.size());
+        assertEquals("default", definitions.get(0).getTerminalId());
+        assertNull(definitions.get(0).getAddress());
+        assertEquals("tcpip", definitions.get(0).getConnectionType());
+        assertEquals(InitStrategy.ENHANCED, definitions.get(0).getInitStrategy());
+    }
+
+    @Test
+    void singleIpBecomesTheDefaultTerminal() {
+        VerifoneProperties properties = new VerifoneProperties();
+        properties.setIp("192.168.1.50");
+        properties.setConnectionType("serial");
+
+        TerminalDefinition definition = VerifoneConfig.toTerminalDefinitions(properties).get(0);
+
+        assertEquals("default", definition.getTerminalId());
+        assertEquals("192.168.1.50", definition.getAddress());
+        assertEquals("serial", definition.getConnectionType());
+    }
+
+    @Test
+    void venuesReplaceTheSingleTerminal() {
+        VerifoneProperties properties = new VerifoneProperties();
+        properties.setIp("192.168.1.50");
+        VerifoneProperties.Venue bar = new VerifoneProperties.Venue();
+        bar.setId("main-bar");
+        bar.getTerminals().add(terminal("bar-1", "10.0.0.1"));
+        bar.getTerminals().add(terminal("bar-2", "10.0.0.2"));
+        VerifoneProperties.Venue terrace = new VerifoneProperties.Venue();
+        terrace.setId("terrace");
+        terrace.getTerminals().add(terminal("terrace-1", "10.0.1.1"));
+        properties.setVenues(List.of(bar, terrace));
+
+        List<TerminalDefinition> definitions = VerifoneConfig.toTerminalDefinitions(properties);
+
+        assertEquals(3, definitions.size());
+        assertEquals("bar-1", definitions.get(0).getTerminalId());
+        assertEquals("main-bar", definitions.get(1).getVenueId());
+        assertEquals("10.0.0.2", definitions.get(1).getAddress());
+        assertEquals("terrace", definitions.get(2).getVenueId());
+        assertEquals("DKK", definitions.get(2).getCurrency());
+    }
+
+    @Test
+    void terminalWithoutIdIsRejected() {
+        VerifoneProperties properties = new VerifoneProperties();
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        venue.getTerminals().add(terminal(null, "10.0.0.1"));
+        properties.setVenues(List.of(venue));
+
+        assertThrows(IllegalArgumentException.class, () -> VerifoneConfig.toTerminalDefinitions(properties));
+    }
+}
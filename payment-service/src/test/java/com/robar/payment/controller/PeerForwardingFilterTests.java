@@ -0,0 +1,241 @@
+package com.robar.payment.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.model.TerminalLease;
+import com.robar.payment.service.PeerForwarder;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeerForwardingFilterTests {
+    private static final String SALE = "{\"terminalId\":\"bar-2\",\"amount\":12.50}";
+
+    private final ClusterProperties clusterProperties = clusterProperties();
+    private final FakeForwarder forwarder = new FakeForwarder(clusterProperties);
+    private final PeerForwardingFilter filter = new PeerForwardingFilter(clusterProperties, forwarder, new ObjectMapper());
+    private final MockFilterChain chain = new MockFilterChain();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // Knows the owners the test gives it and answers forwarded requests itself
+    private static class FakeForwarder extends PeerForwarder {
+        final Map<String, TerminalLease> owners = new HashMap<>();
+        final Map<String, String> basketTerminals = new HashMap<>();
+        final Set<String> fenced = new HashSet<>();
+        final List<String> forwarded = new ArrayList<>();
+
+        FakeForwarder(ClusterProperties properties) {
+            super(null, null, null, properties, RestClient.builder());
+        }
+
+        @Override
+        public String resolveTerminalId(String terminalId) {
+            return terminalId != null ? terminalId : "bar-1";
+        }
+
+        @Override
+        public String findBasketTerminal(String basketId) {
+            return basketTerminals.get(basketId);
+        }
+
+        @Override
+        public TerminalLease findRemoteOwner(String terminalId) {
+            return terminalId != null ? owners.get(terminalId) : null;
+        }
+
+        @Override
+        public boolean isFenced(String terminalId) {
+            return terminalId != null && fenced.contains(terminalId);
+        }
+
+        @Override
+        public ResponseEntity<byte[]> forward(TerminalLease owner, String method, String pathAndQuery,
+                                              String contentType, byte[] body) {
+            forwarded.add(method + " " + owner.getOwnerUrl() + pathAndQuery + " " + new String(body, StandardCharsets.UTF_8));
+            return ResponseEntity.status(202)
+                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .header(HttpHeaders.LOCATION, "/api/payments/p1")
+                    .header(HttpHeaders.TRANSFER_ENCODING, "chunked")
+                    .body("{\"status\":\"PROCESSING\"}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ClusterProperties clusterProperties() {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setPeerSecret("s3cret");
+        return properties;
+    }
+
+    private static MockHttpServletRequest sale() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/payments/sale");
+        request.setContentType("application/json");
+        request.setContent(SALE.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static TerminalLease ownedBy(String nodeId) {
+        return ownedBy(nodeId, "bar-2");
+    }
+
+    private static TerminalLease ownedBy(String nodeId, String terminalId) {
+        return TerminalLease.builder()
+                .terminalId(terminalId)
+                .ownerNodeId(nodeId)
+                .ownerUrl("http://" + nodeId + ":8080")
+                .expiresAt(Instant.now().plusSeconds(15))
+                .build();
+    }
+
+    @Test
+    void localTerminalIsHandledHereWithTheBodyIntact() throws Exception {
+        filter.doFilter(sale(), response, chain);
+
+        HttpServletRequest passed = (HttpServletRequest) chain.getRequest();
+        assertEquals(SALE, new String(passed.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertTrue(forwarder.forwarded.isEmpty());
+    }
+
+    @Test
+    void terminalHeldByAPeerIsForwardedToIt() throws Exception {
+        forwarder.owners.put("bar-2", ownedBy("b"));
+
+        filter.doFilter(sale(), response, chain);
+
+        assertNull(chain.getRequest());
+        assertEquals(List.of("POST http://b:8080/api/payments/sale " + SALE), forwarder.forwarded);
+        assertEquals(202, response.getStatus());
+        assertEquals("{\"status\":\"PROCESSING\"}", response.getContentAsString());
+        assertEquals("application/json", response.getContentType());
+        assertEquals("/api/payments/p1", response.getHeader(HttpHeaders.LOCATION));
+        assertNull(response.getHeader(HttpHeaders.TRANSFER_ENCODING));
+    }
+
+    @Test
+    void requestWithoutATerminalGoesToTheDefaultTerminal() throws Exception {
+        forwarder.owners.put("bar-1", ownedBy("b", "bar-1"));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/payments/sale");
+        request.setContentType("application/json");
+        request.setContent("{\"amount\":12.50}".getBytes(StandardCharsets.UTF_8));
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(List.of("POST http://b:8080/api/payments/sale {\"amount\":12.50}"), forwarder.forwarded);
+    }
+
+    @Test
+    void basketRequestGoesToTheBasketsTerminal() throws Exception {
+        forwarder.owners.put("bar-2", ownedBy("b"));
+        forwarder.basketTerminals.put("order-7", "bar-2");
+        MockHttpServletRequest request = new MockHttpServletRequest("DELETE", "/baskets/order-7/items/3");
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(List.of("DELETE http://b:8080/baskets/order-7/items/3 "), forwarder.forwarded);
+    }
+
+    @Test
+    void terminalFromTheQueryIsForwardedWithTheQuery() throws Exception {
+        forwarder.owners.put("bar-2", ownedBy("b"));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/payments/status");
+        request.addParameter("terminalId", "bar-2");
+        request.setQueryString("terminalId=bar-2");
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(List.of("GET http://b:8080/api/payments/status?terminalId=bar-2 "), forwarder.forwarded);
+    }
+
+    @Test
+    void fencedTerminalIsRefused() throws Exception {
+        forwarder.fenced.add("bar-2");
+        forwarder.owners.put("bar-2", ownedBy("b"));
+
+        filter.doFilter(sale(), response, chain);
+
+        assertEquals(503, response.getStatus());
+        assertNull(chain.getRequest());
+        assertTrue(forwarder.forwarded.isEmpty());
+    }
+
+    @Test
+    void forwardedRequestIsNotForwardedAgain() throws Exception {
+        forwarder.owners.put("bar-2", ownedBy("b"));
+        MockHttpServletRequest request = sale();
+        request.addHeader(PeerForwarder.FORWARDED_HEADER, "a");
+        request.addHeader(PeerForwarder.SECRET_HEADER, "s3cret");
+
+        filter.doFilter(request, response, chain);
+
+        assertTrue(forwarder.forwarded.isEmpty());
+        assertEquals(request, chain.getRequest());
+    }
+
+    @Test
+    void forwardedHeaderWithoutThePeerSecretIsNotTrusted() throws Exception {
+        forwarder.owners.put("bar-2", ownedBy("b"));
+        MockHttpServletRequest request = sale();
+        request.addHeader(PeerForwarder.FORWARDED_HEADER, "a");
+        request.addHeader(PeerForwarder.SECRET_HEADER, "guess");
+
+        filter.doFilter(request, response, chain);
+
+        assertNull(chain.getRequest());
+        assertEquals(List.of("POST http://b:8080/api/payments/sale " + SALE), forwarder.forwarded);
+    }
+
+    @Test
+    void cachedBodyCanBeReadAsynchronously() throws Exception {
+        filter.doFilter(sale(), response, chain);
+
+        ServletInputStream in = ((HttpServletRequest) chain.getRequest()).getInputStream();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        boolean[] allRead = new boolean[1];
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                byte[] buffer = new byte[8];
+                int n;
+                while (in.isReady() && (n = in.read(buffer, 0, buffer.length)) > 0) {
+                    read.write(buffer, 0, n);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                allRead[0] = true;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+        });
+
+        assertEquals(SALE, read.toString(StandardCharsets.UTF_8));
+        assertTrue(allRead[0]);
+        assertTrue(in.isFinished());
+    }
+}
@@ -0,0 +1,106 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.BasketProperties;
+import com.robar.payment.model.BasketLineItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BasketSyncServiceTests {
+    private final List<String> applied = new ArrayList<>();
+    private BasketSyncService service;
+
+    private final BasketProperties properties = new BasketProperties();
+
+    @BeforeEach
+    void setUp() {
+        properties.setFlushDelayMs(10);
+        service = new BasketSyncService(properties);
+        service.setBasketSink(new BasketSyncService.BasketSink() {
+            @Override
+            public CompletableFuture<Void> apply(String terminalId, List<BasketDelta> deltas) {
+                synchronized (applied) {
+                    for (BasketDelta delta : deltas) {
+                        applied.add(terminalId + ":" + delta.getType() + ":" + delta.getItem().getLineId());
+                    }
+                }
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private static BasketLineItem item(String lineId) {
+        return new BasketLineItem(lineId, "SKU-" + lineId, "Beer", 1, new BigDecimal("45.00"));
+    }
+
+    private List<String> appliedSoFar() {
+        synchronized (applied) {
+            return new ArrayList<>(applied);
+        }
+    }
+
+    @Test
+    void basketErrorOnlyResyncsThatTerminal() throws Exception {
+        service.addItem("b1", "t1", item("1"));
+        service.addItem("b2", "t2", item("2"));
+        service.prepareCheckout("b1");
+        service.prepareCheckout("b2");
+        applied.clear();
+
+        service.onBasketStatus(new BasketStatusEvent("t1", -1, "rejected"));
+        Thread.sleep(200);
+
+        assertEquals(List.of("t1:REMOVE:1", "t1:ADD:1"), appliedSoFar());
+    }
+
+    @Test
+    void stopsResyncingATerminalThatKeepsRejecting() throws Exception {
+        service.addItem("b1", "t1", item("1"));
+        service.prepareCheckout("b1");
+        applied.clear();
+
+        for (int i = 0; i < 5; i++) {
+            service.onBasketStatus(new BasketStatusEvent("t1", -1, "rejected"));
+            Thread.sleep(100);
+        }
+        int afterRejects = appliedSoFar().size();
+        assertTrue(afterRejects <= 6, "resynced " + afterRejects / 2 + " times");
+
+        service.onBasketStatus(new BasketStatusEvent("t1", 0, "ok"));
+        service.onBasketStatus(new BasketStatusEvent("t1", -1, "rejected"));
+        Thread.sleep(100);
+        assertEquals(afterRejects + 2, appliedSoFar().size());
+    }
+
+    @Test
+    void abandonedBasketIsDroppedAndClearedFromTheTerminal() throws Exception {
+        service.addItem("b1", "t1", item("1"));
+        service.prepareCheckout("b1");
+        service.addItem("b2", "t2", item("2"));
+        Thread.sleep(100);
+        applied.clear();
+
+        // b2 is still being worked on
+        properties.setAbandonedAfterMs(50);
+        service.addItem("b2", "t2", item("3"));
+        assertEquals(1, service.expireAbandoned());
+
+        assertNull(service.getBasket("b1"));
+        assertEquals(2, service.getBasket("b2").getItems().size());
+        assertEquals(List.of("t1:REMOVE:1"), appliedSoFar().stream().filter(a -> a.startsWith("t1:")).toList());
+    }
+}
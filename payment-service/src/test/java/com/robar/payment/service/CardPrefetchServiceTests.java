@@ -0,0 +1,138 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.CardPrefetchProperties;
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.model.CardProfile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CardPrefetchServiceTests {
+    private final CardPrefetchProperties properties = new CardPrefetchProperties();
+    private CardPrefetchService service;
+
+    @AfterEach
+    void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void lookupsRunInParallelAndAreCached() throws Exception {
+        // Each lookup waits for the other two - only completes if all three run at once
+        CountDownLatch started = new CountDownLatch(3);
+        AtomicInteger calls = new AtomicInteger();
+        service = new CardPrefetchService(new CardProfileBackend() {
+            @Override
+            public String findLoyaltyMember(String cardToken) throws Exception {
+                return awaitOthers("member-7");
+            }
+
+            @Override
+            public BigDecimal findDiscountPercent(String cardToken) throws Exception {
+                return awaitOthers(new BigDecimal("10"));
+            }
+
+            @Override
+            public boolean isBlocked(String cardToken) throws Exception {
+                return awaitOthers(false);
+            }
+
+            private <T> T awaitOthers(T value) throws InterruptedException {
+                calls.incrementAndGet();
+                started.countDown();
+                if (!started.await(1, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Lookups ran one after another");
+                }
+                return value;
+            }
+        }, properties);
+
+        service.onCardPresented(new CardPresentedEvent("bar-1", "ct_abc", false));
+        CardProfile profile = service.getProfile("bar-1", 2000);
+
+        assertEquals("member-7", profile.getLoyaltyMemberId());
+        assertEquals(new BigDecimal("10"), profile.getDiscountPercent());
+        assertFalse(profile.isBlocked());
+
+        // Same card again - served from the cache
+        assertEquals("member-7", service.prefetch("ct_abc").get(1, TimeUnit.SECONDS).getLoyaltyMemberId());
+        assertEquals(3, calls.get());
+
+        // Terminal result ends the transaction
+        service.onPaymentStatus(new PaymentStatusEvent("tx-1", com.robar.payment.model.PaymentStatus.COMPLETED, "ok", "bar-1"));
+        assertNull(service.getProfile("bar-1", 0));
+    }
+
+    @Test
+    void blockedCardFromLocalBackend() {
+        properties.getBlockedTokens().add("ct_stolen");
+        service = new CardPrefetchService(new LocalCardProfileBackend(properties), properties);
+
+        service.onCardPresented(new CardPresentedEvent("bar-1", "ct_stolen", false));
+
+        assertTrue(service.getProfile("bar-1", 2000).isBlocked());
+    }
+
+    @Test
+    void tokensAreStableAndDoNotContainTheCardNumber() {
+        properties.setTokenKey("c2VjcmV0LWtleS1mb3ItdGVzdHM=");
+        CardTokenizer tokenizer = new CardTokenizer(properties, new ClusterProperties());
+
+        String token = tokenizer.tokenize("4111111111111111");
+
+        assertEquals(token, tokenizer.tokenize("4111111111111111"));
+        assertNotEquals(token, tokenizer.tokenize("4111111111111112"));
+        assertFalse(token.contains("1111"));
+        assertNull(tokenizer.tokenize(null));
+    }
+
+    @Test
+    void cardsOfOneCustomerAreNotAppliedToTheNext() {
+        service = new CardPrefetchService(new LocalCardProfileBackend(properties), properties);
+
+        // Abandoned at the terminal - no result ever comes
+        service.onCardPresented(new CardPresentedEvent("bar-1", "ct_first", false));
+        service.onCustomerSession(new CustomerSessionEvent("bar-1", CustomerSessionEvent.Type.SESSION_ENDED));
+        assertNull(service.getProfile("bar-1", 0));
+
+        service.onCardPresented(new CardPresentedEvent("bar-1", "ct_second", false));
+        service.onCustomerSession(new CustomerSessionEvent("bar-1", CustomerSessionEvent.Type.CANCELLED));
+        assertNull(service.getProfile("bar-1", 0));
+
+        // Loyalty card scanned for the sale about to start belongs to its customer
+        service.onCardPresented(new CardPresentedEvent("bar-1", "ct_left_over", false));
+        service.onCardPresented(new CardPresentedEvent("bar-1", "ct_loyalty", true));
+        service.onCustomerSession(new CustomerSessionEvent("bar-1", CustomerSessionEvent.Type.SALE_STARTING));
+        assertEquals("ct_loyalty", service.getProfile("bar-1", 2000).getCardToken());
+    }
+
+    @Test
+    void randomTokenKeyIsRefusedWhereTokensMustBeStable() {
+        ClusterProperties cluster = new ClusterProperties();
+        new CardTokenizer(properties, cluster);
+
+        cluster.setEnabled(true);
+        assertThrows(IllegalStateException.class, () -> new CardTokenizer(properties, cluster));
+
+        cluster.setEnabled(false);
+        properties.getBlockedTokens().add("ct_stolen");
+        assertThrows(IllegalStateException.class, () -> new CardTokenizer(properties, cluster));
+
+        properties.setTokenKey("c2VjcmV0LWtleS1mb3ItdGVzdHM=");
+        cluster.setEnabled(true);
+        new CardTokenizer(properties, cluster);
+    }
+}
@@ -0,0 +1,144 @@
+package com.robar.payment.service;
+
+import com.robar.payment.service.ExportWriter.ColumnType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnarExportWriterTests {
+    private static final String[] COLUMNS = {"transaction_id", "amount", "scale", "completed_at"};
+    private static final ColumnType[] TYPES = {ColumnType.STRING, ColumnType.AMOUNT, ColumnType.SCALE, ColumnType.TIMESTAMP};
+
+    // Reads the format back as documented on ColumnarExportWriter
+    private static class Reader {
+        private final DataInputStream in;
+
+        Reader(byte[] bytes) {
+            this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+        }
+
+        long varLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long zigzag() throws IOException {
+            long value = varLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String string() throws IOException {
+            byte[] bytes = new byte[(int) varLong()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Rows of every group, then checks the trailer
+        List<Object[]> read() throws IOException {
+            assertEquals(0x52434F4C, in.readInt());
+            assertEquals(1, in.readUnsignedByte());
+            int columns = (int) varLong();
+            String[] names = new String[columns];
+            int[] types = new int[columns];
+            for (int i = 0; i < columns; i++) {
+                names[i] = string();
+                types[i] = in.readUnsignedByte();
+            }
+            assertArrayEquals(COLUMNS, names);
+            assertArrayEquals(new int[]{1, 2, 4, 3}, types);
+
+            List<Object[]> rows = new ArrayList<>();
+            int groupRows;
+            while ((groupRows = (int) varLong()) > 0) {
+                Object[][] group = new Object[groupRows][columns];
+                for (int column = 0; column < columns; column++) {
+                    byte[] presence = new byte[(groupRows + 7) / 8];
+                    in.readFully(presence);
+                    long previous = 0;
+                    for (int row = 0; row < groupRows; row++) {
+                        if ((presence[row >> 3] & (1 << (row & 7))) == 0) {
+                            continue;
+                        }
+                        switch (types[column]) {
+                            case 1 -> group[row][column] = string();
+                            case 2 -> group[row][column] = zigzag();
+                            case 4 -> group[row][column] = varLong();
+                            default -> {
+                                previous += zigzag();
+                                group[row][column] = previous;
+                            }
+                        }
+                    }
+                }
+                rows.addAll(Arrays.asList(group));
+            }
+            assertEquals(rows.size(), in.readLong());
+            assertEquals(-1, in.read());
+            return rows;
+        }
+    }
+
+    private static byte[] write(int rowGroupSize, List<Object[]> rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarExportWriter writer = new ColumnarExportWriter(out, rowGroupSize);
+        writer.begin(COLUMNS, TYPES);
+        for (Object[] row : rows) {
+            writer.row(row);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    @Test
+    void rowsReadBackAcrossGroups() throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        long time = 1_735_689_600_000L;
+        for (int i = 0; i < 21; i++) {
+            rows.add(new Object[]{"pay-" + i, i % 3 == 0 ? -150L * i : 150L * i, i % 2 == 0 ? 2L : 0L, time + (i % 4 == 0 ? -1000L : 1000L) * i});
+        }
+
+        List<Object[]> read = new Reader(write(8, rows)).read();
+
+        assertEquals(rows.size(), read.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals(rows.get(i), read.get(i), "row " + i);
+        }
+    }
+
+    @Test
+    void missingValuesAreLeftOutOfTheColumn() throws Exception {
+        List<Object[]> rows = List.of(
+                new Object[]{"pay-1", null, 2L, 5000L},
+                new Object[]{null, 250L, null, null},
+                new Object[]{"p\u00e5-3", 0L, 3L, 7000L});
+
+        byte[] bytes = write(100, rows);
+        List<Object[]> read = new Reader(bytes).read();
+
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals(rows.get(i), read.get(i), "row " + i);
+        }
+    }
+
+    @Test
+    void emptyExportIsHeaderAndTrailer() throws Exception {
+        assertEquals(0, new Reader(write(8, List.of())).read().size());
+    }
+}
@@ -0,0 +1,80 @@
+package com.robar.payment.service;
+
+import com.robar.payment.service.ExportWriter.ColumnType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvExportWriterTests {
+    private static final String[] COLUMNS = {"reference", "amount", "message", "decided_at"};
+    private static final ColumnType[] TYPES = {ColumnType.STRING, ColumnType.AMOUNT, ColumnType.STRING, ColumnType.TIMESTAMP};
+
+    private static String write(Object[]... rows) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvExportWriter writer = new CsvExportWriter(out);
+        writer.begin(COLUMNS, TYPES);
+        for (Object[] row : rows) {
+            writer.row(row);
+        }
+        writer.finish();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesHeaderAndFormatsAmountsAndTimestamps() throws Exception {
+        String csv = write(new Object[]{"ref-1", 1250L, "Approved", 0L});
+
+        assertEquals("reference,amount,message,decided_at\r\nref-1,12.50,Approved,1970-01-01T00:00:00Z\r\n", csv);
+    }
+
+    @Test
+    void quotesSeparatorsQuotesAndLineBreaks() throws Exception {
+        String csv = write(new Object[]{"a,b", null, "say \"hi\"", null},
+                new Object[]{"line\nbreak", null, "cr\rhere", null});
+
+        assertEquals("reference,amount,message,decided_at\r\n"
+                + "\"a,b\",,\"say \"\"hi\"\"\",\r\n"
+                + "\"line\nbreak\",,\"cr\rhere\",\r\n", csv);
+    }
+
+    @Test
+    void nullsAreEmptyFields() throws Exception {
+        assertEquals("reference,amount,message,decided_at\r\n,,,\r\n", write(new Object[]{null, null, null, null}));
+    }
+
+    @Test
+    void textThatLooksLikeAFormulaIsPrefixed() throws Exception {
+        String csv = write(new Object[]{"=HYPERLINK(\"x\")", null, "+1", null},
+                new Object[]{"-2", null, "@SUM(A1)", null},
+                new Object[]{"\tcmd", null, "a=b", null});
+
+        assertEquals("reference,amount,message,decided_at\r\n"
+                + "\"'=HYPERLINK(\"\"x\"\")\",,'+1,\r\n"
+                + "'-2,,'@SUM(A1),\r\n"
+                + "'\tcmd,,a=b,\r\n", csv);
+    }
+
+    @Test
+    void amountsFollowTheScaleOfTheirRow() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvExportWriter writer = new CsvExportWriter(out);
+        writer.begin(new String[]{"amount", "currency", "scale"},
+                new ColumnType[]{ColumnType.AMOUNT, ColumnType.STRING, ColumnType.SCALE});
+        writer.row(new Object[]{1500L, "JPY", 0L});
+        writer.row(new Object[]{3500L, "KWD", 3L});
+        writer.row(new Object[]{1250L, "DKK", 2L});
+        writer.finish();
+
+        assertEquals("amount,currency,scale\r\n1500,JPY,0\r\n3.500,KWD,3\r\n12.50,DKK,2\r\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void negativeAmountsAreNotPrefixed() throws Exception {
+        assertEquals("reference,amount,message,decided_at\r\nrefund,-5.00,,\r\n",
+                write(new Object[]{"refund", -500L, null, null}));
+    }
+}
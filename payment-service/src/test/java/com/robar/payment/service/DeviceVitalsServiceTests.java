@@ -0,0 +1,89 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.VitalsProperties;
+import com.robar.payment.model.VitalsAlert;
+import com.robar.payment.model.VitalsMetric;
+import com.robar.payment.model.VitalsResolution;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceVitalsServiceTests {
+    private final DeviceVitalsService service = new DeviceVitalsService(new VitalsProperties());
+    private long now = 1_735_689_600_000L;
+
+    private void report(String terminalId, VitalsMetric metric, float value) {
+        float[] values = new float[VitalsMetric.values().length];
+        Arrays.fill(values, Float.NaN);
+        values[metric.ordinal()] = value;
+        service.onVitals(new DeviceVitalsEvent(terminalId, now += 1000, values));
+    }
+
+    @Test
+    void lowBatteryRaisesOneAlertThatFollowsTheValue() {
+        report("bar-1", VitalsMetric.BATTERY_PERCENT, 50);
+        assertTrue(service.getAlerts(null).isEmpty());
+
+        report("bar-1", VitalsMetric.BATTERY_PERCENT, 18);
+        report("bar-1", VitalsMetric.BATTERY_PERCENT, 15);
+
+        List<VitalsAlert> alerts = service.getAlerts("bar-1");
+        assertEquals(1, alerts.size());
+        assertEquals("below", alerts.get(0).getCondition());
+        assertEquals(15f, alerts.get(0).getValue());
+        assertTrue(service.getAlerts("bar-2").isEmpty());
+    }
+
+    @Test
+    void alertClearsOnlyPastTheHysteresis() {
+        report("bar-1", VitalsMetric.TEMPERATURE_CELSIUS, 65);
+        assertEquals(1, service.getAlerts("bar-1").size());
+
+        // Back under the limit, but not by the 5 degree hysteresis
+        report("bar-1", VitalsMetric.TEMPERATURE_CELSIUS, 58);
+        assertEquals(1, service.getAlerts("bar-1").size());
+
+        report("bar-1", VitalsMetric.TEMPERATURE_CELSIUS, 55);
+        assertTrue(service.getAlerts("bar-1").isEmpty());
+    }
+
+    @Test
+    void missingValuesNeitherRaiseNorClear() {
+        report("bar-1", VitalsMetric.SIGNAL_DBM, -90);
+        report("bar-1", VitalsMetric.SIGNAL_DBM, Float.NaN);
+
+        assertEquals(1, service.getAlerts("bar-1").size());
+        assertEquals(-90f, service.getAlerts("bar-1").get(0).getValue());
+    }
+
+    @Test
+    void unrecognisedStateIsNotTakenForDown() {
+        PaymentEventListener listener = new PaymentEventListener(event -> service.onVitals((DeviceVitalsEvent) event), null);
+        listener.setTerminalId("bar-1");
+
+        listener.onScannerState("UNKNOWN");
+        listener.onDeviceVitals(null, null, null, "Unavailable");
+        assertEquals(List.of(VitalsMetric.NETWORK_UP), service.getAlerts("bar-1").stream().map(VitalsAlert::getMetric).toList());
+
+        listener.onDeviceVitals(null, null, null, "connected");
+        listener.onScannerState("something new");
+        assertTrue(service.getAlerts("bar-1").isEmpty());
+    }
+
+    @Test
+    void removedTerminalTakesItsHistoryAndAlerts() {
+        report("bar-1", VitalsMetric.BATTERY_PERCENT, 10);
+        report("bar-2", VitalsMetric.BATTERY_PERCENT, 10);
+
+        service.onTerminalRemoved(new TerminalRemovedEvent("bar-1", false));
+
+        assertTrue(service.getAlerts("bar-1").isEmpty());
+        assertTrue(service.getHistory("bar-1", VitalsResolution.RAW, 10).isEmpty());
+        assertEquals(1, service.getAlerts("bar-2").size());
+        assertEquals(List.of("bar-2"), List.copyOf(service.getLatest().keySet()));
+    }
+}
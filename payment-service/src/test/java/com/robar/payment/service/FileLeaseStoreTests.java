@@ -0,0 +1,105 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ClusterNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileLeaseStoreTests {
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock();
+
+    private static ClusterNode node(String id) {
+        return ClusterNode.builder().nodeId(id).url("http://" + id + ":8080").build();
+    }
+
+    @Test
+    void leaseIsExclusiveUntilItExpires() throws Exception {
+        FileLeaseStore store = new FileLeaseStore(directory, clock);
+
+        assertTrue(store.tryAcquire("bar-1", node("a"), 10_000));
+        assertFalse(store.tryAcquire("bar-1", node("b"), 10_000));
+        assertTrue(store.tryAcquire("bar-1", node("a"), 10_000), "owner can renew");
+
+        clock.advance(10_001);
+        assertTrue(store.tryAcquire("bar-1", node("b"), 10_000), "expired lease can be taken over");
+        assertEquals("b", store.getLeases().get("bar-1").getOwnerNodeId());
+    }
+
+    @Test
+    void releasedLeaseIsFreeAndOnlyOwnerCanRelease() throws Exception {
+        FileLeaseStore store = new FileLeaseStore(directory, clock);
+        store.tryAcquire("bar-1", node("a"), 10_000);
+
+        store.release("bar-1", "b");
+        assertFalse(store.tryAcquire("bar-1", node("b"), 10_000));
+
+        store.release("bar-1", "a");
+        assertTrue(store.tryAcquire("bar-1", node("b"), 10_000));
+    }
+
+    @Test
+    void stateIsSharedBetweenStoreInstances() throws Exception {
+        FileLeaseStore first = new FileLeaseStore(directory, clock);
+        FileLeaseStore second = new FileLeaseStore(directory, clock);
+
+        first.heartbeat(node("a"), 10_000);
+        second.heartbeat(node("b"), 10_000);
+        first.tryAcquire("bar-1", node("a"), 10_000);
+
+        assertEquals(2, second.getLiveNodes().size());
+        assertFalse(second.tryAcquire("bar-1", node("b"), 10_000));
+
+        clock.advance(10_001);
+        assertTrue(first.getLiveNodes().isEmpty());
+    }
+
+    @Test
+    void nodeThatLeftIsNotLiveButKeepsItsLeases() throws Exception {
+        FileLeaseStore store = new FileLeaseStore(directory, clock);
+        store.heartbeat(node("a"), 10_000);
+        store.heartbeat(node("b"), 10_000);
+        store.tryAcquire("bar-1", node("a"), 10_000);
+
+        store.leave("a");
+
+        assertEquals(1, store.getLiveNodes().size());
+        assertEquals("b", store.getLiveNodes().get(0).getNodeId());
+        assertFalse(store.tryAcquire("bar-1", node("b"), 10_000), "lease is held until released");
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T12:00:00Z");
+
+        void advance(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
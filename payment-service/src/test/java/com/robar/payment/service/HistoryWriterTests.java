@@ -0,0 +1,161 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.HistoryProperties;
+import com.robar.payment.model.PaymentHistory;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.StatusTransition;
+import com.robar.payment.model.TransactionKind;
+import com.robar.payment.repository.HostAuthorizationLogRepository;
+import com.robar.payment.repository.PaymentHistoryRepository;
+import com.robar.payment.repository.StatusTransitionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HistoryWriterTests {
+    private final HistoryProperties properties = new HistoryProperties();
+    // Sizes of the saveAll calls per repository
+    private final Map<Class<?>, List<Integer>> saved = new ConcurrentHashMap<>();
+    private final List<Object> rows = new CopyOnWriteArrayList<>();
+    private HistoryWriter writer;
+
+    // Runs the callback right away, there is no database to open a transaction on
+    private static class DirectTransactionTemplate extends TransactionTemplate {
+        @Override
+        public <T> T execute(TransactionCallback<T> action) {
+            return action.doInTransaction(null);
+        }
+    }
+
+    // Repository that only records the rows and the size of every saveAll
+    @SuppressWarnings("unchecked")
+    private <R> R repository(Class<R> type) {
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getName().equals("saveAll")) {
+                List<Object> batch = new ArrayList<>();
+                ((Iterable<Object>) args[0]).forEach(batch::add);
+                if (!batch.isEmpty()) {
+                    saved.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(batch.size());
+                    rows.addAll(batch);
+                }
+                return batch;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private HistoryWriter writer() {
+        writer = new HistoryWriter(properties, repository(PaymentHistoryRepository.class),
+                repository(StatusTransitionRepository.class), repository(HostAuthorizationLogRepository.class),
+                new DirectTransactionTemplate(), null);
+        return writer;
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    // A status change without a terminal - one transition row, no payment row
+    private static PaymentStatusEvent statusChange(int i) {
+        return new PaymentStatusEvent("p" + i, PaymentStatus.REFUNDED, "refund " + i);
+    }
+
+    private void awaitWritten(long rows) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (writer.getWrittenCount() < rows && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(rows, writer.getWrittenCount());
+    }
+
+    @Test
+    void queuedRowsAreWrittenInBatchesPerTable() throws Exception {
+        properties.setBatchSize(3);
+        HistoryWriter writer = writer();
+        for (int i = 0; i < 7; i++) {
+            writer.onPaymentStatus(statusChange(i));
+        }
+        assertEquals(7, writer.getQueueSize(), "nothing written before the writer is started");
+
+        writer.start();
+
+        awaitWritten(7);
+        assertEquals(List.of(3, 3, 1), saved.get(StatusTransitionRepository.class));
+    }
+
+    @Test
+    void paymentResultIsWrittenToBothTablesInOneBatch() throws Exception {
+        HistoryWriter writer = writer();
+        writer.onPaymentStatus(new PaymentStatusEvent("p1", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("12.50"), TransactionKind.SALE, null, "DKK"));
+
+        writer.start();
+
+        awaitWritten(2);
+        assertEquals(List.of(1), saved.get(PaymentHistoryRepository.class));
+        assertEquals(List.of(1), saved.get(StatusTransitionRepository.class));
+    }
+
+    @Test
+    void amountsAreStoredAtTheScaleOfTheirCurrency() throws Exception {
+        HistoryWriter writer = writer();
+        writer.onPaymentStatus(new PaymentStatusEvent("p1", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("1500"), TransactionKind.SALE, null, "JPY"));
+        writer.onPaymentStatus(new PaymentStatusEvent("p2", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("3.5"), TransactionKind.SALE, null, "KWD"));
+
+        writer.start();
+
+        awaitWritten(4);
+        List<PaymentHistory> payments = rows.stream()
+                .filter(PaymentHistory.class::isInstance).map(PaymentHistory.class::cast).toList();
+        assertEquals(List.of("JPY", "KWD"), payments.stream().map(PaymentHistory::getCurrency).toList());
+        assertEquals(List.of(new BigDecimal("1500"), new BigDecimal("3.500")),
+                payments.stream().map(PaymentHistory::getAmount).toList());
+        assertEquals(List.of("JPY", "KWD"), rows.stream().filter(StatusTransition.class::isInstance)
+                .map(row -> ((StatusTransition) row).getCurrency()).toList());
+    }
+
+    @Test
+    void rowsBeyondTheQueueCapacityAreDropped() throws Exception {
+        properties.setQueueCapacity(2);
+        HistoryWriter writer = writer();
+        for (int i = 0; i < 5; i++) {
+            writer.onPaymentStatus(statusChange(i));
+        }
+
+        assertEquals(3, writer.getDroppedCount());
+        assertEquals(2, writer.getQueueSize());
+
+        writer.start();
+        awaitWritten(2);
+    }
+
+    @Test
+    void shutdownWritesWhatIsStillQueued() throws Exception {
+        properties.setFlushIntervalMs(200);
+        HistoryWriter writer = writer();
+        writer.start();
+        writer.onPaymentStatus(statusChange(1));
+        writer.onPaymentStatus(statusChange(2));
+
+        writer.shutdown();
+
+        assertEquals(2, writer.getWrittenCount());
+        assertEquals(0, writer.getQueueSize());
+    }
+}
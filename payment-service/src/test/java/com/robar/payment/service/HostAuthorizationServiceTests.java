@@ -0,0 +1,199 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.CardPrefetchProperties;
+import com.robar.payment.config.OfflineProperties;
+import com.robar.payment.model.HostAuthorizationDecision;
+import com.robar.payment.model.HostAuthorizationRequest;
+import com.robar.payment.model.OfflineAuthorization;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HostAuthorizationServiceTests {
+
+    @TempDir
+    Path directory;
+
+    private HostAuthorizationService service;
+
+    // Host whose authorize behaviour is set per test
+    private static class FakeHost implements AcquirerHost {
+        volatile long delayMs;
+        volatile boolean failing;
+        volatile boolean holdsTimedOutAuthorizations;
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CountDownLatch answered = new CountDownLatch(1);
+        final List<String> forwarded = new ArrayList<>();
+
+        @Override
+        public HostAuthorizationDecision authorize(HostAuthorizationRequest request) throws Exception {
+            if (failing) {
+                throw new IllegalStateException("connection refused");
+            }
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            answered.countDown();
+            return HostAuthorizationDecision.builder().reference(request.getReference()).approved(true).authCode("123456").build();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return !failing;
+        }
+
+        @Override
+        public boolean hasAuthorization(String reference) {
+            return holdsTimedOutAuthorizations;
+        }
+
+        @Override
+        public synchronized List<String> submitOffline(List<OfflineAuthorization> batch) {
+            List<String> accepted = new ArrayList<>();
+            for (OfflineAuthorization authorization : batch) {
+                accepted.add(authorization.getReference());
+            }
+            forwarded.addAll(accepted);
+            return accepted;
+        }
+    }
+
+    private final OfflineProperties properties = new OfflineProperties();
+
+    private HostAuthorizationService service(FakeHost host) throws Exception {
+        properties.setQueueDirectory(directory.toString());
+        properties.setHostTimeoutMs(50);
+        properties.setDrainIntervalMs(20);
+        CardPrefetchProperties prefetch = new CardPrefetchProperties();
+        prefetch.setEnabled(false);
+        service = new HostAuthorizationService(host, properties, new CardPrefetchService(null, prefetch));
+        return service;
+    }
+
+    private static HostAuthorizationRequest request(String reference) {
+        return HostAuthorizationRequest.builder()
+                .reference(reference)
+                .terminalId("t1")
+                .amount(new BigDecimal("100.00"))
+                .currency("DKK")
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void hostIsOnlyTreatedAsDownAfterConsecutiveFailures() throws Exception {
+        FakeHost host = new FakeHost();
+        host.failing = true;
+        HostAuthorizationService service = service(host);
+
+        assertTrue(service.authorize(request("ref-1")).isOffline());
+        assertTrue(service.authorize(request("ref-2")).isOffline());
+        assertFalse(service.isHostDown());
+        service.authorize(request("ref-3"));
+        assertTrue(service.isHostDown());
+    }
+
+    @Test
+    void successResetsTheFailureCount() throws Exception {
+        FakeHost host = new FakeHost();
+        HostAuthorizationService service = service(host);
+
+        host.failing = true;
+        service.authorize(request("ref-1"));
+        service.authorize(request("ref-2"));
+        host.failing = false;
+        assertFalse(service.authorize(request("ref-3")).isOffline());
+        host.failing = true;
+        service.authorize(request("ref-4"));
+
+        assertFalse(service.isHostDown());
+    }
+
+    @Test
+    void timedOutRequestIsLeftToFinish() throws Exception {
+        FakeHost host = new FakeHost();
+        host.delayMs = 300;
+        HostAuthorizationService service = service(host);
+
+        HostAuthorizationDecision decision = service.authorize(request("ref-1"));
+
+        assertTrue(decision.isApproved());
+        assertTrue(decision.isOffline());
+        assertTrue(host.answered.await(2, TimeUnit.SECONDS));
+        assertEquals(1, host.interrupted.getCount());
+    }
+
+    @Test
+    void requestFindingEveryHostThreadBusyGoesOfflineRightAway() throws Exception {
+        FakeHost host = new FakeHost();
+        host.delayMs = 2000;
+        properties.setHostThreads(1);
+        HostAuthorizationService service = service(host);
+        properties.setHostTimeoutMs(5000);
+        Thread first = new Thread(() -> service.authorize(request("ref-1")));
+        first.start();
+        Thread.sleep(100);
+
+        long started = System.nanoTime();
+        HostAuthorizationDecision decision = service.authorize(request("ref-2"));
+
+        assertTrue(decision.isOffline());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+        assertFalse(service.isHostDown());
+    }
+
+    @Test
+    void timedOutApprovalTheHostAlreadyHoldsIsNotForwarded() throws Exception {
+        FakeHost host = new FakeHost();
+        host.delayMs = 5000;
+        host.holdsTimedOutAuthorizations = true;
+        HostAuthorizationService service = service(host);
+
+        service.authorize(request("ref-1"));
+        host.delayMs = 0;
+        service.finalizeTransaction("ref-1", true);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (service.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, service.getPendingCount());
+        assertTrue(host.forwarded.isEmpty());
+    }
+
+    @Test
+    void timedOutApprovalUnknownToTheHostIsForwarded() throws Exception {
+        FakeHost host = new FakeHost();
+        host.delayMs = 5000;
+        HostAuthorizationService service = service(host);
+
+        service.authorize(request("ref-1"));
+        service.finalizeTransaction("ref-1", true);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (service.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("ref-1"), host.forwarded);
+    }
+}
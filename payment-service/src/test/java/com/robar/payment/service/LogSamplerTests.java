@@ -0,0 +1,69 @@
+package com.robar.payment.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSamplerTests {
+
+    @Test
+    void burstIsPerTerminalAndCategory() {
+        LogSampler sampler = new LogSampler(2, 60_000);
+
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.STATUS));
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.STATUS));
+        assertFalse(sampler.allow("bar-1", LogSampler.Category.STATUS));
+
+        // Other categories and terminals have their own budget
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.COMMERCE));
+        assertTrue(sampler.allow("bar-2", LogSampler.Category.STATUS));
+    }
+
+    @Test
+    void newWindowStartsAfterTheWindowLength() throws InterruptedException {
+        LogSampler sampler = new LogSampler(1, 20);
+
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.TRANSACTION));
+        assertFalse(sampler.allow("bar-1", LogSampler.Category.TRANSACTION));
+        Thread.sleep(40);
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.TRANSACTION));
+    }
+
+    @Test
+    void suppressedLinesAreReportedWhenTheWindowClosesWithoutFurtherEvents() throws InterruptedException {
+        LogSampler sampler = new LogSampler(1, 20);
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.STATUS));
+        assertFalse(sampler.allow("bar-1", LogSampler.Category.STATUS));
+        assertFalse(sampler.allow("bar-1", LogSampler.Category.STATUS));
+
+        // Still inside the window
+        assertEquals(0, sampler.flush());
+        Thread.sleep(40);
+        assertEquals(2, sampler.flush());
+        assertEquals(0, sampler.flush(), "reported once");
+
+        // The flush started a fresh window
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.STATUS));
+    }
+
+    @Test
+    void forgottenTerminalStartsOver() {
+        LogSampler sampler = new LogSampler(1, 60_000);
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.STATUS));
+        assertFalse(sampler.allow("bar-1", LogSampler.Category.STATUS));
+
+        sampler.forget("bar-1");
+
+        assertEquals(0, sampler.flush());
+        assertTrue(sampler.allow("bar-1", LogSampler.Category.STATUS));
+    }
+
+    @Test
+    void unlimitedLetsEverythingThrough() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(LogSampler.UNLIMITED.allow("bar-1", LogSampler.Category.STATUS));
+        }
+    }
+}
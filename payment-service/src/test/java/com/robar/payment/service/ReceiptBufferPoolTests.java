@@ -0,0 +1,62 @@
+package com.robar.payment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ReceiptBufferPoolTests {
+
+    @Test
+    void releasedBufferIsResetAndReused() {
+        ReceiptBufferPool pool = new ReceiptBufferPool(2);
+        ReceiptBufferPool.Buffer buffer = pool.acquire();
+        buffer.append("line").newLine().append((byte) 0x1B, (byte) 0x40);
+        assertArrayEquals(new byte[] {'l', 'i', 'n', 'e', '\n', 0x1B, 0x40}, buffer.copy());
+
+        pool.release(buffer);
+        ReceiptBufferPool.Buffer again = pool.acquire();
+
+        assertSame(buffer, again);
+        assertEquals(0, again.size());
+    }
+
+    @Test
+    void oversizedBuffersAreNotKept() {
+        ReceiptBufferPool pool = new ReceiptBufferPool(2);
+        ReceiptBufferPool.Buffer buffer = pool.acquire();
+        buffer.append("x".repeat(70 * 1024));
+
+        pool.release(buffer);
+
+        assertNotSame(buffer, pool.acquire());
+    }
+
+    @Test
+    void fullPoolDropsExtraBuffers() {
+        ReceiptBufferPool pool = new ReceiptBufferPool(1);
+        ReceiptBufferPool.Buffer first = pool.acquire();
+        ReceiptBufferPool.Buffer second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(first, pool.acquire());
+        assertNotSame(second, pool.acquire());
+    }
+
+    @Test
+    void arrayExposesContentWithoutCopying() {
+        ReceiptBufferPool.Buffer buffer = new ReceiptBufferPool(1).acquire();
+        buffer.append("\u00e6\u00f8\u00e5");
+
+        byte[] expected = "\u00e6\u00f8\u00e5".getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, buffer.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], buffer.array()[i]);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.ReceiptData;
+import com.robar.payment.model.ReceiptFormat;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReceiptRendererTests {
+    private final ReceiptRenderer renderer = new ReceiptRenderer(32);
+
+    private static ReceiptData receipt(List<String> lines) {
+        return ReceiptData.builder()
+                .transactionId("pay-1")
+                .status(PaymentStatus.COMPLETED)
+                .amount("125.50")
+                .currency("DKK")
+                .timestamp(Instant.parse("2025-03-01T20:15:00Z"))
+                .lines(lines)
+                .build();
+    }
+
+    private String render(ReceiptData receipt, ReceiptFormat format) {
+        ReceiptBufferPool.Buffer buffer = new ReceiptBufferPool(1).acquire();
+        renderer.render(receipt, format, buffer);
+        return new String(buffer.copy(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void textPutsTerminalLinesFirstAndAlignsColumns() {
+        String text = render(receipt(List.of("ROBAR BAR", "VISA **** 1234")), ReceiptFormat.TEXT);
+        String[] lines = text.split("\n");
+
+        assertEquals("ROBAR BAR", lines[2]);
+        assertEquals("VISA **** 1234", lines[3]);
+        assertTrue(text.contains("TOTAL" + " ".repeat(32 - 5 - 10) + "125.50 DKK"));
+        for (String line : lines) {
+            assertTrue(line.length() <= 32, line);
+        }
+    }
+
+    @Test
+    void htmlEscapesTerminalContent() {
+        String html = render(receipt(List.of("<script>alert(\"x\")</script> & co")), ReceiptFormat.HTML);
+
+        assertTrue(html.startsWith("<!DOCTYPE html>"));
+        assertTrue(html.contains("&lt;script&gt;alert(&quot;x&quot;)&lt;/script&gt; &amp; co"));
+        assertFalse(html.contains("<script>"));
+    }
+
+    @Test
+    void escPosStartsWithInitAndEndsWithCut() {
+        ReceiptBufferPool.Buffer buffer = new ReceiptBufferPool(1).acquire();
+        renderer.render(receipt(null), ReceiptFormat.ESCPOS, buffer);
+        byte[] bytes = buffer.copy();
+
+        assertEquals(0x1B, bytes[0]);
+        assertEquals(0x40, bytes[1]);
+        assertEquals(0x1D, bytes[bytes.length - 3]);
+        assertEquals(0x56, bytes[bytes.length - 2]);
+        assertEquals(0x00, bytes[bytes.length - 1]);
+    }
+
+    @Test
+    void missingAmountRendersAsDash() {
+        ReceiptData receipt = receipt(null);
+        receipt.setAmount(null);
+        receipt.setCurrency(null);
+
+        assertTrue(render(receipt, ReceiptFormat.TEXT).contains("TOTAL" + " ".repeat(32 - 6) + "-"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.ReceiptFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReceiptStoreTests {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void identicalContentIsStoredOnce() throws Exception {
+        ReceiptStore store = new ReceiptStore(root);
+        byte[] content = "RECEIPT\nTOTAL 125.00 DKK\n".getBytes(StandardCharsets.UTF_8);
+        // Only the first length bytes of a pooled buffer count
+        byte[] padded = new byte[content.length + 16];
+        System.arraycopy(content, 0, padded, 0, content.length);
+
+        String first = store.put("pay-1", ReceiptFormat.TEXT, content, content.length);
+        String second = store.put("pay-2", ReceiptFormat.TEXT, padded, content.length);
+        store.close();
+
+        assertEquals(first, second);
+        assertArrayEquals(content, store.read(first));
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(p -> p.toString().endsWith(".gz")).count());
+        }
+    }
+
+    @Test
+    void indexSurvivesRestartWithSpacesInIds() throws Exception {
+        byte[] content = "receipt".getBytes(StandardCharsets.UTF_8);
+        ReceiptStore store = new ReceiptStore(root);
+        String hash = store.put("pay 1 with spaces", ReceiptFormat.HTML, content, content.length);
+        store.close();
+
+        ReceiptStore reopened = new ReceiptStore(root);
+        assertEquals(hash, reopened.getHash("pay 1 with spaces", ReceiptFormat.HTML));
+        assertNull(reopened.getHash("pay 1 with spaces", ReceiptFormat.TEXT));
+        reopened.close();
+    }
+
+    @Test
+    void rejectsIdsThatWouldBreakTheIndex() throws Exception {
+        ReceiptStore store = new ReceiptStore(root);
+        byte[] content = {1};
+        assertThrows(IllegalArgumentException.class, () -> store.put("pay\t1", ReceiptFormat.TEXT, content, 1));
+        assertThrows(IllegalArgumentException.class, () -> store.put("pay\n1", ReceiptFormat.TEXT, content, 1));
+        store.close();
+    }
+
+    @Test
+    void unknownHashReadsAsNull() throws Exception {
+        ReceiptStore store = new ReceiptStore(root);
+        assertNull(store.read("00ff00ff"));
+        store.close();
+    }
+}
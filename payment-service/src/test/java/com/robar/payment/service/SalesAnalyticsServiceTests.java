@@ -0,0 +1,85 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.AnalyticsProperties;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.SalesStats;
+import com.robar.payment.model.TransactionKind;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SalesAnalyticsServiceTests {
+    private final TransactionRegistry registry = new TransactionRegistry();
+    private final SalesAnalyticsService analytics = new SalesAnalyticsService(new AnalyticsProperties(), registry);
+
+    // Terminal result, seen by the registry before the analytics like in the application
+    private void result(String paymentId, PaymentStatus status, TransactionKind kind, String amount, String currency) {
+        PaymentStatusEvent event = new PaymentStatusEvent(paymentId, status, "ok", "bar-1", new BigDecimal(amount),
+                kind, null, currency);
+        registry.onPaymentStatus(event);
+        analytics.onPaymentStatus(event);
+    }
+
+    @Test
+    void onlySaleResultsCountAsSales() {
+        result("p1", PaymentStatus.COMPLETED, TransactionKind.SALE, "45.00", "DKK");
+        result("p2", PaymentStatus.FAILED, TransactionKind.SALE, "20.00", "DKK");
+        result("a1", PaymentStatus.COMPLETED, TransactionKind.PREAUTHORIZATION, "300.00", "DKK");
+        result("i1", PaymentStatus.COMPLETED, TransactionKind.INCREMENT, "200.00", "DKK");
+        result("r1", PaymentStatus.COMPLETED, TransactionKind.REFUND, "10.00", "DKK");
+
+        SalesStats total = analytics.getTotals(60).get(0);
+
+        assertEquals(2, total.getTransactions());
+        assertEquals(1, total.getApproved());
+        assertEquals(new BigDecimal("45.00"), total.getRevenue());
+    }
+
+    @Test
+    void replayedResultsAreNotCounted() {
+        result("p1", PaymentStatus.COMPLETED, TransactionKind.SALE, "45.00", "DKK");
+        PaymentStatusEvent replayed = new PaymentStatusEvent("replay-p2", PaymentStatus.COMPLETED,
+                "ok", "replay-bar-1", new BigDecimal("99.00"), TransactionKind.SALE, null, "DKK").asReplayed();
+        registry.onPaymentStatus(replayed);
+        analytics.onPaymentStatus(replayed);
+
+        SalesStats total = analytics.getTotals(60).get(0);
+
+        assertEquals(1, total.getTransactions());
+        assertEquals(new BigDecimal("45.00"), total.getRevenue());
+    }
+
+    @Test
+    void refundIsCountedAgainstTheSale() {
+        result("p1", PaymentStatus.COMPLETED, TransactionKind.SALE, "45.00", "DKK");
+        // The marker the payment service publishes once the terminal confirmed the refund
+        PaymentStatusEvent refunded = new PaymentStatusEvent("p1", PaymentStatus.PARTLY_REFUNDED, "REFUND r1", null,
+                new BigDecimal("15.00"), TransactionKind.SALE, null, "DKK");
+        registry.onPaymentStatus(refunded);
+        analytics.onPaymentStatus(refunded);
+
+        SalesStats total = analytics.getTotals(60).get(0);
+
+        assertEquals(1, total.getRefunds());
+        assertEquals(new BigDecimal("15.00"), total.getRefunded());
+        assertEquals(new BigDecimal("30.00"), total.getNetRevenue());
+    }
+
+    @Test
+    void currenciesAreKeptApart() {
+        result("p1", PaymentStatus.COMPLETED, TransactionKind.SALE, "45.00", "DKK");
+        result("p2", PaymentStatus.COMPLETED, TransactionKind.SALE, "1500", "JPY");
+        result("p3", PaymentStatus.COMPLETED, TransactionKind.SALE, "12.50", "EUR");
+
+        List<SalesStats> totals = analytics.getTotals(60);
+
+        assertEquals(List.of("DKK", "EUR", "JPY"), totals.stream().map(SalesStats::getCurrency).toList());
+        assertEquals(new BigDecimal("45.00"), totals.get(0).getRevenue());
+        assertEquals(new BigDecimal("1500"), totals.get(2).getRevenue());
+        assertEquals(3, analytics.getTerminalTotals(60).size());
+        assertEquals(5, analytics.getPerMinute("bar-1", "JPY", 5).size());
+    }
+}
@@ -0,0 +1,45 @@
+package com.robar.payment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SalesRingTests {
+
+    @Test
+    void countsArePerMinuteAndOldestFirst() {
+        SalesRing ring = new SalesRing(5);
+        ring.recordSale(100, true, 4500);
+        ring.recordSale(100, false, 4500);
+        ring.recordSale(102, true, 12000);
+        ring.recordRefund(102, 2000);
+
+        List<SalesRing.Minute> minutes = ring.read(102, 3);
+
+        assertEquals(3, minutes.size());
+        assertEquals(100, minutes.get(0).getEpochMinute());
+        assertEquals(1, minutes.get(0).getApproved());
+        assertEquals(1, minutes.get(0).getDeclined());
+        assertEquals(4500, minutes.get(0).getRevenueMinor());
+        assertEquals(0, minutes.get(1).getApproved());
+        assertEquals(12000, minutes.get(2).getRevenueMinor());
+        assertEquals(2000, minutes.get(2).getRefundedMinor());
+    }
+
+    @Test
+    void bucketIsReusedOnceTheRingWrapsAround() {
+        SalesRing ring = new SalesRing(5);
+        ring.recordSale(100, true, 4500);
+        ring.recordSale(105, true, 1000);
+
+        assertEquals(1000, ring.read(105, 1).get(0).getRevenueMinor());
+        // Minute 100 shared the bucket and is gone
+        assertEquals(0, ring.read(105, 5).stream().filter(m -> m.getEpochMinute() == 100).count());
+
+        // Late results older than the ring are dropped rather than mixed into a newer minute
+        ring.recordSale(100, true, 9999);
+        assertEquals(1000, ring.read(105, 1).get(0).getRevenueMinor());
+    }
+}
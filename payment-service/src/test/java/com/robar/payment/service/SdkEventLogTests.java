@@ -0,0 +1,57 @@
+package com.robar.payment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SdkEventLogTests {
+
+    @Test
+    void recordsRoundTripWithTimingAndNullFields() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start;
+        try (SdkEventLog.Writer writer = new SdkEventLog.Writer(out, "bar-1", 1_700_000_000_000L)) {
+            start = System.nanoTime();
+            writer.append(SdkEventKind.STATUS, start + 1_000, -30, "Configuration required", null);
+            writer.append(SdkEventKind.PAYMENT_COMPLETED, start + 2_500_000, 0, null, "pay-1", "125.50", "DKK");
+        }
+
+        try (SdkEventLog.Reader reader = new SdkEventLog.Reader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("bar-1", reader.getTerminalId());
+            assertEquals(1_700_000_000_000L, reader.getStartEpochMillis());
+
+            SdkEventRecord status = reader.next();
+            assertEquals(SdkEventKind.STATUS, status.getKind());
+            assertEquals(-30, status.getStatus());
+            assertEquals("Configuration required", status.field(0));
+            assertNull(status.field(1));
+
+            SdkEventRecord completed = reader.next();
+            assertEquals(SdkEventKind.PAYMENT_COMPLETED, completed.getKind());
+            assertEquals(2_499_000, completed.getNanos() - status.getNanos());
+            assertEquals("125.50", completed.field(2));
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void truncatedLastRecordEndsTheLog() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SdkEventLog.Writer writer = new SdkEventLog.Writer(out, "bar-1", 0)) {
+            writer.append(SdkEventKind.PRINT, 0, "line one\nline two");
+            writer.append(SdkEventKind.PRINT, 0, "second receipt");
+        }
+        byte[] bytes = out.toByteArray();
+
+        try (SdkEventLog.Reader reader = new SdkEventLog.Reader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)))) {
+            assertEquals("line one\nline two", reader.next().field(0));
+            assertNull(reader.next());
+        }
+    }
+}
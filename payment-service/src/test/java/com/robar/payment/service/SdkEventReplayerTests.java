@@ -0,0 +1,65 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.TransactionKind;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SdkEventReplayerTests {
+
+    @TempDir
+    Path directory;
+
+    private final List<Object> published = new CopyOnWriteArrayList<>();
+
+    private Path recording() throws Exception {
+        Path file = directory.resolve("bar-1-20260101-120000-000.sdklog");
+        try (SdkEventLog.Writer writer = new SdkEventLog.Writer(file, "bar-1", 0)) {
+            writer.append(SdkEventKind.PRINT, 0, "**** ****", "pay-1");
+            writer.append(SdkEventKind.PAYMENT_COMPLETED, 0, "Approved", "pay-1", "12.50", "DKK", "SALE", null);
+            writer.append(SdkEventKind.PAYMENT_COMPLETED, 0, "Approved", "ref-1", "5.00", "DKK", "REFUND", "pay-1");
+            writer.append(SdkEventKind.TRANSACTION_QUERY, 0, "pay-1", "AUTHORIZED", "12.50");
+        }
+        return file;
+    }
+
+    private SdkEventReplayer replayer(boolean rewriteIds) {
+        PaymentEventListener listener = new PaymentEventListener(published::add, null);
+        listener.setTerminalId("replay-bar-1");
+        return rewriteIds
+                ? new SdkEventReplayer(listener, false, paymentId -> "replay-" + paymentId)
+                : new SdkEventReplayer(listener, false);
+    }
+
+    private <T> List<T> published(Class<T> type) {
+        return published.stream().filter(type::isInstance).map(type::cast).toList();
+    }
+
+    @Test
+    void rewritesEveryPaymentIdOnTheWayIn() throws Exception {
+        Map<String, Integer> counts = new ConcurrentHashMap<>();
+        replayer(true).replay(recording(), counts);
+
+        List<PaymentStatusEvent> results = published(PaymentStatusEvent.class);
+        assertEquals("replay-pay-1", results.get(0).getPaymentId());
+        assertEquals("replay-ref-1", results.get(1).getPaymentId());
+        assertEquals(TransactionKind.REFUND, results.get(1).getKind());
+        assertEquals("replay-pay-1", results.get(1).getOriginalPaymentId());
+        assertEquals("replay-pay-1", published(ReceiptCapturedEvent.class).get(0).getReceipt().getTransactionId());
+        assertEquals("replay-pay-1", published(TerminalQueryResultEvent.class).get(0).getTransactions().get(0).getTransactionId());
+    }
+
+    @Test
+    void keepsRecordedIdsUnlessAskedToRewrite() throws Exception {
+        replayer(false).replay(recording(), new ConcurrentHashMap<>());
+
+        assertEquals("pay-1", published(PaymentStatusEvent.class).get(0).getPaymentId());
+    }
+}
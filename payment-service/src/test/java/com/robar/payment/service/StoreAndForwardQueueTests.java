@@ -0,0 +1,130 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.OfflineAuthorization;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StoreAndForwardQueueTests {
+    private static final Instant CREATED = Instant.parse("2025-03-01T20:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private static OfflineAuthorization authorization(String reference) {
+        return OfflineAuthorization.builder()
+                .reference(reference)
+                .terminalId("t1")
+                .amount(new BigDecimal("125.50"))
+                .currency("DKK")
+                .authCode("Y10001")
+                .createdAt(CREATED)
+                .build();
+    }
+
+    @Test
+    void pendingEntriesSurviveRestartWithTheirFlags() throws Exception {
+        StoreAndForwardQueue queue = new StoreAndForwardQueue(directory);
+        queue.enqueue(authorization("ref-1"));
+        queue.enqueue(authorization("ref-2").toBuilder().pendingOnline(true).build());
+        queue.markFinalized("ref-1");
+        queue.close();
+
+        StoreAndForwardQueue reopened = new StoreAndForwardQueue(directory);
+        List<OfflineAuthorization> ready = reopened.peekReady(10, CREATED.plusSeconds(1));
+        reopened.close();
+
+        assertEquals(2, ready.size());
+        assertEquals("ref-1", ready.get(0).getReference());
+        assertTrue(ready.get(0).isFinalized());
+        assertFalse(ready.get(0).isPendingOnline());
+        assertEquals(new BigDecimal("125.50"), ready.get(0).getAmount());
+        assertEquals(CREATED, ready.get(0).getCreatedAt());
+        assertFalse(ready.get(1).isFinalized());
+        assertTrue(ready.get(1).isPendingOnline());
+    }
+
+    @Test
+    void acknowledgedEntriesAreNotReplayed() throws Exception {
+        StoreAndForwardQueue queue = new StoreAndForwardQueue(directory);
+        queue.enqueue(authorization("ref-1"));
+        queue.enqueue(authorization("ref-2"));
+        queue.acknowledge(List.of("ref-1", "unknown"));
+        queue.close();
+
+        StoreAndForwardQueue reopened = new StoreAndForwardQueue(directory);
+        assertEquals(1, reopened.size());
+        assertEquals("ref-2", reopened.peekReady(10, CREATED.plusSeconds(1)).get(0).getReference());
+        reopened.close();
+    }
+
+    @Test
+    void unfinalizedEntriesWaitForTheCutoff() throws Exception {
+        StoreAndForwardQueue queue = new StoreAndForwardQueue(directory);
+        queue.enqueue(authorization("ref-1"));
+        queue.enqueue(authorization("ref-2"));
+        queue.markFinalized("ref-2");
+
+        List<OfflineAuthorization> ready = queue.peekReady(10, CREATED);
+        queue.close();
+
+        assertEquals(1, ready.size());
+        assertEquals("ref-2", ready.get(0).getReference());
+    }
+
+    @Test
+    void compactionRewritesJournalWithOnlyPendingEntries() throws Exception {
+        StoreAndForwardQueue queue = new StoreAndForwardQueue(directory, 2);
+        queue.enqueue(authorization("ref-1"));
+        queue.enqueue(authorization("ref-2"));
+        queue.enqueue(authorization("ref-3").toBuilder().pendingOnline(true).build());
+        queue.markFinalized("ref-3");
+        queue.acknowledge(List.of("ref-1", "ref-2"));
+        // Still appending to the compacted journal
+        queue.enqueue(authorization("ref-4"));
+        queue.close();
+
+        List<String> lines = Files.readAllLines(directory.resolve("journal.log"), StandardCharsets.UTF_8);
+        assertEquals(List.of("E|ref-3|t1|125.50|DKK|Y10001|" + CREATED.toEpochMilli(), "P|ref-3", "F|ref-3",
+                "E|ref-4|t1|125.50|DKK|Y10001|" + CREATED.toEpochMilli()), lines);
+
+        StoreAndForwardQueue reopened = new StoreAndForwardQueue(directory);
+        List<OfflineAuthorization> ready = reopened.peekReady(10, CREATED.plusSeconds(1));
+        reopened.close();
+        assertEquals(2, ready.size());
+        assertTrue(ready.get(0).isFinalized());
+        assertTrue(ready.get(0).isPendingOnline());
+    }
+
+    @Test
+    void malformedRecordsAreSkipped() throws Exception {
+        Files.writeString(directory.resolve("journal.log"), String.join("\n",
+                "E|bad-amount|t1|12,50|DKK|Y10001|1740859200000",
+                "E|bad-time|t1|12.50|DKK|Y10001|yesterday",
+                "E|torn|t1|12.5",
+                "",
+                "X|unknown",
+                "F",
+                "E|ok|t1|12.50|DKK|Y10001|1740859200000",
+                "F|ok",
+                "E|torn-at-end|t1|1") + "\n", StandardCharsets.UTF_8);
+
+        StoreAndForwardQueue queue = new StoreAndForwardQueue(directory);
+        List<OfflineAuthorization> ready = queue.peekReady(10, Instant.EPOCH);
+        queue.close();
+
+        assertEquals(1, queue.size());
+        assertEquals("ok", ready.get(0).getReference());
+        assertEquals(new BigDecimal("12.50"), ready.get(0).getAmount());
+    }
+}
@@ -0,0 +1,235 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.TabProperties;
+import com.robar.payment.config.TerminalLaneProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.OpenTabRequest;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TabState;
+import com.robar.payment.model.TabSummary;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TransactionKind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TabServiceTests {
+    private final TabProperties properties = new TabProperties();
+    private final List<Submitted> submitted = new ArrayList<>();
+    private TabService service;
+
+    private static class Submitted {
+        final TransactionKind kind;
+        final CompletableFuture<PaymentStatusEvent> result = new CompletableFuture<>();
+
+        Submitted(TransactionKind kind) {
+            this.kind = kind;
+        }
+
+        void complete(PaymentStatus status) {
+            result.complete(new PaymentStatusEvent("pay-1", status, status.name(), "bar-1", null, kind, null));
+        }
+    }
+
+    // Hands every operation to the test instead of a terminal
+    private class FakeDispatcher extends TerminalDispatcher {
+        FakeDispatcher() {
+            super(null, null, new TerminalLaneProperties());
+        }
+
+        @Override
+        public CompletableFuture<PaymentStatusEvent> submit(String terminalId, OperationPriority priority, TransactionKind kind,
+                                                            String originalPaymentId, String description,
+                                                            Consumer<TerminalConnection> operation) {
+            Submitted operationSubmitted = new Submitted(kind);
+            synchronized (submitted) {
+                submitted.add(operationSubmitted);
+            }
+            return operationSubmitted.result;
+        }
+    }
+
+    private static class IdleFactory extends TerminalConnectionFactory {
+        IdleFactory() {
+            super(event -> { }, null, new RecordingProperties(), new LoggingProperties(), null);
+        }
+
+        @Override
+        public TerminalConnection create(TerminalDefinition definition) {
+            return new TerminalConnection(definition, new PaymentEventListener(event -> { }, null));
+        }
+    }
+
+    private TabService service() {
+        VerifoneProperties verifoneProperties = new VerifoneProperties();
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+        terminal.setId("bar-1");
+        terminal.setAddress("10.0.0.1");
+        venue.getTerminals().add(terminal);
+        verifoneProperties.setVenues(List.of(venue));
+        TerminalRegistry registry = new TerminalRegistry(new IdleFactory(), new VerifoneConfig(verifoneProperties), event -> { }, new ClusterProperties());
+        service = new TabService(properties, registry, new FakeDispatcher());
+        return service;
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    private Submitted last() {
+        synchronized (submitted) {
+            return submitted.get(submitted.size() - 1);
+        }
+    }
+
+    // Opens a tab with 300.00 pre-authorized
+    private String openTab() {
+        OpenTabRequest request = new OpenTabRequest();
+        request.setName("Table 4");
+        request.setVenueId("main-bar");
+        request.setTerminalId("bar-1");
+        request.setPreAuthAmount(new BigDecimal("300.00"));
+        String tabId = service.openTab(request).getTabId();
+        last().complete(PaymentStatus.COMPLETED);
+        assertEquals(TabState.OPEN, service.getTab(tabId).getState());
+        return tabId;
+    }
+
+    @Test
+    void roundOverTheAuthorizationReturnsBeforeTheIncrementIsAnswered() {
+        service();
+        String tabId = openTab();
+
+        TabSummary summary = service.addRound(tabId, new BigDecimal("350.00"));
+
+        assertEquals(TransactionKind.INCREMENT, last().kind);
+        assertEquals(new BigDecimal("350.00"), summary.getConsumed());
+        assertEquals(new BigDecimal("300.00"), summary.getAuthorized());
+        // The tab is not held while the terminal works on the increase
+        assertEquals(new BigDecimal("400.00"), service.addRound(tabId, new BigDecimal("50.00")).getConsumed());
+        assertEquals(2, submitted.size());
+
+        last().complete(PaymentStatus.COMPLETED);
+        assertEquals(new BigDecimal("500.00"), service.getTab(tabId).getAuthorized());
+        assertEquals(2, service.getTab(tabId).getRounds());
+    }
+
+    @Test
+    void declinedIncrementRollsBackUncoveredRounds() {
+        service();
+        String tabId = openTab();
+        service.addRound(tabId, new BigDecimal("250.00"));
+        service.addRound(tabId, new BigDecimal("100.00"));
+        service.addRound(tabId, new BigDecimal("20.00"));
+
+        last().complete(PaymentStatus.FAILED);
+
+        TabSummary summary = service.getTab(tabId);
+        assertEquals(new BigDecimal("250.00"), summary.getConsumed());
+        assertEquals(1, summary.getRounds());
+        assertEquals(new BigDecimal("300.00"), summary.getAuthorized());
+        assertTrue(summary.getMessage().contains("2 rounds"), summary.getMessage());
+    }
+
+    @Test
+    void tipBeyondTheHeadroomRaisesTheAuthorization() {
+        service();
+        String tabId = openTab();
+        service.addRound(tabId, new BigDecimal("280.00"));
+        assertEquals(1, submitted.size());
+
+        service.setTip(tabId, new BigDecimal("40.00"));
+        assertEquals(TransactionKind.INCREMENT, last().kind);
+        last().complete(PaymentStatus.COMPLETED);
+
+        TabSummary summary = service.getTab(tabId);
+        assertEquals(new BigDecimal("500.00"), summary.getAuthorized());
+        assertEquals(new BigDecimal("40.00"), summary.getTip());
+    }
+
+    @Test
+    void tabIsNotCapturedWhileAnIncrementIsPending() {
+        service();
+        String tabId = openTab();
+        service.addRound(tabId, new BigDecimal("350.00"));
+
+        TabSummary summary = service.closeTab(tabId);
+
+        assertEquals(TabState.OPEN, summary.getState());
+        assertEquals(2, submitted.size());
+    }
+
+    @Test
+    void failedTabIsDroppedAfterTheRetention() throws Exception {
+        properties.setFailedTabRetentionMs(50);
+        service();
+        OpenTabRequest request = new OpenTabRequest();
+        request.setTerminalId("bar-1");
+        String tabId = service.openTab(request).getTabId();
+
+        last().complete(PaymentStatus.FAILED);
+        assertEquals(TabState.FAILED, service.getTab(tabId).getState());
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!service.getTabs(null).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThrows(IllegalArgumentException.class, () -> service.getTab(tabId));
+    }
+
+    @Test
+    void roundsAndTipsMustBePositive() {
+        service();
+        String tabId = openTab();
+
+        assertThrows(IllegalArgumentException.class, () -> service.addRound(tabId, null));
+        assertThrows(IllegalArgumentException.class, () -> service.addRound(tabId, new BigDecimal("-20.00")));
+        assertThrows(IllegalArgumentException.class, () -> service.setTip(tabId, BigDecimal.ZERO));
+        assertEquals(new BigDecimal("0.00"), service.getTab(tabId).getConsumed());
+    }
+
+    @Test
+    void preAuthorizationApprovedAfterTheLaneGaveUpIsVoided() {
+        service();
+        OpenTabRequest request = new OpenTabRequest();
+        request.setTerminalId("bar-1");
+        String tabId = service.openTab(request).getTabId();
+        last().result.completeExceptionally(new TimeoutException());
+        assertEquals(TabState.FAILED, service.getTab(tabId).getState());
+
+        // A tab opened since then takes its own result
+        String openTabId = openTab();
+        service.onPaymentStatus(new PaymentStatusEvent("pay-1", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("300.00"), TransactionKind.PREAUTHORIZATION, null));
+        assertEquals(2, submitted.size());
+
+        service.onPaymentStatus(new PaymentStatusEvent("late-pay", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("300.00"), TransactionKind.PREAUTHORIZATION, null));
+        assertEquals(TransactionKind.VOID, last().kind);
+        assertEquals(TabState.OPEN, service.getTab(openTabId).getState());
+
+        // Voided once only
+        service.onPaymentStatus(new PaymentStatusEvent("late-pay", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("300.00"), TransactionKind.PREAUTHORIZATION, null));
+        assertEquals(3, submitted.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.BasketLineItem;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalBasketTests {
+
+    private static BasketLineItem item(String lineId, int quantity) {
+        return new BasketLineItem(lineId, "SKU-" + lineId, "Beer", quantity, new BigDecimal("45.00"));
+    }
+
+    @Test
+    void addThenRemoveBeforeFlushSendsNothing() {
+        TerminalBasket basket = new TerminalBasket("b1", "t1");
+        basket.put(item("1", 1));
+        basket.remove("1");
+
+        assertTrue(basket.drainDeltas().isEmpty());
+    }
+
+    @Test
+    void repeatedChangesCollapseIntoOneDelta() {
+        TerminalBasket basket = new TerminalBasket("b1", "t1");
+        basket.put(item("1", 1));
+        basket.drainDeltas();
+
+        basket.put(item("1", 2));
+        basket.put(item("1", 3));
+        List<BasketDelta> deltas = basket.drainDeltas();
+
+        assertEquals(1, deltas.size());
+        assertEquals(BasketDelta.Type.UPDATE, deltas.get(0).getType());
+        assertEquals(3, deltas.get(0).getItem().getQuantity());
+    }
+
+    @Test
+    void markUnsyncedRemovesSentLinesBeforeResending() {
+        TerminalBasket basket = new TerminalBasket("b1", "t1");
+        basket.put(item("1", 1));
+        basket.put(item("2", 2));
+        basket.drainDeltas();
+
+        basket.markUnsynced();
+        List<BasketDelta> deltas = basket.drainDeltas();
+
+        assertEquals(4, deltas.size());
+        assertTrue(deltas.subList(0, 2).stream().allMatch(d -> d.getType() == BasketDelta.Type.REMOVE));
+        assertTrue(deltas.subList(2, 4).stream().allMatch(d -> d.getType() == BasketDelta.Type.ADD));
+        assertEquals(new BigDecimal("135.00"), basket.total());
+    }
+
+    @Test
+    void lineRemovedBeforeResyncIsStillClearedFromTerminal() {
+        TerminalBasket basket = new TerminalBasket("b1", "t1");
+        basket.put(item("1", 1));
+        basket.put(item("2", 1));
+        basket.drainDeltas();
+
+        basket.markUnsynced();
+        basket.remove("2");
+        List<BasketDelta> deltas = basket.drainDeltas();
+
+        assertEquals(3, deltas.size());
+        assertEquals(BasketDelta.Type.REMOVE, deltas.get(0).getType());
+        assertEquals(BasketDelta.Type.REMOVE, deltas.get(1).getType());
+        assertEquals(BasketDelta.Type.ADD, deltas.get(2).getType());
+        assertEquals("1", deltas.get(2).getItem().getLineId());
+        assertTrue(basket.drainDeltas().isEmpty());
+    }
+}
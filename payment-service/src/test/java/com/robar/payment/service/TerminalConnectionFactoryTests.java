@@ -0,0 +1,77 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.model.TerminalDefinition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalConnectionFactoryTests {
+
+    @TempDir
+    Path directory;
+
+    private TerminalConnectionFactory factory;
+
+    private TerminalConnectionFactory factory() {
+        RecordingProperties recordingProperties = new RecordingProperties();
+        recordingProperties.setEnabled(true);
+        recordingProperties.setDirectory(directory.toString());
+        factory = new TerminalConnectionFactory(event -> { }, null, recordingProperties, new LoggingProperties(), null);
+        return factory;
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (factory != null) {
+            factory.shutdown();
+        }
+    }
+
+    private List<Path> recordings() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @Test
+    void recordingRunsFromConnectToTeardown() throws Exception {
+        TerminalConnection connection = factory().create(TerminalDefinition.builder().terminalId("bar-1").build());
+        assertTrue(recordings().isEmpty(), "nothing recorded before the terminal connects");
+
+        // What connect() does before the SDK is initialized
+        connection.getEventListener().startRecording();
+        assertEquals(1, recordings().size());
+
+        connection.tearDown();
+        try (SdkEventLog.Reader reader = new SdkEventLog.Reader(recordings().get(0))) {
+            assertEquals("bar-1", reader.getTerminalId());
+        }
+
+        Thread.sleep(2);
+        connection.getEventListener().startRecording();
+        assertEquals(2, recordings().size(), "a reconnect starts a new recording");
+    }
+
+    @Test
+    void removingTheTerminalClosesItsRecording() throws Exception {
+        TerminalConnection connection = factory().create(TerminalDefinition.builder().terminalId("bar-1").build());
+        connection.getEventListener().startRecording();
+
+        factory.onTerminalRemoved(new TerminalRemovedEvent("bar-1", false));
+
+        // Closed - the header is flushed to disk
+        try (SdkEventLog.Reader reader = new SdkEventLog.Reader(recordings().get(0))) {
+            assertEquals("bar-1", reader.getTerminalId());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.TerminalLaneProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TransactionKind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalDispatcherTests {
+    private static final String TERMINAL = "bar-1";
+
+    private final TerminalResultTracker tracker = new TerminalResultTracker();
+    private final TerminalLaneProperties properties = new TerminalLaneProperties();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private TerminalDispatcher dispatcher;
+
+    // Reports the aborted transaction as failed, shortly after the abort like a real terminal
+    private class AbortingConnection extends TerminalConnection {
+        AbortingConnection(TerminalDefinition definition, PaymentEventListener listener) {
+            super(definition, listener);
+        }
+
+        @Override
+        public void abortTransaction() {
+            started.add("abort");
+            CompletableFuture.runAsync(() -> report("aborted", PaymentStatus.FAILED, TransactionKind.SALE, null),
+                    CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private class AbortingFactory extends TerminalConnectionFactory {
+        AbortingFactory() {
+            super(event -> { }, null, new RecordingProperties(), new LoggingProperties(), null);
+        }
+
+        @Override
+        public TerminalConnection create(TerminalDefinition definition) {
+            return new AbortingConnection(definition, new PaymentEventListener(event -> { }, null));
+        }
+    }
+
+    private TerminalDispatcher dispatcher() {
+        VerifoneProperties verifoneProperties = new VerifoneProperties();
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+        terminal.setId(TERMINAL);
+        terminal.setAddress("10.0.0.1");
+        venue.getTerminals().add(terminal);
+        verifoneProperties.setVenues(List.of(venue));
+        TerminalRegistry registry = new TerminalRegistry(new AbortingFactory(), new VerifoneConfig(verifoneProperties), event -> { }, new ClusterProperties());
+        dispatcher = new TerminalDispatcher(registry, tracker, properties);
+        return dispatcher;
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private void report(String paymentId, PaymentStatus status, TransactionKind kind, String originalPaymentId) {
+        tracker.onPaymentStatus(new PaymentStatusEvent(paymentId, status, "ok", TERMINAL, null, kind, originalPaymentId));
+    }
+
+    // Completes as soon as it is started
+    private CompletableFuture<PaymentStatusEvent> submitCompleting(TerminalDispatcher dispatcher, OperationPriority priority,
+                                                                   TransactionKind kind, String original, String name) {
+        return dispatcher.submit(TERMINAL, priority, kind, original, name, t -> {
+            started.add(name);
+            report(name, PaymentStatus.COMPLETED, kind, original);
+        });
+    }
+
+    // Runs until the test reports its result
+    private CompletableFuture<PaymentStatusEvent> submitBlocking(TerminalDispatcher dispatcher, CountDownLatch running) {
+        return dispatcher.submit(TERMINAL, OperationPriority.SALE, TransactionKind.SALE, null, "blocker", t -> {
+            started.add("blocker");
+            running.countDown();
+        });
+    }
+
+    @Test
+    void higherPriorityOperationsOvertakeQueuedSales() throws Exception {
+        TerminalDispatcher dispatcher = dispatcher();
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<PaymentStatusEvent> blocker = submitBlocking(dispatcher, running);
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+
+        CompletableFuture<PaymentStatusEvent> sale = submitCompleting(dispatcher, OperationPriority.SALE, TransactionKind.SALE, null, "sale");
+        CompletableFuture<PaymentStatusEvent> refund = submitCompleting(dispatcher, OperationPriority.REFUND, TransactionKind.REFUND, "p1", "refund");
+        CompletableFuture<PaymentStatusEvent> reversal = submitCompleting(dispatcher, OperationPriority.REVERSAL, TransactionKind.REVERSAL, "p2", "reversal");
+        assertEquals(3, dispatcher.getQueueDepth(TERMINAL));
+
+        report("blocker", PaymentStatus.COMPLETED, TransactionKind.SALE, null);
+        CompletableFuture.allOf(blocker, sale, refund, reversal).get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of("blocker", "reversal", "refund", "sale"), started);
+        assertEquals("refund", refund.get().getPaymentId());
+        assertTrue(dispatcher.awaitIdle(TERMINAL, System.nanoTime() + TimeUnit.SECONDS.toNanos(2)));
+    }
+
+    @Test
+    void queryRunsOnTheLaneAfterQueuedTransactions() throws Exception {
+        TerminalDispatcher dispatcher = dispatcher();
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<PaymentStatusEvent> blocker = submitBlocking(dispatcher, running);
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+
+        CompletableFuture<String> query = dispatcher.submitTask(TERMINAL, OperationPriority.QUERY, "query", t -> {
+            started.add("query");
+            return "answer";
+        });
+        CompletableFuture<String> skipped = dispatcher.submitTask(TERMINAL, OperationPriority.QUERY, "skipped", t -> {
+            started.add("skipped");
+            return "late";
+        });
+        CompletableFuture<PaymentStatusEvent> sale = submitCompleting(dispatcher, OperationPriority.SALE, TransactionKind.SALE, null, "sale");
+        // Caller gave up while it was queued
+        skipped.cancel(false);
+        assertFalse(dispatcher.isIdle(TERMINAL));
+
+        report("blocker", PaymentStatus.COMPLETED, TransactionKind.SALE, null);
+        assertEquals("answer", query.get(2, TimeUnit.SECONDS));
+        CompletableFuture.allOf(blocker, sale).get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of("blocker", "sale", "query"), started);
+        assertTrue(dispatcher.awaitIdle(TERMINAL, System.nanoTime() + TimeUnit.SECONDS.toNanos(2)));
+    }
+
+    @Test
+    void resultOfAnotherTransactionIsNotTaken() throws Exception {
+        TerminalDispatcher dispatcher = dispatcher();
+        CompletableFuture<PaymentStatusEvent> refund = dispatcher.submit(TERMINAL, OperationPriority.REFUND,
+                TransactionKind.REFUND, "p1", "refund", t -> {
+                    report("sale", PaymentStatus.COMPLETED, TransactionKind.SALE, null);
+                    report("other-refund", PaymentStatus.COMPLETED, TransactionKind.REFUND, "p2");
+                    report("refund", PaymentStatus.COMPLETED, TransactionKind.REFUND, "p1");
+                });
+
+        assertEquals("refund", refund.get(2, TimeUnit.SECONDS).getPaymentId());
+    }
+
+    @Test
+    void lateResultOfTimedOutOperationGoesToItsCaller() throws Exception {
+        properties.setResultTimeoutMs(100);
+        properties.setLateResultWaitMs(2000);
+        TerminalDispatcher dispatcher = dispatcher();
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<PaymentStatusEvent> timedOut = submitBlocking(dispatcher, running);
+        CompletableFuture<PaymentStatusEvent> next = submitCompleting(dispatcher, OperationPriority.SALE, TransactionKind.SALE, null, "next");
+
+        // The abort is reported as the late result of the timed out operation, not of the next one
+        PaymentStatusEvent late = timedOut.get(2, TimeUnit.SECONDS);
+        assertEquals("aborted", late.getPaymentId());
+        assertEquals(PaymentStatus.FAILED, late.getStatus());
+        assertEquals("next", next.get(2, TimeUnit.SECONDS).getPaymentId());
+        assertEquals(List.of("blocker", "abort", "next"), started);
+    }
+
+    @Test
+    void timedOutOperationWithoutLateResultFails() throws Exception {
+        properties.setResultTimeoutMs(100);
+        properties.setLateResultWaitMs(10);
+        TerminalDispatcher dispatcher = dispatcher();
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<PaymentStatusEvent> timedOut = submitBlocking(dispatcher, running);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> timedOut.get(2, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof TimeoutException);
+    }
+
+    @Test
+    void removingTheTerminalClosesItsLane() throws Exception {
+        TerminalDispatcher dispatcher = dispatcher();
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<PaymentStatusEvent> blocker = submitBlocking(dispatcher, running);
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+        CompletableFuture<PaymentStatusEvent> queued = submitCompleting(dispatcher, OperationPriority.SALE, TransactionKind.SALE, null, "queued");
+
+        dispatcher.onTerminalRemoved(new TerminalRemovedEvent(TERMINAL, false));
+
+        assertThrows(ExecutionException.class, () -> blocker.get(2, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> queued.get(2, TimeUnit.SECONDS));
+        assertFalse(started.contains("queued"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (laneThreadAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(laneThreadAlive(), "lane worker stopped");
+
+        // The terminal is still configured in this registry, so a later operation gets a fresh lane
+        CompletableFuture<PaymentStatusEvent> later = submitCompleting(dispatcher, OperationPriority.SALE, TransactionKind.SALE, null, "later");
+        assertEquals("later", later.get(2, TimeUnit.SECONDS).getPaymentId());
+    }
+
+    private static boolean laneThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Terminal-Lane-" + TERMINAL) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
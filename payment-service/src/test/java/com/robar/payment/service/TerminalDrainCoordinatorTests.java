@@ -0,0 +1,206 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.CardPrefetchProperties;
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.HistoryProperties;
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.OfflineProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.ShutdownProperties;
+import com.robar.payment.config.TerminalLaneProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TransactionKind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalDrainCoordinatorTests {
+    @TempDir
+    Path directory;
+
+    // Everything the drain does, in order
+    private final List<String> steps = new CopyOnWriteArrayList<>();
+    private final TerminalResultTracker tracker = new TerminalResultTracker();
+    private final ShutdownProperties properties = new ShutdownProperties();
+    private TerminalDispatcher dispatcher;
+    private TerminalOwnershipManager ownershipManager;
+    private LeaseStore leaseStore;
+    private HostAuthorizationService hostAuthorizationService;
+
+    private class ConnectedTerminal extends TerminalConnection {
+        ConnectedTerminal(TerminalDefinition definition) {
+            super(definition, new PaymentEventListener(event -> { }, null));
+        }
+
+        @Override
+        public boolean isTerminalInitialized() {
+            return true;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void endSession() {
+            steps.add("end session " + getTerminalId());
+        }
+
+        @Override
+        public void tearDown() {
+            steps.add("tear down " + getTerminalId());
+        }
+    }
+
+    private class ConnectedFactory extends TerminalConnectionFactory {
+        ConnectedFactory() {
+            super(event -> { }, null, new RecordingProperties(), new LoggingProperties(), null);
+        }
+
+        @Override
+        public TerminalConnection create(TerminalDefinition definition) {
+            return new ConnectedTerminal(definition);
+        }
+    }
+
+    private class RecordingHostAuthorization extends HostAuthorizationService {
+        RecordingHostAuthorization(OfflineProperties properties, CardPrefetchService cardPrefetchService) throws Exception {
+            super(null, properties, cardPrefetchService);
+        }
+
+        @Override
+        public void flushPending(long deadlineNanos) {
+            steps.add("forward offline authorizations");
+        }
+    }
+
+    private class RecordingHistoryWriter extends HistoryWriter {
+        RecordingHistoryWriter() {
+            super(new HistoryProperties(), null, null, null, null, null);
+        }
+
+        @Override
+        public boolean awaitFlushed(long deadlineNanos) {
+            steps.add("write history");
+            return true;
+        }
+    }
+
+    private TerminalDrainCoordinator coordinator() throws Exception {
+        VerifoneProperties verifoneProperties = new VerifoneProperties();
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        for (int i = 1; i <= 2; i++) {
+            VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+            terminal.setId("bar-" + i);
+            terminal.setAddress("10.0.0." + i);
+            venue.getTerminals().add(terminal);
+        }
+        verifoneProperties.setVenues(List.of(venue));
+        TerminalRegistry registry = new TerminalRegistry(new ConnectedFactory(), new VerifoneConfig(verifoneProperties), event -> { }, new ClusterProperties());
+        dispatcher = new TerminalDispatcher(registry, tracker, new TerminalLaneProperties());
+
+        ClusterProperties clusterProperties = new ClusterProperties();
+        clusterProperties.setEnabled(true);
+        clusterProperties.setNodeId("a");
+        clusterProperties.setAdvertisedUrl("http://a:8080");
+        leaseStore = new FileLeaseStore(directory.resolve("leases"));
+        ownershipManager = new TerminalOwnershipManager(clusterProperties, leaseStore, registry, dispatcher, 8080);
+        ownershipManager.rebalance();
+
+        OfflineProperties offlineProperties = new OfflineProperties();
+        offlineProperties.setQueueDirectory(directory.resolve("offline").toString());
+        CardPrefetchProperties prefetch = new CardPrefetchProperties();
+        prefetch.setEnabled(false);
+        hostAuthorizationService = new RecordingHostAuthorization(offlineProperties, new CardPrefetchService(null, prefetch));
+        return new TerminalDrainCoordinator(registry, dispatcher, ownershipManager, hostAuthorizationService,
+                new RecordingHistoryWriter(), properties);
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (ownershipManager != null) {
+            ownershipManager.shutdown();
+        }
+        if (hostAuthorizationService != null) {
+            hostAuthorizationService.shutdown();
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), message);
+    }
+
+    private boolean leased(String terminalId) {
+        return leaseStore.getLeases().containsKey(terminalId);
+    }
+
+    @Test
+    void runningPaymentFinishesBeforeItsTerminalGoesDownAndPendingStateIsFlushedLast() throws Exception {
+        TerminalDrainCoordinator coordinator = coordinator();
+        assertTrue(leased("bar-1") && leased("bar-2"));
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<PaymentStatusEvent> payment = dispatcher.submit("bar-1", OperationPriority.SALE,
+                TransactionKind.SALE, null, "sale", t -> running.countDown());
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+
+        Thread drain = new Thread(coordinator::drain);
+        drain.start();
+
+        // The idle terminal goes down and is handed over while the payment still runs
+        await(() -> steps.contains("tear down bar-2") && !leased("bar-2"), "bar-2 drained and released");
+        assertThrows(IllegalStateException.class, () -> dispatcher.submit("bar-1", OperationPriority.SALE,
+                TransactionKind.SALE, null, "late sale", t -> { }));
+        assertFalse(steps.contains("end session bar-1"));
+        assertTrue(leased("bar-1"));
+
+        steps.add("payment done");
+        tracker.onPaymentStatus(new PaymentStatusEvent("pay-1", PaymentStatus.COMPLETED, "ok", "bar-1", null, TransactionKind.SALE, null));
+        drain.join(2000);
+
+        assertEquals(PaymentStatus.COMPLETED, payment.get(2, TimeUnit.SECONDS).getStatus());
+        assertFalse(leased("bar-1"));
+        int done = steps.indexOf("payment done");
+        assertTrue(steps.indexOf("end session bar-1") > done, steps.toString());
+        assertTrue(steps.indexOf("tear down bar-1") > steps.indexOf("end session bar-1"), steps.toString());
+        assertEquals(List.of("forward offline authorizations", "write history"), steps.subList(steps.size() - 2, steps.size()));
+    }
+
+    @Test
+    void paymentStillRunningAtTheTimeoutIsCutOff() throws Exception {
+        properties.setDrainTimeoutMs(100);
+        TerminalDrainCoordinator coordinator = coordinator();
+        CountDownLatch running = new CountDownLatch(1);
+        dispatcher.submit("bar-1", OperationPriority.SALE, TransactionKind.SALE, null, "sale", t -> running.countDown());
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+
+        coordinator.drain();
+
+        assertTrue(steps.contains("tear down bar-1"));
+        assertTrue(steps.contains("tear down bar-2"));
+        assertEquals("write history", steps.get(steps.size() - 1));
+    }
+}
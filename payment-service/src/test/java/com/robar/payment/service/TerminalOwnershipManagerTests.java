@@ -0,0 +1,286 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.TerminalLaneProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.ClusterNode;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TerminalLease;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalOwnershipManagerTests {
+    private static final List<String> TERMINALS = List.of("bar-1", "bar-2", "bar-3", "bar-4");
+
+    @TempDir
+    Path directory;
+
+    private final List<TerminalOwnershipManager> managers = new ArrayList<>();
+    private final Map<String, TerminalRegistry> registries = new ConcurrentHashMap<>();
+    // Connected terminals per node, as "node/terminal"
+    private final Set<String> connected = ConcurrentHashMap.newKeySet();
+
+    // Lease store that can be cut off, like a store the node lost its connection to
+    private static class FlakyLeaseStore implements LeaseStore {
+        private final LeaseStore delegate;
+        volatile boolean unreachable;
+
+        FlakyLeaseStore(LeaseStore delegate) {
+            this.delegate = delegate;
+        }
+
+        private void check() {
+            if (unreachable) {
+                throw new IllegalStateException("lease store unreachable");
+            }
+        }
+
+        @Override
+        public boolean tryAcquire(String terminalId, ClusterNode node, long ttlMs) {
+            check();
+            return delegate.tryAcquire(terminalId, node, ttlMs);
+        }
+
+        @Override
+        public void release(String terminalId, String nodeId) {
+            check();
+            delegate.release(terminalId, nodeId);
+        }
+
+        @Override
+        public Map<String, TerminalLease> getLeases() {
+            check();
+            return delegate.getLeases();
+        }
+
+        @Override
+        public void heartbeat(ClusterNode node, long ttlMs) {
+            check();
+            delegate.heartbeat(node, ttlMs);
+        }
+
+        @Override
+        public List<ClusterNode> getLiveNodes() {
+            check();
+            return delegate.getLiveNodes();
+        }
+
+        @Override
+        public void leave(String nodeId) {
+            check();
+            delegate.leave(nodeId);
+        }
+    }
+
+    private class TrackingConnection extends TerminalConnection {
+        private final String nodeId;
+
+        TrackingConnection(String nodeId, TerminalDefinition definition) {
+            super(definition, new PaymentEventListener(event -> { }, null));
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void connect() {
+            connected.add(nodeId + "/" + getTerminalId());
+        }
+
+        @Override
+        public void tearDown() {
+            connected.remove(nodeId + "/" + getTerminalId());
+        }
+    }
+
+    private class TrackingFactory extends TerminalConnectionFactory {
+        private final String nodeId;
+
+        TrackingFactory(String nodeId) {
+            super(event -> { }, null, new RecordingProperties(), new LoggingProperties(), null);
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public TerminalConnection create(TerminalDefinition definition) {
+            return new TrackingConnection(nodeId, definition);
+        }
+    }
+
+    private TerminalOwnershipManager node(String nodeId, LeaseStore store, long ttlMs, long safetyMarginMs) {
+        VerifoneProperties verifoneProperties = new VerifoneProperties();
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        for (int i = 0; i < TERMINALS.size(); i++) {
+            VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+            terminal.setId(TERMINALS.get(i));
+            terminal.setAddress("10.0.0." + (i + 1));
+            venue.getTerminals().add(terminal);
+        }
+        verifoneProperties.setVenues(List.of(venue));
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setNodeId(nodeId);
+        properties.setAdvertisedUrl("http://" + nodeId + ":8080");
+        properties.setLeaseTtlMs(ttlMs);
+        properties.setLeaseSafetyMarginMs(safetyMarginMs);
+        TerminalRegistry registry = new TerminalRegistry(new TrackingFactory(nodeId), new VerifoneConfig(verifoneProperties), event -> { }, properties);
+        registries.put(nodeId, registry);
+        TerminalDispatcher dispatcher = new TerminalDispatcher(registry, new TerminalResultTracker(), new TerminalLaneProperties());
+        TerminalOwnershipManager manager = new TerminalOwnershipManager(properties, store, registry, dispatcher, 8080);
+        managers.add(manager);
+        return manager;
+    }
+
+    @AfterEach
+    void shutdown() {
+        managers.forEach(TerminalOwnershipManager::shutdown);
+    }
+
+    private static Set<String> local(TerminalOwnershipManager manager) {
+        Set<String> local = new HashSet<>();
+        for (String terminalId : TERMINALS) {
+            if (manager.isLocal(terminalId)) {
+                local.add(terminalId);
+            }
+        }
+        return local;
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), message);
+    }
+
+    @Test
+    void joiningNodeGetsItsFairShare() throws Exception {
+        LeaseStore store = new FileLeaseStore(directory);
+        TerminalOwnershipManager a = node("a", store, 10_000, 3_000);
+        TerminalOwnershipManager b = node("b", store, 10_000, 3_000);
+
+        a.rebalance();
+        assertEquals(4, local(a).size());
+        await(() -> connected.size() == 4, "a connects every terminal");
+
+        // b only counts as live from its own first round, and every terminal is leased to a
+        b.rebalance();
+        assertTrue(local(b).isEmpty());
+        assertEquals("a", b.getRemoteOwner("bar-1").getOwnerNodeId());
+
+        a.rebalance();
+        b.rebalance();
+
+        assertEquals(2, local(a).size());
+        assertEquals(2, local(b).size());
+        Set<String> all = new HashSet<>(local(a));
+        all.addAll(local(b));
+        assertEquals(4, all.size(), "no terminal held by both");
+        for (String terminalId : local(b)) {
+            await(() -> connected.contains("b/" + terminalId) && !connected.contains("a/" + terminalId),
+                    terminalId + " moved from a to b");
+        }
+    }
+
+    @Test
+    void replacementPicksUpEachReleasedTerminalBetweenLeaseRounds() throws Exception {
+        LeaseStore store = new FileLeaseStore(directory);
+        TerminalOwnershipManager a = node("a", store, 10_000, 3_000);
+        TerminalOwnershipManager b = node("b", store, 10_000, 3_000);
+        a.rebalance();
+        b.rebalance();
+        assertTrue(local(b).isEmpty());
+
+        // Nothing released yet - the poll claims nothing
+        b.claimReleased();
+        assertTrue(local(b).isEmpty());
+
+        a.beginDrain();
+        a.handOver("bar-3");
+        b.claimReleased();
+
+        assertEquals(Set.of("bar-3"), local(b));
+        assertEquals("a", b.getRemoteOwner("bar-1").getOwnerNodeId());
+        await(() -> connected.contains("b/bar-3"), "b connects the released terminal");
+
+        for (String terminalId : List.of("bar-1", "bar-2", "bar-4")) {
+            a.handOver(terminalId);
+        }
+        b.claimReleased();
+        // a has left the cluster, so b's share is every terminal
+        assertEquals(4, local(b).size());
+    }
+
+    @Test
+    void nodeThatCannotRenewStopsDrivingItsTerminals() throws Exception {
+        FlakyLeaseStore store = new FlakyLeaseStore(new FileLeaseStore(directory));
+        TerminalOwnershipManager a = node("a", store, 400, 300);
+
+        a.rebalance();
+        assertTrue(a.isLocal("bar-1"));
+        await(() -> connected.size() == 4, "a connects every terminal");
+
+        store.unreachable = true;
+        Thread.sleep(150);
+
+        // Past ttl minus the margin: no longer trusted, but not free for a peer either
+        assertFalse(a.isLocal("bar-1"));
+        assertTrue(a.isFenced("bar-1"));
+        assertNull(a.getRemoteOwner("bar-1"));
+
+        a.checkLeases();
+        await(connected::isEmpty, "every terminal disconnected");
+        await(() -> !a.isFenced("bar-1"), "fence lifted once the disconnect is done");
+        assertFalse(a.isLocal("bar-1"));
+    }
+
+    @Test
+    void heldTerminalIsReconnectedAfterAConfigChange() throws Exception {
+        TerminalOwnershipManager a = node("a", new FileLeaseStore(directory), 10_000, 3_000);
+        a.rebalance();
+        await(() -> connected.size() == 4, "a connects every terminal");
+
+        TerminalRegistry registry = registries.get("a");
+        List<TerminalDefinition> definitions = new ArrayList<>();
+        for (String terminalId : List.of("bar-1", "bar-2", "bar-3")) {
+            TerminalDefinition definition = registry.get(terminalId).getDefinition();
+            definitions.add(TerminalDefinition.builder()
+                    .venueId(definition.getVenueId())
+                    .terminalId(terminalId)
+                    .address("bar-1".equals(terminalId) ? "10.0.0.11" : definition.getAddress())
+                    .connectionType(definition.getConnectionType())
+                    .currency(definition.getCurrency())
+                    .initStrategy(definition.getInitStrategy())
+                    .build());
+        }
+        registry.apply(definitions);
+        // The registry only tears down in cluster mode
+        assertFalse(connected.contains("a/bar-1"));
+        assertFalse(connected.contains("a/bar-4"));
+
+        a.onTerminalRemoved(new TerminalRemovedEvent("bar-1", true));
+        a.onTerminalRemoved(new TerminalRemovedEvent("bar-4", false));
+
+        await(() -> connected.contains("a/bar-1"), "a reconnects the reconfigured terminal");
+        assertFalse(a.isLocal("bar-4"));
+        assertNull(new FileLeaseStore(directory).getLeases().get("bar-4"));
+    }
+}
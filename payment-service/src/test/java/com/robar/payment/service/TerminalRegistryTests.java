@@ -0,0 +1,193 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.InitStrategy;
+import com.robar.payment.model.TerminalDefinition;
+import com.robar.payment.model.TerminalState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalRegistryTests {
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    // Holds up teardowns while closed
+    private volatile CountDownLatch tearDownGate = new CountDownLatch(0);
+    private final List<String> removals = new ArrayList<>();
+    private final ClusterProperties clusterProperties = new ClusterProperties();
+
+    // Records connects and teardowns instead of talking to a terminal
+    private class FakeConnection extends TerminalConnection {
+        private TerminalState state = TerminalState.DISCONNECTED;
+
+        FakeConnection(TerminalDefinition definition, PaymentEventListener listener) {
+            super(definition, listener);
+        }
+
+        @Override
+        public void connect() {
+            calls.add("connect " + getTerminalId() + " " + getAddress());
+            state = TerminalState.READY;
+        }
+
+        @Override
+        public void tearDown() {
+            try {
+                tearDownGate.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            calls.add("tearDown " + getTerminalId() + " " + getAddress());
+            state = TerminalState.DISCONNECTED;
+        }
+
+        @Override
+        public TerminalState getState() {
+            return state;
+        }
+    }
+
+    private class FakeFactory extends TerminalConnectionFactory {
+        FakeFactory() {
+            super(event -> { }, null, new RecordingProperties(), new LoggingProperties(), null);
+        }
+
+        @Override
+        public TerminalConnection create(TerminalDefinition definition) {
+            return new FakeConnection(definition, new PaymentEventListener(event -> { }, null));
+        }
+    }
+
+    private static TerminalDefinition definition(String terminalId, String address) {
+        return TerminalDefinition.builder()
+                .venueId("main-bar")
+                .terminalId(terminalId)
+                .address(address)
+                .connectionType("tcpip")
+                .currency("DKK")
+                .initStrategy(InitStrategy.ENHANCED)
+                .build();
+    }
+
+    private TerminalRegistry registry(TerminalDefinition... definitions) {
+        VerifoneProperties properties = new VerifoneProperties();
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        for (TerminalDefinition definition : definitions) {
+            VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+            terminal.setId(definition.getTerminalId());
+            terminal.setAddress(definition.getAddress());
+            venue.getTerminals().add(terminal);
+        }
+        if (definitions.length > 0) {
+            properties.setVenues(List.of(venue));
+        }
+        return new TerminalRegistry(new FakeFactory(), new VerifoneConfig(properties), event -> {
+            TerminalRemovedEvent removed = (TerminalRemovedEvent) event;
+            removals.add(removed.getTerminalId() + (removed.isReplaced() ? " replaced" : " removed"));
+        }, clusterProperties);
+    }
+
+    @Test
+    void resolvesTheDefaultTerminalOnStockConfig() {
+        TerminalRegistry registry = registry();
+
+        assertEquals("default", registry.resolve(null).getTerminalId());
+        assertEquals("default", registry.resolve("default").getTerminalId());
+        assertEquals("null", registry.resolve(null).getAddress());
+    }
+
+    @Test
+    void firstConfiguredTerminalIsTheDefault() {
+        TerminalRegistry registry = registry(definition("bar-1", "10.0.0.1"), definition("bar-2", "10.0.0.2"));
+
+        assertEquals("bar-1", registry.resolve(null).getTerminalId());
+        assertEquals("bar-1", registry.resolve("default").getTerminalId());
+        assertEquals("bar-2", registry.resolve("bar-2").getTerminalId());
+        assertThrows(IllegalArgumentException.class, () -> registry.resolve("bar-3"));
+    }
+
+    @Test
+    void applyConnectsAddedAndTearsDownRemovedTerminals() {
+        TerminalRegistry registry = registry(definition("bar-1", "10.0.0.1"), definition("bar-2", "10.0.0.2"));
+        TerminalConnection unchanged = registry.get("bar-1");
+
+        registry.apply(List.of(definition("bar-1", "10.0.0.1"), definition("bar-3", "10.0.0.3")));
+
+        assertEquals(List.of("tearDown bar-2 10.0.0.2", "connect bar-3 10.0.0.3"), calls);
+        assertEquals(List.of("bar-2 removed"), removals);
+        assertSame(unchanged, registry.get("bar-1"));
+        assertEquals(null, registry.get("bar-2"));
+        assertEquals(2, registry.getAll().size());
+    }
+
+    @Test
+    void changedTerminalIsReconnectedOnlyIfItWasConnected() {
+        TerminalRegistry registry = registry(definition("bar-1", "10.0.0.1"), definition("bar-2", "10.0.0.2"));
+        registry.get("bar-1").connect();
+        calls.clear();
+        TerminalConnection before = registry.get("bar-1");
+
+        registry.apply(List.of(definition("bar-1", "10.0.0.11"), definition("bar-2", "10.0.0.12")));
+
+        assertEquals(List.of("tearDown bar-1 10.0.0.1", "connect bar-1 10.0.0.11", "tearDown bar-2 10.0.0.2"), calls);
+        assertEquals(List.of("bar-1 replaced", "bar-2 replaced"), removals);
+        assertNotSame(before, registry.get("bar-1"));
+        assertEquals("10.0.0.12", registry.get("bar-2").getAddress());
+        assertEquals(TerminalState.DISCONNECTED, registry.get("bar-2").getState());
+    }
+
+    @Test
+    void duplicateIdsAreRejectedWithoutChangingAnything() {
+        TerminalRegistry registry = registry(definition("bar-1", "10.0.0.1"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.apply(List.of(definition("bar-2", "10.0.0.2"), definition("bar-2", "10.0.0.3"))));
+        assertTrue(calls.isEmpty());
+        assertEquals("bar-1", registry.resolve(null).getTerminalId());
+    }
+
+    @Test
+    void terminalsResolveWhileARemovedTerminalIsTornDown() throws Exception {
+        TerminalRegistry registry = registry(definition("bar-1", "10.0.0.1"), definition("bar-2", "10.0.0.2"));
+        tearDownGate = new CountDownLatch(1);
+        Thread reload = new Thread(() -> registry.apply(List.of(definition("bar-1", "10.0.0.1"))));
+        reload.start();
+
+        Thread.sleep(100);
+        assertEquals("bar-1", registry.resolve("bar-1").getTerminalId());
+        assertTrue(calls.isEmpty());
+
+        tearDownGate.countDown();
+        reload.join(2000);
+        assertEquals(List.of("tearDown bar-2 10.0.0.2"), calls);
+    }
+
+    @Test
+    void clusterModeOnlyRegistersTerminals() {
+        clusterProperties.setEnabled(true);
+        TerminalRegistry registry = registry(definition("bar-1", "10.0.0.1"));
+        registry.get("bar-1").connect();
+        calls.clear();
+
+        registry.apply(List.of(definition("bar-1", "10.0.0.11"), definition("bar-2", "10.0.0.2")));
+
+        // Connecting is up to the node that holds the lease
+        assertEquals(List.of("tearDown bar-1 10.0.0.1"), calls);
+        assertEquals(TerminalState.DISCONNECTED, registry.get("bar-1").getState());
+        assertEquals(TerminalState.DISCONNECTED, registry.get("bar-2").getState());
+    }
+}
@@ -0,0 +1,93 @@
+package com.robar.payment.service;
+
+import com.robar.payment.config.ClusterProperties;
+import com.robar.payment.config.LoggingProperties;
+import com.robar.payment.config.RecordingProperties;
+import com.robar.payment.config.VerifoneConfig;
+import com.robar.payment.config.VerifoneProperties;
+import com.robar.payment.model.TerminalDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalStartupConnectorTests {
+    private static final int TERMINALS = 20;
+
+    private final AtomicInteger connecting = new AtomicInteger();
+    private final AtomicInteger mostConnecting = new AtomicInteger();
+    private final AtomicInteger connected = new AtomicInteger();
+
+    // Connects in the background like the SDK strategies, taking a while to finish
+    private class SlowConnection extends TerminalConnection {
+        private volatile Thread attempt;
+
+        SlowConnection(TerminalDefinition definition, PaymentEventListener listener) {
+            super(definition, listener);
+        }
+
+        @Override
+        public void connect() {
+            attempt = new Thread(() -> {
+                mostConnecting.accumulateAndGet(connecting.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                connecting.decrementAndGet();
+                connected.incrementAndGet();
+            });
+            attempt.start();
+        }
+
+        @Override
+        public boolean awaitConnectAttempt(long timeout, TimeUnit unit) throws InterruptedException {
+            attempt.join(unit.toMillis(timeout));
+            return !attempt.isAlive();
+        }
+    }
+
+    private class SlowFactory extends TerminalConnectionFactory {
+        SlowFactory() {
+            super(event -> { }, null, new RecordingProperties(), new LoggingProperties(), null);
+        }
+
+        @Override
+        public TerminalConnection create(TerminalDefinition definition) {
+            return new SlowConnection(definition, new PaymentEventListener(event -> { }, null));
+        }
+    }
+
+    @Test
+    void connectsAtMostEightTerminalsAtOnce() throws Exception {
+        VerifoneProperties properties = new VerifoneProperties();
+        properties.setAutoConnect(true);
+        VerifoneProperties.Venue venue = new VerifoneProperties.Venue();
+        venue.setId("main-bar");
+        List<VerifoneProperties.Terminal> terminals = new ArrayList<>();
+        for (int i = 0; i < TERMINALS; i++) {
+            VerifoneProperties.Terminal terminal = new VerifoneProperties.Terminal();
+            terminal.setId("bar-" + i);
+            terminal.setAddress("10.0.0." + i);
+            terminals.add(terminal);
+        }
+        venue.getTerminals().addAll(terminals);
+        properties.setVenues(List.of(venue));
+        TerminalRegistry registry = new TerminalRegistry(new SlowFactory(), new VerifoneConfig(properties), event -> { }, new ClusterProperties());
+
+        new TerminalStartupConnector(properties, registry, new ClusterProperties()).connectTerminals();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connected.get() < TERMINALS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(TERMINALS, connected.get());
+        assertTrue(mostConnecting.get() <= 8, "at most 8 concurrent connects, saw " + mostConnecting.get());
+    }
+}
@@ -0,0 +1,55 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.PaymentStatus;
+import com.robar.payment.model.TransactionKind;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionRegistryTests {
+    private final TransactionRegistry registry = new TransactionRegistry();
+
+    private void sale(String paymentId, String amount) {
+        registry.onPaymentStatus(new PaymentStatusEvent(paymentId, PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal(amount), TransactionKind.SALE, null));
+    }
+
+    @Test
+    void partialRefundsAddUpToTheOriginalAmount() {
+        sale("p1", "50.00");
+
+        assertTrue(registry.reserveRefund("p1", new BigDecimal("20.00")));
+        assertEquals(PaymentStatus.PARTLY_REFUNDED, registry.confirmRefund("p1", new BigDecimal("20.00")));
+        assertEquals(new BigDecimal("30.00"), TransactionRegistry.refundable(registry.get("p1")));
+
+        assertTrue(registry.reserveRefund("p1", new BigDecimal("30.00")));
+        assertEquals(PaymentStatus.REFUNDED, registry.confirmRefund("p1", new BigDecimal("30.00")));
+        assertFalse(registry.reserveRefund("p1", new BigDecimal("0.01")));
+    }
+
+    @Test
+    void pendingRefundsCountAgainstTheAmountUntilReleased() {
+        sale("p1", "50.00");
+
+        assertTrue(registry.reserveRefund("p1", new BigDecimal("40.00")));
+        assertFalse(registry.reserveRefund("p1", new BigDecimal("20.00")));
+
+        registry.releaseRefund("p1", new BigDecimal("40.00"));
+        assertTrue(registry.reserveRefund("p1", new BigDecimal("20.00")));
+    }
+
+    @Test
+    void refundResultIsRecordedAsARefundNotASale() {
+        sale("p1", "50.00");
+        registry.onPaymentStatus(new PaymentStatusEvent("r1", PaymentStatus.COMPLETED, "ok", "bar-1",
+                new BigDecimal("20.00"), TransactionKind.REFUND, "p1"));
+
+        assertEquals(TransactionKind.REFUND, registry.get("r1").getKind());
+        assertEquals(TransactionKind.SALE, registry.get("p1").getKind());
+        assertFalse(registry.reserveRefund("unknown", BigDecimal.ONE));
+    }
+}
@@ -0,0 +1,74 @@
+package com.robar.payment.service;
+
+import com.robar.payment.model.VitalsMetric;
+import com.robar.payment.model.VitalsPoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VitalsRingTests {
+    private static final long MINUTE = 60_000;
+
+    private static float[] battery(float percent) {
+        float[] values = new float[VitalsRing.METRICS];
+        Arrays.fill(values, Float.NaN);
+        values[VitalsMetric.BATTERY_PERCENT.ordinal()] = percent;
+        return values;
+    }
+
+    @Test
+    void rawSamplesWrapAroundOldestFirst() {
+        VitalsRing ring = new VitalsRing(3, 10, 10);
+        for (int i = 1; i <= 5; i++) {
+            ring.record(i * 1000L, battery(i * 10));
+        }
+
+        List<VitalsPoint> raw = ring.readRaw(10);
+
+        assertEquals(3, raw.size());
+        assertEquals(30f, raw.get(0).getAverage().get(VitalsMetric.BATTERY_PERCENT));
+        assertEquals(50f, raw.get(2).getAverage().get(VitalsMetric.BATTERY_PERCENT));
+        assertFalse(raw.get(0).getAverage().containsKey(VitalsMetric.TEMPERATURE_CELSIUS));
+    }
+
+    @Test
+    void minutesKeepMinMaxAndAverage() {
+        VitalsRing ring = new VitalsRing(16, 10, 10);
+        ring.record(100 * MINUTE, battery(80));
+        ring.record(100 * MINUTE + 30_000, battery(60));
+        ring.record(102 * MINUTE, battery(50));
+
+        List<VitalsPoint> minutes = ring.readMinutes(102 * MINUTE + 1, 3);
+
+        // Minute 101 had no samples
+        assertEquals(2, minutes.size());
+        assertEquals(70f, minutes.get(0).getAverage().get(VitalsMetric.BATTERY_PERCENT));
+        assertEquals(60f, minutes.get(0).getMin().get(VitalsMetric.BATTERY_PERCENT));
+        assertEquals(80f, minutes.get(0).getMax().get(VitalsMetric.BATTERY_PERCENT));
+        assertEquals(2, minutes.get(0).getSamples());
+
+        List<VitalsPoint> hours = ring.readHours(102 * MINUTE + 1, 1);
+        assertEquals(1, hours.size());
+        assertEquals(3, hours.get(0).getSamples());
+    }
+
+    @Test
+    void latestTakesEachMetricFromItsMostRecentSample() {
+        VitalsRing ring = new VitalsRing(8, 10, 10);
+        float[] temperature = battery(Float.NaN);
+        temperature[VitalsMetric.TEMPERATURE_CELSIUS.ordinal()] = 41;
+        ring.record(1000, battery(90));
+        ring.record(2000, temperature);
+
+        float[] latest = ring.latest();
+
+        assertEquals(90f, latest[VitalsMetric.BATTERY_PERCENT.ordinal()]);
+        assertEquals(41f, latest[VitalsMetric.TEMPERATURE_CELSIUS.ordinal()]);
+        assertTrue(Float.isNaN(latest[VitalsMetric.SIGNAL_DBM.ordinal()]));
+    }
+}